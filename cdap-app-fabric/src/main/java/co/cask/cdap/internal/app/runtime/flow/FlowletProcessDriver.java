@@ -30,6 +30,7 @@ import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.internal.app.queue.SingleItemQueueReader;
 import co.cask.cdap.internal.app.runtime.DataFabricFacade;
 import co.cask.cdap.security.spi.authorization.UnauthorizedException;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
@@ -54,6 +55,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 /**
  * This class responsible invoking process methods of a {@link Flowlet}.
@@ -67,18 +70,28 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   private final Callback txCallback;
   private final LoggingContext loggingContext;
   private final PriorityQueue<FlowletProcessEntry<?>> processQueue;
+  private final int processRounds;
 
   private Thread runThread;
   private ExecutorService processExecutor;
 
+  /**
+   * Creates a driver that processes up to the given number of rounds of ready entries in each task submitted to
+   * the process executor. With more than one round, entries that become ready again while a round is being
+   * processed are dequeued and processed in the same task, instead of handing control back to the driver thread
+   * after each round.
+   */
   FlowletProcessDriver(BasicFlowletContext flowletContext,
                        DataFabricFacade dataFabricFacade,
                        Callback txCallback,
-                       Collection<? extends ProcessSpecification<?>> processSpecifications) {
+                       Collection<? extends ProcessSpecification<?>> processSpecifications,
+                       int processRounds) {
+    Preconditions.checkArgument(processRounds > 0, "Number of process rounds must be positive: %s", processRounds);
     this.flowletContext = flowletContext;
     this.dataFabricFacade = dataFabricFacade;
     this.txCallback = txCallback;
     this.loggingContext = flowletContext.getLoggingContext();
+    this.processRounds = processRounds;
 
     processQueue = new PriorityQueue<>(processSpecifications.size());
     for (ProcessSpecification<?> spec : processSpecifications) {
@@ -97,6 +110,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.dataFabricFacade = other.dataFabricFacade;
     this.txCallback = other.txCallback;
     this.loggingContext = other.loggingContext;
+    this.processRounds = other.processRounds;
     this.processQueue = new PriorityQueue<>(other.processQueue.size());
     Iterables.addAll(processQueue, other.processQueue);
   }
@@ -171,8 +185,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     }
   }
 
-  private void drainQueue(PriorityQueue<FlowletProcessEntry<?>> queue,
-                          List<? super FlowletProcessEntry<?>> collection) {
+  private static void drainQueue(PriorityQueue<FlowletProcessEntry<?>> queue,
+                                 List<? super FlowletProcessEntry<?>> collection) {
     FlowletProcessEntry<?> entry = queue.poll();
     while (entry != null) {
       collection.add(entry);
@@ -190,19 +204,54 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       @Override
       public void run() {
         Thread.currentThread().setContextClassLoader(classLoader);
-        for (FlowletProcessEntry<?> entry : processList) {
-          if (!handleProcessEntry(entry, processQueue)) {
-            // If an entry is not processed (because it's not the time yet), just put it back to the queue
-            // Otherwise, it's up to the process result callback to handle re-enqueue of the entry. The callback
-            // will determine what entry to put it back, as it can be the original entry or a retry entry wrapper,
-            // depending on the process result.
-            processQueue.offer(entry);
-          }
-        }
+        processRounds(processQueue, processList, processRounds,
+                      entry -> handleProcessEntry(entry, processQueue), FlowletProcessDriver.this::isRunning);
       }
     };
   }
 
+  /**
+   * Handles the entries in the given list, followed by up to {@code maxRounds - 1} more rounds of entries drained
+   * from the process queue, as long as entries were processed in the previous round and the head of the queue
+   * is ready to be processed.
+   *
+   * @param processQueue the queue of all process entries of the flowlet
+   * @param processList the entries to handle in the first round
+   * @param maxRounds maximum number of rounds to process
+   * @param entryHandler handles an entry and returns {@code true} if the entry is handled completely, in which case
+   *                     it is responsible for putting the entry back to the queue
+   * @param running tells whether the driver is still running
+   * @return the number of rounds processed
+   */
+  @VisibleForTesting
+  static int processRounds(PriorityQueue<FlowletProcessEntry<?>> processQueue,
+                           List<FlowletProcessEntry<?>> processList, int maxRounds,
+                           Predicate<FlowletProcessEntry<?>> entryHandler, BooleanSupplier running) {
+    int round = 0;
+    while (true) {
+      boolean processed = false;
+      for (FlowletProcessEntry<?> entry : processList) {
+        if (entryHandler.test(entry)) {
+          processed = true;
+        } else {
+          // If an entry is not processed (because it's not the time yet), just put it back to the queue
+          // Otherwise, it's up to the process result callback to handle re-enqueue of the entry. The callback
+          // will determine what entry to put it back, as it can be the original entry or a retry entry wrapper,
+          // depending on the process result.
+          processQueue.offer(entry);
+        }
+      }
+
+      // Only continue with the next round if there was input and the next entry can be processed right away
+      FlowletProcessEntry<?> head = processQueue.peek();
+      if (++round >= maxRounds || !processed || !running.getAsBoolean() || head == null || !head.shouldProcess()) {
+        return round;
+      }
+      processList.clear();
+      drainQueue(processQueue, processList);
+    }
+  }
+
   /**
    * Invokes to perform dequeue and optionally invoke the user process input / tick method if dequeue gave a non
    * empty result.
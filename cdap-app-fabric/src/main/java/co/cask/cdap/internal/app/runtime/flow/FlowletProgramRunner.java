@@ -283,7 +283,9 @@ public final class FlowletProgramRunner implements ProgramRunner {
       Service serviceHook = createServiceHook(flowletName, consumerSuppliers, controllerRef);
       FlowletRuntimeService driver = new FlowletRuntimeService(flowlet, flowletContext, processSpecs,
                                                              createCallback(flowlet, flowletDef.getFlowletSpec()),
-                                                             dataFabricFacade, serviceHook);
+                                                             dataFabricFacade, serviceHook,
+                                                             cConf.getInt(Constants.AppFabric.FLOWLET_PROCESS_ROUNDS,
+                                                                          1));
 
       FlowletProgramController controller = new FlowletProgramController(flowletName,
                                                                          flowletContext, driver,
@@ -555,7 +557,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
     return new ProcessMethodFactory() {
       @Override
       public <T> ProcessMethod<T> create(Method method, int maxRetries) {
-        return ReflectionProcessMethod.create(flowlet, method, maxRetries);
+        return MethodHandleProcessMethod.create(flowlet, method, maxRetries);
       }
     };
   }
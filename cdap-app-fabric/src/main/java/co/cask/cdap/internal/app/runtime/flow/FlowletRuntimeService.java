@@ -43,26 +43,29 @@ final class FlowletRuntimeService extends AbstractIdleService {
   private final Callback txCallback;
   private final DataFabricFacade dataFabricFacade;
   private final Service serviceHook;
+  private final int processRounds;
 
   private FlowletProcessDriver flowletProcessDriver;
 
   FlowletRuntimeService(Flowlet flowlet, BasicFlowletContext flowletContext,
                         Collection<? extends ProcessSpecification<?>> processSpecs,
                         Callback txCallback, DataFabricFacade dataFabricFacade,
-                        Service serviceHook) {
+                        Service serviceHook, int processRounds) {
     this.flowlet = flowlet;
     this.flowletContext = flowletContext;
     this.processSpecs = processSpecs;
     this.txCallback = txCallback;
     this.dataFabricFacade = dataFabricFacade;
     this.serviceHook = serviceHook;
+    this.processRounds = processRounds;
   }
 
   @Override
   protected void startUp() throws Exception {
     LoggingContextAccessor.setLoggingContext(flowletContext.getLoggingContext());
     flowletContext.getProgramMetrics().increment("process.instance", 1);
-    flowletProcessDriver = new FlowletProcessDriver(flowletContext, dataFabricFacade, txCallback, processSpecs);
+    flowletProcessDriver = new FlowletProcessDriver(flowletContext, dataFabricFacade, txCallback, processSpecs,
+                                                    processRounds);
 
     serviceHook.startAndWait();
     initFlowlet();
@@ -21,36 +21,40 @@ import co.cask.cdap.api.flow.flowlet.Flowlet;
 import co.cask.cdap.api.flow.flowlet.InputContext;
 import co.cask.cdap.app.queue.InputDatum;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.reflect.TypeToken;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.Iterator;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
- * Represents a {@link ProcessMethod} that invocation is done through reflection.
+ * Represents a {@link ProcessMethod} that invocation is done through a {@link MethodHandle}. The handle is bound
+ * to the flowlet instance and has all of its parameter types erased to {@link Object}, so that it can be invoked
+ * with {@link MethodHandle#invokeExact}, which avoids the argument array allocation and access checks of
+ * {@link Method#invoke} for every event.
  * @param <T> Type of input accepted by this process method.
  */
 @NotThreadSafe
-public final class ReflectionProcessMethod<T> implements ProcessMethod<T> {
-
-  private static final Logger LOG = LoggerFactory.getLogger(ReflectionProcessMethod.class);
+public final class MethodHandleProcessMethod<T> implements ProcessMethod<T> {
 
   private final Flowlet flowlet;
   private final Method method;
+  private final MethodHandle handle;
   private final boolean hasParam;
   private final boolean batch;
   private final boolean needsIterator;
   private final boolean needContext;
   private final int maxRetries;
 
-  public static <T> ReflectionProcessMethod<T> create(Flowlet flowlet, Method method, int maxRetries) {
-    return new ReflectionProcessMethod<>(flowlet, method, maxRetries);
+  public static <T> MethodHandleProcessMethod<T> create(Flowlet flowlet, Method method, int maxRetries) {
+    return new MethodHandleProcessMethod<>(flowlet, method, maxRetries);
   }
 
-  private ReflectionProcessMethod(Flowlet flowlet, Method method, int maxRetries) {
+  private MethodHandleProcessMethod(Flowlet flowlet, Method method, int maxRetries) {
     this.flowlet = flowlet;
     this.method = method;
     this.maxRetries = maxRetries;
@@ -64,6 +68,15 @@ public final class ReflectionProcessMethod<T> implements ProcessMethod<T> {
     if (!this.method.isAccessible()) {
       this.method.setAccessible(true);
     }
+
+    try {
+      int paramCount = method.getParameterTypes().length;
+      this.handle = MethodHandles.lookup().unreflect(method).bindTo(flowlet)
+        .asType(MethodType.genericMethodType(paramCount).changeReturnType(void.class));
+    } catch (IllegalAccessException e) {
+      // Shouldn't happen since the method is made accessible
+      throw Throwables.propagate(e);
+    }
   }
 
   @Override
@@ -85,19 +98,20 @@ public final class ReflectionProcessMethod<T> implements ProcessMethod<T> {
 
       if (hasParam) {
         if (needsIterator) {
-          invoke(method, input.iterator(), inputContext);
+          invoke(input.iterator(), inputContext);
         } else {
           for (T event : input) {
-            invoke(method, event, inputContext);
+            invoke(event, inputContext);
           }
         }
       } else {
-        method.invoke(flowlet);
+        handle.invokeExact();
       }
 
       return createResult(input, null);
     } catch (Throwable t) {
-      return createResult(input, t.getCause());
+      // Unlike Method.invoke, exceptions thrown by the process method are not wrapped
+      return createResult(input, t);
     }
   }
 
@@ -109,11 +123,11 @@ public final class ReflectionProcessMethod<T> implements ProcessMethod<T> {
   /**
    * Calls the user process method.
    */
-  private void invoke(Method method, Object event, InputContext inputContext) throws Exception {
+  private void invoke(Object event, InputContext inputContext) throws Throwable {
     if (needContext) {
-      method.invoke(flowlet, event, inputContext);
+      handle.invokeExact(event, (Object) inputContext);
     } else {
-      method.invoke(flowlet, event);
+      handle.invokeExact(event);
     }
   }
 
@@ -121,15 +135,15 @@ public final class ReflectionProcessMethod<T> implements ProcessMethod<T> {
   private ProcessResult<T> createResult(InputDatum<T> input, Throwable failureCause) {
     // If the method has param, then object for the result would be iterator or the first event (batch vs no-batch)
     T event = hasParam ? (batch ? (T) input.iterator() : input.iterator().next()) : null;
-    return new ReflectionProcessResult<>(event, failureCause);
+    return new MethodHandleProcessResult<>(event, failureCause);
   }
 
-  private static final class ReflectionProcessResult<V> implements ProcessResult<V> {
+  private static final class MethodHandleProcessResult<V> implements ProcessResult<V> {
 
     private final V event;
     private final Throwable cause;
 
-    private ReflectionProcessResult(V event, Throwable cause) {
+    private MethodHandleProcessResult(V event, Throwable cause) {
       this.event = event;
       this.cause = cause;
     }
@@ -67,7 +67,8 @@ public abstract class AbstractNotificationSubscriberService extends AbstractMess
             Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
             Constants.Metrics.Tag.TOPIC, topicName,
             Constants.Metrics.Tag.CONSUMER, name
-          )));
+          )),
+          messagingService, cConf.getLong(Constants.MessagingSystem.SUBSCRIBER_LONG_POLL_TIMEOUT_MILLIS, 0L));
     this.name = name;
     this.messagingContext = new MultiThreadMessagingContext(messagingService);
     this.transactional = Transactions.createTransactionalWithRetry(
@@ -115,7 +115,8 @@ public class MetadataSubscriberService extends AbstractMessagingSubscriberServic
         Constants.Metrics.Tag.NAMESPACE, NamespaceId.SYSTEM.getNamespace(),
         Constants.Metrics.Tag.TOPIC, cConf.get(Constants.Metadata.MESSAGING_TOPIC),
         Constants.Metrics.Tag.CONSUMER, "metadata.writer"
-      ))
+      )),
+      messagingService, cConf.getLong(Constants.MessagingSystem.SUBSCRIBER_LONG_POLL_TIMEOUT_MILLIS, 0L)
     );
 
     this.cConf = cConf;
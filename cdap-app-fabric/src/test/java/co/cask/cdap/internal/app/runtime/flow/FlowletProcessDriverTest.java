@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Test for processing multiple rounds of entries in {@link FlowletProcessDriver}.
+ */
+public class FlowletProcessDriverTest {
+
+  @Test
+  public void testProcessRounds() throws Exception {
+    PriorityQueue<FlowletProcessEntry<?>> processQueue = new PriorityQueue<>();
+    FlowletProcessEntry<?> entryA = createEntry(processQueue);
+    FlowletProcessEntry<?> entryB = createEntry(processQueue);
+
+    List<String> events = new ArrayList<>();
+    EntryHandler handler = new EntryHandler(processQueue, events);
+    handler.addInput(entryA, "a", 3);
+    handler.addInput(entryB, "b", 2);
+
+    // Rounds continue while there is input. Entries are processed in the order they become ready, and each input is
+    // committed before the next one is processed. The last round finds no more input.
+    Assert.assertEquals(4, FlowletProcessDriver.processRounds(processQueue, drain(processQueue), 10, handler,
+                                                              () -> true));
+    Assert.assertEquals(ImmutableList.of("process a", "commit a", "process b", "commit b",
+                                         "process a", "commit a", "process b", "commit b",
+                                         "process a", "commit a"), events);
+
+    // All entries are back in the queue
+    Assert.assertEquals(2, processQueue.size());
+  }
+
+  @Test
+  public void testMaxRounds() throws Exception {
+    PriorityQueue<FlowletProcessEntry<?>> processQueue = new PriorityQueue<>();
+    FlowletProcessEntry<?> entry = createEntry(processQueue);
+
+    List<String> events = new ArrayList<>();
+    EntryHandler handler = new EntryHandler(processQueue, events);
+    handler.addInput(entry, "a", 10);
+
+    // Stops after the maximum number of rounds even if there is more input
+    Assert.assertEquals(3, FlowletProcessDriver.processRounds(processQueue, drain(processQueue), 3, handler,
+                                                              () -> true));
+    Assert.assertEquals(6, events.size());
+
+    // A single round is the same as processing the drained entries once
+    events.clear();
+    Assert.assertEquals(1, FlowletProcessDriver.processRounds(processQueue, drain(processQueue), 1, handler,
+                                                              () -> true));
+    Assert.assertEquals(ImmutableList.of("process a", "commit a"), events);
+    Assert.assertEquals(1, processQueue.size());
+  }
+
+  @Test
+  public void testStopProcessing() throws Exception {
+    PriorityQueue<FlowletProcessEntry<?>> processQueue = new PriorityQueue<>();
+    FlowletProcessEntry<?> entry = createEntry(processQueue);
+
+    List<String> events = new ArrayList<>();
+    EntryHandler handler = new EntryHandler(processQueue, events);
+    handler.addInput(entry, "a", 10);
+
+    // No more rounds once the driver is stopped
+    Assert.assertEquals(1, FlowletProcessDriver.processRounds(processQueue, drain(processQueue), 10, handler,
+                                                              () -> false));
+    Assert.assertEquals(ImmutableList.of("process a", "commit a"), events);
+    Assert.assertEquals(1, processQueue.size());
+
+    // No more rounds if there was no input
+    events.clear();
+    handler.addInput(entry, "a", 0);
+    Assert.assertEquals(1, FlowletProcessDriver.processRounds(processQueue, drain(processQueue), 10, handler,
+                                                              () -> true));
+    Assert.assertTrue(events.isEmpty());
+    Assert.assertEquals(1, processQueue.size());
+  }
+
+  /**
+   * Creates a non-tick {@link FlowletProcessEntry} and adds it to the given queue. Entries created later are
+   * ordered after entries created earlier.
+   */
+  private FlowletProcessEntry<?> createEntry(PriorityQueue<FlowletProcessEntry<?>> processQueue)
+    throws InterruptedException {
+    TimeUnit.MILLISECONDS.sleep(1);
+    FlowletProcessEntry<?> entry = FlowletProcessEntry.create(new ProcessSpecification<>(null, null, null));
+    processQueue.offer(entry);
+    return entry;
+  }
+
+  private List<FlowletProcessEntry<?>> drain(PriorityQueue<FlowletProcessEntry<?>> processQueue) {
+    List<FlowletProcessEntry<?>> processList = Lists.newArrayList();
+    while (!processQueue.isEmpty()) {
+      processList.add(processQueue.poll());
+    }
+    return processList;
+  }
+
+  /**
+   * Handles entries the same way as the flowlet driver does, with a given number of inputs for each entry.
+   */
+  private static final class EntryHandler implements Predicate<FlowletProcessEntry<?>> {
+
+    private final PriorityQueue<FlowletProcessEntry<?>> processQueue;
+    private final List<String> events;
+    private final Map<FlowletProcessEntry<?>, String> names = new IdentityHashMap<>();
+    private final Map<FlowletProcessEntry<?>, Integer> inputs = new IdentityHashMap<>();
+
+    EntryHandler(PriorityQueue<FlowletProcessEntry<?>> processQueue, List<String> events) {
+      this.processQueue = processQueue;
+      this.events = events;
+    }
+
+    void addInput(FlowletProcessEntry<?> entry, String name, int count) {
+      names.put(entry, name);
+      inputs.put(entry, count);
+    }
+
+    @Override
+    public boolean test(FlowletProcessEntry<?> entry) {
+      if (!entry.shouldProcess()) {
+        return false;
+      }
+      int remaining = inputs.get(entry);
+      if (remaining == 0) {
+        entry.backOff();
+        return false;
+      }
+      inputs.put(entry, remaining - 1);
+      entry.resetBackOff();
+      events.add("process " + names.get(entry));
+      events.add("commit " + names.get(entry));
+      // The process callback puts the entry back to the queue after the commit
+      processQueue.offer(entry);
+      return true;
+    }
+  }
+}
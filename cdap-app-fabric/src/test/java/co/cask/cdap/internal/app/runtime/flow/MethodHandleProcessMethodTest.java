@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.annotation.Tick;
+import co.cask.cdap.api.flow.flowlet.AbstractFlowlet;
+import co.cask.cdap.api.flow.flowlet.InputContext;
+import co.cask.cdap.app.queue.InputDatum;
+import co.cask.cdap.common.queue.QueueName;
+import co.cask.cdap.internal.app.queue.NullInputDatum;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for {@link MethodHandleProcessMethod}.
+ */
+public class MethodHandleProcessMethodTest {
+
+  @Test
+  public void testProcess() throws Exception {
+    TestFlowlet flowlet = new TestFlowlet();
+    ProcessMethod<String> processMethod = createProcessMethod(flowlet, "process", String.class);
+    Assert.assertTrue(processMethod.needsInput());
+    Assert.assertEquals(3, processMethod.getMaxRetries());
+
+    // All events are passed to the process method in order, the result carries the first event
+    ProcessMethod.ProcessResult<String> result = processMethod.invoke(new ListInputDatum<>("a", "b", "c"));
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertNull(result.getCause());
+    Assert.assertEquals("a", result.getEvent());
+    Assert.assertEquals(ImmutableList.of("a", "b", "c"), flowlet.events);
+  }
+
+  @Test
+  public void testProcessWithContext() throws Exception {
+    TestFlowlet flowlet = new TestFlowlet();
+    ProcessMethod<String> processMethod = createProcessMethod(flowlet, "processWithContext",
+                                                              String.class, InputContext.class);
+    ProcessMethod.ProcessResult<String> result = processMethod.invoke(new ListInputDatum<>("a", "b"));
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertEquals("a", result.getEvent());
+    Assert.assertEquals(ImmutableList.of("a:test", "b:test"), flowlet.events);
+  }
+
+  @Test
+  public void testProcessFailure() throws Exception {
+    TestFlowlet flowlet = new TestFlowlet();
+    ProcessMethod<String> processMethod = createProcessMethod(flowlet, "process", String.class);
+
+    // Processing stops at the failed event. The exception thrown by the process method is the cause of the failure,
+    // without being wrapped.
+    ProcessMethod.ProcessResult<String> result = processMethod.invoke(new ListInputDatum<>("a", "fail", "c"));
+    Assert.assertFalse(result.isSuccess());
+    Assert.assertSame(flowlet.failure, result.getCause());
+    Assert.assertEquals("a", result.getEvent());
+    Assert.assertEquals(ImmutableList.of("a"), flowlet.events);
+  }
+
+  @Test
+  public void testTick() throws Exception {
+    TestFlowlet flowlet = new TestFlowlet();
+    ProcessMethod<String> processMethod = createProcessMethod(flowlet, "tick");
+    Assert.assertFalse(processMethod.needsInput());
+
+    ProcessMethod.ProcessResult<String> result = processMethod.invoke(new NullInputDatum<String>());
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertNull(result.getEvent());
+    Assert.assertEquals(ImmutableList.of("tick"), flowlet.events);
+
+    // Checked exceptions are not wrapped either
+    flowlet.failTick = true;
+    result = processMethod.invoke(new NullInputDatum<String>());
+    Assert.assertFalse(result.isSuccess());
+    Assert.assertTrue(result.getCause() instanceof IOException);
+    Assert.assertSame(flowlet.failure, result.getCause());
+  }
+
+  private <T> ProcessMethod<T> createProcessMethod(TestFlowlet flowlet, String name,
+                                                   Class<?>... parameterTypes) throws Exception {
+    return MethodHandleProcessMethod.create(flowlet, TestFlowlet.class.getDeclaredMethod(name, parameterTypes), 3);
+  }
+
+  /**
+   * Flowlet that records the events it processed.
+   */
+  public static final class TestFlowlet extends AbstractFlowlet {
+
+    private final List<String> events = new ArrayList<>();
+    private Exception failure;
+    private boolean failTick;
+
+    public void process(String event) {
+      if ("fail".equals(event)) {
+        failure = new IllegalStateException("Failed to process " + event);
+        throw (IllegalStateException) failure;
+      }
+      events.add(event);
+    }
+
+    public void processWithContext(String event, InputContext context) {
+      events.add(event + ":" + context.getOrigin());
+    }
+
+    @Tick(delay = 1L, unit = TimeUnit.SECONDS)
+    public void tick() throws IOException {
+      if (failTick) {
+        failure = new IOException("Failed to tick");
+        throw (IOException) failure;
+      }
+      events.add("tick");
+    }
+  }
+
+  /**
+   * An {@link InputDatum} that holds a list of events.
+   */
+  private static final class ListInputDatum<T> implements InputDatum<T> {
+
+    private final List<T> events;
+    private final InputContext inputContext = new InputContext() {
+      @Override
+      public String getOrigin() {
+        return "test";
+      }
+
+      @Override
+      public int getRetryCount() {
+        return 0;
+      }
+    };
+
+    @SafeVarargs
+    ListInputDatum(T... events) {
+      this.events = ImmutableList.copyOf(events);
+    }
+
+    @Override
+    public boolean needProcess() {
+      return !events.isEmpty();
+    }
+
+    @Override
+    public void incrementRetry() {
+      // No-op
+    }
+
+    @Override
+    public int getRetry() {
+      return 0;
+    }
+
+    @Override
+    public InputContext getInputContext() {
+      return inputContext;
+    }
+
+    @Override
+    public QueueName getQueueName() {
+      return null;
+    }
+
+    @Override
+    public void reclaim() {
+      // No-op
+    }
+
+    @Override
+    public int size() {
+      return events.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return events.iterator();
+    }
+  }
+}
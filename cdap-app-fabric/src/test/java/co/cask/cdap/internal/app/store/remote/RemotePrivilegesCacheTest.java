@@ -18,12 +18,15 @@ package co.cask.cdap.internal.app.store.remote;
 
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.proto.security.Action;
+import co.cask.cdap.proto.security.Authorizable;
 import co.cask.cdap.security.authorization.RemoteAuthorizationEnforcer;
+import co.cask.cdap.security.spi.authorization.UnauthorizedException;
 import com.google.common.collect.ImmutableSet;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 
 import java.io.IOException;
+import java.util.EnumSet;
 
 /**
  * Test {@link RemoteAuthorizationEnforcer} with cache enabled.
@@ -45,6 +48,22 @@ public class RemotePrivilegesCacheTest extends RemotePrivilegesTestBase {
     authorizationEnforcer.enforce(PROGRAM, ALICE, Action.EXECUTE);
   }
 
+  @Override
+  public void testEnforceMultipleActions() throws Exception {
+    super.testEnforceMultipleActions();
+
+    // Both allowed and denied results are cached, including those of actions on the entity that were never checked
+    privilegesManager.grant(Authorizable.fromEntityId(APP), ALICE, EnumSet.of(Action.WRITE, Action.ADMIN));
+    authorizationEnforcer.enforce(APP, ALICE, EnumSet.of(Action.READ, Action.EXECUTE));
+    try {
+      authorizationEnforcer.enforce(APP, ALICE, Action.ADMIN);
+      Assert.fail();
+    } catch (UnauthorizedException e) {
+      // expected
+    }
+    privilegesManager.revoke(Authorizable.fromEntityId(APP));
+  }
+
   @Override
   public void testVisibility() throws Exception {
     super.testVisibility();
@@ -156,6 +156,30 @@ public abstract class RemotePrivilegesTestBase {
     privilegesManager.revoke(Authorizable.fromEntityId(NS));
   }
 
+  @Test
+  public void testEnforceMultipleActions() throws Exception {
+    privilegesManager.grant(Authorizable.fromEntityId(APP), ALICE, EnumSet.of(Action.READ, Action.EXECUTE));
+    authorizationEnforcer.enforce(APP, ALICE, EnumSet.of(Action.READ, Action.EXECUTE));
+    try {
+      authorizationEnforcer.enforce(APP, ALICE, EnumSet.of(Action.READ, Action.WRITE, Action.ADMIN));
+      Assert.fail();
+    } catch (UnauthorizedException e) {
+      // expected
+      Assert.assertTrue(e.getMessage().contains(EnumSet.of(Action.WRITE, Action.ADMIN).toString()));
+    }
+    // Single action checks are consistent with the multiple actions check
+    authorizationEnforcer.enforce(APP, ALICE, Action.EXECUTE);
+    try {
+      authorizationEnforcer.enforce(APP, ALICE, Action.WRITE);
+      Assert.fail();
+    } catch (UnauthorizedException e) {
+      // expected
+    }
+    Assert.assertEquals(ImmutableSet.of(APP), authorizationEnforcer.isVisible(ImmutableSet.of(APP, PROGRAM), ALICE));
+
+    privilegesManager.revoke(Authorizable.fromEntityId(APP));
+  }
+
   @Test
   public void testVisibility() throws Exception {
     ApplicationId app1 = NS.app("app1");
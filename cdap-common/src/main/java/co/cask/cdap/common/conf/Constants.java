@@ -200,6 +200,7 @@ public final class Constants {
       "app.program.yarn.attempt.failures.validity.interval";
 
     public static final String PROGRAM_TRANSACTION_CONTROL = "app.program.transaction.control";
+    public static final String FLOWLET_PROCESS_ROUNDS = "app.program.flowlet.process.rounds";
 
     /**
      * Guice named bindings.
@@ -522,6 +523,7 @@ public final class Constants {
     public static final String FILE_CLEANUP_PERIOD = "stream.file.cleanup.period";
     public static final String BATCH_BUFFER_THRESHOLD = "stream.batch.buffer.threshold";
     public static final String NOTIFICATION_THRESHOLD = "stream.notification.threshold";
+    public static final String CODEC = "stream.codec";
 
     // Stream http service configurations.
     public static final String STREAM_HANDLER = "stream.handler";
@@ -530,6 +532,7 @@ public final class Constants {
     public static final String WORKER_THREADS = "stream.worker.threads";
     public static final String ASYNC_WORKER_THREADS = "stream.async.worker.threads";
     public static final String ASYNC_QUEUE_SIZE = "stream.async.queue.size";
+    public static final String WRITER_PARTITIONS = "stream.writer.partitions";
 
     // YARN container configurations.
     public static final String CONTAINER_VIRTUAL_CORES = "stream.container.num.cores";
@@ -605,10 +608,14 @@ public final class Constants {
     public static final String SERVER_WORKER_THREADS = "router.server.worker.threads";
     public static final String CLIENT_BOSS_THREADS = "router.client.boss.threads";
     public static final String CLIENT_WORKER_THREADS = "router.client.worker.threads";
+    public static final String CLIENT_POOL_MAX_IDLE_CONNECTIONS = "router.client.pool.max.idle.connections";
+    public static final String CLIENT_POOL_IDLE_TIMEOUT_SECS = "router.client.pool.idle.timeout.secs";
     public static final String CONNECTION_TIMEOUT_SECS = "router.connection.idle.timeout.secs";
     public static final String ROUTER_USERSERVICE_FALLBACK_STRAGEY = "router.userservice.fallback.strategy";
     public static final String ROUTER_AUDIT_PATH_CHECK_ENABLED = "router.audit.path.check.enabled";
     public static final String ROUTER_AUDIT_LOG_ENABLED = "router.audit.log.enabled";
+    public static final String ENDPOINT_FAILURE_THRESHOLD = "router.endpoint.failure.threshold";
+    public static final String ENDPOINT_EJECTION_SECS = "router.endpoint.ejection.secs";
 
     /**
      * Defaults.
@@ -650,6 +657,16 @@ public final class Constants {
     public static final int HOUR_RESOLUTION = 3600;
     public static final String RETENTION_SECONDS_SUFFIX = ".seconds";
 
+    // Rollup of coarser resolutions from finer resolutions
+    public static final String ROLLUP_ENABLED = "metrics.rollup.enabled";
+    public static final String ROLLUP_DELAY_SECONDS = "metrics.rollup.delay.seconds";
+    public static final String ROLLUP_INTERVAL_SECONDS = "metrics.rollup.interval.seconds";
+
+    // Cache of metrics query results of closed time buckets
+    public static final String QUERY_CACHE_SIZE = "metrics.query.cache.size";
+    public static final String QUERY_CACHE_CLOSED_DELAY_SECONDS = "metrics.query.cache.closed.delay.seconds";
+    public static final String QUERY_CACHE_EXPIRE_SECONDS = "metrics.query.cache.expire.seconds";
+
     public static final String TOPIC_PREFIX = "metrics.topic.prefix";
     // legacy name, we no longer use Kafka for metrics, we use TMS
     public static final String KAFKA_META_TABLE = "metrics.kafka.meta.table";
@@ -901,12 +918,14 @@ public final class Constants {
     public static final String PIPELINE_CONFIG_DIR = "log.process.pipeline.config.dir";
     public static final String PIPELINE_LIBRARY_DIR = "log.process.pipeline.lib.dir";
     public static final String PIPELINE_AUTO_BUFFER_RATIO = "log.process.pipeline.auto.buffer.ratio";
+    public static final String PIPELINE_WORKERS = "log.process.pipeline.workers";
 
     // The following properties can be defined in cdap-site and overridden in individual pipeline config xml
     public static final String PIPELINE_BUFFER_SIZE = "log.process.pipeline.buffer.size";
     public static final String PIPELINE_EVENT_DELAY_MS = "log.process.pipeline.event.delay.ms";
     public static final String PIPELINE_KAFKA_FETCH_SIZE = "log.process.pipeline.kafka.fetch.size";
     public static final String PIPELINE_CHECKPOINT_INTERVAL_MS = "log.process.pipeline.checkpoint.interval.ms";
+    public static final String PIPELINE_SPILL_SIZE = "log.process.pipeline.spill.size";
     public static final String PIPELINE_LOGGER_CACHE_SIZE = "log.process.pipeline.logger.cache.size";
     public static final String PIPELINE_LOGGER_CACHE_EXPIRATION_MS = "log.process.pipeline.logger.cache.expiration.ms";
 
@@ -966,6 +985,8 @@ public final class Constants {
     public static final String TOKEN_DIGEST_KEY_EXPIRATION = "security.token.digest.key.expiration.ms";
     /** Parent znode used for secret key distribution in ZooKeeper. */
     public static final String DIST_KEY_PARENT_ZNODE = "security.token.distributed.parent.znode";
+    /** Maximum number of validated access tokens to cache. */
+    public static final String TOKEN_VALIDATION_CACHE_SIZE = "security.token.validation.cache.size";
     /**
      * Comma separated URL's that clients should use to communicate with the Authentication Server.
      * Each URL should follow the format protocol://host:port. Leave empty to use the default URL generated by
@@ -1366,6 +1387,8 @@ public final class Constants {
     public static final String LOCAL_DATA_CLEANUP_FREQUENCY = "messaging.local.data.cleanup.frequency.secs";
 
     public static final String CACHE_SIZE_MB = "messaging.cache.size.mb";
+    public static final String CACHE_TYPE = "messaging.cache.type";
+    public static final String CACHE_SEGMENT_ENTRIES = "messaging.cache.segment.entries";
 
     public static final String HBASE_MAX_SCAN_THREADS = "messaging.hbase.max.scan.threads";
     public static final String HBASE_SCAN_CACHE_ROWS = "messaging.hbase.scan.cache.rows";
@@ -1378,6 +1401,7 @@ public final class Constants {
     public static final String TABLE_CACHE_EXPIRATION_SECONDS = "messaging.table.expiration.seconds";
     public static final String TABLE_HBASE_SPLIT_POLICY = "messaging.table.hbase.split.policy";
     public static final String TOPIC_DEFAULT_TTL_SECONDS = "messaging.topic.default.ttl.seconds";
+    public static final String TOPIC_DEFAULT_COMPRESSION = "messaging.topic.default.compression";
     public static final String COPROCESSOR_METADATA_CACHE_UPDATE_FREQUENCY_SECONDS =
       "messaging.coprocessor.metadata.cache.update.frequency.seconds";
 
@@ -1385,6 +1409,19 @@ public final class Constants {
     public static final String HTTP_SERVER_EXECUTOR_THREADS = "messaging.http.server.executor.threads";
     public static final String HTTP_SERVER_MAX_REQUEST_SIZE_MB = "messaging.http.server.max.request.size.mb";
     public static final String HTTP_SERVER_CONSUME_CHUNK_SIZE = "messaging.http.server.consume.chunk.size";
+    public static final String HTTP_SERVER_CONSUME_MAX_RESPONSE_BYTES =
+      "messaging.http.server.consume.max.response.bytes";
+    public static final String HTTP_SERVER_POLL_MAX_WAIT_MILLIS = "messaging.http.server.poll.max.wait.ms";
+    public static final String HTTP_SERVER_POLL_MAX_WAITING = "messaging.http.server.poll.max.waiting";
+
+    public static final String MULTI_FETCH_MAX_THREADS = "messaging.multi.fetch.max.threads";
+
+    public static final String WRITER_QUEUE_SIZE = "messaging.writer.queue.size";
+    public static final String WRITER_BATCH_SIZE = "messaging.writer.batch.size";
+    public static final String WRITER_LINGER_MILLIS = "messaging.writer.linger.ms";
+    public static final String WRITER_QUEUE_FULL_TIMEOUT_MILLIS = "messaging.writer.queue.full.timeout.ms";
+
+    public static final String SUBSCRIBER_LONG_POLL_TIMEOUT_MILLIS = "messaging.subscriber.long.poll.timeout.ms";
 
     // Distributed mode related configurations
     public static final String HA_FENCING_DELAY_SECONDS = "messaging.ha.fencing.delay.seconds";
@@ -16,6 +16,7 @@
 package co.cask.cdap.common.io;
 
 import co.cask.cdap.common.lang.FunctionWithException;
+import co.cask.cdap.common.utils.OSDetector;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
@@ -27,7 +28,9 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileContext;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
 import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.twill.filesystem.FileContextLocationFactory;
@@ -112,6 +115,28 @@ public final class Locations {
     };
   }
 
+  /**
+   * Creates a new {@link InputSupplier} that can provides {@link SeekableInputStream} of the given path. If the
+   * path is in the local file system, the {@link SeekableInputStream} reads by memory mapping the file.
+   *
+   * @param fs The {@link org.apache.hadoop.fs.FileSystem} for the given path.
+   * @param path The path to create {@link co.cask.cdap.common.io.SeekableInputStream} when requested.
+   * @return A {@link InputSupplier}.
+   * @see MappedFileSeekableInputStream
+   */
+  public static InputSupplier<? extends SeekableInputStream> newMappedInputSupplier(FileSystem fs, Path path) {
+    if (OSDetector.isWindows()) {
+      return newInputSupplier(fs, path);
+    }
+    if (fs instanceof LocalFileSystem) {
+      return newMappedFileInputSupplier(((LocalFileSystem) fs).pathToFile(path));
+    }
+    if (fs instanceof RawLocalFileSystem) {
+      return newMappedFileInputSupplier(((RawLocalFileSystem) fs).pathToFile(path));
+    }
+    return newInputSupplier(fs, path);
+  }
+
   /**
    * Creates a new {@link InputSupplier} that can provides {@link SeekableInputStream} from the given location.
    *
@@ -168,6 +193,31 @@ public final class Locations {
     };
   }
 
+  /**
+   * Creates a new {@link InputSupplier} that can provides {@link SeekableInputStream} from the given location. If the
+   * location is a local file, the {@link SeekableInputStream} reads by memory mapping the file.
+   *
+   * @param location Location for the input stream.
+   * @return A {@link InputSupplier}.
+   * @see MappedFileSeekableInputStream
+   */
+  public static InputSupplier<? extends SeekableInputStream> newMappedInputSupplier(Location location) {
+    // On Windows, a mapped file cannot be deleted until the mapping is garbage collected
+    if (OSDetector.isWindows() || !"file".equals(location.toURI().getScheme())) {
+      return newInputSupplier(location);
+    }
+    return newMappedFileInputSupplier(new File(location.toURI()));
+  }
+
+  private static InputSupplier<? extends SeekableInputStream> newMappedFileInputSupplier(final File file) {
+    return new InputSupplier<SeekableInputStream>() {
+      @Override
+      public SeekableInputStream getInput() throws IOException {
+        return new MappedFileSeekableInputStream(new FileInputStream(file));
+      }
+    };
+  }
+
   /**
    * Do some processing on the locations contained in the {@code startLocation}, using the {@code processor}. If this
    * location is a directory, all the locations contained in it will also be processed. If the {@code recursive} tag
@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.annotation.Nullable;
+
+/**
+ * Implements {@link SeekableInputStream} by memory mapping a local file.
+ *
+ * The file is mapped in windows of at most 2GB, starting from the current read position. If a read goes beyond
+ * the current window, a new window is mapped, which also picks up data appended to the file after the last mapping.
+ * When less than {@link #MIN_MAP_SIZE} bytes are left in the file, the rest of the file is read into a heap buffer
+ * instead, so that a reader following a growing file doesn't map a tiny window for every append.
+ * Besides the {@link InputStream} read methods, the {@link #readBuffer(int)} method allows reading data as a
+ * {@link ByteBuffer} backed by the mapped memory without copying.
+ */
+public final class MappedFileSeekableInputStream extends SeekableInputStream {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MappedFileSeekableInputStream.class);
+
+  private static final long MAX_MAP_SIZE = Integer.MAX_VALUE;
+  private static final int MIN_MAP_SIZE = 1 << 20;
+  private static final Unmapper UNMAPPER = createUnmapper();
+
+  private final FileChannel fileChannel;
+  private ByteBuffer buffer;
+  private long bufferStart;
+  // Whether the buffer is shared through readBuffer, in which case its mapping can't be released explicitly
+  private boolean bufferShared;
+  private long position;
+
+  MappedFileSeekableInputStream(FileInputStream in) {
+    super(in);
+    this.fileChannel = in.getChannel();
+  }
+
+  @Override
+  public void seek(long pos) throws IOException {
+    if (pos < 0) {
+      throw new IOException("Invalid seek position " + pos);
+    }
+    position = pos;
+  }
+
+  @Override
+  public long getPos() throws IOException {
+    return position;
+  }
+
+  @Override
+  public boolean seekToNewSource(long targetPos) throws IOException {
+    return false;
+  }
+
+  @Override
+  public long size() throws IOException {
+    return fileChannel.size();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureMapped(1)) {
+      return -1;
+    }
+    return buffer.get((int) (position++ - bufferStart)) & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureMapped(1)) {
+      return -1;
+    }
+    int bytes = (int) Math.min(len, bufferStart + buffer.limit() - position);
+    buffer.position((int) (position - bufferStart));
+    buffer.get(b, off, bytes);
+    position += bytes;
+    return bytes;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0L;
+    }
+    long skipped = Math.min(n, Math.max(0L, fileChannel.size() - position));
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, fileChannel.size() - position));
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {
+    // no-op
+  }
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("Mark is not supported");
+  }
+
+  /**
+   * Reads the given number of bytes as a read-only {@link ByteBuffer} backed by the mapped file, or by a heap copy
+   * for data close to the end of the file. The content of the buffer stays valid after this stream is closed.
+   *
+   * @param size number of bytes to read
+   * @return a {@link ByteBuffer} with position {@code 0} and limit {@code size}
+   * @throws EOFException if there are less than {@code size} bytes available in the file
+   */
+  public ByteBuffer readBuffer(int size) throws IOException {
+    if (!ensureMapped(size)) {
+      throw new EOFException("Expected to read " + size + " bytes at position " + position
+                               + ", but file size is " + fileChannel.size());
+    }
+    buffer.position((int) (position - bufferStart));
+    ByteBuffer slice = buffer.slice();
+    slice.limit(size);
+    position += size;
+    bufferShared = true;
+    return slice;
+  }
+
+  @Override
+  public void close() throws IOException {
+    releaseBuffer();
+    super.close();
+  }
+
+  /**
+   * Makes sure the given number of bytes starting from the current position are in the buffer.
+   *
+   * @return {@code false} if the file doesn't have enough bytes
+   */
+  private boolean ensureMapped(int size) throws IOException {
+    if (buffer != null && position >= bufferStart && position + size <= bufferStart + buffer.limit()) {
+      return true;
+    }
+    long fileSize = fileChannel.size();
+    if (position + size > fileSize) {
+      return false;
+    }
+    releaseBuffer();
+
+    long remaining = fileSize - position;
+    if (remaining >= MIN_MAP_SIZE) {
+      buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(remaining, MAX_MAP_SIZE));
+    } else {
+      // The file can still grow while reading, hence only read up to the size seen above
+      ByteBuffer heapBuffer = ByteBuffer.allocate((int) remaining);
+      while (heapBuffer.hasRemaining()) {
+        if (fileChannel.read(heapBuffer, position + heapBuffer.position()) < 0) {
+          throw new EOFException("Expected to read " + remaining + " bytes at position " + position
+                                   + ", but only " + heapBuffer.position() + " bytes were read");
+        }
+      }
+      heapBuffer.flip();
+      buffer = heapBuffer.asReadOnlyBuffer();
+    }
+    bufferStart = position;
+    bufferShared = false;
+    return true;
+  }
+
+  /**
+   * Releases the current buffer. If the buffer is a mapped window that was never shared through
+   * {@link #readBuffer(int)}, the mapping is released immediately instead of waiting for garbage collection.
+   */
+  private void releaseBuffer() {
+    if (buffer instanceof MappedByteBuffer && !bufferShared && UNMAPPER != null) {
+      try {
+        UNMAPPER.unmap(buffer);
+      } catch (Exception e) {
+        // The mapping will be released when the buffer is garbage collected
+        LOG.trace("Failed to unmap buffer", e);
+      }
+    }
+    buffer = null;
+  }
+
+  /**
+   * Creates an {@link Unmapper} that invokes the cleaner of a mapped buffer, or returns {@code null} if the
+   * runtime doesn't provide access to it.
+   */
+  @Nullable
+  private static Unmapper createUnmapper() {
+    try {
+      // Java 9 and later
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      final Object unsafe = theUnsafe.get(null);
+      return new Unmapper() {
+        @Override
+        public void unmap(ByteBuffer buffer) throws Exception {
+          invokeCleaner.invoke(unsafe, buffer);
+        }
+      };
+    } catch (Exception e) {
+      // Fallback to the Java 8 cleaner
+    }
+
+    try {
+      final Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      final Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return new Unmapper() {
+        @Override
+        public void unmap(ByteBuffer buffer) throws Exception {
+          Object cleaner = cleanerMethod.invoke(buffer);
+          if (cleaner != null) {
+            cleanMethod.invoke(cleaner);
+          }
+        }
+      };
+    } catch (Exception e) {
+      LOG.debug("Explicit unmapping of memory mapped files is not supported", e);
+      return null;
+    }
+  }
+
+  /**
+   * Releases the memory mapping of a mapped buffer.
+   */
+  private interface Unmapper {
+    void unmap(ByteBuffer buffer) throws Exception;
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.io;
+
+import com.google.common.io.InputSupplier;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Unit test for {@link MappedFileSeekableInputStream}.
+ */
+public class MappedFileSeekableInputStreamTest extends SeekableInputStreamTestBase {
+
+  private static LocationFactory locationFactory;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    locationFactory = new LocalLocationFactory(TMP_FOLDER.newFolder());
+  }
+
+  @Override
+  protected LocationFactory getLocationFactory() {
+    return locationFactory;
+  }
+
+  @Override
+  protected InputSupplier<? extends SeekableInputStream> getInputSupplier(Location location) {
+    return Locations.newMappedInputSupplier(location);
+  }
+
+  @Test
+  public void testReadBuffer() throws IOException {
+    Location location = getLocationFactory().create("testReadBuffer");
+
+    byte[] bytes = new byte[1024];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i & 0xff);
+    }
+
+    OutputStream output = Locations.newOutputSupplier(location).getOutput();
+    output.write(bytes);
+    sync(output);
+
+    try (SeekableInputStream input = getInputSupplier(location).getInput()) {
+      Assert.assertTrue(input instanceof MappedFileSeekableInputStream);
+      MappedFileSeekableInputStream mappedInput = (MappedFileSeekableInputStream) input;
+
+      mappedInput.seek(100);
+      ByteBuffer buffer = mappedInput.readBuffer(200);
+      Assert.assertEquals(300L, mappedInput.getPos());
+      Assert.assertEquals(200, buffer.remaining());
+      for (int i = 0; i < 200; i++) {
+        Assert.assertEquals((byte) (100 + i), buffer.get());
+      }
+
+      // Reading beyond the end of file should fail without moving the position
+      try {
+        mappedInput.readBuffer(1000);
+        Assert.fail("Expected EOFException");
+      } catch (EOFException e) {
+        // expected
+      }
+      Assert.assertEquals(300L, mappedInput.getPos());
+
+      // Data appended to the file after the mapping should be readable by the same stream
+      output.write(bytes);
+      sync(output);
+      buffer = mappedInput.readBuffer(1000);
+      Assert.assertEquals(1300L, mappedInput.getPos());
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals((byte) (300 + i), buffer.get());
+      }
+
+      mappedInput.seek(2047);
+      Assert.assertEquals(255, mappedInput.read());
+      Assert.assertEquals(-1, mappedInput.read());
+    } finally {
+      output.close();
+    }
+  }
+
+  @Test
+  public void testGrowingFile() throws IOException {
+    Location location = getLocationFactory().create("testGrowingFile");
+
+    // Large enough to be read from a mapped window, followed by a tail read from a heap copy
+    byte[] bytes = new byte[3 * 1024 * 1024];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i & 0xff);
+    }
+
+    OutputStream output = Locations.newOutputSupplier(location).getOutput();
+    try {
+      output.write(bytes);
+      sync(output);
+
+      ByteBuffer mappedBuffer;
+      ByteBuffer tailBuffer;
+      try (SeekableInputStream input = getInputSupplier(location).getInput()) {
+        MappedFileSeekableInputStream mappedInput = (MappedFileSeekableInputStream) input;
+        mappedBuffer = mappedInput.readBuffer(1024);
+
+        // Read up to close to the end of the file
+        byte[] buf = new byte[8192];
+        long pos = mappedInput.getPos();
+        while (pos < bytes.length - 100) {
+          int len = mappedInput.read(buf, 0, (int) Math.min(buf.length, bytes.length - 100 - pos));
+          Assert.assertTrue(len > 0);
+          for (int i = 0; i < len; i++) {
+            Assert.assertEquals((byte) ((pos + i) & 0xff), buf[i]);
+          }
+          pos += len;
+        }
+
+        // Keep appending small chunks and read them, which should see all the appended data.
+        // Each byte in the file is the lowest byte of its position.
+        long fileSize = bytes.length;
+        for (int i = 0; i < 10; i++) {
+          output.write(bytes, (int) (fileSize & 0xff), 100);
+          sync(output);
+          fileSize += 100;
+          for (int j = 0; j < 100; j++) {
+            Assert.assertEquals((pos + j) & 0xff, mappedInput.read());
+          }
+          pos += 100;
+        }
+        tailBuffer = mappedInput.readBuffer(100);
+        Assert.assertEquals(fileSize, mappedInput.getPos());
+        Assert.assertEquals(-1, mappedInput.read());
+      }
+
+      // Buffers returned by readBuffer stay valid after the stream is closed
+      for (int i = 0; i < 1024; i++) {
+        Assert.assertEquals((byte) i, mappedBuffer.get());
+      }
+      for (int i = 0; i < 100; i++) {
+        Assert.assertEquals((byte) ((pos + i) & 0xff), tailBuffer.get());
+      }
+    } finally {
+      output.close();
+    }
+  }
+}
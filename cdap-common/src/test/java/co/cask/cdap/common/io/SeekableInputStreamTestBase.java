@@ -39,6 +39,13 @@ public abstract class SeekableInputStreamTestBase {
 
   protected abstract LocationFactory getLocationFactory();
 
+  /**
+   * Returns the {@link InputSupplier} for reading the given location.
+   */
+  protected InputSupplier<? extends SeekableInputStream> getInputSupplier(Location location) {
+    return Locations.newInputSupplier(location);
+  }
+
   @Test
   public void testClosedStream() throws IOException {
     Location location = getLocationFactory().create("testClosed");
@@ -54,7 +61,7 @@ public abstract class SeekableInputStreamTestBase {
     output.close();
 
     // Create a SeekableInputStream for the location
-    InputSupplier<? extends SeekableInputStream> inputSupplier = Locations.newInputSupplier(location);
+    InputSupplier<? extends SeekableInputStream> inputSupplier = getInputSupplier(location);
     SeekableInputStream input = inputSupplier.getInput();
 
     // The stream size should be 1024
@@ -85,7 +92,7 @@ public abstract class SeekableInputStreamTestBase {
     sync(output);
 
     // Create a SeekableInputStream for the location
-    InputSupplier<? extends SeekableInputStream> inputSupplier = Locations.newInputSupplier(location);
+    InputSupplier<? extends SeekableInputStream> inputSupplier = getInputSupplier(location);
     SeekableInputStream input = inputSupplier.getInput();
 
     // The stream size should be 1024
@@ -122,7 +129,7 @@ public abstract class SeekableInputStreamTestBase {
     input.close();
   }
 
-  private void sync(OutputStream output) throws IOException {
+  protected void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
     } else {
@@ -994,6 +994,70 @@ public abstract class StreamDataFileTestBase {
     reader.close();
   }
 
+  @Test
+  public void testCompressedFile() throws IOException, InterruptedException {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+    Location rawEventFile = dir.getTempFile(".dat");
+    Location rawIndexFile = dir.getTempFile(".idx");
+
+    StreamDataFileWriter writer = new StreamDataFileWriter(
+      Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 10L,
+      ImmutableMap.of(StreamDataFileConstants.Property.Key.CODEC,
+                      StreamDataFileConstants.Property.Value.CODEC_DEFLATE));
+    StreamDataFileWriter rawWriter = new StreamDataFileWriter(Locations.newOutputSupplier(rawEventFile),
+                                                              Locations.newOutputSupplier(rawIndexFile), 10L);
+
+    // Write 1000 events, with 20 events per timestamp
+    for (int i = 0; i < 1000; i++) {
+      StreamEvent event = StreamFileTestUtils.createEvent(i / 20, "Compressed message " + i);
+      writer.append(event);
+      rawWriter.append(event);
+    }
+    writer.close();
+    rawWriter.close();
+
+    Assert.assertTrue(eventFile.length() < rawEventFile.length());
+
+    // Read all events. Positions of events should be strictly increasing.
+    StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile));
+    List<PositionStreamEvent> events = Lists.newArrayList();
+    Assert.assertEquals(1000, reader.read(events, 1000, 0, TimeUnit.SECONDS));
+    Assert.assertEquals(-1, reader.read(events, 1, 0, TimeUnit.SECONDS));
+    reader.close();
+
+    long lastPosition = -1L;
+    for (int i = 0; i < events.size(); i++) {
+      PositionStreamEvent event = events.get(i);
+      Assert.assertEquals(i / 20, event.getTimestamp());
+      Assert.assertEquals("Compressed message " + i, Charsets.UTF_8.decode(event.getBody()).toString());
+      Assert.assertTrue(event.getStart() > lastPosition);
+      lastPosition = event.getStart();
+    }
+
+    // Reading with the offset of an event, including events in the middle of a data block, starts from that event
+    for (int i = 0; i < events.size(); i += 7) {
+      reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                     Locations.newInputSupplier(indexFile), events.get(i).getStart());
+      List<PositionStreamEvent> readEvents = Lists.newArrayList();
+      Assert.assertEquals(1, reader.read(readEvents, 1, 0, TimeUnit.SECONDS));
+      Assert.assertEquals(events.get(i).getStart(), readEvents.get(0).getStart());
+
+      // Reading from the reader position continues with the next event
+      long position = reader.getPosition();
+      reader.close();
+      if (i + 1 < events.size()) {
+        reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                       Locations.newInputSupplier(indexFile), position);
+        readEvents.clear();
+        Assert.assertEquals(1, reader.read(readEvents, 1, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(events.get(i + 1).getStart(), readEvents.get(0).getStart());
+        reader.close();
+      }
+    }
+  }
+
   private FileWriter<StreamEvent> createWriter(StreamConfig config, String prefix) {
     return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
                                                prefix, config.getIndexInterval(), config.getStreamId(),
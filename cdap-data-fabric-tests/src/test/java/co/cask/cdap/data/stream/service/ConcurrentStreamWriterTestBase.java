@@ -137,6 +137,48 @@ public abstract class ConcurrentStreamWriterTestBase {
     streamWriter.close();
   }
 
+  @Test
+  public void testPartitionedWrite() throws Exception {
+    final String streamName = "testPartitionedWrite";
+    NamespaceId namespace = new NamespaceId("namespace");
+    StreamId streamId = namespace.stream(streamName);
+    StreamAdmin streamAdmin = new TestStreamAdmin(getNamespacedLocationFactory(), Long.MAX_VALUE, 1000);
+    int threads = Runtime.getRuntime().availableProcessors() * 4;
+
+    StreamFileWriterFactory fileWriterFactory = createStreamFileWriterFactory();
+    ConcurrentStreamWriter streamWriter = createStreamWriter(streamId, streamAdmin, threads, 4, fileWriterFactory);
+
+    int msgPerThread = 1000;
+    CountDownLatch startLatch = new CountDownLatch(1);
+    CountDownLatch completion = new CountDownLatch(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < threads; i++) {
+      executor.execute(createWriterTask(streamId, streamWriter, i, msgPerThread, i % 2 == 0 ? 1 : 10,
+                                        startLatch, completion));
+    }
+    startLatch.countDown();
+    Assert.assertTrue(completion.await(120, TimeUnit.SECONDS));
+    streamWriter.close();
+
+    // Verify all events are written, with events written to multiple partition files
+    Location partitionLocation = streamAdmin.getConfig(streamId).getLocation().list().get(0);
+    Set<String> filePrefixes = Sets.newHashSet();
+    List<StreamEvent> events = Lists.newArrayListWithCapacity(threads * msgPerThread);
+    for (Location location : partitionLocation.list()) {
+      if (StreamFileType.getType(location.getName()) != StreamFileType.EVENT) {
+        continue;
+      }
+      filePrefixes.add(StreamUtils.getNamePrefix(location.getName()));
+      StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(location));
+      reader.read(events, Integer.MAX_VALUE, 0, TimeUnit.SECONDS);
+      reader.close();
+    }
+
+    Assert.assertTrue(filePrefixes.size() > 1);
+    Assert.assertEquals(threads * msgPerThread, events.size());
+    Assert.assertTrue(verifyEvents(threads, msgPerThread, events));
+  }
+
   @Test
   public void testConcurrentAppendFile() throws Exception {
     final String streamName = "testConcurrentFile";
@@ -209,11 +251,17 @@ public abstract class ConcurrentStreamWriterTestBase {
   private ConcurrentStreamWriter createStreamWriter(StreamId streamId, StreamAdmin streamAdmin,
                                                     int threads, StreamFileWriterFactory writerFactory)
     throws Exception {
+    return createStreamWriter(streamId, streamAdmin, threads, 1, writerFactory);
+  }
+
+  private ConcurrentStreamWriter createStreamWriter(StreamId streamId, StreamAdmin streamAdmin,
+                                                    int threads, int partitions, StreamFileWriterFactory writerFactory)
+    throws Exception {
     StreamConfig streamConfig = streamAdmin.getConfig(streamId);
     streamConfig.getLocation().mkdirs();
 
-    return new ConcurrentStreamWriter(COORDINATOR_CLIENT, streamAdmin,
-                                      writerFactory, threads, new TestMetricsCollectorFactory(), impersonator);
+    return new ConcurrentStreamWriter(COORDINATOR_CLIENT, streamAdmin, writerFactory, threads, partitions,
+                                      new TestMetricsCollectorFactory(), impersonator);
   }
 
   private Runnable createWriterTask(final StreamId streamId,
@@ -60,6 +60,12 @@ public final class InMemoryStreamFileWriterFactory implements StreamFileWriterFa
     return "";
   }
 
+  @Override
+  public FileWriter<StreamEvent> create(StreamConfig config, int generation, int partition) throws IOException {
+    // All partitions write to the same queue
+    return create(config, generation);
+  }
+
   @Override
   public FileWriter<StreamEvent> create(StreamConfig config, int generation) throws IOException {
     final QueueProducer producer = queueClientFactory.createProducer(QueueName.fromStream(config.getStreamId()));
@@ -20,6 +20,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.StreamDataFileConstants;
 import co.cask.cdap.data.stream.StreamFileWriterFactory;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.TimePartitionedStreamFileWriter;
@@ -27,6 +28,7 @@ import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.security.impersonation.Impersonator;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import org.apache.twill.filesystem.Location;
 
@@ -54,7 +56,13 @@ public final class LocationStreamFileWriterFactory implements StreamFileWriterFa
   }
 
   @Override
-  public FileWriter<StreamEvent> create(final StreamConfig config, final int generation) throws IOException {
+  public FileWriter<StreamEvent> create(StreamConfig config, int generation) throws IOException {
+    return create(config, generation, 0);
+  }
+
+  @Override
+  public FileWriter<StreamEvent> create(final StreamConfig config, final int generation,
+                                        int partition) throws IOException {
     try {
       Preconditions.checkNotNull(config.getLocation(), "Location for stream %s is unknown.", config.getStreamId());
 
@@ -69,8 +77,11 @@ public final class LocationStreamFileWriterFactory implements StreamFileWriterFa
       });
 
       return new TimePartitionedStreamFileWriter(baseLocation, config.getPartitionDuration(),
-                                                 filePrefix, config.getIndexInterval(),
-                                                 config.getStreamId(), impersonator);
+                                                 StreamUtils.getPartitionFilePrefix(filePrefix, partition),
+                                                 config.getIndexInterval(),
+                                                 config.getStreamId(), impersonator,
+                                                 ImmutableMap.of(StreamDataFileConstants.Property.Key.CODEC,
+                                                                 StreamUtils.getFileCodec(config)));
     } catch (Exception e) {
       Throwables.propagateIfPossible(e, IOException.class);
       throw new IOException(e);
@@ -200,7 +200,8 @@ public abstract class AbstractStreamCoordinatorClient extends AbstractIdleServic
           firstNotNull(properties.getNotificationThresholdMB(), oldProperties.getNotificationThresholdMB()),
           firstNotNull(properties.getGeneration(), oldProperties.getGeneration()),
           firstNotNull(properties.getDescription(), oldProperties.getDescription()),
-          firstNotNull(properties.getOwnerPrincipal(), oldProperties.getOwnerPrincipal()));
+          firstNotNull(properties.getOwnerPrincipal(), oldProperties.getOwnerPrincipal()),
+          firstNotNull(properties.getCodec(), oldProperties.getCodec()));
       }
     });
   }
@@ -245,6 +246,12 @@ public abstract class AbstractStreamCoordinatorClient extends AbstractIdleServic
       if (threshold != null && !threshold.equals(oldThreshold)) {
         thresholdChanged(streamId, threshold);
       }
+
+      String codec = properties.getCodec();
+      String oldCodec = (oldProperties == null) ? null : oldProperties.getCodec();
+      if (codec != null && !codec.equals(oldCodec)) {
+        codecChanged(streamId, codec);
+      }
       oldProperties = properties;
     }
 
@@ -280,6 +287,15 @@ public abstract class AbstractStreamCoordinatorClient extends AbstractIdleServic
       }
     }
 
+    @Override
+    public void codecChanged(StreamId streamId, String codec) {
+      try {
+        listener.codecChanged(streamId, codec);
+      } catch (Throwable t) {
+        LOG.error("Exception while calling StreamPropertyListener.codecChanged", t);
+      }
+    }
+
     @Override
     public void deleted(StreamId streamId) {
       try {
@@ -31,7 +31,13 @@ public class CoordinatorStreamProperties extends StreamProperties {
 
   public CoordinatorStreamProperties(Long ttl, FormatSpecification format, Integer threshold, Integer generation,
                                      @Nullable String description, @Nullable String kerberosPrincipalId) {
-    super(ttl, format, threshold, description, kerberosPrincipalId);
+    this(ttl, format, threshold, generation, description, kerberosPrincipalId, null);
+  }
+
+  public CoordinatorStreamProperties(Long ttl, FormatSpecification format, Integer threshold, Integer generation,
+                                     @Nullable String description, @Nullable String kerberosPrincipalId,
+                                     @Nullable String codec) {
+    super(ttl, format, threshold, description, kerberosPrincipalId, codec);
     this.generation = generation;
   }
 
@@ -48,6 +54,7 @@ public class CoordinatorStreamProperties extends StreamProperties {
       .add("generation", getGeneration())
       .add("description", getDescription())
       .add("ownerPrincipal", getOwnerPrincipal())
+      .add("codec", getCodec())
       .toString();
   }
 }
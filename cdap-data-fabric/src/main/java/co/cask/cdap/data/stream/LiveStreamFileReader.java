@@ -155,8 +155,8 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
     private StreamFileOffset offset;
 
     private StreamPositionTransformFileReader(StreamFileOffset offset) throws IOException {
-      this.reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(offset.getEventLocation()),
-                                                          Locations.newInputSupplier(offset.getIndexLocation()),
+      this.reader = StreamDataFileReader.createWithOffset(Locations.newMappedInputSupplier(offset.getEventLocation()),
+                                                          Locations.newMappedInputSupplier(offset.getIndexLocation()),
                                                           offset.getOffset());
       this.offset = new StreamFileOffset(offset);
       this.partitionLocation = Locations.getParent(offset.getEventLocation());
@@ -25,6 +25,7 @@ public final class StreamDataFileConstants {
   static final int MAGIC_HEADER_SIZE = 2;
   static final byte[] MAGIC_HEADER_V1 = {'E', '1'};
   static final byte[] MAGIC_HEADER_V2 = {'E', '2'};
+  static final byte[] MAGIC_HEADER_V3 = {'E', '3'};
 
   static final byte[] INDEX_MAGIC_HEADER_V1 = {'I', '1'};
 
@@ -45,6 +46,9 @@ public final class StreamDataFileConstants {
 
       // Key prefix for properties that will be defaulted to all events' header
       public static final String EVENT_HEADER_PREFIX = "event.";
+
+      // Key for the codec used to compress data blocks
+      public static final String CODEC = "stream.codec";
     }
 
     /**
@@ -53,6 +57,10 @@ public final class StreamDataFileConstants {
     public static final class Value {
       // Special value for Key.UNI_TIMESTAMP to indicate using the file close time timestamp for all events
       public static final String CLOSE_TIMESTAMP = "close.timestamp";
+
+      // Values for Key.CODEC
+      public static final String CODEC_NONE = "none";
+      public static final String CODEC_DEFLATE = "deflate";
     }
   }
 
@@ -17,6 +17,7 @@ package co.cask.cdap.data.stream;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.MappedFileSeekableInputStream;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.InputSupplier;
@@ -30,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.LongBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
@@ -186,6 +188,20 @@ final class StreamDataFileIndex {
     // Decode the properties map. In current version, it is not used.
     StreamUtils.decodeMap(new BinaryDecoder(input));
 
+    // If the index file is memory mapped, read the (timestamp, position) pairs directly from the mapped memory.
+    if (input instanceof MappedFileSeekableInputStream) {
+      MappedFileSeekableInputStream mappedInput = (MappedFileSeekableInputStream) input;
+      int entries = (int) ((mappedInput.size() - mappedInput.getPos()) / (Longs.BYTES * 2));
+      LongBuffer entryBuffer = mappedInput.readBuffer(entries * Longs.BYTES * 2).asLongBuffer();
+      LongList timestamps = new LongArrayList(entries);
+      LongList positions = new LongArrayList(entries);
+      while (entryBuffer.hasRemaining()) {
+        timestamps.add(entryBuffer.get());
+        positions.add(entryBuffer.get());
+      }
+      return Maps.immutableEntry(timestamps, positions);
+    }
+
     // Read in all index (timestamp, position pairs).
     LongList timestamps = new LongArrayList(1000);
     LongList positions = new LongArrayList(1000);
@@ -42,6 +42,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -67,6 +68,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   private boolean eof;
   private Decoder decoder;
   private StreamEvent eventTemplate;
+  private Inflater inflater;
 
   /**
    * Opens a new {@link StreamDataFileReader} with the given inputs.
@@ -157,6 +159,9 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
       }
     } finally {
       closed = true;
+      if (inflater != null) {
+        inflater.end();
+      }
     }
   }
 
@@ -300,6 +305,11 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
 
     verifySchema(properties);
 
+    // Data blocks of version 3 files are compressed
+    if (fileVersion >= 3) {
+      inflater = createInflater(properties);
+    }
+
     // Create event template
     if (fileVersion >= 2) {
       eventTemplate = createEventTemplate(properties);
@@ -323,13 +333,28 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V2)) {
       return 2;
     }
+    if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V3)) {
+      return 3;
+    }
     throw new IOException(
-      String.format("Unsupported stream file format. First two bytes must be %s or %s",
+      String.format("Unsupported stream file format. First two bytes must be %s, %s or %s",
                     Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V1),
-                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2))
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2),
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V3))
     );
   }
 
+  /**
+   * Creates the {@link Inflater} for decompressing data blocks based on the codec in the file properties.
+   */
+  private Inflater createInflater(Map<String, String> properties) throws IOException {
+    String codec = properties.get(StreamDataFileConstants.Property.Key.CODEC);
+    if (!StreamDataFileConstants.Property.Value.CODEC_DEFLATE.equals(codec)) {
+      throw new IOException("Unsupported stream file codec " + codec);
+    }
+    return inflater == null ? new Inflater() : inflater;
+  }
+
   /**
    * Creates a {@link StreamEvent} that will be used as a template for all events consumable from this reader.
    */
@@ -485,7 +510,11 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     // Use the template timestamp if available
     timestamp = eventTemplate.getTimestamp() >= 0 ? eventTemplate.getTimestamp() : timestamp;
     if (acceptTimestamp(filter, timestamp)) {
-      streamEventBuffer.fillBuffer(eventInput, readLength());
+      if (inflater == null) {
+        streamEventBuffer.fillBuffer(eventInput, readLength());
+      } else {
+        streamEventBuffer.fillCompressedBuffer(eventInput, readLength(), inflater);
+      }
       this.timestamp = timestamp;
       return;
     }
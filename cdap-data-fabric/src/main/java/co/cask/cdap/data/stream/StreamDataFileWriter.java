@@ -32,11 +32,15 @@ import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.fs.Syncable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -48,7 +52,7 @@ import javax.annotation.concurrent.NotThreadSafe;
  * {@code
  *
  * event_file = <header> <data>* <end_marker>
- * header = "E" "1" <properties>
+ * header = "E" "2" <properties>
  * properties = Avro encoded with the properties schema
  * data = <timestamp> <length> <stream_event>+
  * timestamp = 8 bytes int64 for timestamp in milliseconds
@@ -59,6 +63,26 @@ import javax.annotation.concurrent.NotThreadSafe;
  * }
  * </pre>
  *
+ * Compressed stream event file, written when the "stream.codec" property is set to a codec other than "none":
+ *
+ * <pre>
+ * {@code
+ *
+ * event_file = <header> <data>* <end_marker>
+ * header = "E" "3" <properties>
+ * data = <timestamp> <length> <raw_length> <compressed_events> <padding>
+ * length = Avro encoded int32 for size in bytes of <raw_length>, <compressed_events> and <padding>
+ * raw_length = 4 bytes int32 for size in bytes for all <stream_event>s before compression
+ * compressed_events = all <stream_event>s of the data block compressed with the codec
+ * padding = zero bytes to make <length> no smaller than the number of <stream_event>s
+ *
+ * }
+ * </pre>
+ *
+ * Events in a compressed data block cannot be addressed by file offset. Instead, the i-th event of the block
+ * has position {@code (offset of <raw_length>) + i}, which the padding keeps inside the data block. Positions
+ * therefore stay unique and increasing, and are handled the same way as uncompressed event positions by readers.
+ *
  * Stream index file:
  *
  * <pre>
@@ -84,6 +108,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private final long indexInterval;
   private final BufferedEncoder encoder;
   private final BufferedEncoder lengthEncoder;
+  private final Deflater deflater;
+  private final ByteArrayOutputStream compressedOutput;
 
   // Timestamp for the current block
   private long currentTimestamp;
@@ -92,6 +118,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private boolean synced;
   private boolean closed;
   private long closeTimestamp;
+  // Number of events in the current block
+  private int blockEvents;
 
   /**
    * Constructs a new instance that writes to given outputs. Same as calling
@@ -131,11 +159,22 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     this.encoder = new BufferedEncoder(BUFFER_SIZE, encoderFactory);
     this.lengthEncoder = new BufferedEncoder(5, encoderFactory);
 
+    String codec = properties.get(StreamDataFileConstants.Property.Key.CODEC);
+    try {
+      this.deflater = createDeflater(codec);
+    } catch (IOException e) {
+      Closeables.closeQuietly(eventOutput);
+      Closeables.closeQuietly(indexOutput);
+      throw e;
+    }
+    this.compressedOutput = deflater == null ? null : new ByteArrayOutputStream(BUFFER_SIZE);
+
     try {
       init(properties);
     } catch (IOException e) {
       Closeables.closeQuietly(eventOutput);
       Closeables.closeQuietly(indexOutput);
+      endDeflater();
       throw e;
     }
   }
@@ -175,6 +214,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       eventOutput.write(Longs.toByteArray(-closeTimestamp));
     } finally {
       closed = true;
+      endDeflater();
       try {
         eventOutput.close();
       } finally {
@@ -222,6 +262,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
       // Encodes the event data into buffer.
       StreamEventDataCodec.encode(event, encoder);
+      blockEvents++;
 
       // Optionally flush if already filled up the buffer.
       if (encoder.size() >= flushLimit) {
@@ -234,10 +275,14 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   }
 
   private void init(Map<String, String> properties) throws IOException {
-    // Writes the header for event file
-    encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
+    // Writes the header for event file. Uncompressed files stay in version 2 so that older readers can read them.
+    encoder.writeRaw(deflater == null ? StreamDataFileConstants.MAGIC_HEADER_V2
+                                      : StreamDataFileConstants.MAGIC_HEADER_V3);
 
     Map<String, String> headers = Maps.newHashMap(properties);
+    if (deflater == null) {
+      headers.remove(StreamDataFileConstants.Property.Key.CODEC);
+    }
     headers.put(StreamDataFileConstants.Property.Key.SCHEMA, StreamEventDataCodec.STREAM_DATA_SCHEMA.toString());
     StreamUtils.encodeMap(headers, encoder);
 
@@ -278,16 +323,21 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       indexOffset = position - Bytes.SIZEOF_LONG;
     }
 
-    // Writes the size of the encoded event
-    lengthEncoder.writeInt(encoder.size());
-    int size = lengthEncoder.size();
-    lengthEncoder.writeTo(eventOutput);
-    position += size;
-
-    // Writes all encoded data from the buffer to the output.
-    size = encoder.size();
-    encoder.writeTo(eventOutput);
-    position += size;
+    if (deflater == null) {
+      // Writes the size of the encoded event
+      lengthEncoder.writeInt(encoder.size());
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      position += size;
+
+      // Writes all encoded data from the buffer to the output.
+      size = encoder.size();
+      encoder.writeTo(eventOutput);
+      position += size;
+    } else {
+      writeCompressedBlock();
+    }
+    blockEvents = 0;
     if (sync) {
       sync(eventOutput);
     }
@@ -310,6 +360,39 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     synced = sync;
   }
 
+  /**
+   * Compresses the buffered events and writes them as a compressed data block.
+   */
+  private void writeCompressedBlock() throws IOException {
+    compressedOutput.reset();
+    compressedOutput.write(Bytes.toBytes(encoder.size()));
+
+    deflater.reset();
+    DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(compressedOutput, deflater, 8192);
+    encoder.writeTo(deflaterOutput);
+    deflaterOutput.finish();
+
+    // Pads the block so that each event in it has a distinct position within the block
+    while (compressedOutput.size() < blockEvents) {
+      compressedOutput.write(0);
+    }
+
+    lengthEncoder.writeInt(compressedOutput.size());
+    int size = lengthEncoder.size();
+    lengthEncoder.writeTo(eventOutput);
+    position += size;
+
+    size = compressedOutput.size();
+    compressedOutput.writeTo(eventOutput);
+    position += size;
+  }
+
+  private void endDeflater() {
+    if (deflater != null) {
+      deflater.end();
+    }
+  }
+
   private void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
@@ -324,11 +407,29 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
    */
   private IOException closeWithException(IOException ex) throws IOException {
     closed = true;
+    endDeflater();
     Closeables.closeQuietly(eventOutput);
     Closeables.closeQuietly(indexOutput);
     throw ex;
   }
 
+  /**
+   * Creates the {@link Deflater} for compressing data blocks with the given codec.
+   *
+   * @return a {@link Deflater} or {@code null} if data blocks are not compressed
+   * @throws IOException if the codec is not supported
+   */
+  @Nullable
+  private static Deflater createDeflater(@Nullable String codec) throws IOException {
+    if (codec == null || StreamDataFileConstants.Property.Value.CODEC_NONE.equals(codec)) {
+      return null;
+    }
+    if (StreamDataFileConstants.Property.Value.CODEC_DEFLATE.equals(codec)) {
+      return new Deflater(Deflater.DEFAULT_COMPRESSION);
+    }
+    throw new IOException("Unsupported stream file codec " + codec);
+  }
+
   private static Function<OutputStream, Encoder> createEncoderFactory() {
     return new Function<OutputStream, Encoder>() {
       @Override
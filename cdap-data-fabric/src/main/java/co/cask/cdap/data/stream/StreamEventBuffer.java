@@ -16,23 +16,33 @@
 
 package co.cask.cdap.data.stream;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.io.MappedFileSeekableInputStream;
 import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.common.io.ByteBufferInputStream;
+import com.google.common.io.ByteStreams;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A buffer for holding encoded stream events. It is used by {@link StreamDataFileReader} for holding
- * encoded stream events in each data block.
+ * encoded stream events in each data block. If the data block is read from a {@link MappedFileSeekableInputStream},
+ * events are decoded directly from the mapped memory instead of being copied into the buffer first.
+ *
+ * Compressed data blocks are decompressed into the buffer. Since events in a compressed block cannot be addressed
+ * by file offset, the position of the i-th event in such block is the block position plus i, as described in
+ * {@link StreamDataFileWriter}.
  */
 @NotThreadSafe
 final class StreamEventBuffer {
@@ -41,13 +51,22 @@ final class StreamEventBuffer {
   private final Decoder decoder;
 
   private ByteBuffer buffer;
+  private ByteBuffer readBuffer;
+  private byte[] compressedBuffer;
   private long basePosition;
+  // Size of the compressed data block or -1 if the buffer holds an uncompressed data block
+  private int compressedSize;
+  // Index of the next event in the compressed data block
+  private int eventIndex;
 
   StreamEventBuffer() {
     this.buffer = ByteBuffers.EMPTY_BUFFER;
+    this.readBuffer = ByteBuffers.EMPTY_BUFFER;
+    this.compressedBuffer = new byte[0];
     this.bufferInput = new ByteBufferInputStream(buffer);
     this.decoder = new BinaryDecoder(bufferInput);
     this.basePosition = -1L;
+    this.compressedSize = -1;
   }
 
   /**
@@ -59,11 +78,18 @@ final class StreamEventBuffer {
    * @throws EOFException if failed to read the given number of bytes from the input
    */
   void fillBuffer(SeekableInputStream input, int size) throws IOException {
-    buffer.clear();
-    buffer = ensureCapacity(buffer, size);
-
     try {
       basePosition = input.getPos();
+      compressedSize = -1;
+      if (input instanceof MappedFileSeekableInputStream) {
+        buffer = ((MappedFileSeekableInputStream) input).readBuffer(size);
+        bufferInput.reset(buffer);
+        return;
+      }
+
+      readBuffer.clear();
+      readBuffer = ensureCapacity(readBuffer, size);
+      buffer = readBuffer;
       int bytesRead = 0;
       while (bytesRead != size) {
         int len = input.read(buffer.array(), bytesRead, size - bytesRead);
@@ -82,6 +108,55 @@ final class StreamEventBuffer {
     }
   }
 
+  /**
+   * Fills the internal buffer by reading a compressed data block from the given input stream and decompressing it.
+   *
+   * @param input input stream to read from
+   * @param size number of bytes to read
+   * @param inflater the {@link Inflater} for decompressing the data block
+   * @throws IOException if failed to read from the stream or to decompress the data block
+   * @throws EOFException if failed to read the given number of bytes from the input
+   */
+  void fillCompressedBuffer(SeekableInputStream input, int size, Inflater inflater) throws IOException {
+    try {
+      basePosition = input.getPos();
+      compressedSize = size;
+      eventIndex = 0;
+      if (compressedBuffer.length < size) {
+        compressedBuffer = new byte[size];
+      }
+      ByteStreams.readFully(input, compressedBuffer, 0, size);
+
+      // The block starts with the size of the uncompressed events
+      int rawSize = Bytes.toInt(compressedBuffer, 0);
+      readBuffer.clear();
+      readBuffer = ensureCapacity(readBuffer, rawSize);
+      buffer = readBuffer;
+
+      inflater.reset();
+      inflater.setInput(compressedBuffer, Bytes.SIZEOF_INT, size - Bytes.SIZEOF_INT);
+      int bytesInflated = 0;
+      while (bytesInflated != rawSize) {
+        int len = inflater.inflate(buffer.array(), bytesInflated, rawSize - bytesInflated);
+        if (len == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Expected to decompress " + rawSize + ", but only " + bytesInflated + " was read");
+        }
+        bytesInflated += len;
+      }
+      buffer.limit(rawSize);
+      bufferInput.reset(buffer);
+    } catch (DataFormatException e) {
+      buffer.position(buffer.limit());
+      basePosition = -1L;
+      throw new IOException("Corrupted compressed data block", e);
+    } catch (IOException e) {
+      // Make the buffer has nothing to read
+      buffer.position(buffer.limit());
+      basePosition = -1L;
+      throw e;
+    }
+  }
+
   /**
    * Returns {@code true} if there are events in the buffer, {@code false} otherwise.
    */
@@ -94,7 +169,14 @@ final class StreamEventBuffer {
    * read from the stream.
    */
   long getPosition() {
-    return basePosition >= 0 ? basePosition + buffer.position() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    if (compressedSize >= 0) {
+      // Once all events are consumed, the position is at the end of the data block
+      return hasEvent() ? basePosition + eventIndex : basePosition + compressedSize;
+    }
+    return basePosition + buffer.position();
   }
 
   /**
@@ -102,7 +184,10 @@ final class StreamEventBuffer {
    * been read from the stream.
    */
   long getEndPosition() {
-    return basePosition >= 0 ? basePosition + buffer.limit() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    return basePosition + (compressedSize >= 0 ? compressedSize : buffer.limit());
   }
 
   /**
@@ -120,7 +205,8 @@ final class StreamEventBuffer {
       throw new IOException("No more event in the buffer");
     }
 
-    long eventPos = basePosition + buffer.position();
+    long eventPos = getPosition();
+    eventIndex++;
     if (filter.acceptOffset(eventPos)) {
       return new PositionStreamEvent(StreamEventDataCodec.decode(decoder, defaultHeaders), timestamp, eventPos);
     }
@@ -32,4 +32,16 @@ public interface StreamFileWriterFactory {
   String getFileNamePrefix();
 
   FileWriter<StreamEvent> create(StreamConfig config, int generation) throws IOException;
+
+  /**
+   * Creates a {@link FileWriter} that writes to the given partition of the stream files created through this
+   * factory. Writers of different partitions write to different files, hence they can be used concurrently.
+   * Partition {@code 0} is the same as the one written by the writer returned by {@link #create(StreamConfig, int)}.
+   *
+   * @param config configuration of the stream
+   * @param generation generation of the stream
+   * @param partition the writer partition
+   * @see StreamUtils#getPartitionFilePrefix(String, int)
+   */
+  FileWriter<StreamEvent> create(StreamConfig config, int generation, int partition) throws IOException;
 }
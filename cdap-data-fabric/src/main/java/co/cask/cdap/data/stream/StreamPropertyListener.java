@@ -53,6 +53,16 @@ public abstract class StreamPropertyListener {
     // Default no-op
   }
 
+  /**
+   * Invoked when the stream codec property is changed.
+   *
+   * @param streamId Id of the stream
+   * @param codec Codec for compressing the data blocks of new stream files
+   */
+  public void codecChanged(StreamId streamId, String codec) {
+    // Default no-op
+  }
+
   /**
    * Invoked when the stream property is deleted.
    *
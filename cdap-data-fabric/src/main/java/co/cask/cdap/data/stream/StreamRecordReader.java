@@ -136,8 +136,8 @@ final class StreamRecordReader<K, V> extends RecordReader<K, V> {
    */
   private StreamDataFileReader createReader(FileSystem fs, StreamInputSplit inputSplit) {
     return StreamDataFileReader.createWithOffset(
-      Locations.newInputSupplier(fs, inputSplit.getPath()),
-      inputSplit.getIndexPath() == null ? null : Locations.newInputSupplier(fs, inputSplit.getIndexPath()),
+      Locations.newMappedInputSupplier(fs, inputSplit.getPath()),
+      inputSplit.getIndexPath() == null ? null : Locations.newMappedInputSupplier(fs, inputSplit.getIndexPath()),
       inputSplit.getStart());
   }
 }
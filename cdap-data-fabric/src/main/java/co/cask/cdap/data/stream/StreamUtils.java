@@ -15,6 +15,8 @@
  */
 package co.cask.cdap.data.stream;
 
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Decoder;
 import co.cask.cdap.common.io.Encoder;
 import co.cask.cdap.common.io.LocationStatus;
@@ -38,6 +40,7 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -253,6 +256,56 @@ public final class StreamUtils {
     return partitionLocation.append(String.format("%s.%06d.%s", prefix, seqId, type.getSuffix()));
   }
 
+  /**
+   * Returns the file prefix of stream files written to the given writer partition.
+   *
+   * @param filePrefix the file prefix of the stream writer instance
+   * @param partition the writer partition
+   * @return the file prefix, which is the same as the given prefix for partition {@code 0}
+   */
+  public static String getPartitionFilePrefix(String filePrefix, int partition) {
+    return partition == 0 ? filePrefix : filePrefix + '.' + partition;
+  }
+
+  /**
+   * Returns the file prefixes of stream files written by all stream writer instances and writer partitions.
+   *
+   * @param cConf the configuration for determining the stream writers
+   * @return a list of file prefixes
+   */
+  public static List<String> getFilePrefixes(CConfiguration cConf) {
+    // TODO: Support dynamic writer instances discovery
+    // Current assume it won't change and is based on cConf
+    int instances = cConf.getInt(Constants.Stream.CONTAINER_INSTANCES);
+    int partitions = Math.max(1, cConf.getInt(Constants.Stream.WRITER_PARTITIONS, 1));
+    String filePrefix = cConf.get(Constants.Stream.FILE_PREFIX);
+
+    List<String> prefixes = new ArrayList<>(instances * partitions);
+    for (int i = 0; i < instances; i++) {
+      for (int j = 0; j < partitions; j++) {
+        // The actual file prefix is formed by file prefix in cConf + writer instance id + writer partition
+        prefixes.add(getPartitionFilePrefix(filePrefix + '.' + i, j));
+      }
+    }
+    return prefixes;
+  }
+
+  /**
+   * Returns the codec to record in the properties of new stream files of the given stream.
+   */
+  public static String getFileCodec(StreamConfig config) {
+    String codec = config.getCodec();
+    return codec == null ? StreamDataFileConstants.Property.Value.CODEC_NONE : codec;
+  }
+
+  /**
+   * Returns {@code true} if the given codec is supported for compressing stream files.
+   */
+  public static boolean isSupportedCodec(String codec) {
+    return StreamDataFileConstants.Property.Value.CODEC_NONE.equals(codec) ||
+      StreamDataFileConstants.Property.Value.CODEC_DEFLATE.equals(codec);
+  }
+
   /**
    * Returns the aligned partition start time.
    *
@@ -374,22 +427,19 @@ public final class StreamUtils {
       if (!fileName.startsWith(filePrefix)) {
         continue;
       }
-      StreamUtils.getSequenceId(fileName);
-
-      int idx = fileName.lastIndexOf('.');
-      if (idx < filePrefix.length()) {
-        // Ignore file with invalid stream file name
-        continue;
-      }
 
       try {
         // File name format is [prefix].[sequenceId].[dat|idx]
+        // The prefix needs to match exactly, since the prefix of one writer partition is a prefix of another one
+        if (!filePrefix.equals(StreamUtils.getNamePrefix(fileName))) {
+          continue;
+        }
         int seq = StreamUtils.getSequenceId(fileName);
         if (seq > maxSequence) {
           maxSequence = seq;
         }
-      } catch (NumberFormatException e) {
-        // Ignore stream file with invalid sequence id
+      } catch (IllegalArgumentException e) {
+        // Ignore stream file with invalid name or sequence id
       }
     }
     return maxSequence + 1;
@@ -32,7 +32,9 @@ import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.proto.id.StreamId;
 import co.cask.cdap.security.impersonation.Impersonator;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
@@ -92,6 +94,10 @@ import javax.annotation.concurrent.ThreadSafe;
  * The spin lock between step 2 to step 8 is necessary as it guarantees events enqueued by all threads would eventually
  * get written and flushed.
  *
+ * Optionally, events of each stream can be written to multiple writer partitions, each has its own queue, writer
+ * flag and file writer. A thread enqueues to the partition selected by its thread id, so that concurrent threads
+ * writing to the same stream are spread across partitions and the partitions are written in parallel.
+ * Stream consumers read the files of all partitions as one stream ordered by event timestamp.
  */
 @ThreadSafe
 public final class ConcurrentStreamWriter implements Closeable {
@@ -101,8 +107,9 @@ public final class ConcurrentStreamWriter implements Closeable {
   private final StreamCoordinatorClient streamCoordinatorClient;
   private final StreamAdmin streamAdmin;
   private final int workerThreads;
+  private final int writerPartitions;
   private final StreamMetricsCollectorFactory metricsCollectorFactory;
-  private final ConcurrentMap<StreamId, EventQueue> eventQueues;
+  private final ConcurrentMap<StreamId, PartitionedEventQueue> eventQueues;
   private final StreamFileFactory streamFileFactory;
   private final Set<StreamId> generationWatched;
   private final List<Cancellable> cancellables;
@@ -112,9 +119,17 @@ public final class ConcurrentStreamWriter implements Closeable {
   ConcurrentStreamWriter(StreamCoordinatorClient streamCoordinatorClient, StreamAdmin streamAdmin,
                          StreamFileWriterFactory writerFactory, int workerThreads,
                          StreamMetricsCollectorFactory metricsCollectorFactory, Impersonator impersonator) {
+    this(streamCoordinatorClient, streamAdmin, writerFactory, workerThreads, 1, metricsCollectorFactory, impersonator);
+  }
+
+  ConcurrentStreamWriter(StreamCoordinatorClient streamCoordinatorClient, StreamAdmin streamAdmin,
+                         StreamFileWriterFactory writerFactory, int workerThreads, int writerPartitions,
+                         StreamMetricsCollectorFactory metricsCollectorFactory, Impersonator impersonator) {
+    Preconditions.checkArgument(writerPartitions > 0, "Number of writer partitions must be > 0");
     this.streamCoordinatorClient = streamCoordinatorClient;
     this.streamAdmin = streamAdmin;
     this.workerThreads = workerThreads;
+    this.writerPartitions = writerPartitions;
     this.metricsCollectorFactory = metricsCollectorFactory;
     this.eventQueues = new MapMaker().concurrencyLevel(workerThreads).makeMap();
     this.streamFileFactory = new StreamFileFactory(writerFactory, impersonator);
@@ -128,12 +143,8 @@ public final class ConcurrentStreamWriter implements Closeable {
     AbstractScheduledService scheduledService = new AbstractScheduledService() {
       @Override
       protected void runOneIteration() throws Exception {
-        for (EventQueue eventQueue : eventQueues.values()) {
-          try {
-            eventQueue.refresh();
-          } catch (Throwable t) {
-            LOG.error("Error while refreshing event queue.", t);
-          }
+        for (PartitionedEventQueue eventQueue : eventQueues.values()) {
+          eventQueue.refresh();
         }
       }
 
@@ -173,7 +184,7 @@ public final class ConcurrentStreamWriter implements Closeable {
    */
   public void enqueue(StreamId streamId,
                       Map<String, String> headers, ByteBuffer body) throws IOException, NotFoundException {
-    EventQueue eventQueue = getEventQueue(streamId);
+    EventQueue eventQueue = getEventQueue(streamId).select();
     WriteRequest writeRequest = eventQueue.append(headers, body);
     persistUntilCompleted(streamId, eventQueue, writeRequest);
   }
@@ -188,7 +199,7 @@ public final class ConcurrentStreamWriter implements Closeable {
    */
   public void enqueue(StreamId streamId,
                       Iterator<? extends StreamEventData> events) throws IOException, NotFoundException {
-    EventQueue eventQueue = getEventQueue(streamId);
+    EventQueue eventQueue = getEventQueue(streamId).select();
     WriteRequest writeRequest = eventQueue.append(events);
     persistUntilCompleted(streamId, eventQueue, writeRequest);
   }
@@ -208,7 +219,7 @@ public final class ConcurrentStreamWriter implements Closeable {
                            Map<String, String> headers, final ByteBuf body,
                            Executor executor) throws IOException, NotFoundException {
     // Put the event to the queue first and then execute the write asynchronously
-    final EventQueue eventQueue = getEventQueue(streamId);
+    final EventQueue eventQueue = getEventQueue(streamId).select();
     final WriteRequest writeRequest = eventQueue.append(headers, body.nioBuffer());
     executor.execute(new Runnable() {
       @Override
@@ -238,7 +249,8 @@ public final class ConcurrentStreamWriter implements Closeable {
   public void appendFile(StreamId streamId,
                          Location eventFile, Location indexFile, long eventCount,
                          TimestampCloseable timestampCloseable) throws IOException, NotFoundException {
-    EventQueue eventQueue = getEventQueue(streamId);
+    // Files are always appended through the first partition, which writes files with the writer file name prefix
+    EventQueue eventQueue = getEventQueue(streamId).getPartition(0);
     StreamConfig config = streamAdmin.getConfig(streamId);
     while (!eventQueue.tryAppendFile(config, eventFile, indexFile, eventCount, timestampCloseable)) {
       Thread.yield();
@@ -251,19 +263,15 @@ public final class ConcurrentStreamWriter implements Closeable {
       cancellable.cancel();
     }
 
-    for (EventQueue queue : eventQueues.values()) {
-      try {
-        queue.close();
-      } catch (IOException e) {
-        LOG.warn("Failed to close writer.", e);
-      }
+    for (PartitionedEventQueue queue : eventQueues.values()) {
+      queue.close();
     }
 
     eventQueueRefreshService.stopAndWait();
   }
 
-  private EventQueue getEventQueue(StreamId streamId) throws IOException, NotFoundException {
-    EventQueue eventQueue = eventQueues.get(streamId);
+  private PartitionedEventQueue getEventQueue(StreamId streamId) throws IOException, NotFoundException {
+    PartitionedEventQueue eventQueue = eventQueues.get(streamId);
     if (eventQueue != null) {
       return eventQueue;
     }
@@ -285,7 +293,7 @@ public final class ConcurrentStreamWriter implements Closeable {
         cancellables.add(streamCoordinatorClient.addListener(streamId, streamFileFactory));
       }
 
-      eventQueue = new EventQueue(streamId, metricsCollectorFactory.createMetricsCollector(streamId));
+      eventQueue = new PartitionedEventQueue(streamId, metricsCollectorFactory.createMetricsCollector(streamId));
       eventQueues.put(streamId, eventQueue);
 
       return eventQueue;
@@ -320,13 +328,9 @@ public final class ConcurrentStreamWriter implements Closeable {
   }
 
   private void closeEventQueue(StreamId streamId) {
-    EventQueue eventQueue = eventQueues.remove(streamId);
+    PartitionedEventQueue eventQueue = eventQueues.remove(streamId);
     if (eventQueue != null) {
-      try {
-        eventQueue.close();
-      } catch (IOException e) {
-        LOG.warn("Failed to close writer.", e);
-      }
+      eventQueue.close();
     }
   }
 
@@ -350,6 +354,13 @@ public final class ConcurrentStreamWriter implements Closeable {
       closeEventQueue(streamId);
     }
 
+    @Override
+    public void codecChanged(StreamId streamId, String codec) {
+      // Closing the event queue makes new stream files get written with the new codec
+      LOG.debug("Codec for stream '{}' changed to {} for stream writer", streamId, codec);
+      closeEventQueue(streamId);
+    }
+
     @Override
     public void deleted(StreamId streamId) {
       LOG.debug("Properties deleted for stream '{}' for stream writer", streamId);
@@ -360,10 +371,11 @@ public final class ConcurrentStreamWriter implements Closeable {
      * Creates a new {@link FileWriter} for the given stream.
      *
      * @param streamId identifier of the stream
+     * @param partition the writer partition
      * @return A {@link FileWriter} for writing {@link StreamEvent} to the given stream
      * @throws IOException if failed to create the file writer
      */
-    private FileWriter<StreamEvent> create(StreamId streamId) throws IOException {
+    private FileWriter<StreamEvent> create(StreamId streamId, int partition) throws IOException {
       final StreamConfig streamConfig = streamAdmin.getConfig(streamId);
       int generation;
       try {
@@ -379,8 +391,8 @@ public final class ConcurrentStreamWriter implements Closeable {
         throw Throwables.propagate(e);
       }
 
-      LOG.info("Create stream writer for {} with generation {}", streamId, generation);
-      return writerFactory.create(streamConfig, generation);
+      LOG.info("Create stream writer for {} with generation {} and partition {}", streamId, generation, partition);
+      return writerFactory.create(streamConfig, generation, partition);
     }
 
     /**
@@ -439,12 +451,67 @@ public final class ConcurrentStreamWriter implements Closeable {
     }
   }
 
+  /**
+   * Holds the {@link EventQueue} of each writer partition of a stream.
+   */
+  private final class PartitionedEventQueue {
+
+    private final List<EventQueue> partitions;
+
+    PartitionedEventQueue(StreamId streamId, StreamMetricsCollectorFactory.StreamMetricsCollector metricsCollector) {
+      List<EventQueue> partitions = Lists.newArrayListWithCapacity(writerPartitions);
+      for (int i = 0; i < writerPartitions; i++) {
+        partitions.add(new EventQueue(streamId, i, this, metricsCollector));
+      }
+      this.partitions = ImmutableList.copyOf(partitions);
+    }
+
+    /**
+     * Returns the {@link EventQueue} of the given partition.
+     */
+    EventQueue getPartition(int partition) {
+      return partitions.get(partition);
+    }
+
+    /**
+     * Selects the {@link EventQueue} for the current thread to write to.
+     */
+    EventQueue select() {
+      if (partitions.size() == 1) {
+        return partitions.get(0);
+      }
+      return partitions.get((int) (Thread.currentThread().getId() % partitions.size()));
+    }
+
+    void refresh() {
+      for (EventQueue eventQueue : partitions) {
+        try {
+          eventQueue.refresh();
+        } catch (Throwable t) {
+          LOG.error("Error while refreshing event queue.", t);
+        }
+      }
+    }
+
+    void close() {
+      for (EventQueue eventQueue : partitions) {
+        try {
+          eventQueue.close();
+        } catch (IOException e) {
+          LOG.warn("Failed to close writer.", e);
+        }
+      }
+    }
+  }
+
   /**
    * For buffering StreamEvents and doing batch write to stream file.
    */
   private final class EventQueue implements Closeable {
 
     private final StreamId streamId;
+    private final int partition;
+    private final PartitionedEventQueue parent;
     private final StreamMetricsCollectorFactory.StreamMetricsCollector metricsCollector;
     private final Queue<WriteRequest> queue;
     private final AtomicBoolean writerFlag;
@@ -454,8 +521,11 @@ public final class ConcurrentStreamWriter implements Closeable {
     private FileWriter<StreamEventData> fileWriter;
     private boolean closed;
 
-    EventQueue(StreamId streamId, StreamMetricsCollectorFactory.StreamMetricsCollector metricsCollector) {
+    EventQueue(StreamId streamId, int partition, PartitionedEventQueue parent,
+               StreamMetricsCollectorFactory.StreamMetricsCollector metricsCollector) {
       this.streamId = streamId;
+      this.partition = partition;
+      this.parent = parent;
       this.streamEvent = new MutableStreamEvent();
       this.queue = new ConcurrentLinkedQueue<>();
       this.writerFlag = new AtomicBoolean(false);
@@ -541,6 +611,7 @@ public final class ConcurrentStreamWriter implements Closeable {
     boolean tryWrite() {
       int bytesWritten = 0;
       int eventsWritten = 0;
+      boolean failed = false;
 
       if (!writerFlag.compareAndSet(false, true)) {
         return false;
@@ -568,9 +639,10 @@ public final class ConcurrentStreamWriter implements Closeable {
           bytesWritten = metrics.bytesWritten;
           eventsWritten = metrics.eventsWritten;
         } catch (Throwable t) {
-          // On exception, remove this EventQueue from the map and close this event queue
-          eventQueues.remove(streamId, this);
+          // On exception, remove the EventQueue of all partitions from the map and close this event queue
+          eventQueues.remove(streamId, parent);
           doClose();
+          failed = true;
 
           for (WriteRequest processed : processQueue) {
             processed.completed(t);
@@ -580,6 +652,11 @@ public final class ConcurrentStreamWriter implements Closeable {
         writerFlag.set(false);
       }
 
+      // Close the other partitions after releasing the writer flag, since closing waits for their writer flags
+      if (failed) {
+        parent.close();
+      }
+
       metricsCollector.emitMetrics(bytesWritten, eventsWritten);
       return true;
     }
@@ -612,7 +689,7 @@ public final class ConcurrentStreamWriter implements Closeable {
         throw new IOException("Stream writer already closed");
       }
       if (fileWriter == null) {
-        fileWriter = transform(streamFileFactory.create(streamId), eventTransformer);
+        fileWriter = transform(streamFileFactory.create(streamId, partition), eventTransformer);
       }
       return fileWriter;
     }
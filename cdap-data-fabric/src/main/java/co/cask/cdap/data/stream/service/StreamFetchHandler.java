@@ -297,11 +297,7 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
     }
 
     List<StreamFileOffset> fileOffsets = Lists.newArrayList();
-    int instances = cConf.getInt(Constants.Stream.CONTAINER_INSTANCES);
-    String filePrefix = cConf.get(Constants.Stream.FILE_PREFIX);
-    for (int i = 0; i < instances; i++) {
-      // The actual file prefix is formed by file prefix in cConf + writer instance id
-      String streamFilePrefix = filePrefix + '.' + i;
+    for (String streamFilePrefix : StreamUtils.getFilePrefixes(cConf)) {
       Location eventLocation = StreamUtils.createStreamLocation(startPartition, streamFilePrefix,
                                                                 0, StreamFileType.EVENT);
       fileOffsets.add(new StreamFileOffset(eventLocation, 0, generation));
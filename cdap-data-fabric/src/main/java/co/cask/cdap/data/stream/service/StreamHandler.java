@@ -31,7 +31,9 @@ import co.cask.cdap.common.security.AuditDetail;
 import co.cask.cdap.common.security.AuditPolicy;
 import co.cask.cdap.common.security.AuthEnforce;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
+import co.cask.cdap.data.stream.StreamDataFileConstants;
 import co.cask.cdap.data.stream.StreamFileWriterFactory;
+import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.service.upload.ContentWriterFactory;
 import co.cask.cdap.data.stream.service.upload.LengthBasedContentWriterFactory;
 import co.cask.cdap.data.stream.service.upload.StreamBodyConsumerFactory;
@@ -145,6 +147,7 @@ public final class StreamHandler extends AbstractHttpHandler {
     StreamMetricsCollectorFactory metricsCollectorFactory = createStreamMetricsCollectorFactory();
     this.streamWriter = new ConcurrentStreamWriter(streamCoordinatorClient, streamAdmin, writerFactory,
                                                    cConf.getInt(Constants.Stream.WORKER_THREADS),
+                                                   cConf.getInt(Constants.Stream.WRITER_PARTITIONS, 1),
                                                    metricsCollectorFactory, impersonator);
     this.namespaceQueryAdmin = namespaceQueryAdmin;
     this.impersonator = impersonator;
@@ -238,6 +241,10 @@ public final class StreamHandler extends AbstractHttpHandler {
       if (streamProperties.getOwnerPrincipal() != null) {
         props.put(Constants.Security.PRINCIPAL, streamProperties.getOwnerPrincipal());
       }
+
+      if (streamProperties.getCodec() != null) {
+        props.put(Constants.Stream.CODEC, streamProperties.getCodec());
+      }
     }
 
     streamAdmin.create(streamId, props);
@@ -427,8 +434,16 @@ public final class StreamHandler extends AbstractHttpHandler {
       SecurityUtil.validateKerberosPrincipal(properties.getOwnerPrincipal());
     }
 
+    // Validate codec
+    String codec = properties.getCodec();
+    if (codec != null && !StreamUtils.isSupportedCodec(codec)) {
+      throw new BadRequestException("Invalid codec " + codec + ". Codec should be either '" +
+                                      StreamDataFileConstants.Property.Value.CODEC_NONE + "' or '" +
+                                      StreamDataFileConstants.Property.Value.CODEC_DEFLATE + "'.");
+    }
+
     return new StreamProperties(ttl, formatSpec, threshold, properties.getDescription(),
-                                properties.getOwnerPrincipal());
+                                properties.getOwnerPrincipal(), codec);
   }
 
   private RejectedExecutionHandler createAsyncRejectedExecutionHandler() {
@@ -504,6 +519,9 @@ public final class StreamHandler extends AbstractHttpHandler {
       if (src.getOwnerPrincipal() != null) {
         json.addProperty(Constants.Security.PRINCIPAL, src.getOwnerPrincipal());
       }
+      if (src.getCodec() != null) {
+        json.addProperty("codec", src.getCodec());
+      }
       return json;
     }
 
@@ -524,7 +542,8 @@ public final class StreamHandler extends AbstractHttpHandler {
       String description = jsonObj.has("description") ? jsonObj.get("description").getAsString() : null;
       String ownerPrincipal = jsonObj.has(Constants.Security.PRINCIPAL) ?
         jsonObj.get(Constants.Security.PRINCIPAL).getAsString() : null;
-      return new StreamProperties(ttl, format, threshold, description, ownerPrincipal);
+      String codec = jsonObj.has("codec") ? jsonObj.get("codec").getAsString() : null;
+      return new StreamProperties(ttl, format, threshold, description, ownerPrincipal, codec);
     }
   }
 
@@ -20,6 +20,7 @@ import co.cask.cdap.common.NotFoundException;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.stream.StreamDataFileConstants;
 import co.cask.cdap.data.stream.StreamDataFileWriter;
+import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.service.ConcurrentStreamWriter;
 import co.cask.cdap.data.stream.service.MutableStreamEvent;
 import co.cask.cdap.data.stream.service.MutableStreamEventData;
@@ -62,6 +63,7 @@ final class FileContentWriter implements ContentWriter {
     Map<String, String> properties = createStreamFileProperties(headers);
     properties.put(StreamDataFileConstants.Property.Key.UNI_TIMESTAMP,
                    StreamDataFileConstants.Property.Value.CLOSE_TIMESTAMP);
+    properties.put(StreamDataFileConstants.Property.Key.CODEC, StreamUtils.getFileCodec(streamConfig));
     this.writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
                                            Locations.newOutputSupplier(indexFile),
                                            streamConfig.getIndexInterval(),
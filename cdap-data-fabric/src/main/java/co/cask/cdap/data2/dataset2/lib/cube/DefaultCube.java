@@ -23,6 +23,8 @@ import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
 import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.Measurement;
 import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
 import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.dataset.metrics.MeteredDataset;
@@ -33,8 +35,10 @@ import co.cask.cdap.data2.dataset2.lib.timeseries.FactScan;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanResult;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanner;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -51,7 +55,12 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.annotation.Nullable;
 
 /**
@@ -67,6 +76,15 @@ public class DefaultCube implements Cube, MeteredDataset {
   private final Map<Integer, FactTable> resolutionToFactTable;
   private final Map<String, ? extends Aggregation> aggregations;
   private final Map<String, AggregationAlias> aggregationAliasMap;
+  private final Set<Integer> rollupResolutions;
+  // rollup resolution -> time up to which counters of the resolution have been rolled up
+  private final Map<Integer, Long> rollupWatermarks = new ConcurrentHashMap<>();
+  // rollup resolutions that counters of all times are written to, because the rollup is behind
+  private final Set<Integer> laggingResolutions = ConcurrentHashMap.newKeySet();
+  // measure name -> type, for telling counters from gauges when rolling up
+  private final ConcurrentMap<String, MeasureType> measureTypes = new ConcurrentHashMap<>();
+  // facts are added under the read lock, while a rollup holds the write lock
+  private final ReadWriteLock rollupLock = new ReentrantReadWriteLock();
 
   @Nullable
   private MetricsCollector metrics;
@@ -74,12 +92,37 @@ public class DefaultCube implements Cube, MeteredDataset {
   public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
                      Map<String, ? extends Aggregation> aggregations,
                      Map<String, AggregationAlias> aggregationAliasMap) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, Collections.emptySet());
+  }
+
+  /**
+   * Creates a {@link DefaultCube}.
+   *
+   * @param resolutions resolutions of the cube
+   * @param factTableSupplier supplier for the {@link FactTable} of each resolution
+   * @param aggregations aggregations of the cube
+   * @param aggregationAliasMap aliases of dimension names for aggregations
+   * @param rollupResolutions resolutions that counter measurements are not written to when facts are added.
+   *                          Counters of these resolutions are computed from a finer resolution by calling
+   *                          {@link #rollup(int, int, long, long)}, except for counters older than the
+   *                          {@link #setRollupWatermark(int, long) rollup watermark}, and counters of resolutions
+   *                          that are {@link #setRollupLagging(int, boolean) lagging}. Gauge measurements are
+   *                          written to all resolutions.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap,
+                     Set<Integer> rollupResolutions) {
     this.aggregations = aggregations;
     this.resolutionToFactTable = Maps.newHashMap();
     for (int resolution : resolutions) {
       resolutionToFactTable.put(resolution, factTableSupplier.get(resolution, 3600));
     }
     this.aggregationAliasMap = aggregationAliasMap;
+    Preconditions.checkArgument(resolutionToFactTable.keySet().containsAll(rollupResolutions),
+                                "Rollup resolutions %s must be a subset of the cube resolutions %s",
+                                rollupResolutions, resolutionToFactTable.keySet());
+    this.rollupResolutions = ImmutableSet.copyOf(rollupResolutions);
   }
 
   @Override
@@ -92,6 +135,9 @@ public class DefaultCube implements Cube, MeteredDataset {
     List<Fact> toWrite = Lists.newArrayList();
     int dimValuesCount = 0;
     for (CubeFact fact : facts) {
+      if (!rollupResolutions.isEmpty()) {
+        recordMeasureTypes(fact);
+      }
       for (Map.Entry<String, ? extends Aggregation> aggEntry : aggregations.entrySet()) {
         Aggregation agg = aggEntry.getValue();
         AggregationAlias aggregationAlias = null;
@@ -113,8 +159,17 @@ public class DefaultCube implements Cube, MeteredDataset {
       }
     }
 
-    for (FactTable table : resolutionToFactTable.values()) {
-      table.add(toWrite);
+    // Counters of rollup resolutions are computed from finer resolutions, hence only write the gauges,
+    // unless the counters are in a time range that was rolled up already
+    rollupLock.readLock().lock();
+    try {
+      for (Map.Entry<Integer, FactTable> entry : resolutionToFactTable.entrySet()) {
+        int resolution = entry.getKey();
+        entry.getValue().add(rollupResolutions.contains(resolution) && !laggingResolutions.contains(resolution)
+                               ? getRollupFacts(toWrite, getRollupWatermark(resolution)) : toWrite);
+      }
+    } finally {
+      rollupLock.readLock().unlock();
     }
 
     incrementMetric("cube.cubeFact.add.request.count", 1);
@@ -291,6 +346,151 @@ public class DefaultCube implements Cube, MeteredDataset {
     return result;
   }
 
+  /**
+   * Computes the counter values of a rollup resolution from the values of a finer resolution, for the given time
+   * range. The time range should be aligned to the target resolution and still be retained in the source
+   * resolution, which always has all counter values. Each target cell is set to the sum of its source values, which
+   * also covers counters written to the target directly, so rolling up the same time range again doesn't change
+   * the result. Gauges are left untouched, as well as cells of measures of unknown type that already have a value
+   * in the target. Adding facts is blocked while rolling up, and the {@link #setRollupWatermark(int, long) rollup
+   * watermark} is moved past the time range before unblocking, so that counters added to the time range afterwards
+   * are written to the target resolution directly.
+   *
+   * @param sourceResolution the resolution to read values from
+   * @param targetResolution the rollup resolution to write values to
+   * @param startTs start of the time range in seconds, inclusive
+   * @param endTs end of the time range in seconds, exclusive
+   * @return number of cells written to the target resolution
+   */
+  public int rollup(int sourceResolution, int targetResolution, long startTs, long endTs) {
+    Preconditions.checkArgument(rollupResolutions.contains(targetResolution),
+                                "Resolution %s is not a rollup resolution", targetResolution);
+    Preconditions.checkArgument(resolutionToFactTable.containsKey(sourceResolution),
+                                "Resolution %s does not exist", sourceResolution);
+    Preconditions.checkArgument(sourceResolution < targetResolution && targetResolution % sourceResolution == 0,
+                                "Resolution %s cannot be rolled up to resolution %s",
+                                sourceResolution, targetResolution);
+    if (endTs <= startTs) {
+      return 0;
+    }
+
+    FactTable sourceTable = resolutionToFactTable.get(sourceResolution);
+    FactTable targetTable = resolutionToFactTable.get(targetResolution);
+    int cells = 0;
+    rollupLock.writeLock().lock();
+    try {
+      for (Aggregation agg : aggregations.values()) {
+        // Scan all rows of the aggregation by leaving all dimension values as "any"
+        List<DimensionValue> dimensionValues = Lists.newArrayList();
+        for (String dimensionName : agg.getDimensionNames()) {
+          dimensionValues.add(new DimensionValue(dimensionName, null));
+        }
+        FactScan scan = new FactScan(startTs, endTs - 1, dimensionValues);
+
+        // {dimension values, measure} -> {time -> value}s
+        Table<List<DimensionValue>, String, Map<Long, Long>> rollup = HashBasedTable.create();
+        boolean hasUnknownTypes = false;
+        FactScanner scanner = sourceTable.scan(scan);
+        try {
+          while (scanner.hasNext()) {
+            FactScanResult result = scanner.next();
+            MeasureType type = measureTypes.get(result.getMeasureName());
+            if (type == MeasureType.GAUGE) {
+              continue;
+            }
+            hasUnknownTypes |= type == null;
+            Map<Long, Long> values = rollup.get(result.getDimensionValues(), result.getMeasureName());
+            for (TimeValue timeValue : result) {
+              if (values == null) {
+                values = Maps.newHashMap();
+                rollup.put(result.getDimensionValues(), result.getMeasureName(), values);
+              }
+              long ts = (timeValue.getTimestamp() / targetResolution) * targetResolution;
+              values.merge(ts, timeValue.getValue(), Long::sum);
+            }
+          }
+        } finally {
+          scanner.close();
+        }
+        if (rollup.isEmpty()) {
+          continue;
+        }
+
+        // Measures that were not added since this cube was created can be gauges, which have a value in the target
+        if (hasUnknownTypes) {
+          scanner = targetTable.scan(scan);
+          try {
+            while (scanner.hasNext()) {
+              FactScanResult result = scanner.next();
+              Map<Long, Long> values = rollup.get(result.getDimensionValues(), result.getMeasureName());
+              if (values != null && !measureTypes.containsKey(result.getMeasureName())) {
+                for (TimeValue timeValue : result) {
+                  values.remove(timeValue.getTimestamp());
+                }
+              }
+            }
+          } finally {
+            scanner.close();
+          }
+        }
+
+        // Write the rolled up values as gauges, so that they replace the values written to the target directly
+        List<Fact> toWrite = Lists.newArrayList();
+        for (Table.Cell<List<DimensionValue>, String, Map<Long, Long>> cell : rollup.cellSet()) {
+          for (Map.Entry<Long, Long> value : cell.getValue().entrySet()) {
+            toWrite.add(new Fact(value.getKey(), cell.getRowKey(),
+                                 new Measurement(cell.getColumnKey(), MeasureType.GAUGE, value.getValue())));
+          }
+        }
+        targetTable.add(toWrite);
+        cells += toWrite.size();
+      }
+      rollupWatermarks.merge(targetResolution, endTs, Math::max);
+    } finally {
+      rollupLock.writeLock().unlock();
+    }
+
+    incrementMetric("cube.rollup." + targetResolution + ".cell.count", cells);
+    return cells;
+  }
+
+  /**
+   * Sets the time up to which counters of the given rollup resolution have been rolled up. Since time ranges before
+   * the watermark are not rolled up again, counters added for those time ranges are written to the rollup resolution
+   * directly, as increments on top of the rolled up values. Watermarks only move forward.
+   *
+   * @param resolution the rollup resolution
+   * @param ts time in seconds, exclusive
+   */
+  public void setRollupWatermark(int resolution, long ts) {
+    Preconditions.checkArgument(rollupResolutions.contains(resolution),
+                                "Resolution %s is not a rollup resolution", resolution);
+    rollupWatermarks.merge(resolution, ts, Math::max);
+  }
+
+  /**
+   * Sets whether the rollup of the given resolution is lagging behind. Counters of all times are written to a
+   * lagging resolution directly, so that recent values are available and values don't get lost if the source
+   * resolution expires before the rollup reaches it. Rolling up those time ranges later doesn't count them twice.
+   *
+   * @param resolution the rollup resolution
+   * @param lagging whether the rollup is lagging
+   */
+  public void setRollupLagging(int resolution, boolean lagging) {
+    Preconditions.checkArgument(rollupResolutions.contains(resolution),
+                                "Resolution %s is not a rollup resolution", resolution);
+    if (lagging) {
+      laggingResolutions.add(resolution);
+    } else {
+      laggingResolutions.remove(resolution);
+    }
+  }
+
+  private long getRollupWatermark(int resolution) {
+    Long watermark = rollupWatermarks.get(resolution);
+    return watermark == null ? 0L : watermark;
+  }
+
   /**
    * Sets {@link MetricsCollector} for metrics reporting.
    * @param metrics {@link MetricsCollector} to set.
@@ -303,6 +503,41 @@ public class DefaultCube implements Cube, MeteredDataset {
     }
   }
 
+  /**
+   * Returns the list of {@link Fact} to write to a rollup resolution. It contains all measurements of facts before
+   * the given watermark, and only the gauge measurements of the other facts.
+   */
+  private List<Fact> getRollupFacts(List<Fact> facts, long watermark) {
+    List<Fact> result = Lists.newArrayList();
+    for (Fact fact : facts) {
+      if (fact.getTimestamp() < watermark) {
+        result.add(fact);
+        continue;
+      }
+      List<Measurement> gauges = Lists.newArrayList();
+      for (Measurement measurement : fact.getMeasurements()) {
+        if (measurement.getType() == MeasureType.GAUGE) {
+          gauges.add(measurement);
+        }
+      }
+      if (!gauges.isEmpty()) {
+        result.add(new Fact(fact.getTimestamp(), fact.getDimensionValues(), gauges));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Records the type of the measurements of the given fact.
+   */
+  private void recordMeasureTypes(CubeFact fact) {
+    for (Measurement measurement : fact.getMeasurements()) {
+      if (!measureTypes.containsKey(measurement.getName())) {
+        measureTypes.putIfAbsent(measurement.getName(), measurement.getType());
+      }
+    }
+  }
+
   private void incrementMetric(String metricName, long value) {
     if (metrics != null) {
       metrics.increment(metricName, value);
@@ -42,6 +42,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -79,6 +80,8 @@ public final class FactTable implements Closeable {
 
   private final String putCountMetric;
   private final String incrementCountMetric;
+  private final String measurementCountMetric;
+  private final String cellCountMetric;
 
   @Nullable
   private MetricsCollector metrics;
@@ -106,6 +109,8 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.measurementCountMetric = "factTable." + resolution + ".measurement.count";
+    this.cellCountMetric = "factTable." + resolution + ".cell.count";
   }
 
   public void setMetricsCollector(MetricsCollector metrics) {
@@ -113,33 +118,57 @@ public final class FactTable implements Closeable {
   }
 
   public void add(List<Fact> facts) {
-    // Simply collecting all rows/cols/values that need to be put to the underlying table.
-    NavigableMap<byte[], NavigableMap<byte[], Long>> gaugesTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    NavigableMap<byte[], NavigableMap<byte[], Long>> incrementsTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    // Coalesces measurements written to the same cell within the batch before encoding them into row keys,
+    // so that a row key is only encoded once per cell and each cell is only written once.
+    Map<CellKey, Long> gauges = new LinkedHashMap<>();
+    Map<CellKey, Long> increments = new LinkedHashMap<>();
+    int measurementCount = 0;
     for (Fact fact : facts) {
+      long ts = roundToResolution(fact.getTimestamp());
       for (Measurement measurement : fact.getMeasurements()) {
-        byte[] rowKey = codec.createRowKey(fact.getDimensionValues(), measurement.getName(), fact.getTimestamp());
-        byte[] column = codec.createColumn(fact.getTimestamp());
-
+        measurementCount++;
+        CellKey key = new CellKey(fact.getDimensionValues(), measurement.getName(), ts);
         if (MeasureType.COUNTER == measurement.getType()) {
-          inc(incrementsTable, rowKey, column, measurement.getValue());
+          increments.merge(key, measurement.getValue(), Long::sum);
         } else {
-          gaugesTable
-            .computeIfAbsent(rowKey, k -> Maps.newTreeMap(Bytes.BYTES_COMPARATOR))
-            .put(column, measurement.getValue());
+          // Last gauge value in the batch wins
+          gauges.put(key, measurement.getValue());
         }
       }
     }
 
+    // Simply collecting all rows/cols/values that need to be put to the underlying table.
+    NavigableMap<byte[], NavigableMap<byte[], Long>> gaugesTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], NavigableMap<byte[], Long>> incrementsTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<CellKey, Long> entry : gauges.entrySet()) {
+      CellKey key = entry.getKey();
+      gaugesTable
+        .computeIfAbsent(codec.createRowKey(key.dimensionValues, key.measureName, key.timestamp),
+                         k -> Maps.newTreeMap(Bytes.BYTES_COMPARATOR))
+        .put(codec.createColumn(key.timestamp), entry.getValue());
+    }
+    for (Map.Entry<CellKey, Long> entry : increments.entrySet()) {
+      CellKey key = entry.getKey();
+      inc(incrementsTable, codec.createRowKey(key.dimensionValues, key.measureName, key.timestamp),
+          codec.createColumn(key.timestamp), entry.getValue());
+    }
+
     // todo: replace with single call, to be able to optimize rpcs in underlying table
     timeSeriesTable.put(gaugesTable);
     timeSeriesTable.increment(incrementsTable);
     if (metrics != null) {
       metrics.increment(putCountMetric, gaugesTable.size());
       metrics.increment(incrementCountMetric, incrementsTable.size());
+      // The ratio between the two is the write compression achieved by coalescing
+      metrics.increment(measurementCountMetric, measurementCount);
+      metrics.increment(cellCountMetric, gauges.size() + increments.size());
     }
   }
 
+  private long roundToResolution(long ts) {
+    return (ts / resolution) * resolution;
+  }
+
   private class MeasureNameComparator implements Comparator<String> {
     private final Map<String, Long> measureNameToEntityIdMap;
 
@@ -451,4 +480,39 @@ public final class FactTable implements Closeable {
 
     values.put(column, newValue);
   }
+
+  /**
+   * Identifies a single cell in the fact table, before it is encoded into row key and column.
+   */
+  private static final class CellKey {
+    private final List<DimensionValue> dimensionValues;
+    private final String measureName;
+    private final long timestamp;
+    private final int hashCode;
+
+    private CellKey(List<DimensionValue> dimensionValues, String measureName, long timestamp) {
+      this.dimensionValues = dimensionValues;
+      this.measureName = measureName;
+      this.timestamp = timestamp;
+      this.hashCode = 31 * (31 * dimensionValues.hashCode() + measureName.hashCode()) + Long.hashCode(timestamp);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CellKey other = (CellKey) o;
+      return timestamp == other.timestamp && hashCode == other.hashCode
+        && measureName.equals(other.measureName) && dimensionValues.equals(other.dimensionValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
 }
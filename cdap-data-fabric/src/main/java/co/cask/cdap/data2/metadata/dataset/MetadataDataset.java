@@ -702,26 +702,13 @@ public class MetadataDataset extends AbstractDataset {
       DEFAULT_INDEX_COLUMN.getColumn() : DEFAULT_INDEX_COLUMN.getCrossNamespaceColumn();
 
     for (SearchTerm searchTerm : getSearchTerms(request)) {
-      Scanner scanner;
-      if (searchTerm.isPrefix()) {
-        // if prefixed search get start and stop key
-        byte[] startKey = Bytes.toBytes(searchTerm.getTerm());
-        @SuppressWarnings("ConstantConditions")
-        byte[] stopKey = Bytes.stopKeyForPrefix(startKey);
-        scanner = indexedTable.scanByIndex(Bytes.toBytes(column), startKey, stopKey);
-      } else {
-        byte[] value = Bytes.toBytes(searchTerm.getTerm());
-        scanner = indexedTable.readByIndex(Bytes.toBytes(column), value);
-      }
-      try {
+      try (Scanner scanner = scanDefaultIndex(column, searchTerm)) {
         Row next;
         while ((next = scanner.next()) != null) {
           Optional<MetadataEntry> metadataEntry = parseRow(next, column, request.getTypes(),
                                                            request.shouldShowHidden());
           metadataEntry.ifPresent(results::add);
         }
-      } finally {
-        scanner.close();
       }
     }
 
@@ -729,6 +716,46 @@ public class MetadataDataset extends AbstractDataset {
     return new SearchResults(results, Collections.emptyList());
   }
 
+  /**
+   * Searches entities that match the specified search query using the default index, and scores each entity by the
+   * number of index entries that matched any of the search terms. This is the same as scoring the results of
+   * {@link #search(SearchRequest)} with {@link SortInfo#DEFAULT}, but the metadata of the matching entries is not
+   * read and each entity is only returned once, so it only takes memory proportional to the number of entities.
+   * The sort info, offset, limit and cursors of the request are ignored.
+   *
+   * @param request the search request
+   * @return the scores of the matching entities
+   */
+  public Map<MetadataEntity, Integer> searchScores(SearchRequest request) {
+    String column = request.isNamespaced() ?
+      DEFAULT_INDEX_COLUMN.getColumn() : DEFAULT_INDEX_COLUMN.getCrossNamespaceColumn();
+
+    // The search terms are alternatives, so the score of an entity is the sum over the index entries of all terms
+    Map<MetadataEntity, Integer> scores = new HashMap<>();
+    for (SearchTerm searchTerm : getSearchTerms(request)) {
+      try (Scanner scanner = scanDefaultIndex(column, searchTerm)) {
+        Row next;
+        while ((next = scanner.next()) != null) {
+          parseEntity(next, column, request.getTypes(), request.shouldShowHidden())
+            .ifPresent(entity -> scores.merge(entity, 1, Integer::sum));
+        }
+      }
+    }
+    return scores;
+  }
+
+  private Scanner scanDefaultIndex(String column, SearchTerm searchTerm) {
+    if (searchTerm.isPrefix()) {
+      // if prefixed search get start and stop key
+      byte[] startKey = Bytes.toBytes(searchTerm.getTerm());
+      @SuppressWarnings("ConstantConditions")
+      byte[] stopKey = Bytes.stopKeyForPrefix(startKey);
+      return indexedTable.scanByIndex(Bytes.toBytes(column), startKey, stopKey);
+    }
+    byte[] value = Bytes.toBytes(searchTerm.getTerm());
+    return indexedTable.readByIndex(Bytes.toBytes(column), value);
+  }
+
   private SearchResults searchByCustomIndex(SearchRequest request) throws BadRequestException {
     SortInfo sortInfo = request.getSortInfo();
     int offset = request.getOffset();
@@ -797,6 +824,16 @@ public class MetadataDataset extends AbstractDataset {
   // so return an Optional
   private Optional<MetadataEntry> parseRow(Row rowToProcess, String indexColumn,
                                            Set<EntityTypeSimpleName> entityFilter, boolean showHidden) {
+    return parseEntity(rowToProcess, indexColumn, entityFilter, showHidden).flatMap(metadataEntity -> {
+      String key = MetadataKey.extractMetadataKey(rowToProcess.getRow());
+      return Optional.ofNullable(getMetadata(metadataEntity, key));
+    });
+  }
+
+  // the row may not be an index row of the column, or it may be for a different targetType (entityFilter) or for a
+  // hidden entity, so return an Optional
+  private Optional<MetadataEntity> parseEntity(Row rowToProcess, String indexColumn,
+                                               Set<EntityTypeSimpleName> entityFilter, boolean showHidden) {
     String rowValue = rowToProcess.getString(indexColumn);
     if (rowValue == null) {
       return Optional.empty();
@@ -822,10 +859,7 @@ public class MetadataDataset extends AbstractDataset {
     } catch (IllegalArgumentException e) {
       // ignore. For custom entities we don't really want to hide them if they start with _
     }
-
-    String key = MetadataKey.extractMetadataKey(rowKey);
-    MetadataEntry entry = getMetadata(metadataEntity, key);
-    return Optional.ofNullable(entry);
+    return Optional.of(metadataEntity);
   }
 
   /**
@@ -76,6 +76,7 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -101,8 +102,9 @@ public class DefaultMetadataStore implements MetadataStore {
 
   private static final Comparator<Map.Entry<MetadataEntity, Integer>> SEARCH_RESULT_DESC_SCORE_COMPARATOR =
     (o1, o2) -> {
-      // sort in descending order
-      return o2.getValue() - o1.getValue();
+      // sort in descending order, and break ties by the entity so that the order is the same for every page
+      int cmp = o2.getValue() - o1.getValue();
+      return cmp != 0 ? cmp : o1.getKey().toString().compareTo(o2.getKey().toString());
     };
 
 
@@ -434,39 +436,53 @@ public class DefaultMetadataStore implements MetadataStore {
   }
 
   private MetadataSearchResponseV2 search(Set<MetadataScope> scopes, SearchRequest request) {
-    List<MetadataEntry> results = new LinkedList<>();
-    List<String> cursors = new LinkedList<>();
-    for (MetadataScope scope : scopes) {
-      SearchResults searchResults = execute(
-        mds -> {
-          return mds.search(request);
-        }, scope, DATASET.V2);
-
-      results.addAll(searchResults.getResults());
-      cursors.addAll(searchResults.getCursors());
-    }
-
     int offset = request.getOffset();
     int limit = request.getLimit();
     SortInfo sortInfo = request.getSortInfo();
-    // sort if required
-    Set<MetadataEntity> sortedEntities = getSortedEntities(results, sortInfo);
-    int total = sortedEntities.size();
-
-    // pagination is not performed at the dataset level, because:
-    // 1. scoring is needed for DEFAULT sort info. So perform it here for now.
-    // 2. Even when using custom sorting, we need to remove elements from the beginning to the offset and the cursors
-    //    at the end
-    // TODO: Figure out how all of this can be done server (HBase) side
-    int startIndex = Math.min(request.getOffset(), sortedEntities.size());
-    // Account for overflow
-    int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
-    endIndex = Math.min(endIndex, sortedEntities.size());
+    List<String> cursors = new LinkedList<>();
+    Set<MetadataEntity> sortedEntities;
+    int total;
+
+    if (SortInfo.DEFAULT.equals(sortInfo)) {
+      // the scores of an entity in all scopes are added up, so scoring can only be done here
+      Map<MetadataEntity, Integer> scores = new HashMap<>();
+      for (MetadataScope scope : scopes) {
+        Map<MetadataEntity, Integer> scopeScores = execute(
+          mds -> {
+            return mds.searchScores(request);
+          }, scope, DATASET.V2);
+        scopeScores.forEach((entity, score) -> scores.merge(entity, score, Integer::sum));
+      }
+      total = scores.size();
+      sortedEntities = getTopEntities(scores, offset, limit);
+    } else {
+      List<MetadataEntry> results = new LinkedList<>();
+      for (MetadataScope scope : scopes) {
+        SearchResults searchResults = execute(
+          mds -> {
+            return mds.search(request);
+          }, scope, DATASET.V2);
+
+        results.addAll(searchResults.getResults());
+        cursors.addAll(searchResults.getCursors());
+      }
 
-    // add 1 to maxIndex because end index is exclusive
-    sortedEntities = new LinkedHashSet<>(
-      ImmutableList.copyOf(sortedEntities).subList(startIndex, endIndex)
-    );
+      sortedEntities = getSortedEntities(results);
+      total = sortedEntities.size();
+
+      // pagination is not performed at the dataset level, because even when using custom sorting, we need to remove
+      // elements from the beginning to the offset and the cursors at the end
+      // TODO: Figure out how all of this can be done server (HBase) side
+      int startIndex = Math.min(request.getOffset(), sortedEntities.size());
+      // Account for overflow
+      int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+      endIndex = Math.min(endIndex, sortedEntities.size());
+
+      // add 1 to maxIndex because end index is exclusive
+      sortedEntities = new LinkedHashSet<>(
+        ImmutableList.copyOf(sortedEntities).subList(startIndex, endIndex)
+      );
+    }
 
     // Fetch metadata for entities in the result list
     // Note: since the fetch is happening in a different transaction, the metadata for entities may have been
@@ -480,29 +496,43 @@ public class DefaultMetadataStore implements MetadataStore {
       request.getEntityScopes());
   }
 
-  private Set<MetadataEntity> getSortedEntities(List<MetadataEntry> results, SortInfo sortInfo) {
-    // if sort order is not weighted, return entities in the order received.
-    // in this case, the backing storage is expected to return results in the expected order.
-    if (SortInfo.SortOrder.WEIGHTED != sortInfo.getSortOrder()) {
-      Set<MetadataEntity> entities = new LinkedHashSet<>(results.size());
-      for (MetadataEntry metadataEntry : results) {
-        entities.add(metadataEntry.getMetadataEntity());
-      }
-      return entities;
-    }
-    // if sort order is weighted, score results by weight, and return in descending order of weights
-    // Score results
-    final Map<MetadataEntity, Integer> weightedResults = new HashMap<>();
+  private Set<MetadataEntity> getSortedEntities(List<MetadataEntry> results) {
+    // return entities in the order received, since the backing storage returns results in the expected order
+    // when sort order is not weighted
+    Set<MetadataEntity> entities = new LinkedHashSet<>(results.size());
     for (MetadataEntry metadataEntry : results) {
-      weightedResults.put(metadataEntry.getMetadataEntity(),
-                          weightedResults.getOrDefault(metadataEntry.getMetadataEntity(), 0) + 1);
+      entities.add(metadataEntry.getMetadataEntity());
+    }
+    return entities;
+  }
+
+  /**
+   * Returns the entities ranked from offset to offset + limit in descending order of scores. Only the top
+   * offset + limit entities are kept while ranking, instead of sorting all of them.
+   */
+  private Set<MetadataEntity> getTopEntities(Map<MetadataEntity, Integer> scores, int offset, int limit) {
+    // Account for overflow
+    int size = (int) Math.min(scores.size(), (long) offset + limit);
+    if (offset >= size) {
+      return new LinkedHashSet<>();
+    }
+
+    // the head of the queue is the lowest ranked one of the top entities
+    PriorityQueue<Map.Entry<MetadataEntity, Integer>> topEntries =
+      new PriorityQueue<>(size, SEARCH_RESULT_DESC_SCORE_COMPARATOR.reversed());
+    for (Map.Entry<MetadataEntity, Integer> entry : scores.entrySet()) {
+      if (topEntries.size() < size) {
+        topEntries.add(entry);
+      } else if (SEARCH_RESULT_DESC_SCORE_COMPARATOR.compare(entry, topEntries.peek()) < 0) {
+        topEntries.poll();
+        topEntries.add(entry);
+      }
     }
 
-    // Sort the results by score
-    List<Map.Entry<MetadataEntity, Integer>> resultList = new ArrayList<>(weightedResults.entrySet());
+    List<Map.Entry<MetadataEntity, Integer>> resultList = new ArrayList<>(topEntries);
     resultList.sort(SEARCH_RESULT_DESC_SCORE_COMPARATOR);
-    Set<MetadataEntity> result = new LinkedHashSet<>(resultList.size());
-    for (Map.Entry<MetadataEntity, Integer> entry : resultList) {
+    Set<MetadataEntity> result = new LinkedHashSet<>(size - offset);
+    for (Map.Entry<MetadataEntity, Integer> entry : resultList.subList(offset, size)) {
       result.add(entry.getKey());
     }
     return result;
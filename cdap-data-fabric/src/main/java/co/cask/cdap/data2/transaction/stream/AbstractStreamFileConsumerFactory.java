@@ -17,7 +17,6 @@
 package co.cask.cdap.data2.transaction.stream;
 
 import co.cask.cdap.common.conf.CConfiguration;
-import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.file.filter.TTLReadFilter;
@@ -37,6 +36,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +45,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -95,19 +96,42 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
   protected void getFileOffsets(Location partitionLocation,
                                 Collection<? super StreamFileOffset> fileOffsets,
                                 int generation) throws IOException {
-    // TODO: Support dynamic writer instances discovery
-    // Current assume it won't change and is based on cConf
-    int instances = cConf.getInt(Constants.Stream.CONTAINER_INSTANCES);
-    String filePrefix = cConf.get(Constants.Stream.FILE_PREFIX);
-    for (int i = 0; i < instances; i++) {
-      // The actual file prefix is formed by file prefix in cConf + writer instance id
-      String streamFilePrefix = filePrefix + '.' + i;
+    for (String streamFilePrefix : StreamUtils.getFilePrefixes(cConf)) {
       Location eventLocation = StreamUtils.createStreamLocation(partitionLocation, streamFilePrefix,
                                                                 0, StreamFileType.EVENT);
       fileOffsets.add(new StreamFileOffset(eventLocation, 0, generation));
     }
   }
 
+  /**
+   * Adds offsets for the stream file prefixes that don't have an offset in the given list yet. This happens if
+   * stream writer partitions were added after the offsets were stored. The new offsets start from the earliest
+   * partition of the existing offsets, so that no event written with the new prefixes is skipped.
+   */
+  private void addMissingFileOffsets(Location streamLocation, long partitionDuration,
+                                     List<StreamFileOffset> fileOffsets, int generation) throws IOException {
+    Set<String> namePrefixes = Sets.newHashSet();
+    long partitionStart = Long.MAX_VALUE;
+    for (StreamFileOffset fileOffset : fileOffsets) {
+      namePrefixes.add(fileOffset.getNamePrefix());
+      partitionStart = Math.min(partitionStart, fileOffset.getPartitionStart());
+    }
+
+    Location partitionLocation = null;
+    for (String streamFilePrefix : StreamUtils.getFilePrefixes(cConf)) {
+      if (namePrefixes.contains(streamFilePrefix)) {
+        continue;
+      }
+      if (partitionLocation == null) {
+        partitionLocation = StreamUtils.createPartitionLocation(streamLocation, partitionStart, partitionDuration);
+      }
+      Location eventLocation = StreamUtils.createStreamLocation(partitionLocation, streamFilePrefix,
+                                                                0, StreamFileType.EVENT);
+      LOG.info("Add file offset for new stream file prefix {}: {}", streamFilePrefix, eventLocation);
+      fileOffsets.add(new StreamFileOffset(eventLocation, 0, generation));
+    }
+  }
+
   @Override
   public final StreamConsumer create(StreamId streamId, String namespace,
                                      ConsumerConfig consumerConfig) throws IOException {
@@ -173,7 +197,9 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
       if (useStoredStates) {
         LOG.info("Create file reader with consumer state: {}", consumerState);
         // Has existing offsets, just resume from there.
-        MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, consumerState.getState());
+        List<StreamFileOffset> fileOffsets = Lists.newArrayList(consumerState.getState());
+        addMissingFileOffsets(streamLocation, streamConfig.getPartitionDuration(), fileOffsets, generation);
+        MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, fileOffsets);
         reader.initialize();
         return reader;
       }
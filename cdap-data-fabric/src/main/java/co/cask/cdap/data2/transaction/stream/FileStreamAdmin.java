@@ -27,6 +27,7 @@ import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.common.utils.OSDetector;
 import co.cask.cdap.data.stream.CoordinatorStreamProperties;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
+import co.cask.cdap.data.stream.StreamDataFileConstants;
 import co.cask.cdap.data.stream.StreamFileOffset;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.service.StreamMetaStore;
@@ -292,7 +293,8 @@ public class FileStreamAdmin implements StreamAdmin {
           }
 
           return new StreamConfig(streamId, config.getPartitionDuration(), config.getIndexInterval(),
-                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold);
+                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold,
+                                  config.getCodec());
         }
       });
     } catch (Exception ex) {
@@ -308,7 +310,7 @@ public class FileStreamAdmin implements StreamAdmin {
     StreamConfig config = getConfig(streamId);
     StreamSpecification spec = streamMetaStore.getStream(streamId);
     return new StreamProperties(config.getTTL(), config.getFormat(), config.getNotificationThresholdMB(),
-                                spec.getDescription(), ownerPrincipal);
+                                spec.getDescription(), ownerPrincipal, config.getCodec());
   }
 
   @Override
@@ -346,7 +348,8 @@ public class FileStreamAdmin implements StreamAdmin {
           publishAudit(streamId, AuditType.UPDATE);
           return new CoordinatorStreamProperties(properties.getTTL(), properties.getFormat(),
                                                  properties.getNotificationThresholdMB(), null,
-                                                 properties.getDescription(), properties.getOwnerPrincipal());
+                                                 properties.getDescription(), properties.getOwnerPrincipal(),
+                                                 properties.getCodec());
         }
       });
   }
@@ -551,6 +554,13 @@ public class FileStreamAdmin implements StreamAdmin {
             Constants.Stream.TTL, cConf.get(Constants.Stream.TTL)));
           int threshold = Integer.parseInt(properties.getProperty(
             Constants.Stream.NOTIFICATION_THRESHOLD, cConf.get(Constants.Stream.NOTIFICATION_THRESHOLD)));
+          String codec = properties.getProperty(Constants.Stream.CODEC, cConf.get(
+            Constants.Stream.CODEC, StreamDataFileConstants.Property.Value.CODEC_NONE));
+          Preconditions.checkArgument(StreamUtils.isSupportedCodec(codec), "Unsupported stream codec '%s'.", codec);
+          // No codec is recorded for uncompressed streams, same as for streams created before codecs were added
+          if (StreamDataFileConstants.Property.Value.CODEC_NONE.equals(codec)) {
+            codec = null;
+          }
           String description = properties.getProperty(Constants.Stream.DESCRIPTION);
           FormatSpecification formatSpec = null;
           if (properties.containsKey(Constants.Stream.FORMAT_SPECIFICATION)) {
@@ -559,7 +569,7 @@ public class FileStreamAdmin implements StreamAdmin {
           }
 
           final StreamConfig config = new StreamConfig(streamId, partitionDuration, indexInterval,
-                                                       ttl, streamLocation, formatSpec, threshold);
+                                                       ttl, streamLocation, formatSpec, threshold, codec);
           impersonator.doAs(streamId, new Callable<Void>() {
             @Override
             public Void call() throws Exception {
@@ -690,6 +700,11 @@ public class FileStreamAdmin implements StreamAdmin {
     if (properties.getNotificationThresholdMB() != null) {
       builder.setNotificationThreshold(properties.getNotificationThresholdMB());
     }
+    if (properties.getCodec() != null) {
+      Preconditions.checkArgument(StreamUtils.isSupportedCodec(properties.getCodec()),
+                                  "Unsupported stream codec '%s'.", properties.getCodec());
+      builder.setCodec(properties.getCodec());
+    }
 
     // update stream description
     String description = properties.getDescription();
@@ -16,20 +16,30 @@
 
 package co.cask.cdap.data.stream;
 
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.util.TableId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.StreamId;
+import com.google.common.collect.ImmutableList;
 import org.apache.twill.filesystem.LocalLocationFactory;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.filesystem.LocationFactory;
 import org.junit.Assert;
+import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
 
 /**
  * Unit tests for {@link StreamUtils}.
  */
 public class StreamUtilsTest {
 
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
   @Test
   public void testValidPartition() {
     Assert.assertTrue(StreamUtils.isPartition("00012345.00345"));
@@ -65,4 +75,32 @@ public class StreamUtilsTest {
     TableId expected = TableId.from("foonamespace", "system.stream.state.store");
     Assert.assertEquals(expected, StreamUtils.getStateStoreTableId(namespace));
   }
+
+  @Test
+  public void testFilePrefixes() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.Stream.FILE_PREFIX, "file");
+    cConf.setInt(Constants.Stream.CONTAINER_INSTANCES, 2);
+    cConf.setInt(Constants.Stream.WRITER_PARTITIONS, 2);
+
+    Assert.assertEquals(ImmutableList.of("file.0", "file.0.1", "file.1", "file.1.1"),
+                        StreamUtils.getFilePrefixes(cConf));
+  }
+
+  @Test
+  public void testNextSequenceId() throws IOException {
+    Location partitionLocation = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("1000.1000");
+    partitionLocation.mkdirs();
+    Assert.assertEquals(0, StreamUtils.getNextSequenceId(partitionLocation, "file.0"));
+
+    StreamUtils.createStreamLocation(partitionLocation, "file.0", 0, StreamFileType.EVENT).createNew();
+    StreamUtils.createStreamLocation(partitionLocation, "file.0", 0, StreamFileType.INDEX).createNew();
+
+    // Files of other writer partitions should be ignored
+    String partitionPrefix = StreamUtils.getPartitionFilePrefix("file.0", 1);
+    StreamUtils.createStreamLocation(partitionLocation, partitionPrefix, 5, StreamFileType.EVENT).createNew();
+
+    Assert.assertEquals(1, StreamUtils.getNextSequenceId(partitionLocation, "file.0"));
+    Assert.assertEquals(6, StreamUtils.getNextSequenceId(partitionLocation, partitionPrefix));
+  }
 }
@@ -16,14 +16,24 @@
 
 package co.cask.cdap.data2.dataset2.lib.cube;
 
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
+import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
 import co.cask.cdap.data2.dataset2.lib.timeseries.EntityTable;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -32,6 +42,93 @@ public class DefaultCubeTest extends AbstractCubeTest {
 
   @Override
   protected Cube getCube(final String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations) {
+    return getCube(name, resolutions, aggregations, Collections.<Integer>emptySet());
+  }
+
+  @Test
+  public void testRollup() throws Exception {
+    Aggregation agg1 = new DefaultAggregation(ImmutableList.of("dim1"));
+    Aggregation agg2 = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+
+    int res1 = 1;
+    int res100 = 100;
+    DefaultCube cube = getCube("myRollupCube", new int[] {res1, res100},
+                               ImmutableMap.of("agg1", agg1, "agg2", agg2), ImmutableSet.of(res100));
+
+    writeInc(cube, "metric1", 1, 1, "1", "1");
+    writeInc(cube, "metric1", 5, 2, "1", "2");
+    writeInc(cube, "metric1", 101, 3, "1", "1");
+    writeGauge(cube, "metric2", 2, 7, "1", "1");
+    writeGauge(cube, "metric2", 3, 8, "1", "1");
+
+    // Counters are only written to the finest resolution, while gauges are written to all resolutions
+    verifyCountQuery(cube, 0, 200, res1, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(),
+                                                     timeValues(1, 1, 5, 2, 101, 3))));
+    verifyCountQuery(cube, 0, 200, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(), ImmutableList.<TimeSeries>of());
+    verifyCountQuery(cube, 0, 200, res100, "metric2", AggregationFunction.LATEST,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric2", new HashMap<String, String>(), timeValues(0, 8))));
+
+    // Rollup counters of two partitions for both aggregations, gauges should be untouched
+    Assert.assertEquals(5, cube.rollup(res1, res100, 0, 200));
+    verifyCountQuery(cube, 0, 200, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(),
+                                                     timeValues(0, 3, 100, 3))));
+    verifyCountQuery(cube, 0, 200, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1", "dim2", "2"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(), timeValues(0, 2))));
+    verifyCountQuery(cube, 0, 200, res100, "metric2", AggregationFunction.LATEST,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric2", new HashMap<String, String>(), timeValues(0, 8))));
+
+    // Rollup again should not change the values
+    Assert.assertEquals(5, cube.rollup(res1, res100, 0, 200));
+    verifyCountQuery(cube, 0, 200, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(),
+                                                     timeValues(0, 3, 100, 3))));
+
+    // The rollup moves the watermark past the time range. Counters written after the rollup to a rolled up time
+    // range are added to the rollup resolution directly, while counters after the watermark are left for the next
+    // rollup.
+    writeInc(cube, "metric1", 50, 4, "1", "1");
+    writeInc(cube, "metric1", 250, 5, "1", "1");
+    verifyCountQuery(cube, 0, 300, res1, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(),
+                                                     timeValues(1, 1, 5, 2, 50, 4, 101, 3, 250, 5))));
+    verifyCountQuery(cube, 0, 300, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(),
+                                                     timeValues(0, 7, 100, 3))));
+
+    // While the rollup is lagging, counters after the watermark are written to the rollup resolution directly too
+    cube.setRollupLagging(res100, true);
+    writeInc(cube, "metric1", 260, 6, "1", "1");
+    writeInc(cube, "metric1", 350, 7, "1", "1");
+    verifyCountQuery(cube, 0, 400, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(),
+                                                     timeValues(0, 7, 100, 3, 200, 6, 300, 7))));
+
+    // Rolling up merges the counters left for the rollup with the ones written directly, without counting any twice
+    Assert.assertEquals(4, cube.rollup(res1, res100, 200, 400));
+    cube.setRollupLagging(res100, false);
+    verifyCountQuery(cube, 0, 400, res100, "metric1", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric1", new HashMap<String, String>(),
+                                                     timeValues(0, 7, 100, 3, 200, 11, 300, 7))));
+    verifyCountQuery(cube, 0, 400, res100, "metric2", AggregationFunction.LATEST,
+                     ImmutableMap.of("dim1", "1"), new ArrayList<String>(),
+                     ImmutableList.of(new TimeSeries("metric2", new HashMap<String, String>(), timeValues(0, 8))));
+  }
+
+  private DefaultCube getCube(final String name, int[] resolutions,
+                              Map<String, ? extends Aggregation> aggregations, Set<Integer> rollupResolutions) {
     FactTableSupplier supplier = new FactTableSupplier() {
       @Override
       public FactTable get(int resolution, int rollTime) {
@@ -46,6 +143,7 @@ public class DefaultCubeTest extends AbstractCubeTest {
       }
     };
 
-    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of());
+    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of(),
+                           rollupResolutions);
   }
 }
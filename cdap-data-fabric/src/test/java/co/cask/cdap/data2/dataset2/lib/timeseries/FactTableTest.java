@@ -22,6 +22,7 @@ import co.cask.cdap.api.dataset.lib.cube.Measurement;
 import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
 import com.google.common.collect.HashBasedTable;
@@ -510,6 +511,57 @@ public class FactTableTest {
     }
   }
 
+  @Test
+  public void testWriteCoalescing() throws Exception {
+    InMemoryTableService.create("CoalesceEntityTable");
+    InMemoryTableService.create("CoalesceDataTable");
+    int resolution = 10;
+    int rollTimebaseInterval = 2;
+
+    FactTable table = new FactTable(new InMemoryMetricsTable("CoalesceDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("CoalesceEntityTable")),
+                                    resolution, rollTimebaseInterval);
+    final Map<String, Long> metrics = Maps.newHashMap();
+    table.setMetricsCollector(new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        metrics.merge(metricName, value, Long::sum);
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        metrics.put(metricName, value);
+      }
+    });
+
+    long ts = ((System.currentTimeMillis() / 1000) / resolution) * resolution;
+    List<DimensionValue> dimensionValues = dimValues("dim1", "value1");
+
+    // 100 counter and 100 gauge measurements, falling into two time buckets
+    List<Fact> facts = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      long factTs = ts + (i % 2) * resolution + i % resolution;
+      facts.add(new Fact(factTs, dimensionValues, ImmutableList.of(new Measurement("counter", MeasureType.COUNTER, i),
+                                                                   new Measurement("gauge", MeasureType.GAUGE, i))));
+    }
+    table.add(facts);
+
+    // Measurements should be coalesced into 4 cells
+    Assert.assertEquals(Long.valueOf(200), metrics.get("factTable." + resolution + ".measurement.count"));
+    Assert.assertEquals(Long.valueOf(4), metrics.get("factTable." + resolution + ".cell.count"));
+
+    // Counters are summed up and the last gauge value wins
+    Table<String, List<DimensionValue>, List<TimeValue>> expected = HashBasedTable.create();
+    expected.put("counter", dimensionValues, ImmutableList.of(new TimeValue(ts, 2450),
+                                                              new TimeValue(ts + resolution, 2500)));
+    assertScan(table, expected, new FactScan(ts, ts + resolution, "counter", dimensionValues));
+
+    expected.clear();
+    expected.put("gauge", dimensionValues, ImmutableList.of(new TimeValue(ts, 98),
+                                                            new TimeValue(ts + resolution, 99)));
+    assertScan(table, expected, new FactScan(ts, ts + resolution, "gauge", dimensionValues));
+  }
+
   @Test
   public void testPreSplits() throws Exception {
     InMemoryTableService.create("presplitEntityTable");
@@ -1059,6 +1059,47 @@ public class MetadataDatasetTest {
     Assert.assertEquals(expected, new HashSet<>(results.getResults()));
   }
 
+  @Test
+  public void testSearchScores() throws Exception {
+    MetadataDataset dataset =
+      getDataset(DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("searchScores"), MetadataScope.USER);
+    TransactionExecutor txnl = dsFrameworkUtil.newInMemoryTransactionExecutor((TransactionAware) dataset);
+
+    MetadataEntity hiddenDataset = new DatasetId("ns1", "_hidden").toMetadataEntity();
+    MetadataEntity systemDataset = new DatasetId(NamespaceId.SYSTEM.getNamespace(), "sysds").toMetadataEntity();
+    txnl.execute(() -> {
+      dataset.addTags(app1, "alpha", "beta");
+      dataset.setProperty(app1, "key", "alpha");
+      dataset.addTags(dataset1, "alpha");
+      dataset.setProperty(stream1, "key", "betamax");
+      dataset.setProperty(view1, "key", "gamma");
+      dataset.addTags(hiddenDataset, "alpha");
+      dataset.addTags(systemDataset, "alpha");
+    });
+
+    SearchRequest request = new SearchRequest(new NamespaceId("ns1"), "alpha beta*",
+                                              EnumSet.allOf(EntityTypeSimpleName.class), SortInfo.DEFAULT, 0, 10, 0,
+                                              null, false, EnumSet.allOf(EntityScope.class));
+    Map<MetadataEntity, Integer> scores = txnl.execute(() -> dataset.searchScores(request));
+    Assert.assertEquals(ImmutableSet.of(app1, dataset1, stream1, systemDataset), scores.keySet());
+    Assert.assertTrue(scores.get(app1) > scores.get(dataset1));
+
+    // The scores are the number of search results of each entity
+    List<MetadataEntry> results = txnl.execute(() -> dataset.search(request)).getResults();
+    Map<MetadataEntity, Integer> expected = new HashMap<>();
+    for (MetadataEntry entry : results) {
+      expected.merge(entry.getMetadataEntity(), 1, Integer::sum);
+    }
+    Assert.assertEquals(expected, scores);
+
+    // Entity type filter and hidden entities
+    SearchRequest datasetRequest = new SearchRequest(new NamespaceId("ns1"), "alpha",
+                                                     EnumSet.of(EntityTypeSimpleName.DATASET), SortInfo.DEFAULT,
+                                                     0, 10, 0, null, true, EnumSet.of(EntityScope.USER));
+    scores = txnl.execute(() -> dataset.searchScores(datasetRequest));
+    Assert.assertEquals(ImmutableSet.of(dataset1, hiddenDataset), scores.keySet());
+  }
+
   @Test
   public void testCrossNamespaceSearchPagination() throws Exception {
     MetadataDataset dataset =
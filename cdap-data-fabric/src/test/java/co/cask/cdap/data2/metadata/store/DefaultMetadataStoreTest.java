@@ -566,6 +566,37 @@ public class DefaultMetadataStoreTest {
     );
   }
 
+  @Test
+  public void testSearchPaginationWithTies() {
+    NamespaceId nsId = new NamespaceId("tiens");
+    List<MetadataEntity> entities = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      MetadataEntity entity = nsId.dataset("ds" + i).toMetadataEntity();
+      store.addTags(MetadataScope.USER, entity, Collections.singleton("tie"));
+      entities.add(entity);
+    }
+    // one entity with a higher score, which should always be ranked first
+    store.addTags(MetadataScope.USER, entities.get(3), Collections.singleton("tie2"));
+
+    List<MetadataSearchResultRecordV2> all =
+      ImmutableList.copyOf(stripMetadata(search(nsId.getNamespace(), "tie*").getResults()));
+    Assert.assertEquals(6, all.size());
+    Assert.assertEquals(new MetadataSearchResultRecordV2(entities.get(3)), all.get(0));
+
+    // every page should be the corresponding slice of all results, regardless of the offset and limit
+    for (int limit = 1; limit <= 4; limit++) {
+      List<MetadataSearchResultRecordV2> paged = new ArrayList<>();
+      for (int offset = 0; offset < all.size(); offset += limit) {
+        MetadataSearchResponseV2 response = search(nsId.getNamespace(), "tie*", offset, limit, 0);
+        Assert.assertEquals(6, response.getTotal());
+        List<MetadataSearchResultRecordV2> page = ImmutableList.copyOf(stripMetadata(response.getResults()));
+        Assert.assertEquals(all.subList(offset, Math.min(offset + limit, all.size())), page);
+        paged.addAll(page);
+      }
+      Assert.assertEquals(all, paged);
+    }
+  }
+
   @AfterClass
   public static void teardown() {
     txManager.stopAndWait();
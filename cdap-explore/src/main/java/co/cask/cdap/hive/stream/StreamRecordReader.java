@@ -140,8 +140,8 @@ final class StreamRecordReader implements RecordReader<Void, ObjectWritable> {
    */
   private StreamDataFileReader createReader(FileSystem fs, StreamInputSplit inputSplit) throws IOException {
     StreamDataFileReader reader = StreamDataFileReader.createWithOffset(
-      Locations.newInputSupplier(fs, inputSplit.getEventPath()),
-      inputSplit.getIndexPath() == null ? null : Locations.newInputSupplier(fs, inputSplit.getIndexPath()),
+      Locations.newMappedInputSupplier(fs, inputSplit.getEventPath()),
+      inputSplit.getIndexPath() == null ? null : Locations.newMappedInputSupplier(fs, inputSplit.getIndexPath()),
       inputSplit.getStart());
     try {
       reader.initialize();
@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.discovery;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.apache.twill.discovery.Discoverable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the load of each endpoint that the router forwards requests to, which is used by the
+ * {@link LoadAwareEndpointStrategy} for picking endpoints.
+ *
+ * The load of an endpoint is given by the number of in-flight requests and the peak EWMA (exponentially weighted
+ * moving average) of the response latency. An endpoint is ejected for a period of time after a number of
+ * consecutive failed requests. After the ejection period, the endpoint receives requests again, and a single
+ * failure ejects it again until a request succeeds.
+ */
+public final class EndpointLoadTracker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EndpointLoadTracker.class);
+
+  // Time constant of the latency decay, so that an endpoint that stops receiving requests gets retried
+  private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final int failureThreshold;
+  private final long ejectionNanos;
+  private final LoadingCache<Discoverable, EndpointLoad> loads;
+
+  public EndpointLoadTracker(CConfiguration cConf) {
+    this(cConf.getInt(Constants.Router.ENDPOINT_FAILURE_THRESHOLD),
+         TimeUnit.SECONDS.toNanos(cConf.getLong(Constants.Router.ENDPOINT_EJECTION_SECS)));
+  }
+
+  EndpointLoadTracker(int failureThreshold, long ejectionNanos) {
+    this.failureThreshold = failureThreshold;
+    this.ejectionNanos = ejectionNanos;
+    this.loads = CacheBuilder.newBuilder()
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .build(new CacheLoader<Discoverable, EndpointLoad>() {
+        @Override
+        public EndpointLoad load(Discoverable discoverable) {
+          return new EndpointLoad(discoverable);
+        }
+      });
+  }
+
+  /**
+   * Returns the {@link EndpointLoad} of the given endpoint.
+   */
+  public EndpointLoad get(Discoverable discoverable) {
+    return loads.getUnchecked(discoverable);
+  }
+
+  /**
+   * The load and health of a single endpoint.
+   */
+  public final class EndpointLoad {
+
+    private final Discoverable discoverable;
+    private final AtomicInteger inFlight;
+    private double latencyNanos;
+    private long lastUpdateNanos;
+    private int consecutiveFailures;
+    private long ejectedUntilNanos;
+
+    private EndpointLoad(Discoverable discoverable) {
+      this.discoverable = discoverable;
+      this.inFlight = new AtomicInteger();
+      this.lastUpdateNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the endpoint.
+     */
+    public Discoverable getDiscoverable() {
+      return discoverable;
+    }
+
+    /**
+     * Records the start of a request to the endpoint.
+     *
+     * @return the start time of the request, which should be passed to {@link #requestCompleted(long, boolean)}
+     */
+    public long requestStarted() {
+      inFlight.incrementAndGet();
+      return System.nanoTime();
+    }
+
+    /**
+     * Records the completion of a request to the endpoint.
+     *
+     * @param startNanos the start time of the request as returned by {@link #requestStarted()}
+     * @param success {@code true} if the request succeeded
+     */
+    public void requestCompleted(long startNanos, boolean success) {
+      inFlight.decrementAndGet();
+      long now = System.nanoTime();
+      synchronized (this) {
+        updateLatency(now, now - startNanos);
+        updateHealth(now, success);
+      }
+    }
+
+    /**
+     * Records a request to the endpoint that was abandoned by the router, e.g. when the client disconnected.
+     * It neither counts as a success nor a failure of the endpoint.
+     *
+     * @param startNanos the start time of the request as returned by {@link #requestStarted()}
+     */
+    public void requestCancelled(long startNanos) {
+      inFlight.decrementAndGet();
+    }
+
+    /**
+     * Records a failure to connect to the endpoint.
+     */
+    public synchronized void connectFailed() {
+      updateHealth(System.nanoTime(), false);
+    }
+
+    /**
+     * Returns {@code true} if the endpoint is not ejected.
+     */
+    public synchronized boolean isAvailable() {
+      return consecutiveFailures < failureThreshold || System.nanoTime() - ejectedUntilNanos >= 0;
+    }
+
+    /**
+     * Returns the number of in-flight requests to the endpoint.
+     */
+    public int getInFlight() {
+      return inFlight.get();
+    }
+
+    /**
+     * Returns the cost of sending one more request to the endpoint, which is the decayed latency weighted by the
+     * number of in-flight requests. An endpoint without latency sample has the lowest cost, so that it gets probed.
+     */
+    public double getCost() {
+      double latency;
+      synchronized (this) {
+        latency = latencyNanos * Math.exp(-(double) (System.nanoTime() - lastUpdateNanos) / DECAY_NANOS);
+      }
+      return (latency + 1) * (inFlight.get() + 1);
+    }
+
+    private void updateLatency(long now, long sampleNanos) {
+      if (sampleNanos > latencyNanos) {
+        // Peak sensitive, so that a slowdown is reflected immediately
+        latencyNanos = sampleNanos;
+      } else {
+        // The older the current value, the less weight it has
+        double weight = Math.exp(-(double) (now - lastUpdateNanos) / DECAY_NANOS);
+        latencyNanos = latencyNanos * weight + sampleNanos * (1 - weight);
+      }
+      lastUpdateNanos = now;
+    }
+
+    private void updateHealth(long now, boolean success) {
+      if (success) {
+        consecutiveFailures = 0;
+        return;
+      }
+      if (++consecutiveFailures >= failureThreshold) {
+        ejectedUntilNanos = now + ejectionNanos;
+        LOG.debug("Ejecting endpoint {} for {} seconds after {} consecutive failures", discoverable,
+                  TimeUnit.NANOSECONDS.toSeconds(ejectionNanos), consecutiveFailures);
+      }
+    }
+  }
+}
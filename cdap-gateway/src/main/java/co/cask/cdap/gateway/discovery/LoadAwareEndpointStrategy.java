@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.discovery;
+
+import co.cask.cdap.common.discovery.AbstractEndpointStrategy;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.ServiceDiscovered;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+
+/**
+ * Picks an endpoint based on the load tracked by the {@link EndpointLoadTracker}, using the power of two choices.
+ * Two endpoints are sampled randomly from the available ones and the one with lower cost is picked.
+ * Endpoints ejected by the tracker are skipped, unless all endpoints are ejected.
+ */
+public class LoadAwareEndpointStrategy extends AbstractEndpointStrategy {
+
+  private final EndpointLoadTracker loadTracker;
+
+  public LoadAwareEndpointStrategy(ServiceDiscovered serviceDiscovered, EndpointLoadTracker loadTracker) {
+    super(serviceDiscovered);
+    this.loadTracker = loadTracker;
+  }
+
+  @Nullable
+  @Override
+  public Discoverable pick() {
+    List<Discoverable> all = new ArrayList<>();
+    List<Discoverable> available = new ArrayList<>();
+    for (Discoverable discoverable : serviceDiscovered) {
+      all.add(discoverable);
+      if (loadTracker.get(discoverable).isAvailable()) {
+        available.add(discoverable);
+      }
+    }
+
+    // If all endpoints are ejected, still pick from all of them instead of failing the request
+    List<Discoverable> candidates = available.isEmpty() ? all : available;
+    if (candidates.size() <= 1) {
+      return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(candidates.size());
+    // Pick the second one from the rest of the candidates
+    int second = (first + 1 + random.nextInt(candidates.size() - 1)) % candidates.size();
+
+    Discoverable a = candidates.get(first);
+    Discoverable b = candidates.get(second);
+    return loadTracker.get(a).getCost() <= loadTracker.get(b).getCost() ? a : b;
+  }
+}
@@ -23,6 +23,7 @@ import co.cask.cdap.common.conf.SConfiguration;
 import co.cask.cdap.gateway.router.handlers.AuditLogHandler;
 import co.cask.cdap.gateway.router.handlers.AuthenticationHandler;
 import co.cask.cdap.gateway.router.handlers.HttpRequestRouter;
+import co.cask.cdap.gateway.router.handlers.OutboundChannelPool;
 import co.cask.cdap.gateway.router.handlers.HttpStatusRequestHandler;
 import co.cask.cdap.security.auth.AccessTokenTransformer;
 import co.cask.cdap.security.auth.TokenValidator;
@@ -83,6 +84,7 @@ public class NettyRouter extends AbstractIdleService {
   private final CConfiguration cConf;
   private final boolean sslEnabled;
   private final SSLHandlerFactory sslHandlerFactory;
+  private final OutboundChannelPool outboundChannelPool;
   private InetSocketAddress boundAddress;
 
   private DiscoveryServiceClient discoveryServiceClient;
@@ -104,6 +106,7 @@ public class NettyRouter extends AbstractIdleService {
     this.accessTokenTransformer = accessTokenTransformer;
     this.discoveryServiceClient = discoveryServiceClient;
     this.sslEnabled = cConf.getBoolean(Constants.Security.SSL.EXTERNAL_ENABLED);
+    this.outboundChannelPool = new OutboundChannelPool(cConf, serviceLookup.getLoadTracker());
     if (sslEnabled) {
       this.port = cConf.getInt(Constants.Router.ROUTER_SSL_PORT);
       File keystore;
@@ -148,7 +151,7 @@ public class NettyRouter extends AbstractIdleService {
     serverCancellable.cancel();
     tokenValidator.stopAndWait();
 
-    LOG.info("Stopped Netty Router.");
+    LOG.info("Stopped Netty Router. Outbound connection pool statistics: {}", outboundChannelPool);
   }
 
   /** @noinspection NullableProblems */
@@ -195,7 +198,7 @@ public class NettyRouter extends AbstractIdleService {
           // Always let the client to continue sending the request body after the authentication passed
           pipeline.addLast("expect-continue", new HttpServerExpectContinueHandler());
           // for now there's only one hardcoded rule, but if there will be more, we may want it generic and configurable
-          pipeline.addLast("http-request-handler", new HttpRequestRouter(cConf, serviceLookup));
+          pipeline.addLast("http-request-handler", new HttpRequestRouter(serviceLookup, outboundChannelPool));
         }
       });
   }
@@ -19,8 +19,9 @@ package co.cask.cdap.gateway.router;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
-import co.cask.cdap.common.discovery.RandomEndpointStrategy;
 import co.cask.cdap.common.service.ServiceDiscoverable;
+import co.cask.cdap.gateway.discovery.EndpointLoadTracker;
+import co.cask.cdap.gateway.discovery.LoadAwareEndpointStrategy;
 import co.cask.cdap.gateway.discovery.RouteFallbackStrategy;
 import co.cask.cdap.gateway.discovery.UserServiceEndpointStrategy;
 import co.cask.cdap.route.store.RouteStore;
@@ -51,6 +52,7 @@ public class RouterServiceLookup {
   private final RouterPathLookup routerPathLookup;
   private final RouteStore routeStore;
   private final RouteFallbackStrategy fallbackStrategy;
+  private final EndpointLoadTracker loadTracker;
 
   @Inject
   RouterServiceLookup(CConfiguration cConf, DiscoveryServiceClient discoveryServiceClient,
@@ -68,6 +70,14 @@ public class RouterServiceLookup {
     this.routeStore = routeStore;
     this.fallbackStrategy = RouteFallbackStrategy.valueOfRouteFallbackStrategy(
       cConf.get(Constants.Router.ROUTER_USERSERVICE_FALLBACK_STRAGEY));
+    this.loadTracker = new EndpointLoadTracker(cConf);
+  }
+
+  /**
+   * Returns the {@link EndpointLoadTracker} for recording the load of endpoints returned by this class.
+   */
+  public EndpointLoadTracker getLoadTracker() {
+    return loadTracker;
   }
 
   /**
@@ -111,14 +121,15 @@ public class RouterServiceLookup {
 
   private EndpointStrategy discover(RouteDestination routeDestination) {
     LOG.debug("Looking up service name {}", routeDestination);
-    // If its a user service, then use UserServiceEndpointStrategy Strategy
+    // If its a user service, then use UserServiceEndpointStrategy Strategy.
+    // Otherwise pick the endpoint based on the load of the endpoints.
     String serviceName = routeDestination.getServiceName();
     ServiceDiscovered serviceDiscovered = discoveryServiceClient.discover(serviceName);
 
     EndpointStrategy endpointStrategy = ServiceDiscoverable.isUserService(serviceName) ?
       new UserServiceEndpointStrategy(serviceDiscovered, routeStore, ServiceDiscoverable.getId(serviceName),
                                       fallbackStrategy, routeDestination.getVersion()) :
-      new RandomEndpointStrategy(serviceDiscovered);
+      new LoadAwareEndpointStrategy(serviceDiscovered, loadTracker);
     if (endpointStrategy.pick(300L, TimeUnit.MILLISECONDS) == null) {
       LOG.debug("Discoverable endpoint {} not found", routeDestination);
     }
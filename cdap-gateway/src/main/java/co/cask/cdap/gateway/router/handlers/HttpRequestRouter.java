@@ -17,39 +17,29 @@
 package co.cask.cdap.gateway.router.handlers;
 
 import co.cask.cdap.common.HandlerException;
-import co.cask.cdap.common.conf.CConfiguration;
-import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
 import co.cask.cdap.common.http.Channels;
 import co.cask.cdap.gateway.router.RouterServiceLookup;
-import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.ByteBufAllocator;
+import com.google.common.collect.ImmutableSet;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandler;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
-import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.ReferenceCountUtil;
 import org.apache.twill.discovery.Discoverable;
 import org.slf4j.Logger;
@@ -59,13 +49,9 @@ import java.io.Closeable;
 import java.io.Flushable;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
-import javax.annotation.Nullable;
-import javax.net.ssl.SSLException;
+import java.util.Set;
 
 /**
  * A {@link ChannelInboundHandler} for forwarding incoming request to appropriate CDAP service endpoint
@@ -75,19 +61,18 @@ import javax.net.ssl.SSLException;
 public class HttpRequestRouter extends ChannelDuplexHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpRequestRouter.class);
-  private static final byte[] HTTPS_SCHEME_BYTES = Constants.Security.SSL_URI_SCHEME.getBytes();
+  private static final Set<HttpMethod> IDEMPOTENT_METHODS = ImmutableSet.of(
+    HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.TRACE);
 
-  private final CConfiguration cConf;
   private final RouterServiceLookup serviceLookup;
-  private final Map<Discoverable, Queue<MessageSender>> messageSenders;
+  private final OutboundChannelPool channelPool;
   private int inflightRequests;
   private MessageSender currentMessageSender;
   private ChannelFutureListener failureResponseListener;
 
-  public HttpRequestRouter(CConfiguration cConf, RouterServiceLookup serviceLookup) {
-    this.cConf = cConf;
+  public HttpRequestRouter(RouterServiceLookup serviceLookup, OutboundChannelPool channelPool) {
     this.serviceLookup = serviceLookup;
-    this.messageSenders = new HashMap<>();
+    this.channelPool = channelPool;
   }
 
   @Override
@@ -119,9 +104,7 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
           }
         };
         HttpRequest request = (HttpRequest) msg;
-        currentMessageSender = getMessageSender(
-          inboundChannel, getDiscoverable(request)
-        );
+        currentMessageSender = new MessageSender(channelPool, inboundChannel, getDiscoverable(request));
       }
 
       if (inflightRequests == 1 && currentMessageSender != null) {
@@ -152,9 +135,10 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
       }
       inflightRequests = 0;
 
-      // Recycle the message sender
+      // Release the outbound channel back to the pool
       if (currentMessageSender != null) {
-        messageSenders.get(currentMessageSender.getDiscoverable()).add(currentMessageSender);
+        currentMessageSender.release();
+        currentMessageSender = null;
       }
     }
   }
@@ -173,11 +157,6 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
     if (currentMessageSender != null) {
       currentMessageSender.close();
     }
-    for (Map.Entry<Discoverable, Queue<MessageSender>> entry : messageSenders.entrySet()) {
-      for (MessageSender sender : entry.getValue()) {
-        sender.close();
-      }
-    }
     ctx.fireChannelInactive();
   }
 
@@ -214,28 +193,6 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
     return discoverable;
   }
 
-  /**
-   * Returns the {@link MessageSender} for writing messages to the endpoint represented by the given
-   * {@link Discoverable}.
-   */
-  private MessageSender getMessageSender(Channel inboundChannel,
-                                         Discoverable discoverable) {
-    Queue<MessageSender> senders = messageSenders.computeIfAbsent(discoverable, k -> new LinkedList<>());
-
-    MessageSender sender = senders.poll();
-
-    // Found a MessageSender to reuse, return it
-    if (sender != null) {
-      LOG.trace("Reuse message sender for {}", discoverable);
-      return sender;
-    }
-
-    // Create new MessageSender
-    sender = new MessageSender(cConf, inboundChannel, discoverable);
-    LOG.trace("Create new message sender for {}", discoverable);
-    return sender;
-  }
-
   private String getRequestLine(HttpRequest request) {
     return request.method() + " " + request.uri() + " " + request.protocolVersion();
   }
@@ -259,54 +216,34 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
 
   /**
    * For sending messages to outbound channel while maintaining the order of messages according to
-   * the order that {@link #send(Object, ChannelFutureListener)} method is called.
+   * the order that {@link #send(Object, ChannelFutureListener)} method is called. The outbound channel is
+   * acquired from the {@link OutboundChannelPool} on the first message and is released back to the pool
+   * when the response is completed.
+   *
+   * If a pooled outbound channel is closed by the endpoint before any response is received, an idempotent
+   * request without body is retried once on a new connection, instead of failing the request.
    */
   private static final class MessageSender implements Flushable, Closeable {
 
+    private final OutboundChannelPool channelPool;
+    private final Channel inboundChannel;
     private final Discoverable discoverable;
     private final Queue<OutboundMessage> pendingMessages;
-    private final Bootstrap clientBootstrap;
-    private volatile SslContext sslContext;
+    private final ChannelFutureListener retryListener;
     private Channel outboundChannel;
     private boolean closed;
     private boolean connecting;
-
-    private MessageSender(final CConfiguration cConf, final Channel inboundChannel, final Discoverable discoverable) {
+    private HttpRequest retryRequest;
+    private ChannelFutureListener requestListener;
+    private ChannelFutureListener lastContentListener;
+    private Channel abandonedChannel;
+
+    private MessageSender(OutboundChannelPool channelPool, Channel inboundChannel, Discoverable discoverable) {
+      this.channelPool = channelPool;
+      this.inboundChannel = inboundChannel;
       this.discoverable = discoverable;
       this.pendingMessages = new LinkedList<>();
-
-      // A channel listener for resetting the state of this message sender on closing of outbound channel
-      final ChannelFutureListener onCloseResetListener = new ChannelFutureListener() {
-        @Override
-        public void operationComplete(ChannelFuture future) {
-          outboundChannel = null;
-          connecting = false;
-        }
-      };
-
-      // Create a client Bootstrap for connecting to internal services
-      // It must be create using the same EventLoopGroup as the inbound channel to make
-      // sure thread safety between the inbound and outbound channels callbacks.
-      this.clientBootstrap = new Bootstrap()
-        .group(inboundChannel.eventLoop())
-        .channel(NioSocketChannel.class)
-        .option(ChannelOption.SO_KEEPALIVE, true)
-        .handler(new ChannelInitializer<SocketChannel>() {
-          @Override
-          protected void initChannel(SocketChannel ch) throws Exception {
-            ch.closeFuture().addListener(onCloseResetListener);
-            ChannelPipeline pipeline = ch.pipeline();
-
-            SslHandler sslHandler = getSslHandler(discoverable, ch.alloc());
-            if (sslHandler != null) {
-              pipeline.addLast("ssl", sslHandler);
-            }
-            pipeline.addLast("idle-state-handler",
-                             new IdleStateHandler(0, 0, cConf.getInt(Constants.Router.CONNECTION_TIMEOUT_SECS)));
-            pipeline.addLast("codec", new HttpClientCodec());
-            pipeline.addLast("forwarder", new OutboundHandler(inboundChannel));
-          }
-        });
+      this.retryListener = future -> retry(future.channel());
     }
 
     /**
@@ -316,6 +253,7 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
      * @param writeCompletedListener a {@link ChannelFutureListener} to be notified when the write completed
      */
     void send(Object msg, ChannelFutureListener writeCompletedListener) {
+      writeCompletedListener = prepareRetry(msg, writeCompletedListener);
       if (outboundChannel != null) {
         outboundChannel.write(msg).addListener(writeCompletedListener);
         return;
@@ -329,8 +267,14 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
         return;
       }
 
-      // Make a new connection
-      ChannelFuture connectFuture = clientBootstrap.connect(discoverable.getSocketAddress());
+      // Acquire a pooled channel or make a new connection
+      connect(channelPool.acquire(inboundChannel, discoverable));
+    }
+
+    /**
+     * Sends all pending messages to the outbound channel once the given connect future completed.
+     */
+    private void connect(ChannelFuture connectFuture) {
       connectFuture.addListener(new ChannelFutureListener() {
         @Override
         public void operationComplete(ChannelFuture future) throws Exception {
@@ -343,6 +287,8 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
             // If this sender is closed (because inbound channel is closed), just close the outbound channel
             if (closed) {
               Channels.closeOnFlush(outboundChannel);
+            } else if (retryRequest != null && abandonedChannel == null) {
+              outboundChannel.closeFuture().addListener(retryListener);
             }
           }
           OutboundMessage message = pendingMessages.poll();
@@ -371,38 +317,89 @@ public class HttpRequestRouter extends ChannelDuplexHandler {
       if (!closed) {
         closed = true;
         if (outboundChannel != null) {
+          outboundChannel.closeFuture().removeListener(retryListener);
           Channels.closeOnFlush(outboundChannel);
         }
       }
     }
 
-    Discoverable getDiscoverable() {
-      return discoverable;
+    /**
+     * Releases the outbound channel back to the {@link OutboundChannelPool} after the response is completed.
+     * No more message can be sent through this sender afterward.
+     */
+    void release() {
+      if (!closed) {
+        closed = true;
+        if (outboundChannel != null) {
+          outboundChannel.closeFuture().removeListener(retryListener);
+          channelPool.release(outboundChannel, discoverable);
+        }
+      }
     }
 
     /**
-     * Returns the {@link SslContext} to be used for a given discoverable endpoint
+     * Remembers the request for retrying if it is idempotent and has no body.
      *
-     * @param discoverable the endpoint to connect to
-     * @return the {@link SslContext} or {@code null} if SSL is not needed
+     * @return the {@link ChannelFutureListener} to use for writing the message, which ignores write failures
+     *         of the outbound channel abandoned by the retry
      */
-    @Nullable
-    private SslHandler getSslHandler(Discoverable discoverable, ByteBufAllocator alloc) throws SSLException {
-      if (!Arrays.equals(HTTPS_SCHEME_BYTES, discoverable.getPayload())) {
-        return null;
+    private ChannelFutureListener prepareRetry(Object msg, final ChannelFutureListener writeCompletedListener) {
+      if (msg instanceof HttpRequest) {
+        HttpRequest request = (HttpRequest) msg;
+        retryRequest = null;
+        if (IDEMPOTENT_METHODS.contains(request.method())) {
+          // A full request is released after written, hence only a copy without the (empty) content can be retried
+          retryRequest = request instanceof FullHttpRequest
+            ? new DefaultHttpRequest(request.protocolVersion(), request.method(),
+                                     request.uri(), request.headers().copy())
+            : request;
+        }
+      }
+      if (retryRequest == null) {
+        return writeCompletedListener;
       }
-      SslContext context = sslContext;
-      if (context != null) {
-        return context.newHandler(alloc);
+      if ((msg instanceof HttpContent && ((HttpContent) msg).content().isReadable()) ||
+        (msg instanceof LastHttpContent && !((LastHttpContent) msg).trailingHeaders().isEmpty())) {
+        retryRequest = null;
+        return writeCompletedListener;
       }
-      synchronized (this) {
-        context = sslContext;
-        if (context == null) {
-          sslContext = context = SslContextBuilder.forClient()
-                                                  .trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+
+      ChannelFutureListener listener = future -> {
+        if (future.isSuccess() || future.channel() != abandonedChannel) {
+          writeCompletedListener.operationComplete(future);
         }
-        return context.newHandler(alloc);
+      };
+      if (msg instanceof HttpRequest) {
+        requestListener = listener;
+      }
+      if (msg instanceof LastHttpContent) {
+        lastContentListener = listener;
+      }
+      return listener;
+    }
+
+    /**
+     * Retries the request on a new connection when the given outbound channel was closed by the endpoint.
+     * It happens when the endpoint closes a pooled keep-alive connection at the same time as the router reuses it.
+     */
+    private void retry(Channel channel) {
+      // Only retry once, after the whole request was sent
+      if (closed || channel != outboundChannel || abandonedChannel != null ||
+        retryRequest == null || lastContentListener == null) {
+        return;
       }
+      OutboundHandler handler = channel.pipeline().get(OutboundHandler.class);
+      if (handler == null || !handler.detachForRetry()) {
+        return;
+      }
+
+      LOG.debug("Outbound channel {} closed before response, retrying {} {} on a new connection to {}",
+                channel, retryRequest.method(), retryRequest.uri(), discoverable.getSocketAddress());
+      abandonedChannel = channel;
+      outboundChannel = null;
+      pendingMessages.add(new OutboundMessage(retryRequest, requestListener));
+      pendingMessages.add(new OutboundMessage(LastHttpContent.EMPTY_LAST_CONTENT, lastContentListener));
+      connect(channelPool.connect(inboundChannel, discoverable));
     }
 
     /**
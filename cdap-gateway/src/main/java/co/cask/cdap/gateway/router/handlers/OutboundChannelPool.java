@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router.handlers;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.gateway.discovery.EndpointLoadTracker;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.apache.twill.discovery.Discoverable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLException;
+
+/**
+ * A pool of keep-alive outbound {@link Channel}s from the router to the internal service endpoints, shared by all
+ * inbound channels of the router.
+ *
+ * Outbound channels are only handed out to inbound channels of the same {@link EventLoop} that they were created
+ * with, so that callbacks of the inbound and outbound channels are always executed by the same thread. The number
+ * of idle channels kept for each endpoint is bounded. Idle channels are evicted from the pool when they are closed,
+ * either by the endpoint or by the idle timeout. The idle timeout is the smaller of
+ * {@link Constants.Router#CONNECTION_TIMEOUT_SECS} and {@link Constants.Router#CLIENT_POOL_IDLE_TIMEOUT_SECS}, which
+ * should be lower than the keep-alive timeout of the endpoints, so that a pooled channel is rarely reused at the
+ * moment the endpoint closes it.
+ *
+ * Except for {@link #toString()} and the statistics methods, methods of this class must be called from the
+ * {@link EventLoop} thread of the given channel.
+ */
+public final class OutboundChannelPool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OutboundChannelPool.class);
+  private static final byte[] HTTPS_SCHEME_BYTES = Constants.Security.SSL_URI_SCHEME.getBytes();
+
+  private final EndpointLoadTracker loadTracker;
+  private final int connectionIdleTimeout;
+  private final int maxIdlePerEndpoint;
+  // Idle channels for each event loop. The inner map is only accessed from the event loop thread.
+  private final ConcurrentMap<EventLoop, Map<Discoverable, Deque<Channel>>> idleChannels;
+  // Number of idle channels for each endpoint across all event loops
+  private final ConcurrentMap<Discoverable, Integer> idleCounts;
+  private final AtomicLong created;
+  private final AtomicLong reused;
+  private final AtomicLong evicted;
+  private final AtomicLong discarded;
+  private volatile SslContext sslContext;
+
+  public OutboundChannelPool(CConfiguration cConf, EndpointLoadTracker loadTracker) {
+    this.loadTracker = loadTracker;
+    this.connectionIdleTimeout = Math.min(cConf.getInt(Constants.Router.CONNECTION_TIMEOUT_SECS),
+                                          cConf.getInt(Constants.Router.CLIENT_POOL_IDLE_TIMEOUT_SECS));
+    this.maxIdlePerEndpoint = cConf.getInt(Constants.Router.CLIENT_POOL_MAX_IDLE_CONNECTIONS);
+    this.idleChannels = new ConcurrentHashMap<>();
+    this.idleCounts = new ConcurrentHashMap<>();
+    this.created = new AtomicLong();
+    this.reused = new AtomicLong();
+    this.evicted = new AtomicLong();
+    this.discarded = new AtomicLong();
+  }
+
+  /**
+   * Acquires an outbound channel to the given endpoint for forwarding messages from the given inbound channel.
+   * An idle channel in the pool is reused if there is one, otherwise a new connection is made.
+   *
+   * @param inboundChannel the inbound channel that responses from the endpoint are forwarded to
+   * @param discoverable the endpoint to connect to
+   * @return a {@link ChannelFuture} that completes when the outbound channel is connected
+   */
+  ChannelFuture acquire(Channel inboundChannel, Discoverable discoverable) {
+    Deque<Channel> channels = getIdleChannels(inboundChannel.eventLoop()).get(discoverable);
+    Channel channel = channels == null ? null : channels.pollLast();
+
+    // Reuse the most recently used channel, so that the least recently used ones can reach the idle timeout
+    while (channel != null) {
+      decrementIdleCount(discoverable);
+      if (channel.isActive()) {
+        channel.pipeline().get(OutboundHandler.class).setInboundChannel(inboundChannel);
+        reused.incrementAndGet();
+        LOG.trace("Reuse outbound channel {} for {}", channel, discoverable);
+        return channel.newSucceededFuture();
+      }
+      channel = channels.pollLast();
+    }
+    return connect(inboundChannel, discoverable);
+  }
+
+  /**
+   * Makes a new outbound connection to the given endpoint without reusing any idle channel in the pool.
+   *
+   * @param inboundChannel the inbound channel that responses from the endpoint are forwarded to
+   * @param discoverable the endpoint to connect to
+   * @return a {@link ChannelFuture} that completes when the outbound channel is connected
+   */
+  ChannelFuture connect(Channel inboundChannel, Discoverable discoverable) {
+    created.incrementAndGet();
+    LOG.trace("Create new outbound channel for {}", discoverable);
+    final EndpointLoadTracker.EndpointLoad endpointLoad = loadTracker.get(discoverable);
+    ChannelFuture connectFuture = createBootstrap(inboundChannel, endpointLoad)
+      .connect(discoverable.getSocketAddress());
+    connectFuture.addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) {
+        if (!future.isSuccess()) {
+          endpointLoad.connectFailed();
+        }
+      }
+    });
+    return connectFuture;
+  }
+
+  /**
+   * Releases an outbound channel acquired through {@link #acquire(Channel, Discoverable)}. The channel is returned
+   * to the pool if the last exchange on it completed with keep-alive, otherwise it is closed.
+   *
+   * @param channel the outbound channel to release
+   * @param discoverable the endpoint that the channel connects to
+   */
+  void release(Channel channel, Discoverable discoverable) {
+    OutboundHandler handler = channel.pipeline().get(OutboundHandler.class);
+    if (handler == null || !channel.isActive() || !handler.isReusable()) {
+      channel.close();
+      return;
+    }
+
+    handler.setInboundChannel(null);
+    if (idleCounts.merge(discoverable, 1, Integer::sum) > maxIdlePerEndpoint) {
+      decrementIdleCount(discoverable);
+      discarded.incrementAndGet();
+      channel.close();
+      return;
+    }
+    getIdleChannels(channel.eventLoop()).computeIfAbsent(discoverable, k -> new ArrayDeque<>()).addLast(channel);
+    LOG.trace("Release outbound channel {} for {} to the pool", channel, discoverable);
+  }
+
+  /**
+   * Returns the total number of outbound connections created.
+   */
+  public long getCreatedCount() {
+    return created.get();
+  }
+
+  /**
+   * Returns the number of times an idle outbound channel was reused.
+   */
+  public long getReusedCount() {
+    return reused.get();
+  }
+
+  /**
+   * Returns the number of idle outbound channels evicted from the pool because they were closed.
+   */
+  public long getEvictedCount() {
+    return evicted.get();
+  }
+
+  /**
+   * Returns the number of outbound channels closed on release because the pool of the endpoint was full.
+   */
+  public long getDiscardedCount() {
+    return discarded.get();
+  }
+
+  /**
+   * Returns the current number of idle outbound channels in the pool.
+   */
+  public int getIdleCount() {
+    int count = 0;
+    for (int idle : idleCounts.values()) {
+      count += idle;
+    }
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return "OutboundChannelPool{" +
+      "idle=" + getIdleCount() +
+      ", created=" + getCreatedCount() +
+      ", reused=" + getReusedCount() +
+      ", evicted=" + getEvictedCount() +
+      ", discarded=" + getDiscardedCount() +
+      '}';
+  }
+
+  private Map<Discoverable, Deque<Channel>> getIdleChannels(EventLoop eventLoop) {
+    return idleChannels.computeIfAbsent(eventLoop, k -> new HashMap<>());
+  }
+
+  private void decrementIdleCount(Discoverable discoverable) {
+    idleCounts.computeIfPresent(discoverable, (k, count) -> count == 1 ? null : count - 1);
+  }
+
+  /**
+   * Removes the given channel from the pool if it is idle.
+   */
+  private void evict(Channel channel, Discoverable discoverable) {
+    Map<Discoverable, Deque<Channel>> channels = getIdleChannels(channel.eventLoop());
+    Deque<Channel> deque = channels.get(discoverable);
+    if (deque == null || !deque.remove(channel)) {
+      return;
+    }
+    if (deque.isEmpty()) {
+      channels.remove(discoverable);
+    }
+    decrementIdleCount(discoverable);
+    evicted.incrementAndGet();
+    LOG.trace("Evicted closed outbound channel {} for {} from the pool", channel, discoverable);
+  }
+
+  /**
+   * Creates a client {@link Bootstrap} for connecting to the given endpoint. It must be created using the
+   * same {@link EventLoop} as the inbound channel to make sure thread safety between the inbound and outbound
+   * channels callbacks.
+   */
+  private Bootstrap createBootstrap(final Channel inboundChannel, final EndpointLoadTracker.EndpointLoad endpointLoad) {
+    final Discoverable discoverable = endpointLoad.getDiscoverable();
+    return new Bootstrap()
+      .group(inboundChannel.eventLoop())
+      .channel(NioSocketChannel.class)
+      .option(ChannelOption.SO_KEEPALIVE, true)
+      .handler(new ChannelInitializer<SocketChannel>() {
+        @Override
+        protected void initChannel(final SocketChannel ch) throws Exception {
+          ch.closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+              evict(ch, discoverable);
+            }
+          });
+          ChannelPipeline pipeline = ch.pipeline();
+
+          SslHandler sslHandler = getSslHandler(discoverable, ch.alloc());
+          if (sslHandler != null) {
+            pipeline.addLast("ssl", sslHandler);
+          }
+          pipeline.addLast("idle-state-handler", new IdleStateHandler(0, 0, connectionIdleTimeout));
+          pipeline.addLast("codec", new HttpClientCodec());
+          pipeline.addLast("forwarder", new OutboundHandler(inboundChannel, endpointLoad));
+        }
+      });
+  }
+
+  /**
+   * Returns the {@link SslHandler} to be used for a given discoverable endpoint
+   *
+   * @param discoverable the endpoint to connect to
+   * @return the {@link SslHandler} or {@code null} if SSL is not needed
+   */
+  @Nullable
+  private SslHandler getSslHandler(Discoverable discoverable, ByteBufAllocator alloc) throws SSLException {
+    if (!Arrays.equals(HTTPS_SCHEME_BYTES, discoverable.getPayload())) {
+      return null;
+    }
+    SslContext context = sslContext;
+    if (context != null) {
+      return context.newHandler(alloc);
+    }
+    synchronized (this) {
+      context = sslContext;
+      if (context == null) {
+        sslContext = context = SslContextBuilder.forClient()
+                                                .trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+      }
+      return context.newHandler(alloc);
+    }
+  }
+}
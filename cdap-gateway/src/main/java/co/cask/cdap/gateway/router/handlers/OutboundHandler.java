@@ -17,52 +17,115 @@
 package co.cask.cdap.gateway.router.handlers;
 
 import co.cask.cdap.common.http.Channels;
+import co.cask.cdap.gateway.discovery.EndpointLoadTracker;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 /**
  * A {@link ChannelDuplexHandler} for forwarding requests/responses between the router and the internal service.
  * It also handle idle state event for closing idled internal connections.
+ * The inbound channel is replaced when the outbound channel is reused through the {@link OutboundChannelPool}.
+ * The latency and outcome of each request are recorded to the {@link EndpointLoadTracker.EndpointLoad} of the
+ * internal service endpoint.
  */
 public class OutboundHandler extends ChannelDuplexHandler {
   private static final Logger LOG = LoggerFactory.getLogger(OutboundHandler.class);
 
-  private final Channel inboundChannel;
+  private final EndpointLoadTracker.EndpointLoad endpointLoad;
+  private Channel inboundChannel;
   private boolean requestInProgress;
+  private boolean requestCompleted;
   private boolean keepAlive;
+  private long requestStartNanos;
+  private boolean responseFailed;
+  private boolean closeRequested;
+  private boolean responseStarted;
+  private boolean detached;
+  private int requestCount;
+
+  public OutboundHandler(Channel inboundChannel, EndpointLoadTracker.EndpointLoad endpointLoad) {
+    this.inboundChannel = inboundChannel;
+    this.endpointLoad = endpointLoad;
+  }
 
-  public OutboundHandler(Channel inboundChannel) {
+  /**
+   * Sets the inbound channel to forward responses to, or {@code null} if the outbound channel is idle.
+   */
+  void setInboundChannel(@Nullable Channel inboundChannel) {
     this.inboundChannel = inboundChannel;
   }
 
+  /**
+   * Returns {@code true} if the last request and response were completed with keep-alive,
+   * hence the outbound channel can be used for another request.
+   */
+  boolean isReusable() {
+    return !requestInProgress && requestCompleted && keepAlive;
+  }
+
+  /**
+   * Detaches the inbound channel from the request in progress so that the request can be retried on another
+   * connection. This is only allowed if the outbound channel was reused from a previous request and no response
+   * has been received for the current request, which means the endpoint never started processing it.
+   *
+   * @return {@code true} if the inbound channel was detached
+   */
+  boolean detachForRetry() {
+    if (!requestInProgress || responseStarted || requestCount <= 1) {
+      return false;
+    }
+    inboundChannel = null;
+    detached = true;
+    return true;
+  }
+
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-    // One receiving messages from the internal service, forward it to the inbound channel
-    inboundChannel.write(msg);
+    if (inboundChannel == null) {
+      // Nothing is expected from the internal service on an idle channel
+      LOG.trace("Closing idle channel '{}' on unexpected message.", ctx.channel());
+      ReferenceCountUtil.release(msg);
+      ctx.close();
+      return;
+    }
 
+    responseStarted = true;
     if (msg instanceof HttpResponse) {
-      keepAlive = HttpUtil.isKeepAlive((HttpResponse) msg);
+      HttpResponse response = (HttpResponse) msg;
+      keepAlive = HttpUtil.isKeepAlive(response);
+      responseFailed = isEndpointFailure(response.status());
     }
 
     // A response is completed by receiving the last http content
-    if (msg instanceof LastHttpContent) {
+    if (msg instanceof LastHttpContent && requestInProgress) {
       requestInProgress = false;
+      endpointLoad.requestCompleted(requestStartNanos, !responseFailed);
     }
+
+    // One receiving messages from the internal service, forward it to the inbound channel.
+    // The state is updated before forwarding, since the inbound side may release this channel on the last content.
+    inboundChannel.write(msg);
   }
 
   @Override
   public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
-    inboundChannel.flush();
+    if (inboundChannel != null) {
+      inboundChannel.flush();
+    }
   }
 
   @Override
@@ -70,14 +133,22 @@ public class OutboundHandler extends ChannelDuplexHandler {
     // A request starts with a HttpRequest
     if (msg instanceof HttpRequest) {
       requestInProgress = true;
+      requestCompleted = false;
+      responseStarted = false;
+      requestCount++;
+      requestStartNanos = endpointLoad.requestStarted();
       keepAlive = HttpUtil.isKeepAlive((HttpRequest) msg);
     }
+    if (msg instanceof LastHttpContent) {
+      requestCompleted = true;
+    }
     ctx.write(msg, promise);
   }
 
   @Override
   public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
-    if (requestInProgress) {
+    final Channel inboundChannel = this.inboundChannel;
+    if (requestInProgress && inboundChannel != null) {
       final Channel channel = ctx.channel();
       ctx.executor().execute(() -> {
         // If outboundChannel is not saturated anymore, continue accepting
@@ -95,10 +166,26 @@ public class OutboundHandler extends ChannelDuplexHandler {
     ctx.fireChannelWritabilityChanged();
   }
 
+  @Override
+  public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+    // The router closes the connection, e.g. when the client disconnected, which is not a failure of the endpoint
+    closeRequested = true;
+    ctx.close(promise);
+  }
+
   @Override
   public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    // The connection was closed before the response is completed.
+    // It only counts as an endpoint failure if the endpoint closed the connection and the request is not retried.
+    if (requestInProgress) {
+      if (closeRequested || detached) {
+        endpointLoad.requestCancelled(requestStartNanos);
+      } else {
+        endpointLoad.requestCompleted(requestStartNanos, false);
+      }
+    }
     // Close the inbound channel if there is request in progress, or the last request/response has keep-alive == false
-    if (requestInProgress || !keepAlive) {
+    if (inboundChannel != null && (requestInProgress || !keepAlive)) {
       Channels.closeOnFlush(inboundChannel);
     }
     ctx.fireChannelInactive();
@@ -124,4 +211,13 @@ public class OutboundHandler extends ChannelDuplexHandler {
       }
     }
   }
+
+  /**
+   * Returns {@code true} if the given response status indicates that the endpoint is unable to serve requests.
+   */
+  private boolean isEndpointFailure(HttpResponseStatus status) {
+    return HttpResponseStatus.BAD_GATEWAY.equals(status) ||
+      HttpResponseStatus.SERVICE_UNAVAILABLE.equals(status) ||
+      HttpResponseStatus.GATEWAY_TIMEOUT.equals(status);
+  }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.discovery;
+
+import com.google.common.collect.Iterables;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.InMemoryDiscoveryService;
+import org.apache.twill.discovery.ServiceDiscovered;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link LoadAwareEndpointStrategy} and {@link EndpointLoadTracker}.
+ */
+public class LoadAwareEndpointStrategyTest {
+
+  @Test
+  public void testPickByLoad() {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    List<Discoverable> endpoints = register(discoveryService, "service", 3);
+    EndpointLoadTracker tracker = new EndpointLoadTracker(5, TimeUnit.MINUTES.toNanos(1));
+    LoadAwareEndpointStrategy strategy = new LoadAwareEndpointStrategy(discoveryService.discover("service"), tracker);
+
+    // Without any load, all endpoints get picked
+    Set<Discoverable> picked = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      picked.add(strategy.pick());
+    }
+    Assert.assertEquals(new HashSet<>(endpoints), picked);
+
+    // Make the first endpoint slow. It should never be picked since the other endpoint of the two choices is faster
+    recordLatency(tracker.get(endpoints.get(0)), 1000L);
+    recordLatency(tracker.get(endpoints.get(1)), 1L);
+    recordLatency(tracker.get(endpoints.get(2)), 1L);
+
+    picked.clear();
+    for (int i = 0; i < 1000; i++) {
+      picked.add(strategy.pick());
+    }
+    Assert.assertFalse(picked.contains(endpoints.get(0)));
+
+    // Put many in-flight requests to the second endpoint, so that the third one has the lowest cost
+    for (int i = 0; i < 10000; i++) {
+      tracker.get(endpoints.get(1)).requestStarted();
+    }
+    for (int i = 0; i < 100; i++) {
+      Assert.assertNotEquals(endpoints.get(1), strategy.pick());
+    }
+  }
+
+  @Test
+  public void testEjection() {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    List<Discoverable> endpoints = register(discoveryService, "service", 3);
+    EndpointLoadTracker tracker = new EndpointLoadTracker(3, TimeUnit.MINUTES.toNanos(1));
+    LoadAwareEndpointStrategy strategy = new LoadAwareEndpointStrategy(discoveryService.discover("service"), tracker);
+
+    // Fail the first two endpoints, which get ejected
+    for (int i = 0; i < 3; i++) {
+      tracker.get(endpoints.get(0)).connectFailed();
+      long startTime = tracker.get(endpoints.get(1)).requestStarted();
+      tracker.get(endpoints.get(1)).requestCompleted(startTime, false);
+    }
+    for (int i = 0; i < 100; i++) {
+      Assert.assertEquals(endpoints.get(2), strategy.pick());
+    }
+
+    // When all endpoints are ejected, still pick from all of them
+    for (int i = 0; i < 3; i++) {
+      tracker.get(endpoints.get(2)).connectFailed();
+    }
+    Set<Discoverable> picked = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      picked.add(strategy.pick());
+    }
+    Assert.assertEquals(new HashSet<>(endpoints), picked);
+  }
+
+  @Test
+  public void testEjectionExpiry() throws InterruptedException {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    Discoverable endpoint = register(discoveryService, "service", 1).get(0);
+    EndpointLoadTracker tracker = new EndpointLoadTracker(2, TimeUnit.MILLISECONDS.toNanos(200));
+    EndpointLoadTracker.EndpointLoad load = tracker.get(endpoint);
+
+    load.connectFailed();
+    Assert.assertTrue(load.isAvailable());
+    load.connectFailed();
+    Assert.assertFalse(load.isAvailable());
+
+    // After the ejection period, a single failure ejects the endpoint again
+    TimeUnit.MILLISECONDS.sleep(300);
+    Assert.assertTrue(load.isAvailable());
+    load.connectFailed();
+    Assert.assertFalse(load.isAvailable());
+
+    // A successful request resets the failure count
+    TimeUnit.MILLISECONDS.sleep(300);
+    load.requestCompleted(load.requestStarted(), true);
+    load.connectFailed();
+    Assert.assertTrue(load.isAvailable());
+    Assert.assertEquals(0, load.getInFlight());
+  }
+
+  @Test
+  public void testRequestCancelled() {
+    InMemoryDiscoveryService discoveryService = new InMemoryDiscoveryService();
+    Discoverable endpoint = register(discoveryService, "service", 1).get(0);
+    EndpointLoadTracker tracker = new EndpointLoadTracker(1, TimeUnit.MINUTES.toNanos(1));
+    EndpointLoadTracker.EndpointLoad load = tracker.get(endpoint);
+
+    // A request abandoned by the router neither ejects the endpoint nor stays in-flight
+    long startTime = load.requestStarted();
+    Assert.assertEquals(1, load.getInFlight());
+    load.requestCancelled(startTime);
+    Assert.assertEquals(0, load.getInFlight());
+    Assert.assertTrue(load.isAvailable());
+
+    load.requestCompleted(load.requestStarted(), false);
+    Assert.assertFalse(load.isAvailable());
+  }
+
+  private void recordLatency(EndpointLoadTracker.EndpointLoad load, long latencyMillis) {
+    long startTime = load.requestStarted() - TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+    load.requestCompleted(startTime, true);
+  }
+
+  private List<Discoverable> register(InMemoryDiscoveryService discoveryService, String name, int count) {
+    List<Discoverable> endpoints = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Discoverable discoverable = new Discoverable(name, new InetSocketAddress("localhost", 10000 + i));
+      discoveryService.register(discoverable);
+      endpoints.add(discoverable);
+    }
+    ServiceDiscovered serviceDiscovered = discoveryService.discover(name);
+    Assert.assertEquals(count, Iterables.size(serviceDiscovered));
+    return endpoints;
+  }
+}
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.gateway.router;
 
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.security.auth.AccessTokenIdentifier;
 import co.cask.cdap.security.auth.AccessTokenTransformer;
 
@@ -25,7 +26,7 @@ import java.util.LinkedHashSet;
 public class MockAccessTokenTransfomer extends AccessTokenTransformer {
 
   public MockAccessTokenTransfomer() {
-    super(null, null);
+    super(CConfiguration.create(), null, null);
   }
 
   @Override
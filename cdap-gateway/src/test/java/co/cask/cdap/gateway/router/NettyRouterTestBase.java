@@ -422,6 +422,27 @@ public abstract class NettyRouterTestBase {
     urlConnection.disconnect();
   }
 
+  @Test
+  public void testConnectionPooling() throws Exception {
+    // Only use server1
+    defaultServer2.cancelRegistration();
+
+    URI uri = new URI(resolveURI("/v2/ping"));
+    int times = 30;
+    for (int i = 0; i < times; i++) {
+      // Each request is made with a new client connection
+      try (Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort())) {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK", makeRequest(uri, out, socket.getInputStream()));
+      }
+    }
+
+    // Server side connections are pooled by the router, with at most one connection per router worker thread
+    Assert.assertEquals(times, defaultServer1.getNumRequests());
+    Assert.assertTrue(defaultServer1.getNumConnectionsOpened() < times);
+    Assert.assertEquals(0, defaultServer1.getNumConnectionsClosed());
+  }
+
   @Test (timeout = 5000L)
   public void testExpectContinue() throws Exception {
     URL url = new URL(resolveURI("/v2/upload"));
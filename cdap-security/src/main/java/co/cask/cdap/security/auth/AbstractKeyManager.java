@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
@@ -52,6 +53,7 @@ public abstract class AbstractKeyManager extends AbstractIdleService implements
    * means no expiration.
    */
   protected long keyExpirationPeriod = 0;
+  private final AtomicLong keyGeneration = new AtomicLong();
 
 
   /**
@@ -123,11 +125,24 @@ public abstract class AbstractKeyManager extends AbstractIdleService implements
     KeyIdentifier keyIdentifier =
       new KeyIdentifier(nextKey, nextId, keyExpirationPeriod > 0 ? (now + keyExpirationPeriod) : Long.MAX_VALUE);
     addKey(keyIdentifier);
+    keysChanged();
     this.currentKey = keyIdentifier;
     LOG.info("Changed current key to {}", currentKey);
     return keyIdentifier;
   }
 
+  /**
+   * Notifies that secret keys were added or removed, which changes the value returned by {@link #getKeyGeneration()}.
+   */
+  protected final void keysChanged() {
+    keyGeneration.incrementAndGet();
+  }
+
+  @Override
+  public final long getKeyGeneration() {
+    return keyGeneration.get();
+  }
+
   @Override
   public final <T> void validateMAC(Codec<T> codec, Signed<T> signedMessage)
     throws InvalidDigestException, InvalidKeyException {
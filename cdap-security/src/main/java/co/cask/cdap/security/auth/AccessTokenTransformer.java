@@ -16,7 +16,11 @@
 
 package co.cask.cdap.security.auth;
 
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Codec;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import org.apache.commons.codec.binary.Base64;
 
@@ -24,16 +28,21 @@ import java.io.IOException;
 
 /**
  * It takes the access token and transforms it to Access Token Identifier.
+ * Results of unexpired tokens are cached, since the same token is usually transformed repeatedly.
  */
 public class AccessTokenTransformer {
   private final Codec<AccessToken> accessTokenCodec;
   private final Codec<AccessTokenIdentifier> accessTokenIdentifierCodec;
+  private final Cache<String, AccessTokenIdentifierPair> transformedTokens;
 
   @Inject
-  public AccessTokenTransformer(Codec<AccessToken> accessTokenCodec,
+  public AccessTokenTransformer(CConfiguration cConf, Codec<AccessToken> accessTokenCodec,
                                 Codec<AccessTokenIdentifier> accessTokenIdentifierCodec) {
     this.accessTokenCodec = accessTokenCodec;
     this.accessTokenIdentifierCodec = accessTokenIdentifierCodec;
+    this.transformedTokens = CacheBuilder.newBuilder()
+      .maximumSize(cConf.getInt(Constants.Security.TOKEN_VALIDATION_CACHE_SIZE))
+      .build();
   }
 
   /**
@@ -43,12 +52,24 @@ public class AccessTokenTransformer {
    * @throws IOException
    */
   public AccessTokenIdentifierPair transform(String accessToken) throws IOException {
+    AccessTokenIdentifierPair pair = transformedTokens.getIfPresent(accessToken);
+    if (pair != null) {
+      if (pair.getAccessTokenIdentifierObj().getExpireTimestamp() >= System.currentTimeMillis()) {
+        return pair;
+      }
+      transformedTokens.invalidate(accessToken);
+    }
+
     byte[] decodedAccessToken = Base64.decodeBase64(accessToken);
     AccessToken accessTokenObj = accessTokenCodec.decode(decodedAccessToken);
     AccessTokenIdentifier accessTokenIdentifierObj = accessTokenObj.getIdentifier();
     byte[] encodedAccessTokenIdentifier = accessTokenIdentifierCodec.encode(accessTokenIdentifierObj);
-    return new AccessTokenIdentifierPair(Base64.encodeBase64String(encodedAccessTokenIdentifier).trim(),
+    pair = new AccessTokenIdentifierPair(Base64.encodeBase64String(encodedAccessTokenIdentifier).trim(),
                                          accessTokenIdentifierObj);
+    if (accessTokenIdentifierObj.getExpireTimestamp() >= System.currentTimeMillis()) {
+      transformedTokens.put(accessToken, pair);
+    }
+    return pair;
   }
 
   /**
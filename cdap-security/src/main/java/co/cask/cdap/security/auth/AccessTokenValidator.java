@@ -16,7 +16,11 @@
 
 package co.cask.cdap.security.auth;
 
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Codec;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.inject.Inject;
 import org.apache.commons.codec.binary.Base64;
@@ -28,16 +32,24 @@ import java.io.IOException;
 /**
  * This class validates the accessToken and returns the different states
  * of accessToken validation.
+ *
+ * Valid tokens are kept in a LRU cache, so that repeated validation of the same token doesn't need to decode
+ * the token and recompute the digest. A cached token is validated again after it expires or when the secret keys
+ * of the {@link TokenManager} change.
  */
 public class AccessTokenValidator extends AbstractIdleService implements TokenValidator {
   private static final Logger LOG = LoggerFactory.getLogger(AccessTokenValidator.class);
   private final TokenManager tokenManager;
   private final Codec<AccessToken> accessTokenCodec;
+  private final Cache<String, ValidToken> validTokens;
 
   @Inject
-  public AccessTokenValidator(TokenManager tokenManager, Codec<AccessToken> accessTokenCodec) {
+  public AccessTokenValidator(CConfiguration cConf, TokenManager tokenManager, Codec<AccessToken> accessTokenCodec) {
     this.tokenManager = tokenManager;
     this.accessTokenCodec = accessTokenCodec;
+    this.validTokens = CacheBuilder.newBuilder()
+      .maximumSize(cConf.getInt(Constants.Security.TOKEN_VALIDATION_CACHE_SIZE))
+      .build();
   }
 
   @Override
@@ -58,18 +70,48 @@ public class AccessTokenValidator extends AbstractIdleService implements TokenVa
       LOG.debug("Token is missing");
       return TokenState.MISSING;
     }
+
+    ValidToken validToken = validTokens.getIfPresent(token);
+    if (validToken != null) {
+      if (validToken.expireTimestamp < System.currentTimeMillis()) {
+        validTokens.invalidate(token);
+        LOG.debug("{} Token is expired.", TokenState.EXPIRED);
+        return TokenState.EXPIRED;
+      }
+      if (validToken.keyGeneration == tokenManager.getKeyGeneration()) {
+        return TokenState.VALID;
+      }
+    }
+
+    // Get the key generation before validation, so that a concurrent key change invalidates the cache entry
+    long keyGeneration = tokenManager.getKeyGeneration();
     byte[] decodedToken = Base64.decodeBase64(token);
 
     try {
       accessToken = accessTokenCodec.decode(decodedToken);
       tokenManager.validateSecret(accessToken);
+      validTokens.put(token, new ValidToken(accessToken.getIdentifier().getExpireTimestamp(), keyGeneration));
     } catch (IOException ioe) {
       state = TokenState.INVALID;
       LOG.debug("Unknown Schema version for Access Token. {}", ioe);
     } catch (InvalidTokenException ite) {
+      validTokens.invalidate(token);
       state = ite.getReason();
       LOG.debug("{} {}", state, ite);
     }
     return state;
   }
+
+  /**
+   * The expiration time of a valid token and the generation of the secret keys that it was validated with.
+   */
+  private static final class ValidToken {
+    private final long expireTimestamp;
+    private final long keyGeneration;
+
+    ValidToken(long expireTimestamp, long keyGeneration) {
+      this.expireTimestamp = expireTimestamp;
+      this.keyGeneration = keyGeneration;
+    }
+  }
 }
@@ -64,4 +64,9 @@ public interface KeyManager extends Service {
   <T> void validateMAC(Codec<T> codec, Signed<T> signedMessage)
     throws InvalidDigestException, InvalidKeyException;
 
+  /**
+   * Returns a number that changes whenever secret keys are added or removed. Results of digest validation
+   * can be cached for as long as this number remains the same.
+   */
+  long getKeyGeneration();
 }
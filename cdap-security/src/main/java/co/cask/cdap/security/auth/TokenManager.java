@@ -64,6 +64,14 @@ public class TokenManager extends AbstractIdleService {
     }
   }
 
+  /**
+   * Returns the generation of the secret keys used for validating tokens, as given by
+   * {@link KeyManager#getKeyGeneration()}.
+   */
+  public long getKeyGeneration() {
+    return keyManager.getKeyGeneration();
+  }
+
   /**
    * Given an {@link AccessToken} instance, checks that the token has not yet expired and that the digest matches
    * the expected value. To validate the token digest, we recompute the digest value, based on the asserted identity
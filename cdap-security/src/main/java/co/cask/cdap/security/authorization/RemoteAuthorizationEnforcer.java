@@ -52,7 +52,9 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -62,6 +64,12 @@ import javax.annotation.ParametersAreNonnullByDefault;
 /**
  * Remote implementation of the AuthorizationEnforcer. Contacts master for authorization enforcement and
  * then caches the results if caching is enabled.
+ *
+ * Both allowed and denied results are cached. Privileges that are not cached are checked in batches, so that
+ * checking multiple actions or entities only takes one call to master. When the result of a single action on an
+ * entity is not cached, the results of all actions on the entity for the principal are loaded together, since
+ * callers usually check other actions on the same entity shortly after. An allowed privilege on an entity also
+ * marks the entity as visible to the principal.
  */
 public class RemoteAuthorizationEnforcer extends AbstractAuthorizationEnforcer {
 
@@ -71,6 +79,9 @@ public class RemoteAuthorizationEnforcer extends AbstractAuthorizationEnforcer {
     .registerTypeAdapter(EntityId.class, new EntityIdTypeAdapter())
     .create();
   private static final Type SET_ENTITY_TYPE = new TypeToken<Set<EntityId>>() { }.getType();
+  private static final Type SET_AUTHORIZATION_PRIVILEGE_TYPE =
+    new TypeToken<Set<AuthorizationPrivilege>>() { }.getType();
+  private static final Set<Action> ALL_ACTIONS = Collections.unmodifiableSet(EnumSet.allOf(Action.class));
 
   private static final Function<VisibilityKey, EntityId> VISIBILITY_KEY_ENTITY_ID_FUNCTION =
     new Function<VisibilityKey, EntityId>() {
@@ -113,7 +124,14 @@ public class RemoteAuthorizationEnforcer extends AbstractAuthorizationEnforcer {
         @ParametersAreNonnullByDefault
         public Boolean load(AuthorizationPrivilege authorizationPrivilege) throws Exception {
           LOG.trace("Cache miss for {}", authorizationPrivilege);
-          return doEnforce(authorizationPrivilege);
+          return loadPrivileges(Collections.singleton(authorizationPrivilege)).get(authorizationPrivilege);
+        }
+
+        @Override
+        public Map<AuthorizationPrivilege, Boolean> loadAll(
+          Iterable<? extends AuthorizationPrivilege> authorizationPrivileges) throws Exception {
+          LOG.trace("Cache miss for {}", authorizationPrivileges);
+          return loadPrivileges(authorizationPrivileges);
         }
       });
 
@@ -143,12 +161,44 @@ public class RemoteAuthorizationEnforcer extends AbstractAuthorizationEnforcer {
     }
     AuthorizationPrivilege authorizationPrivilege = new AuthorizationPrivilege(principal, entity, action);
 
-    boolean allowed = cacheEnabled ? authPolicyCache.get(authorizationPrivilege) : doEnforce(authorizationPrivilege);
+    boolean allowed;
+    if (cacheEnabled) {
+      Boolean cached = authPolicyCache.getIfPresent(authorizationPrivilege);
+      // On cache miss, load all actions on the entity in one call to warm up the cache for the principal
+      if (cached == null) {
+        cached = authPolicyCache.getAll(toAuthorizationPrivileges(entity, principal, ALL_ACTIONS))
+          .get(authorizationPrivilege);
+      }
+      allowed = cached;
+    } else {
+      allowed = doEnforce(authorizationPrivilege);
+    }
     if (!allowed) {
       throw new UnauthorizedException(principal, action, entity);
     }
   }
 
+  @Override
+  public void enforce(EntityId entity, Principal principal, Set<Action> actions) throws Exception {
+    if (!isSecurityAuthorizationEnabled()) {
+      return;
+    }
+    Set<AuthorizationPrivilege> authorizationPrivileges = toAuthorizationPrivileges(entity, principal, actions);
+    Map<AuthorizationPrivilege, Boolean> allowed = cacheEnabled
+      ? authPolicyCache.getAll(authorizationPrivileges)
+      : doEnforce(authorizationPrivileges);
+
+    Set<Action> disallowed = EnumSet.noneOf(Action.class);
+    for (AuthorizationPrivilege authorizationPrivilege : authorizationPrivileges) {
+      if (!allowed.get(authorizationPrivilege)) {
+        disallowed.add(authorizationPrivilege.getAction());
+      }
+    }
+    if (!disallowed.isEmpty()) {
+      throw new UnauthorizedException(principal, disallowed, entity);
+    }
+  }
+
   @Override
   public Set<? extends EntityId> isVisible(Set<? extends EntityId> entityIds, Principal principal) throws Exception {
     if (!isSecurityAuthorizationEnabled()) {
@@ -183,6 +233,55 @@ public class RemoteAuthorizationEnforcer extends AbstractAuthorizationEnforcer {
     }
   }
 
+  /**
+   * Enforces the given privileges with a single call to master.
+   *
+   * @return a map from each of the given privileges to whether it is allowed
+   */
+  private Map<AuthorizationPrivilege, Boolean> doEnforce(
+    Iterable<? extends AuthorizationPrivilege> authorizationPrivileges) throws IOException {
+    Set<AuthorizationPrivilege> privileges = ImmutableSet.copyOf(authorizationPrivileges);
+    if (privileges.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    HttpRequest request = remoteClient.requestBuilder(HttpMethod.POST, "enforceAll")
+      .withBody(GSON.toJson(privileges))
+      .build();
+    Set<AuthorizationPrivilege> allowed =
+      GSON.fromJson(remoteClient.execute(request).getResponseBodyAsString(), SET_AUTHORIZATION_PRIVILEGE_TYPE);
+
+    Map<AuthorizationPrivilege, Boolean> result = new HashMap<>();
+    for (AuthorizationPrivilege privilege : privileges) {
+      result.put(privilege, allowed.contains(privilege));
+    }
+    return result;
+  }
+
+  private Map<AuthorizationPrivilege, Boolean> loadPrivileges(
+    Iterable<? extends AuthorizationPrivilege> authorizationPrivileges) throws IOException {
+    Map<AuthorizationPrivilege, Boolean> result = doEnforce(authorizationPrivileges);
+
+    // Having any privilege on an entity makes the entity visible
+    Map<VisibilityKey, Boolean> visible = new HashMap<>();
+    for (Map.Entry<AuthorizationPrivilege, Boolean> entry : result.entrySet()) {
+      if (entry.getValue()) {
+        AuthorizationPrivilege privilege = entry.getKey();
+        visible.put(new VisibilityKey(privilege.getPrincipal(), privilege.getEntity()), true);
+      }
+    }
+    visibilityCache.putAll(visible);
+    return result;
+  }
+
+  private Set<AuthorizationPrivilege> toAuthorizationPrivileges(EntityId entity, Principal principal,
+                                                                Set<Action> actions) {
+    Set<AuthorizationPrivilege> authorizationPrivileges = new HashSet<>();
+    for (Action action : actions) {
+      authorizationPrivileges.add(new AuthorizationPrivilege(principal, entity, action));
+    }
+    return authorizationPrivileges;
+  }
+
   private Set<? extends EntityId> visibilityCheckCall(VisibilityRequest visibilityRequest) throws IOException {
     HttpRequest request = remoteClient.requestBuilder(HttpMethod.POST, "isVisible")
       .withBody(GSON.toJson(visibilityRequest))
@@ -16,14 +16,19 @@
 
 package co.cask.cdap.security.auth;
 
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.guice.ConfigModule;
 import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.guice.IOModule;
 import co.cask.cdap.common.io.Codec;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.security.guice.SecurityModules;
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
 
 /**
  * Tests for InMemoryTokenManager that ensure that keys are maintained in memory and can be used to create
@@ -40,4 +45,37 @@ public class TestInMemoryTokenManager extends TestTokenManager {
     Codec<AccessToken> tokenCodec = injector.getInstance(AccessTokenCodec.class);
     return new ImmutablePair<>(tokenManager, tokenCodec);
   }
+
+  @Test
+  public void testCachedValidation() throws Exception {
+    ImmutablePair<TokenManager, Codec<AccessToken>> pair = getTokenManagerAndCodec();
+    TokenManager tokenManager = pair.getFirst();
+    Codec<AccessToken> tokenCodec = pair.getSecond();
+    AccessTokenValidator validator = new AccessTokenValidator(CConfiguration.create(), tokenManager, tokenCodec);
+
+    long now = System.currentTimeMillis();
+    AccessToken token = tokenManager.signIdentifier(
+      new AccessTokenIdentifier("testuser", ImmutableList.of("users"), now, now + 1000));
+    String encodedToken = Base64.encodeBase64String(tokenCodec.encode(token));
+
+    // Validate multiple times, with the later ones served from the cache
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(TokenState.VALID, validator.validate(encodedToken));
+    }
+
+    // Removing the signing key invalidates the cached result
+    MapBackedKeyManager keyManager = (MapBackedKeyManager) tokenManager.keyManager;
+    KeyIdentifier key = keyManager.allKeys.remove(token.getKeyId());
+    keyManager.keysChanged();
+    Assert.assertEquals(TokenState.INTERNAL, validator.validate(encodedToken));
+
+    // Adding back the key makes the token valid again, until it expires
+    keyManager.allKeys.put(key.getKeyId(), key);
+    keyManager.keysChanged();
+    Assert.assertEquals(TokenState.VALID, validator.validate(encodedToken));
+    Thread.sleep(Math.max(0L, now + 1100 - System.currentTimeMillis()));
+    Assert.assertEquals(TokenState.EXPIRED, validator.validate(encodedToken));
+
+    tokenManager.stopAndWait();
+  }
 }
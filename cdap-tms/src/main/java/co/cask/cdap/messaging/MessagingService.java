@@ -95,6 +95,17 @@ public interface MessagingService {
    */
   MessageFetcher prepareFetch(TopicId topicId) throws TopicNotFoundException, IOException;
 
+  /**
+   * Prepares to fetch messages from multiple topics under the given namespace in one call.
+   *
+   * @param namespaceId the namespace of the topics to fetch message from
+   * @return a {@link MultiTopicMessageFetcher} for setting up per topic parameters for fetching messages
+   *         from the messaging system
+   * @throws IOException if failed to fetch messages
+   * @throws ServiceUnavailableException if the messaging service is not available
+   */
+  MultiTopicMessageFetcher prepareMultiFetch(NamespaceId namespaceId) throws IOException;
+
   /**
    * Publishes a list of messages to the messaging system.
    *
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging;
+
+import co.cask.cdap.api.messaging.TopicNotFoundException;
+import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import org.apache.tephra.Transaction;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A builder to setup parameters for fetching messages from multiple topics of the same namespace in one call.
+ * Each topic has its own starting point and limit. Sub-class needs to override the {@link #fetch()} method
+ * to fetch messages from all the topics.
+ */
+public abstract class MultiTopicMessageFetcher {
+
+  private final NamespaceId namespaceId;
+  private final Map<TopicId, TopicFetchRequest> topicRequests;
+  private Transaction transaction;
+
+  protected MultiTopicMessageFetcher(NamespaceId namespaceId) {
+    this.namespaceId = namespaceId;
+    this.topicRequests = new LinkedHashMap<>();
+  }
+
+  /**
+   * Adds a topic to fetch from, starting from the given message id.
+   *
+   * @param topicId the topic to fetch from. It must be in the same namespace as this fetcher.
+   * @param startOffset the message id to start fetching from
+   * @param inclusive if {@code true}, it will include the message identified by the given message id as the
+   *                  first message (if still available in the system); otherwise it won't be included.
+   * @param limit maximum number of messages to be fetched from the topic
+   * @return this instance
+   */
+  public MultiTopicMessageFetcher addTopic(TopicId topicId, byte[] startOffset, boolean inclusive, int limit) {
+    topicRequests.put(validateTopic(topicId), new TopicFetchRequest(startOffset, inclusive, null, limit));
+    return this;
+  }
+
+  /**
+   * Adds a topic to fetch from, starting from the given publish time.
+   *
+   * @param topicId the topic to fetch from. It must be in the same namespace as this fetcher.
+   * @param startTime timestamp in milliseconds
+   * @param limit maximum number of messages to be fetched from the topic
+   * @return this instance
+   */
+  public MultiTopicMessageFetcher addTopic(TopicId topicId, long startTime, int limit) {
+    if (startTime < 0) {
+      throw new IllegalArgumentException("Invalid message fetching start time. Start time must be >= 0");
+    }
+    topicRequests.put(validateTopic(topicId), new TopicFetchRequest(null, true, startTime, limit));
+    return this;
+  }
+
+  /**
+   * Sets the transaction to use for fetching from all topics. It is for transactional consumption.
+   *
+   * @param transaction the transaction to use for reading messages
+   * @return this instance
+   */
+  public MultiTopicMessageFetcher setTransaction(Transaction transaction) {
+    this.transaction = transaction;
+    return this;
+  }
+
+  protected NamespaceId getNamespaceId() {
+    return namespaceId;
+  }
+
+  /**
+   * Returns the per topic fetch requests in the order the topics were added.
+   */
+  protected Map<TopicId, TopicFetchRequest> getTopicRequests() {
+    return Collections.unmodifiableMap(topicRequests);
+  }
+
+  @Nullable
+  protected Transaction getTransaction() {
+    return transaction;
+  }
+
+  /**
+   * Fetches messages from all the topics added to this fetcher.
+   *
+   * @return a {@link Map} from topic to the list of messages fetched from that topic. Every topic added to this
+   *         fetcher has an entry in the map, with an empty list if there is no message available.
+   * @throws TopicNotFoundException if any of the topics does not exist
+   * @throws IOException if failed to fetch messages
+   */
+  public abstract Map<TopicId, List<RawMessage>> fetch() throws TopicNotFoundException, IOException;
+
+  private TopicId validateTopic(TopicId topicId) {
+    if (!namespaceId.getNamespace().equals(topicId.getNamespace())) {
+      throw new IllegalArgumentException("Topic " + topicId + " is not in namespace " + namespaceId);
+    }
+    return topicId;
+  }
+
+  /**
+   * Contains the fetching parameters for a single topic.
+   */
+  public static final class TopicFetchRequest {
+
+    private final byte[] startOffset;
+    private final boolean includeStart;
+    private final Long startTime;
+    private final int limit;
+
+    public TopicFetchRequest(@Nullable byte[] startOffset, boolean includeStart, @Nullable Long startTime, int limit) {
+      if (limit <= 0) {
+        throw new IllegalArgumentException("Invalid message fetching limit. Limit must be > 0");
+      }
+      this.startOffset = startOffset;
+      this.includeStart = includeStart;
+      this.startTime = startTime;
+      this.limit = limit;
+    }
+
+    @Nullable
+    public byte[] getStartOffset() {
+      return startOffset;
+    }
+
+    public boolean isIncludeStart() {
+      return includeStart;
+    }
+
+    @Nullable
+    public Long getStartTime() {
+      return startTime;
+    }
+
+    public int getLimit() {
+      return limit;
+    }
+
+    /**
+     * Applies the parameters of this request to the given single topic {@link MessageFetcher}.
+     *
+     * @return the same {@link MessageFetcher} instance
+     */
+    public MessageFetcher applyTo(MessageFetcher fetcher) {
+      if (startOffset != null) {
+        fetcher.setStartMessage(startOffset, includeStart);
+      } else if (startTime != null) {
+        fetcher.setStartTime(startTime);
+      }
+      return fetcher.setLimit(limit);
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging;
+
+import co.cask.cdap.api.common.Bytes;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+
+/**
+ * Compression codec for storing message payloads of a topic. The codec is set through the
+ * {@link TopicMetadata#COMPRESSION_KEY} topic property and cannot be changed after the topic is created.
+ *
+ * With any codec other than {@link #NONE}, every stored payload is prefixed with a one byte header telling
+ * whether the payload is stored as is or compressed. A compressed payload is followed by the four bytes
+ * uncompressed length and the compressed bytes. Payloads that are small or not compressible are stored as is.
+ */
+public enum PayloadCompression {
+
+  NONE {
+    @Override
+    protected byte[] doCompress(byte[] payload) {
+      return payload;
+    }
+
+    @Override
+    protected byte[] doDecompress(byte[] data, int offset, int length, int uncompressedLength) {
+      return Arrays.copyOfRange(data, offset, offset + length);
+    }
+  },
+
+  DEFLATE {
+    @Override
+    protected byte[] doCompress(byte[] payload) {
+      Deflater deflater = DEFLATERS.poll();
+      if (deflater == null) {
+        deflater = new Deflater(Deflater.BEST_SPEED);
+      }
+      try {
+        deflater.setInput(payload);
+        deflater.finish();
+
+        // Only keep the result if it is smaller than the original
+        byte[] buffer = new byte[payload.length];
+        int size = deflater.deflate(buffer);
+        return deflater.finished() ? Arrays.copyOf(buffer, size) : payload;
+      } finally {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+          deflater.end();
+        }
+      }
+    }
+
+    @Override
+    protected byte[] doDecompress(byte[] data, int offset, int length, int uncompressedLength) throws IOException {
+      Inflater inflater = INFLATERS.poll();
+      if (inflater == null) {
+        inflater = new Inflater();
+      }
+      try {
+        inflater.setInput(data, offset, length);
+
+        byte[] payload = new byte[uncompressedLength];
+        int size = inflater.inflate(payload);
+        if (size != uncompressedLength || !inflater.finished()) {
+          throw new IOException("Corrupted deflate payload. Expected " + uncompressedLength + " bytes, got " + size);
+        }
+        return payload;
+      } catch (DataFormatException e) {
+        throw new IOException("Failed to inflate payload", e);
+      } finally {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+          inflater.end();
+        }
+      }
+    }
+  },
+
+  SNAPPY {
+    @Override
+    protected byte[] doCompress(byte[] payload) throws IOException {
+      return Snappy.compress(payload);
+    }
+
+    @Override
+    protected byte[] doDecompress(byte[] data, int offset, int length, int uncompressedLength) throws IOException {
+      byte[] payload = new byte[uncompressedLength];
+      int size = Snappy.uncompress(data, offset, length, payload, 0);
+      if (size != uncompressedLength) {
+        throw new IOException("Corrupted snappy payload. Expected " + uncompressedLength + " bytes, got " + size);
+      }
+      return payload;
+    }
+  };
+
+  // Payloads smaller than this size are not worth compressing
+  private static final int MIN_COMPRESS_SIZE = 64;
+  private static final byte UNCOMPRESSED = 0;
+  private static final byte COMPRESSED = 1;
+  private static final int COMPRESSED_HEADER_SIZE = 1 + Bytes.SIZEOF_INT;
+
+  // Bounded pools for reusing Deflater and Inflater, which hold native memory until they are ended.
+  // Instances that don't fit into the pool are ended right away.
+  private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+  private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+  private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  /**
+   * Returns the {@link PayloadCompression} of the given name, ignoring case.
+   *
+   * @param name name of the compression or {@code null}
+   * @return the {@link PayloadCompression} or {@link #NONE} if the name is {@code null} or empty
+   * @throws IllegalArgumentException if the name is not a supported compression
+   */
+  public static PayloadCompression fromName(@Nullable String name) {
+    if (name == null || name.isEmpty()) {
+      return NONE;
+    }
+    try {
+      return valueOf(name.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unsupported payload compression '" + name + "'. Supported values are "
+                                           + Arrays.toString(values()), e);
+    }
+  }
+
+  /**
+   * Encodes the given payload for storage.
+   *
+   * @param payload the payload or {@code null} if there is no payload
+   * @return the encoded payload or {@code null} if the given payload is {@code null}
+   */
+  @Nullable
+  public byte[] compress(@Nullable byte[] payload) throws IOException {
+    if (this == NONE || payload == null) {
+      return payload;
+    }
+
+    if (payload.length >= MIN_COMPRESS_SIZE) {
+      byte[] compressed = doCompress(payload);
+      if (compressed != payload && compressed.length + COMPRESSED_HEADER_SIZE < payload.length) {
+        byte[] result = new byte[compressed.length + COMPRESSED_HEADER_SIZE];
+        result[0] = COMPRESSED;
+        Bytes.putInt(result, 1, payload.length);
+        System.arraycopy(compressed, 0, result, COMPRESSED_HEADER_SIZE, compressed.length);
+        return result;
+      }
+    }
+
+    byte[] result = new byte[payload.length + 1];
+    result[0] = UNCOMPRESSED;
+    System.arraycopy(payload, 0, result, 1, payload.length);
+    return result;
+  }
+
+  /**
+   * Decodes a payload that was encoded by the {@link #compress(byte[])} method.
+   *
+   * @param data the stored payload or {@code null}
+   * @return the original payload or {@code null} if the given data is {@code null}
+   */
+  @Nullable
+  public byte[] decompress(@Nullable byte[] data) throws IOException {
+    if (this == NONE || data == null) {
+      return data;
+    }
+    if (data.length == 0) {
+      throw new IOException("Invalid empty payload for " + this + " compression");
+    }
+
+    switch (data[0]) {
+      case UNCOMPRESSED:
+        return Arrays.copyOfRange(data, 1, data.length);
+      case COMPRESSED:
+        if (data.length < COMPRESSED_HEADER_SIZE) {
+          throw new IOException("Invalid compressed payload of size " + data.length);
+        }
+        return doDecompress(data, COMPRESSED_HEADER_SIZE, data.length - COMPRESSED_HEADER_SIZE, Bytes.toInt(data, 1));
+      default:
+        throw new IOException("Unknown payload header " + data[0] + " for " + this + " compression");
+    }
+  }
+
+  /**
+   * Compresses the given payload. If the payload cannot be compressed, the same array instance can be returned.
+   */
+  protected abstract byte[] doCompress(byte[] payload) throws IOException;
+
+  /**
+   * Decompresses the given range of the data array into the given uncompressed length.
+   */
+  protected abstract byte[] doDecompress(byte[] data, int offset, int length,
+                                         int uncompressedLength) throws IOException;
+}
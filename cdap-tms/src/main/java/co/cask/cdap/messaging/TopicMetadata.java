@@ -30,6 +30,7 @@ public class TopicMetadata {
 
   public static final String GENERATION_KEY = MessagingUtils.Constants.GENERATION_KEY;
   public static final String TTL_KEY = MessagingUtils.Constants.TTL_KEY;
+  public static final String COMPRESSION_KEY = "compression";
 
   private final TopicId topicId;
   private final Map<String, String> properties;
@@ -109,6 +110,13 @@ public class TopicMetadata {
     return Integer.parseInt(properties.get(TTL_KEY));
   }
 
+  /**
+   * Returns the {@link PayloadCompression} used for storing message payloads of the topic.
+   */
+  public PayloadCompression getPayloadCompression() {
+    return PayloadCompression.fromName(properties.get(COMPRESSION_KEY));
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -142,6 +150,8 @@ public class TopicMetadata {
   private void validateProperties() {
     validateTTL();
     validateGeneration();
+    // Throws IllegalArgumentException if the compression property is invalid
+    getPayloadCompression();
   }
 
   /**
@@ -0,0 +1,426 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.cache;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.messaging.store.MessageFilter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MessageCache} that stores entries in append-only, time-ordered segments. Compare to the
+ * {@link SkipListMessageCache}, it has the following properties:
+ *
+ * - Scanning never blocks. A scan works on an immutable snapshot of the segment list and reads the entries
+ *   directly from the segments without copying.
+ * - Eviction removes whole segments from the head of the segment list, which is a constant time operation
+ *   instead of removing entries one by one.
+ * - Entries are kept in arrays, which has lower memory and GC overhead than the skip list used by
+ *   the {@link SkipListMessageCache}.
+ *
+ * The same {@link Limits} as the {@link SkipListMessageCache} are used. Segments will be evicted when the cache weight
+ * goes beyond the reduce trigger, until the weight is about to go below the min retain weight.
+ * Since eviction is cheap, it is always performed by the writer and the hard limit is only used to decide
+ * the segment size.
+ *
+ * @param <T> type of entry stored in the cache
+ */
+public class SegmentedMessageCache<T> extends MessageCache<T> {
+
+  private static final String METRICS_WEIGHT = "cache.weight";
+  private static final String METRICS_SEGMENTS = "cache.segments";
+  private static final String METRICS_ENTRIES_ADDED = "cache.entries.added";
+  private static final String METRICS_ENTRIES_REMOVED = "cache.entries.removed";
+  private static final String METRICS_ADD_REQUESTS = "cache.add.requests";
+  private static final String METRICS_SCAN_REQUESTS = "cache.scan.requests";
+
+  // Number of segments that the hard limit is divided into
+  private static final int SEGMENTS_PER_HARD_LIMIT = 16;
+
+  private final Weigher<T> weigher;
+  private final MetricsContext metricsContext;
+  private final int maxSegmentEntries;
+  private final AtomicLong currentWeight;
+  private final AtomicBoolean adding;
+  // Lock for structural modification of the segment list. Readers never acquire it.
+  private final Object segmentsLock;
+  // Lock to serialize calls to updateEntries
+  private final Object updateLock;
+
+  // Immutable snapshot of the segments, ordered from oldest to newest
+  private volatile Segment<T>[] segments;
+
+  /**
+   * Creates a new instance of the cache.
+   *
+   * @param comparator a {@link Comparator} for ordering cache entries
+   * @param weigher a {@link Weigher} for computing the weight of each cache entry
+   * @param limits the limits for maintaining cache weight
+   * @param maxSegmentEntries maximum number of entries in each segment
+   * @param metricsContext a {@link MetricsContext} for emitting metrics about this cache.
+   */
+  public SegmentedMessageCache(Comparator<T> comparator, Weigher<T> weigher, Limits limits,
+                               int maxSegmentEntries, MetricsContext metricsContext) {
+    super(comparator, limits);
+    Preconditions.checkArgument(maxSegmentEntries > 0, "Maximum segment entries must be > 0");
+    this.weigher = weigher;
+    this.metricsContext = metricsContext;
+    this.maxSegmentEntries = maxSegmentEntries;
+    this.currentWeight = new AtomicLong();
+    this.adding = new AtomicBoolean();
+    this.segmentsLock = new Object();
+    this.updateLock = new Object();
+    this.segments = newSegmentArray(0);
+  }
+
+  @Override
+  public void addAll(Iterator<T> entries) {
+    if (!adding.compareAndSet(false, true)) {
+      // This is to guard against bug, otherwise this shouldn't happen
+      throw new ConcurrentModificationException(
+        "The SegmentedMessageCache.addAll method shouldn't be called concurrently by multiple threads.");
+    }
+
+    try {
+      int entriesAdded = 0;
+      synchronized (segmentsLock) {
+        Comparator<T> comparator = getComparator();
+        Limits limits = getLimits();
+        long maxSegmentWeight = Math.max(1L, limits.getHardLimit() / SEGMENTS_PER_HARD_LIMIT);
+        Segment<T> tail = segments.length == 0 ? null : segments[segments.length - 1];
+        T lastEntry = tail == null ? null : tail.getLast();
+
+        while (entries.hasNext()) {
+          T entry = entries.next();
+          if (lastEntry != null && comparator.compare(lastEntry, entry) >= 0) {
+            // Entries must be in strictly increasing order
+            // Clear the cache to reset state. This is just for precaution, as this shouldn't happen,
+            // unless there is bug in the TMS system (from the caller side).
+            clear();
+            throw new IllegalArgumentException("Cache entry must be in strictly increasing order. " +
+                                                 "Entry " + entry + " is smaller than or equal to " + lastEntry);
+          }
+
+          if (tail == null || tail.isFull() || tail.getWeight() >= maxSegmentWeight) {
+            tail = new Segment<>(maxSegmentEntries);
+            appendSegment(tail);
+          }
+
+          int weight = weigher.weight(entry);
+          tail.append(entry, weight);
+          currentWeight.addAndGet(weight);
+          lastEntry = entry;
+          entriesAdded++;
+
+          if (currentWeight.get() > limits.getReduceTrigger()) {
+            evictSegments(limits);
+            // If the current segment got evicted, start a new segment for the next entry
+            if (segments.length == 0 || segments[segments.length - 1] != tail) {
+              tail = null;
+            }
+          }
+        }
+      }
+
+      metricsContext.increment(METRICS_ADD_REQUESTS, 1L);
+      metricsContext.increment(METRICS_ENTRIES_ADDED, entriesAdded);
+      metricsContext.gauge(METRICS_WEIGHT, currentWeight.get());
+      metricsContext.gauge(METRICS_SEGMENTS, segments.length);
+    } finally {
+      adding.set(false);
+    }
+  }
+
+  @Override
+  public Scanner<T> scan(T startEntry, boolean includeStart, int limit, MessageFilter<T> filter) {
+    metricsContext.increment(METRICS_SCAN_REQUESTS, 1L);
+    return new SegmentScanner<>(segments, getComparator(), startEntry, includeStart, limit, filter);
+  }
+
+  @Override
+  public void updateEntries(T startEntry, T endEntry, EntryUpdater<T> updater) {
+    synchronized (updateLock) {
+      Comparator<T> comparator = getComparator();
+      Segment<T>[] segments = this.segments;
+      SegmentScanner<T> scanner = new SegmentScanner<>(segments, comparator, startEntry, true,
+                                                       Integer.MAX_VALUE, MessageFilter.<T>alwaysAccept());
+      T lower = scanner.peekLower();
+      while (scanner.hasNext()) {
+        T entry = scanner.next();
+        if (comparator.compare(entry, endEntry) > 0) {
+          break;
+        }
+        try {
+          updater.updateEntry(entry);
+        } catch (RuntimeException e) {
+          clear();
+          throw e;
+        }
+
+        // A quick check that the ordering hasn't been altered.
+        // It doesn't cover all possible case though. This is just a quick catch for bug in the caller.
+        T higher = scanner.hasNext() ? scanner.peek() : null;
+        if ((lower != null && comparator.compare(lower, entry) >= 0)
+          || (higher != null && comparator.compare(higher, entry) <= 0)) {
+          // This shouldn't happen, unless there is bug in the caller.
+          clear();
+          throw new IllegalStateException("Entry order should not be altered after update.");
+        }
+        lower = entry;
+      }
+    }
+  }
+
+  @Override
+  public void resize(Limits limits) {
+    synchronized (segmentsLock) {
+      setLimits(limits);
+      evictSegments(limits);
+    }
+  }
+
+  @Override
+  @VisibleForTesting
+  long getCurrentWeight() {
+    return currentWeight.get();
+  }
+
+  /**
+   * Returns the number of segments currently in the cache.
+   */
+  @VisibleForTesting
+  int getSegmentCount() {
+    return segments.length;
+  }
+
+  /**
+   * Appends a new segment to the segment list. Must be called while holding the segments lock.
+   */
+  private void appendSegment(Segment<T> segment) {
+    Segment<T>[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+    newSegments[newSegments.length - 1] = segment;
+    segments = newSegments;
+  }
+
+  /**
+   * Evicts segments from the oldest one until removing the next segment would make the cache weight smaller than the
+   * min retain weight. Must be called while holding the segments lock.
+   */
+  private void evictSegments(Limits limits) {
+    Segment<T>[] segments = this.segments;
+    long weight = currentWeight.get();
+    int entriesRemoved = 0;
+    int idx = 0;
+    while (idx < segments.length) {
+      Segment<T> segment = segments[idx];
+      if (weight - segment.getWeight() < limits.getMinRetain()) {
+        break;
+      }
+      weight = currentWeight.addAndGet(-1 * segment.getWeight());
+      entriesRemoved += segment.getSize();
+      idx++;
+    }
+
+    if (idx > 0) {
+      // Readers holding the old snapshot can still safely read from the evicted segments
+      this.segments = Arrays.copyOfRange(segments, idx, segments.length);
+      metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Segment<T>[] newSegmentArray(int size) {
+    return (Segment<T>[]) new Segment[size];
+  }
+
+  /**
+   * An append-only segment of entries. There is only one writer appending to a segment, and the entries
+   * are published to readers through the volatile size field.
+   *
+   * @param <T> type of the entry
+   */
+  private static final class Segment<T> {
+
+    private final Object[] entries;
+    private volatile int size;
+    private long weight;
+
+    private Segment(int capacity) {
+      this.entries = new Object[capacity];
+    }
+
+    void append(T entry, int entryWeight) {
+      entries[size] = entry;
+      weight += entryWeight;
+      // Publish the entry to readers
+      size = size + 1;
+    }
+
+    boolean isFull() {
+      return size == entries.length;
+    }
+
+    int getSize() {
+      return size;
+    }
+
+    long getWeight() {
+      return weight;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int idx) {
+      return (T) entries[idx];
+    }
+
+    @Nullable
+    T getLast() {
+      int size = this.size;
+      return size == 0 ? null : get(size - 1);
+    }
+  }
+
+  /**
+   * A {@link MessageCache.Scanner} that reads entries from a snapshot of segments without locking.
+   * The number of entries visible from the newest segment is captured when the scanner is created.
+   *
+   * @param <T> type of the entry
+   */
+  private static final class SegmentScanner<T> extends AbstractIterator<T> implements Scanner<T> {
+
+    private final Segment<T>[] segments;
+    private final int lastSegmentSize;
+    private final MessageFilter<T> filter;
+    private final T firstInCache;
+    private int limit;
+    private int segmentIdx;
+    private int entryIdx;
+    private T lower;
+    private boolean closed;
+
+    private SegmentScanner(Segment<T>[] segments, Comparator<T> comparator, T startEntry,
+                           boolean includeStart, int limit, MessageFilter<T> filter) {
+      this.segments = segments;
+      this.lastSegmentSize = segments.length == 0 ? 0 : segments[segments.length - 1].getSize();
+      this.filter = filter;
+      this.limit = limit;
+      this.firstInCache = segments.length == 0 || segments[0].getSize() == 0 ? null : segments[0].get(0);
+
+      // Binary search for the first segment that has the last entry larger than (or equal to) the start entry
+      int low = 0;
+      int high = segments.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        Segment<T> segment = segments[mid];
+        int size = getSegmentSize(mid);
+        if (size == 0 || isBefore(comparator.compare(segment.get(size - 1), startEntry), includeStart)) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      segmentIdx = low;
+
+      // Binary search for the first entry within the segment that is larger than (or equal to) the start entry
+      if (segmentIdx < segments.length) {
+        Segment<T> segment = segments[segmentIdx];
+        low = 0;
+        high = getSegmentSize(segmentIdx) - 1;
+        while (low <= high) {
+          int mid = (low + high) >>> 1;
+          if (isBefore(comparator.compare(segment.get(mid), startEntry), includeStart)) {
+            low = mid + 1;
+          } else {
+            high = mid - 1;
+          }
+        }
+        entryIdx = low;
+      }
+
+      // Remember the entry right before the scan start position
+      if (entryIdx > 0) {
+        lower = segments[segmentIdx].get(entryIdx - 1);
+      } else if (segmentIdx > 0) {
+        lower = segments[segmentIdx - 1].getLast();
+      }
+    }
+
+    /**
+     * Returns {@code true} if an entry with the given comparison result against the start entry
+     * should be excluded from the scan.
+     */
+    private static boolean isBefore(int compareResult, boolean includeStart) {
+      return includeStart ? compareResult < 0 : compareResult <= 0;
+    }
+
+    private int getSegmentSize(int idx) {
+      return idx == segments.length - 1 ? lastSegmentSize : segments[idx].getSize();
+    }
+
+    /**
+     * Returns the entry that is right before the scan start position, or {@code null} if there is none.
+     */
+    @Nullable
+    T peekLower() {
+      return lower;
+    }
+
+    @Override
+    protected T computeNext() {
+      while (!closed && limit > 0 && segmentIdx < segments.length) {
+        if (entryIdx >= getSegmentSize(segmentIdx)) {
+          segmentIdx++;
+          entryIdx = 0;
+          continue;
+        }
+
+        T entry = segments[segmentIdx].get(entryIdx++);
+        MessageFilter.Result result = filter.apply(entry);
+        if (result == MessageFilter.Result.ACCEPT) {
+          limit--;
+          return entry;
+        }
+        if (result == MessageFilter.Result.HOLD) {
+          // Hold means not to scan more, so just break
+          break;
+        }
+      }
+      close();
+      return endOfData();
+    }
+
+    @Nullable
+    @Override
+    public T getFirstInCache() {
+      return firstInCache;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -27,6 +27,7 @@ import co.cask.cdap.common.http.DefaultHttpRequestConfig;
 import co.cask.cdap.common.internal.remote.RemoteClient;
 import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MultiTopicMessageFetcher;
 import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.Schemas;
 import co.cask.cdap.messaging.StoreRequest;
@@ -72,6 +73,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -178,6 +180,11 @@ public final class ClientMessagingService implements MessagingService {
     return new ClientMessageFetcher(topicId);
   }
 
+  @Override
+  public MultiTopicMessageFetcher prepareMultiFetch(NamespaceId namespaceId) {
+    return new ClientMultiTopicMessageFetcher(namespaceId);
+  }
+
   @Nullable
   @Override
   public RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException {
@@ -362,6 +369,92 @@ public final class ClientMessagingService implements MessagingService {
     }
   }
 
+  /**
+   * Client side implementation of {@link MultiTopicMessageFetcher}. It fetches messages from all topics
+   * with a single request to the server.
+   */
+  private final class ClientMultiTopicMessageFetcher extends MultiTopicMessageFetcher {
+
+    private ClientMultiTopicMessageFetcher(NamespaceId namespaceId) {
+      super(namespaceId);
+    }
+
+    @Override
+    public Map<TopicId, List<RawMessage>> fetch() throws TopicNotFoundException, IOException {
+      Map<TopicId, TopicFetchRequest> topicRequests = getTopicRequests();
+      Schema requestSchema = Schemas.V1.MultiConsumeRequest.SCHEMA;
+      Schema topicRequestSchema = requestSchema.getField("topics").schema().getElementType();
+
+      List<GenericRecord> topics = new ArrayList<>(topicRequests.size());
+      for (Map.Entry<TopicId, TopicFetchRequest> entry : topicRequests.entrySet()) {
+        TopicFetchRequest fetchRequest = entry.getValue();
+        GenericRecord topicRecord = new GenericData.Record(topicRequestSchema);
+        topicRecord.put("topic", entry.getKey().getTopic());
+        if (fetchRequest.getStartOffset() != null) {
+          topicRecord.put("startFrom", ByteBuffer.wrap(fetchRequest.getStartOffset()));
+        }
+        if (fetchRequest.getStartTime() != null) {
+          topicRecord.put("startFrom", fetchRequest.getStartTime());
+        }
+        topicRecord.put("inclusive", fetchRequest.isIncludeStart());
+        topicRecord.put("limit", fetchRequest.getLimit());
+        topics.add(topicRecord);
+      }
+
+      GenericRecord record = new GenericData.Record(requestSchema);
+      record.put("topics", topics);
+      if (getTransaction() != null) {
+        record.put("transaction", ByteBuffer.wrap(TRANSACTION_CODEC.encode(getTransaction())));
+      }
+
+      ExposedByteArrayOutputStream os = new ExposedByteArrayOutputStream();
+      Encoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
+      DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(requestSchema);
+      datumWriter.write(record, encoder);
+
+      NamespaceId namespaceId = getNamespaceId();
+      HttpRequest httpRequest = remoteClient.requestBuilder(HttpMethod.POST,
+                                                            namespaceId.getNamespace() + "/topics/poll")
+        .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
+        .withBody(os.toByteBuffer())
+        .build();
+      HttpResponse response = remoteClient.execute(httpRequest);
+
+      if (response.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+        // Find out which topic is missing
+        for (TopicId topicId : topicRequests.keySet()) {
+          getTopic(topicId);
+        }
+        throw new IOException("Failed to fetch messages from topics " + topicRequests.keySet()
+                                + ". Reason: " + response.getResponseBodyAsString());
+      }
+      handleError(response, "Failed to fetch messages from topics " + topicRequests.keySet());
+      verifyContentType(response.getHeaders().asMap(), "avro/binary");
+
+      // The response is an array of (topic, messages) records
+      Schema topicMessagesSchema = Schemas.V1.MultiConsumeResponse.SCHEMA.getElementType();
+      DatumReader<GenericRecord> reader = new GenericDatumReader<>(topicMessagesSchema);
+      Decoder decoder = DecoderFactory.get().binaryDecoder(response.getResponseBody(), null);
+
+      Map<TopicId, List<RawMessage>> result = new LinkedHashMap<>();
+      GenericRecord topicMessages = null;
+      for (long count = decoder.readArrayStart(); count > 0; count = decoder.arrayNext()) {
+        for (long i = 0; i < count; i++) {
+          topicMessages = reader.read(topicMessages, decoder);
+          List<?> messageRecords = (List<?>) topicMessages.get("messages");
+          List<RawMessage> messages = new ArrayList<>(messageRecords.size());
+          for (Object messageRecord : messageRecords) {
+            GenericRecord message = (GenericRecord) messageRecord;
+            messages.add(new RawMessage(Bytes.toBytes((ByteBuffer) message.get("id")),
+                                        Bytes.toBytes((ByteBuffer) message.get("payload"))));
+          }
+          result.put(namespaceId.topic(topicMessages.get("topic").toString()), messages);
+        }
+      }
+      return result;
+    }
+  }
+
   /**
    * Client side implementation of {@link MessageFetcher}. It streams messages from the server with chunk encoding.
    */
@@ -398,10 +491,15 @@ public final class ClientMessagingService implements MessagingService {
 
       // The cask common http library doesn't support read streaming, and we don't want to buffer all messages
       // in memory, hence we use the HttpURLConnection directly instead.
-      URL url = remoteClient.resolve(createTopicPath(topicId) + "/poll");
+      // The server may hold the request for up to the wait timeout if there is no message available
+      long waitMillis = getWaitTimeoutMillis();
+      String path = createTopicPath(topicId) + "/poll" + (waitMillis > 0 ? "?wait=" + waitMillis : "");
+      URL url = remoteClient.resolve(path);
       final HttpURLConnection urlConn = (HttpURLConnection)  url.openConnection();
       urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
-      urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
+      int readTimeout = HTTP_REQUEST_CONFIG.getReadTimeout();
+      urlConn.setReadTimeout(readTimeout <= 0 ? readTimeout : (int) Math.min(Integer.MAX_VALUE,
+                                                                             readTimeout + waitMillis));
       urlConn.setRequestMethod("POST");
       urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
       urlConn.setDoInput(true);
@@ -23,6 +23,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MultiTopicMessageFetcher;
 import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
@@ -159,6 +160,11 @@ public class LeaderElectionMessagingService extends AbstractIdleService implemen
     return getMessagingService().prepareFetch(topicId);
   }
 
+  @Override
+  public MultiTopicMessageFetcher prepareMultiFetch(NamespaceId namespaceId) throws IOException {
+    return getMessagingService().prepareMultiFetch(namespaceId);
+  }
+
   @Override
   @Nullable
   public RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException {
@@ -27,6 +27,7 @@ import co.cask.cdap.common.logging.LogSamplers;
 import co.cask.cdap.common.logging.Loggers;
 import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MultiTopicMessageFetcher.TopicFetchRequest;
 import co.cask.cdap.messaging.Schemas;
 import co.cask.cdap.messaging.data.RawMessage;
 import co.cask.cdap.proto.id.NamespaceId;
@@ -38,22 +39,18 @@ import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
-import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
-import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.DatumReader;
-import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.io.Encoder;
-import org.apache.avro.io.EncoderFactory;
+import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,18 +59,25 @@ import java.io.IOException;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 
 /**
  * A netty http handler for handling message fetching REST API for the messaging system.
  */
-@Path("/v1/namespaces/{namespace}/topics/{topic}")
+@Path("/v1/namespaces/{namespace}/topics")
 public final class FetchHandler extends AbstractHttpHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(FetchHandler.class);
@@ -84,21 +88,37 @@ public final class FetchHandler extends AbstractHttpHandler {
     "Connection reset by peer",
     "Broken pipe"
   );
+  // Payloads larger than this size are wrapped instead of copied into the response buffer
+  private static final int WRAP_PAYLOAD_THRESHOLD = 4096;
 
   private final MessagingService messagingService;
-  private int messageChunkSize;
+  private final int messageChunkSize;
+  private final long maxResponseBytes;
+  private final long maxWaitMillis;
+  private final Semaphore waitPermits;
 
   @Inject
   FetchHandler(CConfiguration cConf, MessagingService messagingService) {
     this.messagingService = messagingService;
     this.messageChunkSize = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_CONSUME_CHUNK_SIZE);
+    this.maxResponseBytes = cConf.getLong(Constants.MessagingSystem.HTTP_SERVER_CONSUME_MAX_RESPONSE_BYTES, 0L);
+    // Waiting for new messages blocks the handler thread, hence only allow it if the http service
+    // has dedicated executor threads, otherwise it would block the IO worker threads.
+    int executorThreads = cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_EXECUTOR_THREADS);
+    this.maxWaitMillis = executorThreads > 0
+      ? cConf.getLong(Constants.MessagingSystem.HTTP_SERVER_POLL_MAX_WAIT_MILLIS, 0L)
+      : 0L;
+    // Always leave at least one executor thread for requests that are not waiting, such as publishing
+    this.waitPermits = new Semaphore(Math.max(0, Math.min(
+      cConf.getInt(Constants.MessagingSystem.HTTP_SERVER_POLL_MAX_WAITING, 0), executorThreads - 1)));
   }
 
   @POST
-  @Path("poll")
+  @Path("/{topic}/poll")
   public void poll(FullHttpRequest request, HttpResponder responder,
                    @PathParam("namespace") String namespace,
-                   @PathParam("topic") String topic) throws Exception {
+                   @PathParam("topic") String topic,
+                   @QueryParam("wait") @DefaultValue("0") long waitMillis) throws Exception {
 
     TopicId topicId = new NamespaceId(namespace).topic(topic);
 
@@ -111,10 +131,22 @@ public final class FetchHandler extends AbstractHttpHandler {
     Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(request.content()), null);
     DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.ConsumeRequest.SCHEMA);
 
-    // Fetch the messages
-    CloseableIterator<RawMessage> iterator = fetchMessages(datumReader.read(null, decoder), topicId);
+    // Fetch the messages. If too many requests are waiting already, return immediately instead of waiting.
+    GenericRecord fetchRequest = datumReader.read(null, decoder);
+    long waitTimeout = Math.max(0L, Math.min(waitMillis, maxWaitMillis));
+    CloseableIterator<RawMessage> iterator;
+    if (waitTimeout > 0 && waitPermits.tryAcquire()) {
+      try {
+        iterator = fetchMessages(fetchRequest, topicId, waitTimeout);
+      } finally {
+        waitPermits.release();
+      }
+    } else {
+      iterator = fetchMessages(fetchRequest, topicId, 0L);
+    }
     try {
-      responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize),
+      responder.sendContent(HttpResponseStatus.OK, new MessagesBodyProducer(iterator, messageChunkSize,
+                                                                                maxResponseBytes),
                             new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "avro/binary"));
     } catch (Throwable t) {
       iterator.close();
@@ -122,12 +154,70 @@ public final class FetchHandler extends AbstractHttpHandler {
     }
   }
 
+  @POST
+  @Path("/poll")
+  public void multiPoll(FullHttpRequest request, HttpResponder responder,
+                        @PathParam("namespace") String namespace) throws Exception {
+    NamespaceId namespaceId = new NamespaceId(namespace);
+
+    // Currently only support avro
+    if (!"avro/binary".equals(request.headers().get(HttpHeaderNames.CONTENT_TYPE))) {
+      throw new BadRequestException("Only avro/binary content type is supported.");
+    }
+
+    // Decode the multi-topic poll request
+    Decoder decoder = DecoderFactory.get().directBinaryDecoder(new ByteBufInputStream(request.content()), null);
+    DatumReader<GenericRecord> datumReader = new GenericDatumReader<>(Schemas.V1.MultiConsumeRequest.SCHEMA);
+    GenericRecord multiFetchRequest = datumReader.read(null, decoder);
+
+    Transaction transaction = null;
+    ByteBuffer encodedTx = (ByteBuffer) multiFetchRequest.get("transaction");
+    if (encodedTx != null) {
+      transaction = TRANSACTION_CODEC.decode(ByteBuffers.getByteArray(encodedTx));
+    }
+
+    // Open the iterators of all topics before sending the response, so that missing topics fail the request
+    Map<TopicId, CloseableIterator<RawMessage>> iterators = new LinkedHashMap<>();
+    try {
+      for (Object topicRequest : (List<?>) multiFetchRequest.get("topics")) {
+        GenericRecord fetchRequest = (GenericRecord) topicRequest;
+        TopicId topicId = namespaceId.topic(fetchRequest.get("topic").toString());
+        int limit = (Integer) fetchRequest.get("limit");
+
+        // Fetch from the beginning if start is not specified
+        Object startFrom = fetchRequest.get("startFrom");
+        TopicFetchRequest topicFetchRequest = startFrom instanceof ByteBuffer
+          ? new TopicFetchRequest(Bytes.toBytes((ByteBuffer) startFrom), (Boolean) fetchRequest.get("inclusive"),
+                                  null, limit)
+          : new TopicFetchRequest(null, true, startFrom instanceof Long ? (Long) startFrom : 0L, limit);
+
+        MessageFetcher fetcher = topicFetchRequest.applyTo(messagingService.prepareFetch(topicId));
+        if (transaction != null) {
+          fetcher.setTransaction(transaction);
+        }
+        CloseableIterator<RawMessage> previous = iterators.put(topicId, fetcher.fetch());
+        if (previous != null) {
+          previous.close();
+        }
+      }
+      responder.sendContent(HttpResponseStatus.OK,
+                            new MultiTopicMessagesBodyProducer(iterators, messageChunkSize, maxResponseBytes),
+                            new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_TYPE, "avro/binary"));
+    } catch (Throwable t) {
+      for (CloseableIterator<RawMessage> iterator : iterators.values()) {
+        iterator.close();
+      }
+      throw t;
+    }
+  }
+
   /**
    * Creates a {@link CloseableIterator} of {@link RawMessage} based on the given fetch request.
    */
-  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest,
-                                                      TopicId topicId) throws IOException, TopicNotFoundException {
+  private CloseableIterator<RawMessage> fetchMessages(GenericRecord fetchRequest, TopicId topicId,
+                                                      long waitMillis) throws IOException, TopicNotFoundException {
     MessageFetcher fetcher = messagingService.prepareFetch(topicId);
+    fetcher.setWaitTimeout(waitMillis, TimeUnit.MILLISECONDS);
 
     Object startFrom = fetchRequest.get("startFrom");
     if (startFrom != null) {
@@ -156,42 +246,88 @@ public final class FetchHandler extends AbstractHttpHandler {
     return fetcher.fetch();
   }
 
+  /**
+   * Returns the number of bytes used for encoding the given message in the response.
+   */
+  private static int getEncodedSize(RawMessage message) {
+    // Avro encodes bytes as (len + bytes), hence adding 8 to cater for the length of the id and payload
+    // Straightly speaking it can be up to 9 bytes each (hence 18 bytes),
+    // but we don't expect id and payload of such size
+    return message.getId().length + message.getPayload().length + 8;
+  }
+
+  /**
+   * Logs the failure of sending a streaming response.
+   */
+  private static void logResponseError(@Nullable Throwable cause) {
+    // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
+    if (cause instanceof SocketException
+      || cause instanceof ClosedChannelException
+      || (cause instanceof IOException && KNOWN_IO_EXCEPTION_MESSAGES.contains(cause.getMessage()))) {
+      // This can easily caused by client close connection prematurely. Don't want to flood the log.
+      LOG.trace("Connection closed by client prematurely while sending messages back to client", cause);
+    } else {
+      // Use sampling logger to log to avoid flooding the log if there is any systematic failure
+      SAMPLING_LOG.warn("Exception raised when sending messages back to client", cause);
+      // Also log a trace to provide a way to see every error if needed
+      LOG.trace("Exception raised when sending messages back to client", cause);
+    }
+  }
+
+  /**
+   * Encodes a message as an Avro record of (id: bytes, payload: bytes) into the given buffer. Large payload is
+   * added to the given {@link CompositeByteBuf} by wrapping the payload byte array instead of copying.
+   *
+   * @return the {@link ByteBuf} for writing subsequent data
+   */
+  private static ByteBuf encodeMessage(CompositeByteBuf composite, ByteBuf buffer,
+                                       RawMessage message, int newBufferSize) {
+    writeLong(buffer, message.getId().length);
+    buffer.writeBytes(message.getId());
+
+    byte[] payload = message.getPayload();
+    writeLong(buffer, payload.length);
+    if (payload.length < WRAP_PAYLOAD_THRESHOLD) {
+      buffer.writeBytes(payload);
+      return buffer;
+    }
+    composite.addComponent(true, buffer);
+    composite.addComponent(true, Unpooled.wrappedBuffer(payload));
+    return Unpooled.buffer(newBufferSize);
+  }
+
+  /**
+   * Writes a long value to the given {@link ByteBuf} using the Avro zig-zag variable length encoding.
+   */
+  private static void writeLong(ByteBuf buffer, long value) {
+    long n = (value << 1) ^ (value >> 63);
+    while ((n & ~0x7FL) != 0) {
+      buffer.writeByte((int) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    }
+    buffer.writeByte((int) n);
+  }
+
   /**
    * A {@link BodyProducer} to encode and send back messages.
-   * Instead of using GenericDatumWriter, we perform the array encoding manually so that we don't have to buffer
-   * all messages in memory before sending out.
+   * Instead of using GenericDatumWriter, we perform the Avro binary encoding of the array of messages manually so
+   * that we don't have to buffer all messages in memory before sending out. Large message payloads are added to
+   * the response chunk by wrapping the payload byte arrays, without copying them into the chunk buffer.
    */
   private static class MessagesBodyProducer extends BodyProducer {
 
     private final CloseableIterator<RawMessage> iterator;
     private final List<RawMessage> messages;
     private final int messageChunkSize;
-    private final ByteBuf chunk;
-    private final Encoder encoder;
-    private final GenericRecord messageRecord;
-    private final DatumWriter<GenericRecord> messageWriter;
-    private boolean arrayStarted;
+    private final long maxResponseBytes;
+    private long responseBytes;
     private boolean arrayEnded;
 
-    MessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize) {
+    MessagesBodyProducer(CloseableIterator<RawMessage> iterator, int messageChunkSize, long maxResponseBytes) {
       this.iterator = iterator;
       this.messages = new ArrayList<>();
       this.messageChunkSize = messageChunkSize;
-      this.chunk = Unpooled.buffer(messageChunkSize);
-      this.encoder = EncoderFactory.get().directBinaryEncoder(new ByteBufOutputStream(chunk), null);
-
-      // These are for writing individual message (response is an array of messages)
-      this.messageRecord = new GenericData.Record(Schemas.V1.ConsumeResponse.SCHEMA.getElementType());
-      this.messageWriter = new GenericDatumWriter<GenericRecord>(Schemas.V1.ConsumeResponse.SCHEMA.getElementType()) {
-        @Override
-        protected void writeBytes(Object datum, Encoder out) throws IOException {
-          if (datum instanceof byte[]) {
-            out.writeBytes((byte[]) datum);
-          } else {
-            super.writeBytes(datum, out);
-          }
-        }
-      };
+      this.maxResponseBytes = maxResponseBytes;
     }
 
     @Override
@@ -201,67 +337,168 @@ public final class FetchHandler extends AbstractHttpHandler {
         return Unpooled.EMPTY_BUFFER;
       }
 
-      chunk.clear();
-
-      if (!arrayStarted) {
-        arrayStarted = true;
-        encoder.writeArrayStart();
-      }
-
-      // Try to buffer up to buffer size
+      // Try to buffer up to buffer size, or up to the max response size
       int size = 0;
       messages.clear();
-      while (iterator.hasNext() && size < messageChunkSize) {
+      while (size < messageChunkSize && hasMoreMessages()) {
         RawMessage message = iterator.next();
         messages.add(message);
 
-        // Avro encodes bytes as (len + bytes), hence adding 8 to cater for the length of the id and payload
-        // Straightly speaking it can be up to 9 bytes each (hence 18 bytes),
-        // but we don't expect id and payload of such size
-        size += message.getId().length + message.getPayload().length + 8;
+        int messageSize = getEncodedSize(message);
+        size += messageSize;
+        responseBytes += messageSize;
       }
 
-      encoder.setItemCount(messages.size());
+      CompositeByteBuf chunk = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+      ByteBuf buffer = Unpooled.buffer(Math.min(size, messageChunkSize) + 16);
+
+      // Write the array block item count. A block with zero count ends the array.
+      if (!messages.isEmpty()) {
+        writeLong(buffer, messages.size());
+      }
       for (RawMessage message : messages) {
-        encoder.startItem();
-
-        // Write individual message (array element) with DatumWrite.
-        // This provides greater flexibility on schema evolution.
-        // The response will likely always be an array, but the element schema can evolve.
-        messageRecord.put("id", message.getId());
-        messageRecord.put("payload", message.getPayload());
-        messageWriter.write(messageRecord, encoder);
+        buffer = encodeMessage(chunk, buffer, message, Math.min(size, messageChunkSize) + 16);
       }
 
-      if (!iterator.hasNext()) {
+      if (!hasMoreMessages()) {
         arrayEnded = true;
-        encoder.writeArrayEnd();
+        writeLong(buffer, 0L);
       }
+      chunk.addComponent(true, buffer);
+      return chunk;
+    }
 
-      return chunk.copy();
+    /**
+     * Returns {@code true} if there are more messages to be sent in this response.
+     */
+    private boolean hasMoreMessages() {
+      return (maxResponseBytes <= 0 || responseBytes < maxResponseBytes) && iterator.hasNext();
     }
 
     @Override
     public void finished() throws Exception {
       iterator.close();
-      chunk.release();
     }
 
     @Override
     public void handleError(@Nullable Throwable cause) {
       iterator.close();
-      // Since response header is already sent, there is nothing we can send back to client. Simply log the failure
-      if (cause instanceof SocketException
-        || cause instanceof ClosedChannelException
-        || (cause instanceof IOException && KNOWN_IO_EXCEPTION_MESSAGES.contains(cause.getMessage()))) {
-        // This can easily caused by client close connection prematurely. Don't want to flood the log.
-        LOG.trace("Connection closed by client prematurely while sending messages back to client", cause);
-      } else {
-        // Use sampling logger to log to avoid flooding the log if there is any systematic failure
-        SAMPLING_LOG.warn("Exception raised when sending messages back to client", cause);
-        // Also log a trace to provide a way to see every error if needed
-        LOG.trace("Exception raised when sending messages back to client", cause);
+      logResponseError(cause);
+    }
+  }
+
+  /**
+   * A {@link BodyProducer} to encode and send back messages fetched from multiple topics based on the V1
+   * MultiConsumeResponse schema. Same as {@link MessagesBodyProducer}, the response is encoded manually and streamed
+   * in chunks. The max response size applies to the whole response. Once it is reached, the remaining topics are
+   * included without messages, and clients fetch them again in the next poll.
+   */
+  private static class MultiTopicMessagesBodyProducer extends BodyProducer {
+
+    private final List<Map.Entry<TopicId, CloseableIterator<RawMessage>>> iterators;
+    private final List<RawMessage> messages;
+    private final int messageChunkSize;
+    private final long maxResponseBytes;
+    private long responseBytes;
+    private int topicIndex;
+    private boolean topicStarted;
+    private boolean arrayStarted;
+    private boolean arrayEnded;
+
+    MultiTopicMessagesBodyProducer(Map<TopicId, CloseableIterator<RawMessage>> iterators,
+                                   int messageChunkSize, long maxResponseBytes) {
+      this.iterators = new ArrayList<>(iterators.entrySet());
+      this.messages = new ArrayList<>();
+      this.messageChunkSize = messageChunkSize;
+      this.maxResponseBytes = maxResponseBytes;
+    }
+
+    @Override
+    public ByteBuf nextChunk() throws Exception {
+      // Already sent all topics, return empty to signal the end of response
+      if (arrayEnded) {
+        return Unpooled.EMPTY_BUFFER;
+      }
+
+      CompositeByteBuf chunk = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+      ByteBuf buffer = Unpooled.buffer(messageChunkSize + 16);
+
+      // Each array item is an Avro record of (topic: string, messages: array), all written in one block
+      if (!arrayStarted) {
+        arrayStarted = true;
+        if (!iterators.isEmpty()) {
+          writeLong(buffer, iterators.size());
+        }
+      }
+
+      // Encode messages up to the chunk size, possibly across multiple topics
+      int size = 0;
+      while (size < messageChunkSize && topicIndex < iterators.size()) {
+        Map.Entry<TopicId, CloseableIterator<RawMessage>> entry = iterators.get(topicIndex);
+        if (!topicStarted) {
+          topicStarted = true;
+          byte[] topic = entry.getKey().getTopic().getBytes(StandardCharsets.UTF_8);
+          writeLong(buffer, topic.length);
+          buffer.writeBytes(topic);
+        }
+
+        CloseableIterator<RawMessage> iterator = entry.getValue();
+        messages.clear();
+        while (size < messageChunkSize && hasMoreMessages(iterator)) {
+          RawMessage message = iterator.next();
+          messages.add(message);
+          int messageSize = getEncodedSize(message);
+          size += messageSize;
+          responseBytes += messageSize;
+        }
+
+        // Write the messages array block of the current topic. A block with zero count ends the array.
+        if (!messages.isEmpty()) {
+          writeLong(buffer, messages.size());
+        }
+        for (RawMessage message : messages) {
+          buffer = encodeMessage(chunk, buffer, message, messageChunkSize + 16);
+        }
+        if (!hasMoreMessages(iterator)) {
+          writeLong(buffer, 0L);
+          iterator.close();
+          topicIndex++;
+          topicStarted = false;
+        }
+      }
+
+      if (topicIndex >= iterators.size()) {
+        arrayEnded = true;
+        writeLong(buffer, 0L);
+      }
+      chunk.addComponent(true, buffer);
+      return chunk;
+    }
+
+    /**
+     * Returns {@code true} if there are more messages from the given iterator to be sent in this response.
+     */
+    private boolean hasMoreMessages(CloseableIterator<RawMessage> iterator) {
+      return (maxResponseBytes <= 0 || responseBytes < maxResponseBytes) && iterator.hasNext();
+    }
+
+    @Override
+    public void finished() throws Exception {
+      closeIterators();
+    }
+
+    @Override
+    public void handleError(@Nullable Throwable cause) {
+      closeIterators();
+      logResponseError(cause);
+    }
+
+    private void closeIterators() {
+      // Iterators of the topics before the current one are closed already
+      for (int i = topicIndex; i < iterators.size(); i++) {
+        iterators.get(i).getValue().close();
       }
+      topicIndex = iterators.size();
     }
   }
 }
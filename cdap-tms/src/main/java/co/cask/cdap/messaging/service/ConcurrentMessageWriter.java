@@ -22,6 +22,7 @@ import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 
 import java.io.Closeable;
@@ -29,9 +30,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -46,11 +49,14 @@ import javax.annotation.concurrent.ThreadSafe;
  * When a thread that received a request, performs the following:
  *
  * <pre>
- * 1. Constructs a PendingStoreRequest locally and enqueue it to a ConcurrentLinkedQueue.
+ * 1. Constructs a PendingStoreRequest locally and enqueue it to a pre-allocated, bounded ring buffer.
+ *    If the ring buffer is full, the thread tries to become the writer (step 2-3) to drain it, and gives up
+ *    with an IOException if no space is available within the configured timeout.
  * 2. Use CAS to set an AtomicBoolean flag to true.
  * 3. If successfully set the flag to true, this thread becomes the writer and proceed to run step 4-7.
- * 4. Provides an Iterator of PendingStoreRequest, which consumes from the ConcurrentLinkedQueue mentioned in step 1.
- * 5. The message table store method will consume the Iterator until it is empty
+ * 4. Collects up to batch size PendingStoreRequest from the ring buffer, optionally lingering for a short time
+ *    to let more requests join the batch (group commit).
+ * 5. The message table store method will consume the Iterator of the collected batch until it is empty
  * 6. Set the state of each PendingStoreRequest that are written to COMPLETED (succeed/failure).
  * 7. Set the AtomicBoolean flag back to false.
  * 8. If the PendingStoreRequest enqueued by this thread is NOT COMPLETED, go back to step 2.
@@ -62,11 +68,20 @@ import javax.annotation.concurrent.ThreadSafe;
 @ThreadSafe
 final class ConcurrentMessageWriter implements Closeable {
 
+  static final int DEFAULT_QUEUE_SIZE = 1024;
+  static final int DEFAULT_BATCH_SIZE = 256;
+  static final long DEFAULT_LINGER_MILLIS = 0L;
+  static final long DEFAULT_QUEUE_FULL_TIMEOUT_MILLIS = 10000L;
+
+  // Upper bounds in milliseconds of the publish latency histogram buckets
+  private static final long[] LATENCY_BUCKETS_MILLIS = { 1L, 5L, 10L, 50L, 100L, 500L, 1000L };
+
   private final StoreRequestWriter<?> messagesWriter;
   private final MetricsCollector metricsCollector;
   private final PendingStoreQueue pendingStoreQueue;
   private final AtomicBoolean writerFlag;
   private final AtomicBoolean closed;
+  private final long queueFullTimeoutNanos;
 
   /**
    * Constructor with a {@link NoopMetricsContext}. This constructor should only be used in unit-testing.
@@ -83,11 +98,34 @@ final class ConcurrentMessageWriter implements Closeable {
    * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
    */
   ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector) {
+    this(messagesWriter, metricsCollector, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE,
+         DEFAULT_LINGER_MILLIS, DEFAULT_QUEUE_FULL_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
+   * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
+   * @param queueSize capacity of the pending requests ring buffer; it will be rounded up to a power of two
+   * @param batchSize maximum number of requests to be written to the {@link StoreRequestWriter} in one batch
+   * @param lingerMillis maximum time in milliseconds the writer waits for more requests to fill up a batch
+   * @param queueFullTimeoutMillis maximum time in milliseconds a request waits for space in a full queue
+   */
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector,
+                          int queueSize, int batchSize, long lingerMillis, long queueFullTimeoutMillis) {
+    Preconditions.checkArgument(queueSize > 0, "Queue size must be > 0: %s", queueSize);
+    Preconditions.checkArgument(batchSize > 0, "Batch size must be > 0: %s", batchSize);
+    Preconditions.checkArgument(lingerMillis >= 0, "Linger time must be >= 0: %s", lingerMillis);
+    Preconditions.checkArgument(queueFullTimeoutMillis >= 0,
+                                "Queue full timeout must be >= 0: %s", queueFullTimeoutMillis);
     this.messagesWriter = messagesWriter;
     this.metricsCollector = metricsCollector;
-    this.pendingStoreQueue = new PendingStoreQueue(metricsCollector);
+    this.pendingStoreQueue = new PendingStoreQueue(metricsCollector, queueSize, batchSize,
+                                                   TimeUnit.MILLISECONDS.toNanos(lingerMillis));
     this.writerFlag = new AtomicBoolean();
     this.closed = new AtomicBoolean();
+    this.queueFullTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueFullTimeoutMillis);
   }
 
   /**
@@ -106,17 +144,33 @@ final class ConcurrentMessageWriter implements Closeable {
       throw new IOException("Message writer is already closed");
     }
 
+    long startTime = System.nanoTime();
     PendingStoreRequest pendingStoreRequest = new PendingStoreRequest(storeRequest, metadata);
-    pendingStoreQueue.enqueue(pendingStoreRequest);
-
     metricsCollector.increment("persist.requested", 1L);
 
+    if (!pendingStoreQueue.enqueue(pendingStoreRequest)) {
+      // The queue is full. Apply backpressure by helping to drain the queue until there is space available.
+      metricsCollector.increment("persist.queue.full", 1L);
+      while (!pendingStoreQueue.enqueue(pendingStoreRequest)) {
+        if (System.nanoTime() - startTime > queueFullTimeoutNanos) {
+          metricsCollector.increment("persist.rejected", 1L);
+          throw new IOException("Message writer queue is full. Unable to write message to "
+                                  + storeRequest.getTopicId());
+        }
+        if (!tryWrite()) {
+          Thread.yield();
+        }
+      }
+    }
+
     while (!pendingStoreRequest.isCompleted()) {
       if (!tryWrite()) {
         Thread.yield();
       }
     }
 
+    emitLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
     if (pendingStoreRequest.isSuccess()) {
       metricsCollector.increment("persist.success", 1L);
       if (!pendingStoreRequest.isTransactional()) {
@@ -133,6 +187,20 @@ final class ConcurrentMessageWriter implements Closeable {
     }
   }
 
+  /**
+   * Emits the publish latency as a histogram, with one counter per latency bucket.
+   */
+  private void emitLatency(long latencyMillis) {
+    for (long bucket : LATENCY_BUCKETS_MILLIS) {
+      if (latencyMillis <= bucket) {
+        metricsCollector.increment("persist.latency.le." + bucket + "ms", 1L);
+        return;
+      }
+    }
+    metricsCollector.increment("persist.latency.gt." + LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1]
+                                 + "ms", 1L);
+  }
+
   /**
    * Tries to acquire the writer flag and persist the pending requests.
    *
@@ -157,53 +225,131 @@ final class ConcurrentMessageWriter implements Closeable {
       return;
     }
     // Flush everything in the queue.
-    // When this thread can grab the writer flag, all pending write requests must be completed since the closed
-    // flag was already set to false.
-    while (!tryWrite()) {
+    // Since a write only drains up to the batch size, keep writing until the queue is empty.
+    // Requests enqueued concurrently with the closed flag being set would be written by the threads
+    // that enqueued them.
+    while (!tryWrite() || !pendingStoreQueue.isEmpty()) {
       Thread.yield();
     }
     messagesWriter.close();
   }
 
   /**
-   * A resettable {@link Iterator} to provide {@link StoreRequest} to {@link StoreRequestWriter}.
-   * Except the {@link #enqueue(PendingStoreRequest)} method, all methods on this class can only be
-   * called while holding the writer flag.
+   * A bounded queue of {@link PendingStoreRequest} backed by a pre-allocated ring buffer.
+   * Multiple threads can call {@link #enqueue(PendingStoreRequest)} concurrently, while all other methods
+   * can only be called while holding the writer flag, hence there is only a single consumer.
+   *
+   * Each slot in the ring buffer has a sequence number. A producer claims a slot by CAS on the tail position
+   * when the slot sequence equals to the position, and publishes the request by setting the slot sequence to
+   * position + 1. The consumer takes the request when the slot sequence equals to head + 1 and releases the slot
+   * for the next round by setting the sequence to head + capacity.
    */
   private static final class PendingStoreQueue {
 
     private final MetricsCollector metricsCollector;
-    private final Queue<PendingStoreRequest> writeQueue;
+    private final PendingStoreRequest[] buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    private final int mask;
+    private final int batchSize;
+    private final long lingerNanos;
     private final List<PendingStoreRequest> inflightRequests;
+    // Only accessed while holding the writer flag, which provides the memory visibility between writers
+    private long head;
 
-    private PendingStoreQueue(MetricsCollector metricsCollector) {
+    private PendingStoreQueue(MetricsCollector metricsCollector, int queueSize, int batchSize, long lingerNanos) {
+      int capacity = Integer.highestOneBit(queueSize);
+      if (capacity < queueSize) {
+        capacity <<= 1;
+      }
       this.metricsCollector = metricsCollector;
-      this.writeQueue = new ConcurrentLinkedQueue<>();
-      this.inflightRequests = new ArrayList<>(100);
+      this.buffer = new PendingStoreRequest[capacity];
+      this.sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        sequences.set(i, i);
+      }
+      this.tail = new AtomicLong();
+      this.mask = capacity - 1;
+      this.batchSize = batchSize;
+      this.lingerNanos = lingerNanos;
+      this.inflightRequests = new ArrayList<>(Math.min(capacity, batchSize));
     }
 
     /**
-     * Puts the given {@link PendingStoreRequest} to the concurrent queue.
+     * Puts the given {@link PendingStoreRequest} to the ring buffer.
+     *
+     * @return {@code true} if the request was enqueued; {@code false} if the ring buffer is full
      */
-    void enqueue(PendingStoreRequest storeRequest) {
-      writeQueue.add(storeRequest);
+    boolean enqueue(PendingStoreRequest storeRequest) {
+      long pos = tail.get();
+      while (true) {
+        int idx = (int) (pos & mask);
+        long diff = sequences.get(idx) - pos;
+        if (diff == 0) {
+          if (tail.compareAndSet(pos, pos + 1)) {
+            buffer[idx] = storeRequest;
+            // Publish the request to the consumer
+            sequences.set(idx, pos + 1);
+            return true;
+          }
+          pos = tail.get();
+        } else if (diff < 0) {
+          // The slot is not yet released by the consumer, meaning the buffer is full
+          return false;
+        } else {
+          // Some other producer claimed the slot, retry with the latest position
+          pos = tail.get();
+        }
+      }
     }
 
     /**
-     * Persists all {@link PendingStoreRequest} currently in the queue with the given writer.
+     * Returns {@code true} if there is no pending request in the ring buffer.
+     */
+    boolean isEmpty() {
+      return tail.get() == head;
+    }
+
+    /**
+     * Removes and returns the request at the head of the ring buffer, or {@code null} if there is no
+     * published request available.
+     */
+    @Nullable
+    private PendingStoreRequest poll() {
+      int idx = (int) (head & mask);
+      if (sequences.get(idx) != head + 1) {
+        return null;
+      }
+      PendingStoreRequest request = buffer[idx];
+      buffer[idx] = null;
+      // Release the slot for the next round
+      sequences.set(idx, head + buffer.length);
+      head++;
+      return request;
+    }
+
+    /**
+     * Persists up to batch size of {@link PendingStoreRequest} currently in the queue with the given writer.
      */
     void persist(StoreRequestWriter<?> writer) {
-      // Capture all current events.
+      // Capture a batch of current events.
       // The reason for capturing instead of using a live iterator is to avoid the possible case of infinite write
       // time. E.g. while generating the entry to write to the storage table, a new store request get enqueued.
-      // The number of requests in the queue is bounded by the number of threads that call this method.
-      // Since this method is expected to be called (indirectly) from a http handler thread, that is bounded by
-      // the thread pool size used by the http service.
       inflightRequests.clear();
-      PendingStoreRequest request = writeQueue.poll();
-      while (request != null) {
-        inflightRequests.add(request);
-        request = writeQueue.poll();
+      drainTo(inflightRequests);
+
+      // Linger for a short time to let more concurrent requests join this batch
+      if (lingerNanos > 0 && inflightRequests.size() < batchSize) {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (inflightRequests.size() < batchSize && deadline - System.nanoTime() > 0) {
+          if (!drainTo(inflightRequests)) {
+            LockSupport.parkNanos(Math.min(lingerNanos, 50000L));
+          }
+        }
+      }
+
+      if (inflightRequests.isEmpty()) {
+        return;
       }
 
       metricsCollector.gauge("persist.queue.size", inflightRequests.size());
@@ -217,7 +363,26 @@ final class ConcurrentMessageWriter implements Closeable {
     }
 
     /**
-     * Marks all inflight requests as collected through the {@link Iterator#next()} method as completed.
+     * Moves requests from the ring buffer to the given list until either the buffer is empty or the list
+     * reached the batch size.
+     *
+     * @return {@code true} if at least one request was moved
+     */
+    private boolean drainTo(List<PendingStoreRequest> requests) {
+      boolean drained = false;
+      while (requests.size() < batchSize) {
+        PendingStoreRequest request = poll();
+        if (request == null) {
+          break;
+        }
+        requests.add(request);
+        drained = true;
+      }
+      return drained;
+    }
+
+    /**
+     * Marks all inflight requests as completed.
      * This method must be called while holding the writer flag.
      */
     void completeAll(@Nullable Throwable failureCause) {
@@ -44,17 +44,50 @@ final class CoreMessageFetcher extends MessageFetcher {
   private final TopicMetadata topicMetadata;
   private final TableProvider<MessageTable> messageTableProvider;
   private final TableProvider<PayloadTable> payloadTableProvider;
+  private final TopicPublishNotifier publishNotifier;
 
   CoreMessageFetcher(TopicMetadata topicMetadata,
                      TableProvider<MessageTable> messageTableProvider,
-                     TableProvider<PayloadTable> payloadTableProvider) {
+                     TableProvider<PayloadTable> payloadTableProvider,
+                     TopicPublishNotifier publishNotifier) {
     this.topicMetadata = topicMetadata;
     this.messageTableProvider = messageTableProvider;
     this.payloadTableProvider = payloadTableProvider;
+    this.publishNotifier = publishNotifier;
   }
 
   @Override
   public CloseableIterator<RawMessage> fetch() throws IOException {
+    long waitTimeoutMillis = getWaitTimeoutMillis();
+    if (waitTimeoutMillis <= 0) {
+      return createIterator();
+    }
+
+    // Capture the topic version before fetching so that publishes happened after the fetch won't get missed
+    TopicId topicId = topicMetadata.getTopicId();
+    long deadline = System.currentTimeMillis() + waitTimeoutMillis;
+    while (true) {
+      long version = publishNotifier.getVersion(topicId);
+      CloseableIterator<RawMessage> iterator = createIterator();
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0 || iterator.hasNext()) {
+        return iterator;
+      }
+      iterator.close();
+
+      try {
+        publishNotifier.await(topicId, version, remaining, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return createIterator();
+      }
+    }
+  }
+
+  /**
+   * Creates a {@link CloseableIterator} for fetching messages from the tables.
+   */
+  private CloseableIterator<RawMessage> createIterator() throws IOException {
     MessageTable messageTable = messageTableProvider.get();
     try {
       return new MessageCloseableIterator(messageTable);
@@ -103,6 +136,17 @@ final class CoreMessageFetcher extends MessageFetcher {
     return rawId;
   }
 
+  /**
+   * Decodes a payload read from the tables with the payload compression of the topic.
+   */
+  private byte[] decompress(byte[] payload) {
+    try {
+      return topicMetadata.getPayloadCompression().decompress(payload);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
   /**
    * Calls the {@link AutoCloseable#close()} on the given {@link AutoCloseable} without throwing exception.
    * If there is exception raised, it will be logged but never thrown out.
@@ -180,7 +224,8 @@ final class CoreMessageFetcher extends MessageFetcher {
         if (payloadIterator != null && payloadIterator.hasNext()) {
           PayloadTable.Entry payloadEntry = payloadIterator.next();
           // messageEntry is guaranteed to be non-null if payloadIterator is non-null
-          nextMessage = new RawMessage(createMessageId(messageEntry, payloadEntry), payloadEntry.getPayload());
+          nextMessage = new RawMessage(createMessageId(messageEntry, payloadEntry),
+                                       decompress(payloadEntry.getPayload()));
           break;
         }
 
@@ -211,7 +256,8 @@ final class CoreMessageFetcher extends MessageFetcher {
             }
           } else {
             // Otherwise, the message entry is the next message
-            nextMessage = new RawMessage(createMessageId(messageEntry, null), messageEntry.getPayload());
+            nextMessage = new RawMessage(createMessageId(messageEntry, null),
+                                         decompress(messageEntry.getPayload()));
           }
         } else {
           // If there is no more message from the message iterator as well, then no more message to fetch
@@ -27,6 +27,8 @@ import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.messaging.MessagingServiceUtils;
 import co.cask.cdap.messaging.MessagingUtils;
+import co.cask.cdap.messaging.MultiTopicMessageFetcher;
+import co.cask.cdap.messaging.PayloadCompression;
 import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
@@ -63,7 +65,9 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -85,6 +89,8 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
   private final TimeProvider timeProvider;
   private final MetricsCollectionService metricsCollectionService;
   private final long txMaxLifeTimeInMillis;
+  private final TopicPublishNotifier publishNotifier;
+  private final ThreadPoolExecutor multiFetchExecutor;
 
   @Inject
   CoreMessagingService(CConfiguration cConf, TableFactory tableFactory,
@@ -101,6 +107,8 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     this.messageTableWriterCache = createTableWriterCache(true, cConf);
     this.payloadTableWriterCache = createTableWriterCache(false, cConf);
     this.timeProvider = timeProvider;
+    this.publishNotifier = new TopicPublishNotifier();
+    this.multiFetchExecutor = createMultiFetchExecutor(cConf);
 
     // Due to circular dependency in our class hierarchy (which is bad), we cannot use metricsCollectionService
     // to construct metricsContext in here. The circular dependency is
@@ -130,6 +138,18 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     try (MetadataTable metadataTable = createMetadataTable()) {
       Map<String, String> properties = createDefaultProperties();
       properties.putAll(topicMetadata.getProperties());
+
+      // The payload compression cannot be changed, otherwise existing messages cannot be decoded
+      TopicMetadata existing = metadataTable.getMetadata(topicMetadata.getTopicId());
+      String compression = topicMetadata.getProperties().get(TopicMetadata.COMPRESSION_KEY);
+      if (compression != null && PayloadCompression.fromName(compression) != existing.getPayloadCompression()) {
+        throw new IllegalArgumentException("The compression property cannot be changed for topic "
+                                             + topicMetadata.getTopicId());
+      }
+      properties.remove(TopicMetadata.COMPRESSION_KEY);
+      if (existing.getProperties().containsKey(TopicMetadata.COMPRESSION_KEY)) {
+        properties.put(TopicMetadata.COMPRESSION_KEY, existing.getProperties().get(TopicMetadata.COMPRESSION_KEY));
+      }
       metadataTable.updateTopic(new TopicMetadata(topicMetadata.getTopicId(), properties, true));
       topicCache.invalidate(topicMetadata.getTopicId());
     }
@@ -142,6 +162,7 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       topicCache.invalidate(topicId);
       messageTableWriterCache.invalidate(topicId);
       payloadTableWriterCache.invalidate(topicId);
+      publishNotifier.remove(topicId);
     }
   }
 
@@ -176,7 +197,12 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       public PayloadTable get() throws IOException {
         return createPayloadTable(metadata);
       }
-    });
+    }, publishNotifier);
+  }
+
+  @Override
+  public MultiTopicMessageFetcher prepareMultiFetch(NamespaceId namespaceId) {
+    return new CoreMultiTopicMessageFetcher(namespaceId, this, multiFetchExecutor);
   }
 
   @Nullable
@@ -187,7 +213,9 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
       if (request.isTransactional()) {
         ensureValidTxLifetime(request.getTransactionWritePointer());
       }
-      return messageTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      RollbackDetail rollbackDetail = messageTableWriterCache.get(request.getTopicId()).persist(request, metadata);
+      publishNotifier.published(request.getTopicId());
+      return rollbackDetail;
     } catch (ExecutionException e) {
       Throwable cause = Objects.firstNonNull(e.getCause(), e);
       Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
@@ -260,6 +288,7 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     messageTableWriterCache.invalidateAll();
     messageTableWriterCache.invalidateAll();
     payloadTableWriterCache.invalidateAll();
+    multiFetchExecutor.shutdownNow();
     LOG.info("Core Messaging Service stopped");
   }
 
@@ -330,6 +359,19 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     });
   }
 
+  /**
+   * Creates the executor for scanning topics in parallel for multi-topic fetches. Threads are only created
+   * on demand and get terminated when idle.
+   */
+  private ThreadPoolExecutor createMultiFetchExecutor(CConfiguration cConf) {
+    int threads = Math.max(1, cConf.getInt(Constants.MessagingSystem.MULTI_FETCH_MAX_THREADS, 8));
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>(),
+                                                         Threads.createDaemonThreadFactory("messaging-multi-fetch-%d"));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   /**
    * Creates a {@link LoadingCache} for {@link ConcurrentMessageWriter}
    * for writing to {@link MessageTable} or {@link PayloadTable}.
@@ -370,10 +412,19 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
             Constants.Metrics.Tag.COMPONENT, Constants.Service.MESSAGING_SERVICE,
             Constants.Metrics.Tag.INSTANCE_ID, cConf.get(Constants.MessagingSystem.CONTAINER_INSTANCE_ID, "0"),
             Constants.Metrics.Tag.NAMESPACE, topicId.getNamespace(),
-            Constants.Metrics.Tag.TABLE, messageTable ? "message" : "payload"
+            Constants.Metrics.Tag.TABLE, messageTable ? "message" : "payload",
+            Constants.Metrics.Tag.TOPIC, topicId.getTopic()
           ));
 
-          return new ConcurrentMessageWriter(messagesWriter, metricsContext);
+          return new ConcurrentMessageWriter(messagesWriter, metricsContext,
+                                             cConf.getInt(Constants.MessagingSystem.WRITER_QUEUE_SIZE,
+                                                          ConcurrentMessageWriter.DEFAULT_QUEUE_SIZE),
+                                             cConf.getInt(Constants.MessagingSystem.WRITER_BATCH_SIZE,
+                                                          ConcurrentMessageWriter.DEFAULT_BATCH_SIZE),
+                                             cConf.getLong(Constants.MessagingSystem.WRITER_LINGER_MILLIS,
+                                                           ConcurrentMessageWriter.DEFAULT_LINGER_MILLIS),
+                                             cConf.getLong(Constants.MessagingSystem.WRITER_QUEUE_FULL_TIMEOUT_MILLIS,
+                                                           ConcurrentMessageWriter.DEFAULT_QUEUE_FULL_TIMEOUT_MILLIS));
         }
       });
   }
@@ -406,6 +457,12 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     // Default properties
     properties.put(TopicMetadata.TTL_KEY, cConf.get(Constants.MessagingSystem.TOPIC_DEFAULT_TTL_SECONDS));
     properties.put(TopicMetadata.GENERATION_KEY, MessagingUtils.Constants.DEFAULT_GENERATION);
+
+    // Only set the compression property if compression is enabled by default
+    String compression = cConf.get(Constants.MessagingSystem.TOPIC_DEFAULT_COMPRESSION);
+    if (PayloadCompression.fromName(compression) != PayloadCompression.NONE) {
+      properties.put(TopicMetadata.COMPRESSION_KEY, compression);
+    }
     return properties;
   }
 }
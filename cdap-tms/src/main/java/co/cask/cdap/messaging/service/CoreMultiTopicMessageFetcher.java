@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.messaging.TopicNotFoundException;
+import co.cask.cdap.messaging.MessageFetcher;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MultiTopicMessageFetcher;
+import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Implementation of {@link MultiTopicMessageFetcher} that fetches from each topic through
+ * {@link MessagingService#prepareFetch(TopicId)}. Topics are scanned in parallel using the given executor, with
+ * the first topic scanned by the calling thread.
+ */
+final class CoreMultiTopicMessageFetcher extends MultiTopicMessageFetcher {
+
+  private final MessagingService messagingService;
+  private final ExecutorService executor;
+
+  CoreMultiTopicMessageFetcher(NamespaceId namespaceId, MessagingService messagingService, ExecutorService executor) {
+    super(namespaceId);
+    this.messagingService = messagingService;
+    this.executor = executor;
+  }
+
+  @Override
+  public Map<TopicId, List<RawMessage>> fetch() throws TopicNotFoundException, IOException {
+    Map<TopicId, TopicFetchRequest> requests = getTopicRequests();
+    Map<TopicId, List<RawMessage>> result = new LinkedHashMap<>();
+    if (requests.isEmpty()) {
+      return result;
+    }
+
+    // Submit all topics except the first one to the executor, and fetch the first one in the current thread
+    Map<TopicId, Future<List<RawMessage>>> futures = new LinkedHashMap<>();
+    TopicId firstTopic = null;
+    try {
+      for (final Map.Entry<TopicId, TopicFetchRequest> entry : requests.entrySet()) {
+        if (firstTopic == null) {
+          firstTopic = entry.getKey();
+          continue;
+        }
+        futures.put(entry.getKey(), executor.submit(new Callable<List<RawMessage>>() {
+          @Override
+          public List<RawMessage> call() throws Exception {
+            return fetchTopic(entry.getKey(), entry.getValue());
+          }
+        }));
+      }
+
+      result.put(firstTopic, fetchTopic(firstTopic, requests.get(firstTopic)));
+      for (Map.Entry<TopicId, Future<List<RawMessage>>> entry : futures.entrySet()) {
+        result.put(entry.getKey(), entry.getValue().get());
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while fetching messages from topics " + requests.keySet(), e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause() == null ? e : e.getCause();
+      Throwables.propagateIfPossible(cause, TopicNotFoundException.class, IOException.class);
+      throw Throwables.propagate(cause);
+    } finally {
+      // Cancel all pending fetches in case of failure. It is a no-op for completed fetches.
+      for (Future<List<RawMessage>> future : futures.values()) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Fetches messages from a single topic based on the given request.
+   */
+  private List<RawMessage> fetchTopic(TopicId topicId,
+                                      TopicFetchRequest request) throws TopicNotFoundException, IOException {
+    MessageFetcher fetcher = request.applyTo(messagingService.prepareFetch(topicId));
+    if (getTransaction() != null) {
+      fetcher.setTransaction(getTransaction());
+    }
+
+    List<RawMessage> messages = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+      while (iterator.hasNext()) {
+        messages.add(iterator.next());
+      }
+    }
+    return messages;
+  }
+}
@@ -16,19 +16,27 @@
 
 package co.cask.cdap.messaging.service;
 
+import co.cask.cdap.messaging.PayloadCompression;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
  * A {@link StoreRequest} that represents a pending store request to the underlying storage table.
+ * Payloads are encoded with the payload compression of the topic when this request is created, so that
+ * compression happens in the publishing thread instead of the single writer thread.
  */
 final class PendingStoreRequest extends StoreRequest {
 
   private final StoreRequest originalRequest;
   private final TopicMetadata metadata;
+  @Nullable
+  private final List<byte[]> payloads;
 
   private boolean completed;
   private long startTimestamp;
@@ -37,11 +45,27 @@ final class PendingStoreRequest extends StoreRequest {
   private int endSequenceId;
   private Throwable failureCause;
 
-  PendingStoreRequest(StoreRequest originalRequest, TopicMetadata topicMetadata) {
+  PendingStoreRequest(StoreRequest originalRequest, TopicMetadata topicMetadata) throws IOException {
     super(originalRequest.getTopicId(), originalRequest.isTransactional(),
           originalRequest.getTransactionWritePointer());
     this.originalRequest = originalRequest;
     this.metadata = topicMetadata;
+    this.payloads = compress(originalRequest, topicMetadata.getPayloadCompression());
+  }
+
+  /**
+   * Returns the encoded payloads of the given request, or {@code null} if payloads are stored as is.
+   */
+  @Nullable
+  private static List<byte[]> compress(StoreRequest request, PayloadCompression compression) throws IOException {
+    if (compression == PayloadCompression.NONE) {
+      return null;
+    }
+    List<byte[]> payloads = new ArrayList<>();
+    for (byte[] payload : request) {
+      payloads.add(compression.compress(payload));
+    }
+    return payloads;
   }
 
   TopicMetadata getTopicMetadata() {
@@ -108,7 +132,7 @@ final class PendingStoreRequest extends StoreRequest {
 
   @Override
   public Iterator<byte[]> iterator() {
-    return originalRequest.iterator();
+    return payloads == null ? originalRequest.iterator() : payloads.iterator();
   }
 
   @Override
@@ -103,7 +103,8 @@ abstract class StoreRequestWriter<T> implements Closeable {
    * @param transactionWritePointer the transaction write pointer if the request is transactional
    * @param writeTimestamp the timestamp to be used as the write timestamp
    * @param sequenceId the sequence id to be used
-   * @param payload the message payload
+   * @param payload the message payload, already encoded with the payload compression of the topic
+   *                by the {@link PendingStoreRequest}
    * @return an entry of type {@code <T>}.
    */
   abstract T getEntry(TopicMetadata metadata, boolean transactional, long transactionWritePointer,
@@ -173,8 +174,9 @@ abstract class StoreRequestWriter<T> implements Closeable {
       // or if the iterator is empty but we wanted to generate an entry with null payload
       if (payloadIterator.hasNext() || (generateNullPayloadEntry && !computedFirst)) {
         byte[] payload = payloadIterator.hasNext() ? payloadIterator.next() : null;
-        nextEntry = getEntry(storeRequest.getTopicMetadata(), storeRequest.isTransactional(),
-                             storeRequest.getTransactionWritePointer(), writeTimestamp, (short) seqId, payload);
+        TopicMetadata metadata = storeRequest.getTopicMetadata();
+        nextEntry = getEntry(metadata, storeRequest.isTransactional(), storeRequest.getTransactionWritePointer(),
+                             writeTimestamp, (short) seqId, payload);
       }
       computedFirst = true;
       completed = nextEntry == null;
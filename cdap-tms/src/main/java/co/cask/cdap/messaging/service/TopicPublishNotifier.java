@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.proto.id.TopicId;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps track of publishes to topics so that fetchers can wait for new messages.
+ *
+ * Each topic has a version that get incremented on every successful publish. A fetcher first captures the
+ * version before fetching. If nothing was fetched, it waits until the version changed. Publishers only acquire
+ * the monitor lock when there are fetchers waiting on the topic.
+ */
+@ThreadSafe
+final class TopicPublishNotifier {
+
+  private final ConcurrentMap<TopicId, TopicState> topicStates = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the current version of the given topic.
+   */
+  long getVersion(TopicId topicId) {
+    return getState(topicId).version.get();
+  }
+
+  /**
+   * Notifies that new messages were published to the given topic.
+   */
+  void published(TopicId topicId) {
+    TopicState state = topicStates.get(topicId);
+    if (state == null) {
+      // No one has ever waited on this topic
+      return;
+    }
+    state.version.incrementAndGet();
+    if (state.waiters.get() > 0) {
+      synchronized (state) {
+        state.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits until the version of the given topic is different than the given version or the timeout elapsed.
+   *
+   * @return {@code true} if the topic version changed; {@code false} if timeout
+   */
+  boolean await(TopicId topicId, long version, long timeout, TimeUnit unit) throws InterruptedException {
+    TopicState state = getState(topicId);
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+    state.waiters.incrementAndGet();
+    try {
+      synchronized (state) {
+        long remaining = deadline - System.nanoTime();
+        while (state.version.get() == version && remaining > 0) {
+          TimeUnit.NANOSECONDS.timedWait(state, remaining);
+          remaining = deadline - System.nanoTime();
+        }
+      }
+    } finally {
+      state.waiters.decrementAndGet();
+    }
+    return state.version.get() != version;
+  }
+
+  /**
+   * Removes the states of the given topic.
+   */
+  void remove(TopicId topicId) {
+    TopicState state = topicStates.remove(topicId);
+    if (state != null) {
+      // Wake up all waiters
+      state.version.incrementAndGet();
+      synchronized (state) {
+        state.notifyAll();
+      }
+    }
+  }
+
+  private TopicState getState(TopicId topicId) {
+    TopicState state = topicStates.get(topicId);
+    if (state != null) {
+      return state;
+    }
+    state = new TopicState();
+    TopicState existing = topicStates.putIfAbsent(topicId, state);
+    return existing == null ? state : existing;
+  }
+
+  /**
+   * The states of a topic.
+   */
+  private static final class TopicState {
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicInteger waiters = new AtomicInteger();
+  }
+}
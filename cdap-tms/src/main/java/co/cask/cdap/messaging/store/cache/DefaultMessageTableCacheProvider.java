@@ -22,6 +22,8 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.messaging.MessagingServiceUtils;
 import co.cask.cdap.messaging.cache.MessageCache;
+import co.cask.cdap.messaging.cache.SegmentedMessageCache;
+import co.cask.cdap.messaging.cache.SkipListMessageCache;
 import co.cask.cdap.messaging.store.MessageTable;
 import co.cask.cdap.proto.id.TopicId;
 import com.google.common.collect.ImmutableMap;
@@ -38,6 +40,8 @@ import javax.annotation.Nullable;
  */
 public class DefaultMessageTableCacheProvider implements MessageTableCacheProvider {
 
+  private static final String CACHE_TYPE_SEGMENTED = "segmented";
+
   private final CConfiguration cConf;
   private final MetricsCollectionService metricsCollectionService;
   private Map<TopicId, MessageCache<MessageTable.Entry>> topicMessageCaches;
@@ -75,9 +79,14 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
               // Have reduce trigger as 70% of the hard limit and min retain as 50% of the hard limit
               // In future, it can be adjusted dynamically based on metrics
               MessageCache.Limits limits = new MessageCache.Limits(hardLimit / 2, hardLimit * 7 / 10, hardLimit);
+              boolean segmented = CACHE_TYPE_SEGMENTED.equalsIgnoreCase(
+                cConf.get(Constants.MessagingSystem.CACHE_TYPE));
+              int segmentEntries = cConf.getInt(Constants.MessagingSystem.CACHE_SEGMENT_ENTRIES, 1024);
               for (TopicId topic : systemTopics) {
-                caches.put(topic, new MessageCache<>(comparator, weigher, limits,
-                                                     createMetricsContext(cConf, topic, metricsCollectionService)));
+                MetricsContext metricsContext = createMetricsContext(cConf, topic, metricsCollectionService);
+                caches.put(topic, segmented
+                  ? new SegmentedMessageCache<>(comparator, weigher, limits, segmentEntries, metricsContext)
+                  : new SkipListMessageCache<>(comparator, weigher, limits, metricsContext));
               }
             }
           }
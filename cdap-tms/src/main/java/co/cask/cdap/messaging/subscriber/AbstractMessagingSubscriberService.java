@@ -22,7 +22,6 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.DatasetContext;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.messaging.Message;
-import co.cask.cdap.api.messaging.MessageFetcher;
 import co.cask.cdap.api.messaging.MessagingContext;
 import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.api.metrics.MetricsContext;
@@ -33,7 +32,10 @@ import co.cask.cdap.common.service.AbstractRetryableScheduledService;
 import co.cask.cdap.common.service.RetryStrategy;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.common.utils.TimeBoundIterator;
+import co.cask.cdap.messaging.MessageFetcher;
+import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.messaging.data.MessageId;
+import co.cask.cdap.messaging.data.RawMessage;
 import co.cask.cdap.proto.id.TopicId;
 import com.google.common.collect.AbstractIterator;
 import org.apache.tephra.TransactionNotInProgressException;
@@ -44,6 +46,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.xml.ws.handler.MessageContext;
 
@@ -66,8 +69,11 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractRetr
   private final MetricsContext metricsContext;
   private final int txTimeoutSeconds;
   private final int maxTxTimeoutSeconds;
+  private final MessagingService messagingService;
+  private final long longPollTimeoutMillis;
   private boolean messageIdInitialized;
   private String messageId;
+  private boolean longPollWokenUp;
 
   /**
    * Constructor.
@@ -86,6 +92,34 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractRetr
                                                int txTimeoutSeconds, int maxTxTimeoutSeconds,
                                                long emptyFetchDelayMillis,
                                                RetryStrategy retryStrategy, MetricsContext metricsContext) {
+    this(topicId, transactionalFetch, fetchSize, txTimeoutSeconds, maxTxTimeoutSeconds, emptyFetchDelayMillis,
+         retryStrategy, metricsContext, null, 0L);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param topicId the topic to consume from
+   * @param transactionalFetch {@code true} to indicate fetching from TMS needs to be performed inside transaction
+   * @param fetchSize number of messages to fetch in each batch
+   * @param txTimeoutSeconds transaction timeout in seconds to use when processing messages
+   * @param maxTxTimeoutSeconds max transaction timeout in seconds to use, any tx timeout larger than this number
+   *                           is not allowed
+   * @param emptyFetchDelayMillis number of milliseconds to sleep after a fetch returns empty result
+   * @param retryStrategy the {@link RetryStrategy} to determine retry on failure
+   * @param metricsContext the {@link MetricsContext} for emitting metrics about the message consumption.
+   * @param messagingService the {@link MessagingService} for waiting for new messages after a fetch returns empty
+   *                         result, or {@code null} to always sleep for {@code emptyFetchDelayMillis}
+   * @param longPollTimeoutMillis maximum number of milliseconds to wait for new messages after a fetch returns
+   *                              empty result, instead of sleeping for {@code emptyFetchDelayMillis}.
+   *                              Set it to {@code 0} to disable waiting.
+   */
+  protected AbstractMessagingSubscriberService(TopicId topicId, boolean transactionalFetch, int fetchSize,
+                                               int txTimeoutSeconds, int maxTxTimeoutSeconds,
+                                               long emptyFetchDelayMillis,
+                                               RetryStrategy retryStrategy, MetricsContext metricsContext,
+                                               @Nullable MessagingService messagingService,
+                                               long longPollTimeoutMillis) {
     super(retryStrategy);
     this.topicId = topicId;
     this.transactionalFetch = transactionalFetch;
@@ -94,6 +128,8 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractRetr
     this.maxTxTimeoutSeconds = maxTxTimeoutSeconds;
     this.emptyFetchDelayMillis = emptyFetchDelayMillis;
     this.metricsContext = metricsContext;
+    this.messagingService = messagingService;
+    this.longPollTimeoutMillis = longPollTimeoutMillis;
   }
 
   /**
@@ -226,8 +262,16 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractRetr
     metricsContext.gauge("tms.fetch.time.ms", System.currentTimeMillis() - startTime);
     metricsContext.increment("tms.fetch.messages", messages.size());
 
+    // If the last long poll got woken up but the fetch still returns nothing (e.g. messages are not yet visible
+    // to the fetch transaction), sleep normally to avoid busy looping.
+    boolean wokenUp = longPollWokenUp;
+    longPollWokenUp = false;
+
     // Return if stopping or request to sleep for configured number of milliseconds if there are no notifications
     if (messages.isEmpty() || state() != State.RUNNING) {
+      if (messages.isEmpty() && !wokenUp && state() == State.RUNNING) {
+        return waitForMessages(messageId);
+      }
       return emptyFetchDelayMillis;
     }
 
@@ -300,9 +344,8 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractRetr
   private List<Message> doFetchMessages(@Nullable String messageId) throws TopicNotFoundException, IOException {
     List<Message> messages = new ArrayList<>();
     LOG.trace("Fetching from topic '{}' with messageId '{}'", messageId);
-    MessageFetcher messageFetcher = getMessagingContext().getMessageFetcher();
-    try (CloseableIterator<Message> iterator = messageFetcher.fetch(topicId.getNamespace(),
-                                                                    topicId.getTopic(), fetchSize, messageId)) {
+    try (CloseableIterator<Message> iterator = getMessagingContext().getMessageFetcher()
+      .fetch(topicId.getNamespace(), topicId.getTopic(), fetchSize, messageId)) {
       while (iterator.hasNext() && state() == State.RUNNING) {
         messages.add(iterator.next());
       }
@@ -310,6 +353,36 @@ public abstract class AbstractMessagingSubscriberService<T> extends AbstractRetr
     return messages;
   }
 
+  /**
+   * Waits for new messages to be available after the given message id, by fetching from the messaging service
+   * with a wait timeout. The wait is done outside of transaction.
+   *
+   * @return number of milliseconds to sleep before the next fetch and process should happen.
+   */
+  private long waitForMessages(@Nullable String messageId) throws TopicNotFoundException, IOException {
+    if (messagingService == null || longPollTimeoutMillis <= 0) {
+      return emptyFetchDelayMillis;
+    }
+
+    long startTime = System.currentTimeMillis();
+    MessageFetcher fetcher = messagingService.prepareFetch(topicId)
+      .setLimit(1)
+      .setWaitTimeout(longPollTimeoutMillis, TimeUnit.MILLISECONDS);
+    if (messageId != null) {
+      fetcher.setStartMessage(Bytes.fromHexString(messageId), false);
+    }
+    try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+      if (iterator.hasNext()) {
+        // New messages are available, fetch again immediately
+        longPollWokenUp = true;
+        return 0L;
+      }
+    }
+
+    // If the messaging service doesn't support waiting, sleep for the remaining of the empty fetch delay
+    return Math.max(0L, emptyFetchDelayMillis - (System.currentTimeMillis() - startTime));
+  }
+
   /**
    * Returns the publish time encoded in the given message id.
    *
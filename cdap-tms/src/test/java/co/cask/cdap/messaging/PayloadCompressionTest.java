@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.base.Strings;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Unit test for {@link PayloadCompression}.
+ */
+public class PayloadCompressionTest {
+
+  @Test
+  public void testCompression() throws Exception {
+    byte[] small = Bytes.toBytes("small");
+    byte[] repetitive = Bytes.toBytes(Strings.repeat("metrics.process.count", 100));
+    byte[] random = new byte[1024];
+    new Random().nextBytes(random);
+
+    for (PayloadCompression compression : PayloadCompression.values()) {
+      Assert.assertNull(compression.compress(null));
+      Assert.assertNull(compression.decompress(null));
+
+      for (byte[] payload : new byte[][] { Bytes.EMPTY_BYTE_ARRAY, small, repetitive, random }) {
+        byte[] encoded = compression.compress(payload);
+        Assert.assertArrayEquals(payload, compression.decompress(encoded));
+      }
+
+      // Repetitive payload should be compressed
+      if (compression != PayloadCompression.NONE) {
+        Assert.assertTrue(compression.compress(repetitive).length < repetitive.length / 4);
+        // Payload that doesn't compress should only have one byte overhead
+        Assert.assertEquals(random.length + 1, compression.compress(random).length);
+      }
+    }
+  }
+
+  @Test
+  public void testTopicProperty() {
+    TopicMetadata metadata = new TopicMetadata(NamespaceId.DEFAULT.topic("t"));
+    Assert.assertEquals(PayloadCompression.NONE, metadata.getPayloadCompression());
+
+    metadata = new TopicMetadata(NamespaceId.DEFAULT.topic("t"), TopicMetadata.COMPRESSION_KEY, "Snappy");
+    Assert.assertEquals(PayloadCompression.SNAPPY, metadata.getPayloadCompression());
+
+    try {
+      metadata = new TopicMetadata(NamespaceId.DEFAULT.topic("t"), TopicMetadata.COMPRESSION_KEY, "unknown");
+      metadata.getPayloadCompression();
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -39,7 +39,7 @@ import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Unit test for {@link MessageCache}.
+ * Unit test for {@link SkipListMessageCache}.
  */
 public class MessageCacheTest {
 
@@ -48,7 +48,8 @@ public class MessageCacheTest {
   @Test
   public void testNoCache() {
     // Create a cache with zero limits
-    MessageCache<String> cache = new MessageCache<>(String.CASE_INSENSITIVE_ORDER, new MessageCache.Weigher<String>() {
+    MessageCache<String> cache = new SkipListMessageCache<>(String.CASE_INSENSITIVE_ORDER,
+                                                            new MessageCache.Weigher<String>() {
       @Override
       public int weight(String entry) {
         return entry.length();
@@ -66,7 +67,7 @@ public class MessageCacheTest {
   @Test
   public void testBasic() {
     // Test basic operations for the cache from single thread
-    MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+    MessageCache<Integer> cache = new SkipListMessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
                                                      new MessageCache.Limits(10, 14, 20), NOOP_METRICS);
 
     cache.addAll(Arrays.asList(1, 2, 3, 4, 5, 11, 12, 13, 14, 15).iterator());
@@ -137,7 +138,7 @@ public class MessageCacheTest {
 
   @Test
   public void testUpdate() {
-    MessageCache<Entry> cache = new MessageCache<>(new EntryComparator(), new UnitWeigher<Entry>(),
+    MessageCache<Entry> cache = new SkipListMessageCache<>(new EntryComparator(), new UnitWeigher<Entry>(),
                                                    new MessageCache.Limits(10, 14, 20), NOOP_METRICS);
 
     // Try update that alter order at different element. Exception should be raised in all cases.
@@ -190,7 +191,7 @@ public class MessageCacheTest {
   @Test
   public void testCacheReduction() {
     // Test the cache reduction logic in single thread case.
-    MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+    MessageCache<Integer> cache = new SkipListMessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
                                                      new MessageCache.Limits(5, 7, 10), NOOP_METRICS);
 
     MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
@@ -239,7 +240,7 @@ public class MessageCacheTest {
   @Test
   public void testCacheResize() {
     // Test resize the cache
-    MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+    MessageCache<Integer> cache = new SkipListMessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
                                                      new MessageCache.Limits(2, 3, 4), NOOP_METRICS);
 
     MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
@@ -269,7 +270,7 @@ public class MessageCacheTest {
   @Test
   public void testAddError() throws Exception {
     // Test to verify various error situations are being safeguarded
-    final MessageCache<Integer> cache = new MessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+    final MessageCache<Integer> cache = new SkipListMessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
                                                            new MessageCache.Limits(5, 7, 10), NOOP_METRICS);
 
     // 1. Adding out of order should result in error
@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.cache;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.messaging.store.MessageFilter;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Unit test for {@link SegmentedMessageCache}.
+ */
+public class SegmentedMessageCacheTest {
+
+  private static final MetricsContext NOOP_METRICS = new NoopMetricsContext();
+
+  @Test
+  public void testBasic() {
+    // Use small segments so that scans need to cross segment boundaries
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                                       new MessageCache.Limits(100, 140, 200), 3,
+                                                                       NOOP_METRICS);
+
+    cache.addAll(Arrays.asList(1, 2, 3, 4, 5, 11, 12, 13, 14, 15).iterator());
+    Assert.assertEquals(10, cache.getCurrentWeight());
+    Assert.assertEquals(4, cache.getSegmentCount());
+
+    MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    // Scan with a start key that is not in cache
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 11, 12, 13, 14, 15), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that is in the cache, inclusive
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(3, true, 5, filter)) {
+      Assert.assertEquals(Arrays.asList(3, 4, 5, 11, 12), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that is at the end of a segment, exclusive
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(3, false, 5, filter)) {
+      Assert.assertEquals(Arrays.asList(4, 5, 11, 12, 13), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that is between keys in the cache
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(9, true, 5, filter)) {
+      Assert.assertEquals(Arrays.asList(11, 12, 13, 14, 15), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that is larger than everything in the cache
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(15, false, 5, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertFalse(scanner.hasNext());
+    }
+
+    // Scan with filter that hold when number 11
+    MessageFilter<Integer> holdAtEleven = new MessageFilter<Integer>() {
+      @Override
+      public Result apply(Integer input) {
+        return input == 11 ? Result.HOLD : Result.ACCEPT;
+      }
+    };
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, holdAtEleven)) {
+      Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5), Lists.newArrayList(scanner));
+    }
+  }
+
+  @Test
+  public void testSegmentEviction() {
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                                       new MessageCache.Limits(4, 6, 8), 2,
+                                                                       NOOP_METRICS);
+    MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    cache.addAll(Arrays.asList(1, 2, 3, 4, 5, 6).iterator());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), Lists.newArrayList(scanner));
+    }
+
+    // Adding one more goes over the reduce trigger. Whole segments are evicted until the min retain.
+    cache.addAll(Collections.singletonList(7).iterator());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertEquals(Integer.valueOf(4), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(4, 5, 6, 7), Lists.newArrayList(scanner));
+    }
+    Assert.assertEquals(4, cache.getCurrentWeight());
+
+    // A scanner created before eviction still sees the entries in its snapshot
+    MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, filter);
+    cache.addAll(Arrays.asList(8, 9, 10).iterator());
+    Assert.assertEquals(Arrays.asList(4, 5, 6, 7), Lists.newArrayList(scanner));
+    try (MessageCache.Scanner<Integer> newScanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertEquals(Arrays.asList(7, 8, 9, 10), Lists.newArrayList(newScanner));
+    }
+
+    // Clear the cache
+    cache.clear();
+    Assert.assertEquals(0, cache.getCurrentWeight());
+    try (MessageCache.Scanner<Integer> emptyScanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertNull(emptyScanner.getFirstInCache());
+      Assert.assertFalse(emptyScanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testAddError() {
+    SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(new IntComparator(), new UnitWeigher<Integer>(),
+                                                                       new MessageCache.Limits(5, 7, 10), 2,
+                                                                       NOOP_METRICS);
+    // Adding out of order should result in error and the cache being cleared
+    try {
+      cache.addAll(Arrays.asList(5, 2, 3, 4).iterator());
+      Assert.fail("Expected failure for adding out of order");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(0, cache.getCurrentWeight());
+    }
+
+    // Adding entries that are smaller than the largest one in the cache
+    cache.addAll(Arrays.asList(5, 6, 7, 8).iterator());
+    try {
+      cache.addAll(Arrays.asList(1, 2, 3, 4).iterator());
+      Assert.fail("Expected failure for adding out of order");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(0, cache.getCurrentWeight());
+    }
+  }
+
+  @Test
+  public void testConcurrentScan() throws Exception {
+    final SegmentedMessageCache<Integer> cache = new SegmentedMessageCache<>(
+      new IntComparator(), new UnitWeigher<Integer>(), new MessageCache.Limits(500, 700, 1000), 16, NOOP_METRICS);
+    final AtomicBoolean stopped = new AtomicBoolean();
+    final MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    // Readers continuously scanning the cache and verifying the entries are strictly increasing and contiguous
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> futures = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          int scans = 0;
+          while (!stopped.get()) {
+            try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 1000, filter)) {
+              Integer last = null;
+              while (scanner.hasNext()) {
+                Integer entry = scanner.next();
+                if (last != null) {
+                  Assert.assertEquals(last + 1, entry.intValue());
+                }
+                last = entry;
+              }
+            }
+            scans++;
+          }
+          return scans;
+        }
+      }));
+    }
+
+    for (int i = 0; i < 1000; i++) {
+      List<Integer> entries = Lists.newArrayList();
+      for (int j = 0; j < 10; j++) {
+        entries.add(i * 10 + j);
+      }
+      cache.addAll(entries.iterator());
+    }
+    stopped.set(true);
+
+    for (Future<Integer> future : futures) {
+      Assert.assertTrue(future.get(10, TimeUnit.SECONDS) > 0);
+    }
+    executor.shutdownNow();
+  }
+
+  /**
+   * A {@link Comparator} for {@link Integer}.
+   */
+  private static final class IntComparator implements Comparator<Integer> {
+
+    @Override
+    public int compare(Integer o1, Integer o2) {
+      return o1.compareTo(o2);
+    }
+  }
+
+  /**
+   * A {@link MessageCache.Weigher} that also return 1 for the weight
+   *
+   * @param <T> type of entry
+   */
+  private static final class UnitWeigher<T> implements MessageCache.Weigher<T> {
+
+    @Override
+    public int weight(T entry) {
+      return 1;
+    }
+  }
+}
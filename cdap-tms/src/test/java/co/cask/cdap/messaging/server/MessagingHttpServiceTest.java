@@ -26,7 +26,10 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
 import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MultiTopicMessageFetcher;
+import co.cask.cdap.messaging.PayloadCompression;
 import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
@@ -57,6 +60,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -80,7 +84,20 @@ public class MessagingHttpServiceTest {
     // Set max life time to a high value so that dummy tx ids that we create in the tests still work
     cConf.setLong(TxConstants.Manager.CFG_TX_MAX_LIFETIME, 10000000000L);
 
-    Injector injector = Guice.createInjector(
+    Injector injector = createInjector(cConf);
+    httpService = injector.getInstance(MessagingHttpService.class);
+    httpService.startAndWait();
+
+    client = new ClientMessagingService(injector.getInstance(DiscoveryServiceClient.class));
+  }
+
+  @AfterClass
+  public static void finish() {
+    httpService.stopAndWait();
+  }
+
+  private static Injector createInjector(CConfiguration cConf) {
+    return Guice.createInjector(
       new ConfigModule(cConf),
       new DiscoveryRuntimeModule().getInMemoryModules(),
       new MessagingServerRuntimeModule().getInMemoryModules(),
@@ -91,16 +108,6 @@ public class MessagingHttpServiceTest {
         }
       }
     );
-
-    httpService = injector.getInstance(MessagingHttpService.class);
-    httpService.startAndWait();
-
-    client = new ClientMessagingService(injector.getInstance(DiscoveryServiceClient.class));
-  }
-
-  @AfterClass
-  public static void finish() {
-    httpService.stopAndWait();
   }
 
   @Test
@@ -440,6 +447,187 @@ public class MessagingHttpServiceTest {
     client.deleteTopic(topicId);
   }
 
+  @Test
+  public void testMaxResponseBytes() throws Exception {
+    // Each message is larger than the chunk size, and the response limit falls in the middle of the fourth message
+    int payloadSize = 100;
+    int messageSize = MessageId.RAW_ID_SIZE + payloadSize + 8;
+    CConfiguration limitCConf = CConfiguration.copy(cConf);
+    limitCConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
+    limitCConf.setLong(Constants.MessagingSystem.HTTP_SERVER_CONSUME_MAX_RESPONSE_BYTES,
+                       messageSize * 3 + messageSize / 2);
+
+    Injector injector = createInjector(limitCConf);
+    MessagingHttpService limitService = injector.getInstance(MessagingHttpService.class);
+    limitService.startAndWait();
+    try {
+      MessagingService limitClient = new ClientMessagingService(injector.getInstance(DiscoveryServiceClient.class));
+      TopicId topicId = new NamespaceId("ns1").topic("testMaxResponseBytes");
+      limitClient.createTopic(new TopicMetadata(topicId));
+
+      StoreRequestBuilder builder = StoreRequestBuilder.of(topicId);
+      for (int i = 0; i < 10; i++) {
+        builder.addPayload(Strings.repeat(Integer.toString(i), payloadSize));
+      }
+      limitClient.publish(builder.build());
+
+      // Each response ends at a message boundary once the limit is reached. Fetching again from the last message
+      // returned continues with the next message.
+      List<Integer> responseSizes = new ArrayList<>();
+      List<RawMessage> messages = new ArrayList<>();
+      byte[] startMessageId = null;
+      while (true) {
+        MessageFetcher fetcher = limitClient.prepareFetch(topicId);
+        if (startMessageId != null) {
+          fetcher.setStartMessage(startMessageId, false);
+        }
+        List<RawMessage> response = new ArrayList<>();
+        try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
+          Iterators.addAll(response, iterator);
+        }
+        if (response.isEmpty()) {
+          break;
+        }
+        responseSizes.add(response.size());
+        messages.addAll(response);
+        startMessageId = response.get(response.size() - 1).getId();
+      }
+
+      Assert.assertEquals(Arrays.asList(4, 4, 2), responseSizes);
+      Assert.assertEquals(10, messages.size());
+      for (int i = 0; i < 10; i++) {
+        Assert.assertEquals(Strings.repeat(Integer.toString(i), payloadSize),
+                            Bytes.toString(messages.get(i).getPayload()));
+      }
+
+      // The limit applies to the whole multi-topic response. Topics after the limit is reached have no message.
+      TopicId otherTopicId = new NamespaceId("ns1").topic("testMaxResponseBytesOther");
+      limitClient.createTopic(new TopicMetadata(otherTopicId));
+      limitClient.publish(StoreRequestBuilder.of(otherTopicId).addPayload("other").build());
+
+      Map<TopicId, List<RawMessage>> multiResponse = limitClient.prepareMultiFetch(topicId.getParent())
+        .addTopic(topicId, 0L, 10)
+        .addTopic(otherTopicId, 0L, 10)
+        .fetch();
+      Assert.assertEquals(Arrays.asList(topicId, otherTopicId), new ArrayList<>(multiResponse.keySet()));
+      Assert.assertEquals(4, multiResponse.get(topicId).size());
+      Assert.assertTrue(multiResponse.get(otherTopicId).isEmpty());
+
+      multiResponse = limitClient.prepareMultiFetch(topicId.getParent())
+        .addTopic(topicId, messages.get(7).getId(), false, 10)
+        .addTopic(otherTopicId, 0L, 10)
+        .fetch();
+      Assert.assertEquals(2, multiResponse.get(topicId).size());
+      Assert.assertEquals(1, multiResponse.get(otherTopicId).size());
+      Assert.assertEquals("other", Bytes.toString(multiResponse.get(otherTopicId).get(0).getPayload()));
+
+      limitClient.deleteTopic(otherTopicId);
+      limitClient.deleteTopic(topicId);
+    } finally {
+      limitService.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testMultiTopicFetch() throws Exception {
+    NamespaceId nsId = new NamespaceId("ns1");
+    List<TopicId> topics = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      TopicId topicId = nsId.topic("testMultiTopicFetch" + i);
+      client.createTopic(new TopicMetadata(topicId));
+      topics.add(topicId);
+
+      // Publish i + 1 messages to each topic
+      StoreRequestBuilder builder = StoreRequestBuilder.of(topicId);
+      for (int j = 0; j <= i; j++) {
+        builder.addPayload("t" + i + "m" + j);
+      }
+      client.publish(builder.build());
+    }
+
+    // Fetch all topics, with a limit of 3 messages per topic
+    MultiTopicMessageFetcher fetcher = client.prepareMultiFetch(nsId);
+    for (TopicId topicId : topics) {
+      fetcher.addTopic(topicId, 0L, 3);
+    }
+    Map<TopicId, List<RawMessage>> result = fetcher.fetch();
+    Assert.assertEquals(topics, new ArrayList<>(result.keySet()));
+    for (int i = 0; i < 5; i++) {
+      List<RawMessage> messages = result.get(topics.get(i));
+      Assert.assertEquals(Math.min(3, i + 1), messages.size());
+      for (int j = 0; j < messages.size(); j++) {
+        Assert.assertEquals("t" + i + "m" + j, Bytes.toString(messages.get(j).getPayload()));
+      }
+    }
+
+    // Fetch again, starting after the last message fetched from each topic
+    fetcher = client.prepareMultiFetch(nsId);
+    for (TopicId topicId : topics) {
+      List<RawMessage> messages = result.get(topicId);
+      fetcher.addTopic(topicId, messages.get(messages.size() - 1).getId(), false, 10);
+    }
+    result = fetcher.fetch();
+    for (int i = 0; i < 5; i++) {
+      List<RawMessage> messages = result.get(topics.get(i));
+      Assert.assertEquals(Math.max(0, i - 2), messages.size());
+      for (int j = 0; j < messages.size(); j++) {
+        Assert.assertEquals("t" + i + "m" + (j + 3), Bytes.toString(messages.get(j).getPayload()));
+      }
+    }
+
+    // Fetching from a non-existing topic should fail
+    try {
+      client.prepareMultiFetch(nsId).addTopic(topics.get(0), 0L, 1).addTopic(nsId.topic("missing"), 0L, 1).fetch();
+      Assert.fail("Expected TopicNotFoundException");
+    } catch (TopicNotFoundException e) {
+      // expected
+    }
+
+    for (TopicId topicId : topics) {
+      client.deleteTopic(topicId);
+    }
+  }
+
+  @Test
+  public void testCompressedTopic() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("testCompressedTopic");
+    client.createTopic(new TopicMetadata(topicId, TopicMetadata.COMPRESSION_KEY, "snappy"));
+
+    // Publish both small and compressible payloads, non-transactionally and transactionally
+    List<String> payloads = Arrays.asList("small", Strings.repeat("compressible", 100));
+    client.publish(StoreRequestBuilder.of(topicId).addPayloads(toBytes(payloads)).build());
+    client.storePayload(StoreRequestBuilder.of(topicId).setTransaction(1L).addPayloads(toBytes(payloads)).build());
+    client.publish(StoreRequestBuilder.of(topicId).setTransaction(1L).build());
+
+    List<String> fetched = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = client.prepareFetch(topicId).fetch()) {
+      while (iterator.hasNext()) {
+        fetched.add(Bytes.toString(iterator.next().getPayload()));
+      }
+    }
+    List<String> expected = new ArrayList<>(payloads);
+    expected.addAll(payloads);
+    Assert.assertEquals(expected, fetched);
+
+    // Updating the topic without the compression property retains the compression
+    client.updateTopic(new TopicMetadata(topicId, TopicMetadata.TTL_KEY, 100));
+    Assert.assertEquals(PayloadCompression.SNAPPY, client.getTopic(topicId).getPayloadCompression());
+
+    // Changing compression is not allowed
+    try {
+      client.updateTopic(new TopicMetadata(topicId, TopicMetadata.COMPRESSION_KEY, "deflate"));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    client.deleteTopic(topicId);
+  }
+
+  private List<byte[]> toBytes(List<String> payloads) {
+    return payloads.stream().map(Bytes::toBytes).collect(Collectors.toList());
+  }
+
   @Test
   public void testPayloadTable() throws Exception {
     // This test is to verify storing transaction messages to the payload table
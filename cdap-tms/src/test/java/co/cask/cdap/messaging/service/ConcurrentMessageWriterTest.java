@@ -18,6 +18,7 @@ package co.cask.cdap.messaging.service;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.metrics.MetricsCollector;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.utils.TimeProvider;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
@@ -37,15 +38,18 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 /**
@@ -268,6 +272,55 @@ public class ConcurrentMessageWriterTest {
     }
   }
 
+  @Test
+  public void testBoundedQueue() throws InterruptedException {
+    int threadCount = 20;
+    final int requestPerThread = 50;
+
+    final TopicId topicId = NamespaceId.DEFAULT.topic("t");
+    final TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider(), 5L);
+
+    // Use a queue smaller than the number of threads and a small batch size to exercise the backpressure
+    final ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(),
+                                                                       4, 2, 1L, TimeUnit.MINUTES.toMillis(1));
+    final AtomicInteger failures = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      final int threadId = i;
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < requestPerThread; i++) {
+            try {
+              writer.persist(new TestStoreRequest(topicId, Collections.singletonList(threadId + ":" + i)), metadata);
+            } catch (IOException e) {
+              LOG.error("Exception raised when persisting.", e);
+              failures.incrementAndGet();
+            }
+          }
+        }
+      });
+    }
+
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    Assert.assertEquals(0, failures.get());
+
+    // Validate that all messages are written, with the per thread ordering preserved
+    List<RawMessage> messages = testWriter.getMessages().get(topicId);
+    Assert.assertEquals(threadCount * requestPerThread, messages.size());
+
+    Map<Integer, Integer> lastSeen = new HashMap<>();
+    for (RawMessage message : messages) {
+      String[] parts = Bytes.toString(message.getPayload()).split(":");
+      int threadId = Integer.parseInt(parts[0]);
+      int seq = Integer.parseInt(parts[1]);
+      Integer last = lastSeen.put(threadId, seq);
+      Assert.assertEquals(last == null ? 0 : last + 1, seq);
+    }
+  }
+
   /**
    * A {@link StoreRequestWriter} that turns all payloads to {@link RawMessage} and stores it in a List.
    */
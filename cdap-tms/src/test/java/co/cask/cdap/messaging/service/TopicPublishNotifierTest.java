@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.service;
+
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link TopicPublishNotifier}.
+ */
+public class TopicPublishNotifierTest {
+
+  @Test
+  public void testAwait() throws Exception {
+    final TopicPublishNotifier notifier = new TopicPublishNotifier();
+    final TopicId topicId = NamespaceId.DEFAULT.topic("notify");
+
+    // Nothing published, should timeout
+    long version = notifier.getVersion(topicId);
+    Assert.assertFalse(notifier.await(topicId, version, 10, TimeUnit.MILLISECONDS));
+
+    // Publish before await should return immediately
+    notifier.published(topicId);
+    Assert.assertTrue(notifier.await(topicId, version, 1, TimeUnit.MINUTES));
+
+    // Publish while waiting should wake up the waiter
+    final long newVersion = notifier.getVersion(topicId);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return notifier.await(topicId, newVersion, 1, TimeUnit.MINUTES);
+        }
+      });
+      // Wait a bit so that the waiter is blocked before publishing
+      TimeUnit.MILLISECONDS.sleep(100);
+      notifier.published(topicId);
+      Assert.assertTrue(future.get(10, TimeUnit.SECONDS));
+
+      // Removing the topic should wake up waiters as well
+      final long removeVersion = notifier.getVersion(topicId);
+      future = executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return notifier.await(topicId, removeVersion, 1, TimeUnit.MINUTES);
+        }
+      });
+      TimeUnit.MILLISECONDS.sleep(100);
+      notifier.remove(topicId);
+      Assert.assertTrue(future.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -61,6 +61,12 @@ public interface MetricStore {
    */
   void deleteTTLExpired();
 
+  /**
+   * Computes the metric data of the resolutions that are rolled up from finer resolutions, for all time partitions
+   * that are complete since the last call. It is a no-op if rollup is not enabled.
+   */
+  void rollup();
+
   /**
    * Deletes all metric data specified by the {@link MetricDeleteQuery}
    * @param query specifies what to delete
@@ -92,11 +92,19 @@ public final class LoggingUtil {
   public static Map<String, String> encodeMDC(Map<String, String> mdc) {
     Map<String, String> encodeMap = new HashMap<>(mdc.size());
     for (Map.Entry<String, String> entry : mdc.entrySet()) {
-      encodeMap.put(entry.getKey() == null ? MDC_NULL_KEY : entry.getKey(), entry.getValue());
+      encodeMap.put(encodeMDCKey(entry.getKey()), entry.getValue());
     }
     return encodeMap;
   }
 
+  /**
+   * Returns the key to use in the encoded mdc map for the given mdc key, which replaces {@code null} key with
+   * {@link #MDC_NULL_KEY}.
+   */
+  public static String encodeMDCKey(@Nullable String key) {
+    return key == null ? MDC_NULL_KEY : key;
+  }
+
   /**
    * Creates a new map from the given map by reverting the {@link #encodeMDC(Map)} replacement.
    */
@@ -66,6 +66,8 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
   private int logCleanupIntervalMins;
   private int fileRetentionDurationDays;
   private int fileCleanupTransactionTimeout;
+  private int fileCompactionIntervalMins;
+  private long fileCompactionTargetSizeBytes;
 
   public CDAPLogAppender() {
     setName(getClass().getName());
@@ -128,6 +130,20 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
     this.fileCleanupTransactionTimeout = transactionTimeout;
   }
 
+  /**
+   * Sets the log file compaction interval. Compaction is disabled if it is not positive.
+   */
+  public void setFileCompactionIntervalMins(int fileCompactionIntervalMins) {
+    this.fileCompactionIntervalMins = fileCompactionIntervalMins;
+  }
+
+  /**
+   * Sets the maximum size of a file produced by log file compaction.
+   */
+  public void setFileCompactionTargetSizeBytes(long fileCompactionTargetSizeBytes) {
+    this.fileCompactionTargetSizeBytes = fileCompactionTargetSizeBytes;
+  }
+
 
   @Override
   public void start() {
@@ -142,6 +158,8 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
     Preconditions.checkState(fileCleanupTransactionTimeout > Constants.Logging.TX_TIMEOUT_DISCOUNT_SECS,
                              String.format("Property fileCleanupTransactionTimeout must be greater than %s seconds",
                                            Constants.Logging.TX_TIMEOUT_DISCOUNT_SECS));
+    Preconditions.checkState(fileCompactionIntervalMins <= 0 || fileCompactionTargetSizeBytes > 0,
+                             "Property fileCompactionTargetSizeBytes must be > 0");
 
     if (context instanceof AppenderContext) {
       AppenderContext context = (AppenderContext) this.context;
@@ -157,6 +175,16 @@ public class CDAPLogAppender extends AppenderBase<ILoggingEvent> implements Flus
                                                TimeUnit.DAYS.toMillis(fileRetentionDurationDays),
                                                fileCleanupTransactionTimeout);
         scheduledExecutorService.scheduleAtFixedRate(logCleaner, 10, logCleanupIntervalMins, TimeUnit.MINUTES);
+        if (fileCompactionIntervalMins > 0) {
+          // Only compact files that are no longer written to, which are files older than twice the max lifetime
+          LogFileCompactor logFileCompactor = new LogFileCompactor(context.getDatasetManager(), context,
+                                                                   context.getLocationFactory(), filePermissions,
+                                                                   syncIntervalBytes, fileCompactionTargetSizeBytes,
+                                                                   2 * maxFileLifetimeMs,
+                                                                   fileCleanupTransactionTimeout);
+          scheduledExecutorService.scheduleAtFixedRate(logFileCompactor, 10, fileCompactionIntervalMins,
+                                                       TimeUnit.MINUTES);
+        }
       }
     } else if (!Boolean.TRUE.equals(context.getObject(Constants.Logging.PIPELINE_VALIDATION))) {
       throw new IllegalStateException("Expected logger context instance of " + AppenderContext.class.getName() +
@@ -0,0 +1,404 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender.system;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import co.cask.cdap.api.Transactional;
+import co.cask.cdap.api.TxRunnable;
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.DatasetContext;
+import co.cask.cdap.api.dataset.DatasetManager;
+import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.logging.meta.FileMetaDataWriter;
+import co.cask.cdap.logging.meta.LoggingStoreTableUtil;
+import co.cask.cdap.logging.serialize.LogSchema;
+import co.cask.cdap.logging.serialize.LoggingEvent;
+import co.cask.cdap.logging.write.LogFileIndex;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.Closeables;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.tephra.TransactionFailureException;
+import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges small log files of the same logging context into larger, block compressed files.
+ *
+ * Log files of a logging context are ordered by their start event time, and each file covers events up to the start
+ * of the next file. Only consecutive files are merged, so that the merged file covers exactly the same time range
+ * as the files it replaces. Events in the merged file are sorted by time and the index of the file carries the
+ * statistics of each block, which allows readers to skip blocks. Since events in each file are sorted by time,
+ * the files are merged by streaming through all of them at once, without loading the events into memory.
+ * The meta data of the merged files is replaced by the meta data of the new file in a single transaction.
+ * The merged files are deleted by the {@link co.cask.cdap.logging.clean.LogCleaner} after a grace period,
+ * since readers may still be reading them with the old meta data.
+ */
+public class LogFileCompactor implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogFileCompactor.class);
+  private static final byte[] ROW_KEY_PREFIX = LoggingStoreTableUtil.NEW_FILE_META_ROW_KEY_PREFIX;
+  private static final byte[] ROW_KEY_PREFIX_END = Bytes.stopKeyForPrefix(ROW_KEY_PREFIX);
+  private static final int DEFLATE_LEVEL = 6;
+  // Maximum number of files merged at once, which bounds the number of open files and the memory for their buffers
+  private static final int MAX_MERGE_FILES = 100;
+
+  // Events with the same timestamp are ordered by the file they came from, to keep the original order
+  private static final Comparator<MergeEntry> MERGE_ENTRY_COMPARATOR = new Comparator<MergeEntry>() {
+    @Override
+    public int compare(MergeEntry o1, MergeEntry o2) {
+      int cmp = Long.compare(o1.event.getTimeStamp(), o2.event.getTimeStamp());
+      return cmp != 0 ? cmp : Integer.compare(o1.fileIndex, o2.fileIndex);
+    }
+  };
+
+  private final DatasetManager datasetManager;
+  private final Transactional transactional;
+  private final FileMetaDataWriter fileMetaDataWriter;
+  private final LocationFactory locationFactory;
+  private final String filePermissions;
+  private final int syncIntervalBytes;
+  private final long targetFileSize;
+  private final long minFileAgeMs;
+  private final int transactionTimeout;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param datasetManager the {@link DatasetManager} for accessing the meta data table
+   * @param transactional the {@link Transactional} for accessing the meta data table
+   * @param locationFactory the {@link LocationFactory} for the log files
+   * @param filePermissions permissions of the merged files or an empty string to use the default permissions
+   * @param syncIntervalBytes the Avro sync interval of the merged files
+   * @param targetFileSize the maximum total size of files to merge into one file
+   * @param minFileAgeMs only files created at least this long ago are merged
+   * @param transactionTimeout transaction timeout in seconds for scanning the meta data table
+   */
+  public LogFileCompactor(DatasetManager datasetManager, Transactional transactional, LocationFactory locationFactory,
+                          String filePermissions, int syncIntervalBytes, long targetFileSize, long minFileAgeMs,
+                          int transactionTimeout) {
+    this.datasetManager = datasetManager;
+    this.transactional = transactional;
+    this.fileMetaDataWriter = new FileMetaDataWriter(datasetManager, transactional);
+    this.locationFactory = locationFactory;
+    this.filePermissions = filePermissions;
+    this.syncIntervalBytes = syncIntervalBytes;
+    this.targetFileSize = targetFileSize;
+    this.minFileAgeMs = minFileAgeMs;
+    this.transactionTimeout = transactionTimeout;
+  }
+
+  @Override
+  public void run() {
+    LOG.info("Starting log file compaction");
+    long startTime = System.currentTimeMillis();
+    int mergedCount = 0;
+    int createdCount = 0;
+    for (List<FileEntry> files : scanFiles(startTime - minFileAgeMs)) {
+      List<FileEntry> group = new ArrayList<>();
+      long groupSize = 0L;
+      for (FileEntry file : files) {
+        long size = getSize(file);
+        // A file that is too large or unreadable ends the current group, since only consecutive files can be merged
+        if (size < 0 || size >= targetFileSize || groupSize + size > targetFileSize
+          || group.size() >= MAX_MERGE_FILES) {
+          if (compact(group)) {
+            mergedCount += group.size();
+            createdCount++;
+          }
+          group = new ArrayList<>();
+          groupSize = 0L;
+        }
+        if (size >= 0 && size < targetFileSize) {
+          group.add(file);
+          groupSize += size;
+        }
+      }
+      if (compact(group)) {
+        mergedCount += group.size();
+        createdCount++;
+      }
+    }
+    LOG.info("Log file compaction completed, merged {} files into {} files. Log compaction took {} ms",
+             mergedCount, createdCount, System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Scans the meta data table for files created before the given time.
+   *
+   * @return lists of consecutive files of the same logging context
+   */
+  private List<List<FileEntry>> scanFiles(final long maxCreationTime) {
+    final List<List<FileEntry>> result = new ArrayList<>();
+    // we make sure transactionTimeout is greater than TX_TIMEOUT_DISCOUNT_SECS in CDAPLogAppender check.
+    final int cutOffTransactionTime = transactionTimeout - Constants.Logging.TX_TIMEOUT_DISCOUNT_SECS;
+    try {
+      transactional.execute(transactionTimeout, new TxRunnable() {
+        @Override
+        public void run(DatasetContext context) throws Exception {
+          Table table = LoggingStoreTableUtil.getMetadataTable(context, datasetManager);
+          Stopwatch stopwatch = new Stopwatch().start();
+          List<FileEntry> files = new ArrayList<>();
+          try (Scanner scanner = table.scan(ROW_KEY_PREFIX, ROW_KEY_PREFIX_END)) {
+            Row row;
+            while (stopwatch.elapsedTime(TimeUnit.SECONDS) < cutOffTransactionTime && (row = scanner.next()) != null) {
+              FileEntry file = new FileEntry(row.getRow(),
+                                             Bytes.toString(row.get(LoggingStoreTableUtil.META_TABLE_COLUMN_KEY)));
+              // A file that is too new to be merged also ends a list, since only consecutive files can be merged
+              if (!files.isEmpty() && (!file.isSameContext(files.get(0)) || file.getCreationTime() > maxCreationTime)) {
+                result.add(files);
+                files = new ArrayList<>();
+              }
+              if (file.getCreationTime() <= maxCreationTime) {
+                files.add(file);
+              }
+            }
+          }
+          if (!files.isEmpty()) {
+            result.add(files);
+          }
+        }
+      });
+    } catch (TransactionFailureException e) {
+      LOG.warn("Got exception while scanning metadata table for log compaction", e);
+      return Collections.emptyList();
+    }
+    return result;
+  }
+
+  /**
+   * Returns the size of the given file or {@code -1} if failed to get the size.
+   */
+  private long getSize(FileEntry file) {
+    try {
+      return file.getLocation().length();
+    } catch (IOException e) {
+      LOG.debug("Failed to get size of log file {}", file.getPath(), e);
+      return -1L;
+    }
+  }
+
+  /**
+   * Merges the given group of files if it contains more than one file.
+   *
+   * @return {@code true} if the files were merged
+   */
+  private boolean compact(List<FileEntry> files) {
+    if (files.size() < 2) {
+      return false;
+    }
+
+    Location location = null;
+    List<DataFileStream<GenericRecord>> streams = new ArrayList<>();
+    try {
+      long creationTime = 0L;
+      for (FileEntry file : files) {
+        streams.add(openStream(file.getLocation()));
+        creationTime = Math.max(creationTime, file.getCreationTime());
+      }
+
+      location = createLocation(Locations.getParent(files.get(0).getLocation()));
+      writeEvents(location, mergeEvents(streams));
+
+      // The merged file takes the start time of the first file and the creation time of the last file,
+      // so that it sorts at the same position among the files of the logging context and expires with the last file
+      List<byte[]> rowKeys = new ArrayList<>();
+      for (FileEntry file : files) {
+        rowKeys.add(file.getRowKey());
+      }
+      if (!fileMetaDataWriter.replaceMetaData(rowKeys, files.get(0).getEventTime(), creationTime, location)) {
+        LOG.debug("Meta data of log files was changed during compaction. Discarding compacted file {}", location);
+        deleteFile(location);
+        return false;
+      }
+    } catch (Exception e) {
+      LOG.warn("Failed to compact log files starting from {}", files.get(0).getPath(), e);
+      if (location != null) {
+        deleteFile(location);
+      }
+      return false;
+    } finally {
+      for (DataFileStream<GenericRecord> stream : streams) {
+        Closeables.closeQuietly(stream);
+      }
+    }
+
+    LOG.debug("Compacted {} log files into {}", files.size(), location);
+    return true;
+  }
+
+  private DataFileStream<GenericRecord> openStream(Location location) throws IOException {
+    InputStream is = location.getInputStream();
+    try {
+      return new DataFileStream<>(is, new GenericDatumReader<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+    } catch (IOException e) {
+      Closeables.closeQuietly(is);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns an {@link Iterator} of the events of the given files in time order, assuming the events in each file
+   * are sorted by time.
+   */
+  @VisibleForTesting
+  static Iterator<ILoggingEvent> mergeEvents(final List<? extends Iterator<GenericRecord>> files) {
+    final PriorityQueue<MergeEntry> heads = new PriorityQueue<>(Math.max(1, files.size()), MERGE_ENTRY_COMPARATOR);
+    for (int i = 0; i < files.size(); i++) {
+      if (files.get(i).hasNext()) {
+        heads.add(new MergeEntry(new LoggingEvent(files.get(i).next()), i));
+      }
+    }
+
+    return new AbstractIterator<ILoggingEvent>() {
+      @Override
+      protected ILoggingEvent computeNext() {
+        MergeEntry head = heads.poll();
+        if (head == null) {
+          return endOfData();
+        }
+        Iterator<GenericRecord> file = files.get(head.fileIndex);
+        if (file.hasNext()) {
+          heads.add(new MergeEntry(new LoggingEvent(file.next()), head.fileIndex));
+        }
+        return head.event;
+      }
+    };
+  }
+
+  private void writeEvents(Location location, Iterator<ILoggingEvent> events) throws IOException {
+    LogFileOutputStream outputStream = new LogFileOutputStream(
+      location, filePermissions, syncIntervalBytes, System.currentTimeMillis(),
+      CodecFactory.deflateCodec(DEFLATE_LEVEL), new Closeable() {
+      @Override
+      public void close() {
+        // no-op
+      }
+    });
+    try (LogFileOutputStream os = outputStream) {
+      while (events.hasNext()) {
+        os.append(events.next());
+      }
+    }
+  }
+
+  /**
+   * Creates a new file in the given directory.
+   */
+  private Location createLocation(Location dir) throws IOException {
+    long currentTime = System.currentTimeMillis();
+    Location location = dir.append(String.format("%s.avro", currentTime));
+    while (!(filePermissions.isEmpty() ? location.createNew() : location.createNew(filePermissions))) {
+      location = dir.append(String.format("%s.avro", ++currentTime));
+    }
+    return location;
+  }
+
+  private void deleteFile(Location location) {
+    try {
+      if (!location.delete()) {
+        LOG.warn("Failed to delete log file {}", location);
+      }
+      // The index file may not exist, e.g. for files that are written by older versions
+      Locations.deleteQuietly(LogFileIndex.getIndexLocation(location));
+    } catch (IOException e) {
+      LOG.warn("Exception while deleting log file {}", location, e);
+    }
+  }
+
+  /**
+   * The next event of a file being merged.
+   */
+  private static final class MergeEntry {
+    private final ILoggingEvent event;
+    private final int fileIndex;
+
+    MergeEntry(ILoggingEvent event, int fileIndex) {
+      this.event = event;
+      this.fileIndex = fileIndex;
+    }
+  }
+
+  /**
+   * A log file entry in the meta data table.
+   */
+  private final class FileEntry {
+    private final byte[] rowKey;
+    private final String path;
+
+    FileEntry(byte[] rowKey, String path) {
+      this.rowKey = rowKey;
+      this.path = path;
+    }
+
+    byte[] getRowKey() {
+      return rowKey;
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    Location getLocation() throws IOException {
+      return Locations.getLocationFromAbsolutePath(locationFactory, path);
+    }
+
+    /**
+     * Returns the event time, which is the second last 8 bytes of the row key.
+     */
+    long getEventTime() {
+      return Bytes.toLong(rowKey, rowKey.length - 2 * Bytes.SIZEOF_LONG, Bytes.SIZEOF_LONG);
+    }
+
+    /**
+     * Returns the file creation time, which is the last 8 bytes of the row key.
+     */
+    long getCreationTime() {
+      return Bytes.toLong(rowKey, rowKey.length - Bytes.SIZEOF_LONG, Bytes.SIZEOF_LONG);
+    }
+
+    /**
+     * Returns {@code true} if this file has the same logging context as the given one.
+     */
+    boolean isSameContext(FileEntry other) {
+      int contextLength = rowKey.length - 2 * Bytes.SIZEOF_LONG;
+      return contextLength == other.rowKey.length - 2 * Bytes.SIZEOF_LONG
+        && Bytes.equals(rowKey, 0, contextLength, other.rowKey, 0, contextLength);
+    }
+  }
+}
@@ -21,8 +21,10 @@ import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Syncable;
 import co.cask.cdap.logging.serialize.LoggingEvent;
 import co.cask.cdap.logging.serialize.LoggingEventSerializer;
+import co.cask.cdap.logging.write.LogFileIndex;
 import com.google.common.io.Closeables;
 import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileWriter;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
@@ -35,41 +37,74 @@ import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
 
 /**
  * Represents output stream for a log file.
  *
  * Since there is no way to check the state of the underlying file on an exception,
  * all methods of this class assume that the file state is bad on any exception and close the file.
+ *
+ * A sparse time index is maintained while writing, with an entry for roughly every {@code syncIntervalBytes} of
+ * events, together with the timestamp range and the highest level of the events in the block. The index is written
+ * as a {@link LogFileIndex} file next to the log file when this stream is closed.
  */
 
 class LogFileOutputStream implements Closeable, Flushable, Syncable {
   private static final Logger LOG = LoggerFactory.getLogger(LogFileOutputStream.class);
+  // Estimated encoded size of an event that is not already encoded, used to decide when to add an index entry
+  private static final int ESTIMATED_EVENT_SIZE = 256;
 
   private final Location location;
   private final long createTime;
   private final Closeable closeable;
   private final LoggingEventSerializer serializer;
+  private final String filePermissions;
+  private final int syncIntervalBytes;
+  private final LogFileIndex index;
 
   private OutputStream outputStream;
   private DataFileWriter<GenericRecord> dataFileWriter;
   private long fileSize;
+  private long blockStartTimestamp;
+  private long blockMinTimestamp;
+  private long blockMaxTimestamp;
+  private int blockMaxLevel;
+  private long blockBytes;
 
   LogFileOutputStream(Location location, String filePermissions,
                       int syncIntervalBytes, long createTime, Closeable closeable) throws IOException {
+    this(location, filePermissions, syncIntervalBytes, createTime, null, closeable);
+  }
+
+  /**
+   * Creates a new instance that writes blocks compressed with the given codec.
+   *
+   * @param codec the {@link CodecFactory} for compressing blocks or {@code null} to write uncompressed blocks
+   */
+  LogFileOutputStream(Location location, String filePermissions, int syncIntervalBytes, long createTime,
+                      @Nullable CodecFactory codec, Closeable closeable) throws IOException {
     this.location = location;
     this.closeable = closeable;
     this.serializer = new LoggingEventSerializer();
+    this.filePermissions = filePermissions;
+    this.syncIntervalBytes = syncIntervalBytes;
+    this.index = new LogFileIndex();
 
     Schema schema = serializer.getAvroSchema();
     try {
       this.outputStream =
         filePermissions.isEmpty() ? location.getOutputStream() : location.getOutputStream(filePermissions);
       this.dataFileWriter = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema));
+      if (codec != null) {
+        this.dataFileWriter.setCodec(codec);
+      }
       this.dataFileWriter.create(schema, outputStream);
       this.dataFileWriter.setSyncInterval(syncIntervalBytes);
       this.createTime = createTime;
-      this.fileSize = 0;
+      // Sync to get the position of the first block
+      this.fileSize = dataFileWriter.sync();
+      this.blockStartTimestamp = -1L;
     } catch (IOException e) {
       Closeables.closeQuietly(outputStream);
       Closeables.closeQuietly(dataFileWriter);
@@ -82,18 +117,39 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   }
 
   void append(ILoggingEvent event) throws IOException {
+    long timestamp = event.getTimeStamp();
+    int level = event.getLevel().toInt();
+    if (blockStartTimestamp < 0) {
+      blockStartTimestamp = timestamp;
+      blockMinTimestamp = timestamp;
+      blockMaxTimestamp = timestamp;
+      blockMaxLevel = level;
+    } else {
+      blockMinTimestamp = Math.min(blockMinTimestamp, timestamp);
+      blockMaxTimestamp = Math.max(blockMaxTimestamp, timestamp);
+      blockMaxLevel = Math.max(blockMaxLevel, level);
+    }
+
     // If the event is already a LoggingEvent, we don't need to re-encode.
     if (event instanceof LoggingEvent) {
       ByteBuffer encoded = ((LoggingEvent) event).getEncoded();
       if (encoded != null) {
+        blockBytes += encoded.remaining();
         // TODO: CDAP-8735 Remove the copying after upgraded to Avro 1.7.4+
         dataFileWriter.appendEncoded(ByteBuffers.copy(encoded));
       } else {
+        blockBytes += ESTIMATED_EVENT_SIZE;
         dataFileWriter.append(((LoggingEvent) event).getRecord());
       }
-      return;
+    } else {
+      blockBytes += ESTIMATED_EVENT_SIZE;
+      dataFileWriter.append(serializer.toGenericRecord(event));
+    }
+
+    // End the block so that the next event starts a new index entry
+    if (blockBytes >= syncIntervalBytes) {
+      flush();
     }
-    dataFileWriter.append(serializer.toGenericRecord(event));
   }
 
   /**
@@ -114,7 +170,13 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
 
   @Override
   public void flush() throws IOException {
-    fileSize = dataFileWriter.sync();
+    long position = dataFileWriter.sync();
+    if (blockStartTimestamp >= 0) {
+      index.add(blockStartTimestamp, fileSize, blockMinTimestamp, blockMaxTimestamp, blockMaxLevel);
+      blockStartTimestamp = -1L;
+      blockBytes = 0L;
+    }
+    fileSize = position;
   }
 
   @Override
@@ -131,9 +193,28 @@ class LogFileOutputStream implements Closeable, Flushable, Syncable {
   public void close() throws IOException {
     LOG.trace("Closing file {}", location);
     try {
-      dataFileWriter.close();
+      try {
+        flush();
+      } finally {
+        dataFileWriter.close();
+      }
+      writeIndex();
     } finally {
       closeable.close();
     }
   }
+
+  /**
+   * Writes the index file. Failure is only logged since the log file can be read without the index.
+   */
+  private void writeIndex() {
+    if (index.size() == 0) {
+      return;
+    }
+    try {
+      index.write(location, filePermissions);
+    } catch (IOException e) {
+      LOG.warn("Failed to write index for log file {}", location, e);
+    }
+  }
 }
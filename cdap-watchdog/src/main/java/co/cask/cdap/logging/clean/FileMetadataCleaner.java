@@ -49,6 +49,8 @@ public class FileMetadataCleaner {
   private static final byte[] NEW_ROW_KEY_PREFIX = LoggingStoreTableUtil.NEW_FILE_META_ROW_KEY_PREFIX;
   private static final byte[] NEW_ROW_KEY_PREFIX_END = Bytes.stopKeyForPrefix(NEW_ROW_KEY_PREFIX);
 
+  private static final byte[] COMPACTED_ROW_KEY_PREFIX = LoggingStoreTableUtil.COMPACTED_FILE_META_ROW_KEY_PREFIX;
+
   // cut-off time discount from actual transaction timeout
   private static final int TX_TIMEOUT_DISCOUNT_SECS = Constants.Logging.TX_TIMEOUT_DISCOUNT_SECS;
   private final Transactional transactional;
@@ -157,6 +159,41 @@ public class FileMetadataCleaner {
     return toDelete;
   }
 
+  /**
+   * scans for log files that were replaced by compaction before the given time, and deletes their meta data.
+   * @param tillTime time till which replaced files will be deleted
+   * @param transactionTimeout transaction timeout to use for scanning and deleting entries.
+   * @return list of DeleteEntry - used to get files to delete for which metadata has already been deleted
+   */
+  public List<DeletedEntry> scanAndDeleteCompactedFiles(final long tillTime, final int transactionTimeout) {
+    final List<DeletedEntry> deletedEntries = new ArrayList<>();
+    final int cutOffTransactionTime = transactionTimeout - TX_TIMEOUT_DISCOUNT_SECS;
+    try {
+      transactional.execute(transactionTimeout, new TxRunnable() {
+        @Override
+        public void run(DatasetContext context) throws Exception {
+          Table table = LoggingStoreTableUtil.getMetadataTable(context, datasetManager);
+          Stopwatch stopwatch = new Stopwatch().start();
+          // rowkey : <prefix-bytes>:replace-time(8):<replaced file rowkey>, hence sorted by the replace time
+          byte[] endRowKey = Bytes.add(COMPACTED_ROW_KEY_PREFIX, Bytes.toBytes(tillTime + 1));
+          try (Scanner scanner = table.scan(COMPACTED_ROW_KEY_PREFIX, endRowKey)) {
+            Row row;
+            while (stopwatch.elapsedTime(TimeUnit.SECONDS) < cutOffTransactionTime && (row = scanner.next()) != null) {
+              table.delete(row.getRow());
+              deletedEntries.add(
+                new DeletedEntry(row.getRow(), Bytes.toString(row.get(LoggingStoreTableUtil.META_TABLE_COLUMN_KEY))));
+            }
+          }
+        }
+      });
+    } catch (TransactionFailureException e) {
+      LOG.warn("Got Exception while deleting metadata of compacted files", e);
+      // exception, no metadata entry will be deleted, skip deleting files
+      return new ArrayList<>();
+    }
+    return deletedEntries;
+  }
+
   /**
    * delete the rows specified in the list
    * if delete time is closer to transaction timeout, we break and return list of deleted entries so far.
@@ -17,30 +17,49 @@
 package co.cask.cdap.logging.clean;
 
 import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.logging.write.LogFileIndex;
+import org.apache.twill.filesystem.Location;
 import org.apache.twill.filesystem.LocationFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * cleanup expired log files
  */
 public class LogCleaner implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(LogCleaner.class);
+  private static final long DEFAULT_COMPACTED_FILE_GRACE_PERIOD_MS = TimeUnit.HOURS.toMillis(1);
 
   private final FileMetadataCleaner fileMetadataCleaner;
   private final LocationFactory locationFactory;
   private final long retentionDurationMs;
   private final int transactionTimeout;
+  private final long compactedFileGracePeriodMs;
 
   public LogCleaner(FileMetadataCleaner fileMetadataCleaner, LocationFactory locationFactory,
                     long retentionDurationMs, int fileCleanupTransactionTimeout) {
+    this(fileMetadataCleaner, locationFactory, retentionDurationMs, fileCleanupTransactionTimeout,
+         DEFAULT_COMPACTED_FILE_GRACE_PERIOD_MS);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param compactedFileGracePeriodMs time to keep log files that were replaced by compaction, so that readers
+   *                                   that are still using the old meta data can finish reading them
+   */
+  public LogCleaner(FileMetadataCleaner fileMetadataCleaner, LocationFactory locationFactory,
+                    long retentionDurationMs, int fileCleanupTransactionTimeout, long compactedFileGracePeriodMs) {
     this.fileMetadataCleaner = fileMetadataCleaner;
     this.locationFactory = locationFactory;
     this.retentionDurationMs = retentionDurationMs;
     this.transactionTimeout = fileCleanupTransactionTimeout;
+    this.compactedFileGracePeriodMs = compactedFileGracePeriodMs;
     LOG.debug("Log retention duration = {}ms", retentionDurationMs);
   }
 
@@ -50,12 +69,17 @@ public class LogCleaner implements Runnable {
     long startTime = System.currentTimeMillis();
     long tillTime = startTime - retentionDurationMs;
     List<FileMetadataCleaner.DeletedEntry> deleteEntries =
-      fileMetadataCleaner.scanAndGetFilesToDelete(tillTime, transactionTimeout);
+      new ArrayList<>(fileMetadataCleaner.scanAndGetFilesToDelete(tillTime, transactionTimeout));
+    deleteEntries.addAll(fileMetadataCleaner.scanAndDeleteCompactedFiles(startTime - compactedFileGracePeriodMs,
+                                                                         transactionTimeout));
     int deleteCount = 0;
     int failureCount = 0;
     for (FileMetadataCleaner.DeletedEntry deletedEntry : deleteEntries) {
       try {
-        boolean status = Locations.getLocationFromAbsolutePath(locationFactory, deletedEntry.getPath()).delete();
+        Location location = Locations.getLocationFromAbsolutePath(locationFactory, deletedEntry.getPath());
+        boolean status = location.delete();
+        // The index file may not exist, e.g. for files that are written by older versions
+        Locations.deleteQuietly(LogFileIndex.getIndexLocation(location));
         if (!status) {
           failureCount++;
           LOG.warn("File {} delete failed", deletedEntry.getPath());
@@ -29,6 +29,7 @@ import co.cask.cdap.logging.meta.CheckpointManagerFactory;
 import co.cask.cdap.logging.pipeline.LogProcessorPipelineContext;
 import co.cask.cdap.logging.pipeline.kafka.KafkaLogProcessorPipeline;
 import co.cask.cdap.logging.pipeline.kafka.KafkaPipelineConfig;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
@@ -43,10 +44,13 @@ import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.apache.twill.kafka.client.BrokerService;
 import org.apache.twill.zookeeper.ZKClient;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -79,34 +83,24 @@ public class DistributedLogFramework extends ResourceBalancerService {
 
   @Override
   protected Service createService(Set<Integer> partitions) {
-    Map<String, LogPipelineSpecification<AppenderContext>> specs = new LogPipelineLoader(cConf).load(contextProvider);
-    int pipelineCount = specs.size();
+    // Shard the partitions across workers. Each worker has its own set of pipelines and appenders.
+    // The worker instance ids are based on the configured number of workers rather than the number of workers of
+    // this instance, which is bounded by the partitions assigned, so that they are unique across all instances.
+    int maxWorkers = Math.max(1, cConf.getInt(Constants.Logging.PIPELINE_WORKERS));
+    List<Set<Integer>> workerPartitions = getWorkerPartitions(partitions, maxWorkers);
+    int workers = workerPartitions.size();
 
-    // Create one KafkaLogProcessorPipeline per spec
     final List<Service> pipelines = new ArrayList<>();
-    for (final LogPipelineSpecification<AppenderContext> pipelineSpec : specs.values()) {
-      final CConfiguration cConf = pipelineSpec.getConf();
-      final AppenderContext context = pipelineSpec.getContext();
-
-      long bufferSize = getBufferSize(pipelineCount, cConf, partitions.size());
-      final String topic = cConf.get(Constants.Logging.KAFKA_TOPIC);
-      final KafkaPipelineConfig config = new KafkaPipelineConfig(
-        topic, partitions, bufferSize,
-        cConf.getLong(Constants.Logging.PIPELINE_EVENT_DELAY_MS),
-        cConf.getInt(Constants.Logging.PIPELINE_KAFKA_FETCH_SIZE),
-        cConf.getLong(Constants.Logging.PIPELINE_CHECKPOINT_INTERVAL_MS)
-      );
-
-      RetryStrategy retryStrategy = RetryStrategies.fromConfiguration(cConf, "system.log.process.");
-      pipelines.add(new RetryOnStartFailureService(new Supplier<Service>() {
-        @Override
-        public Service get() {
-          return new KafkaLogProcessorPipeline(
-            new LogProcessorPipelineContext(cConf, context.getName(), context,
-                                            context.getMetricsContext(), context.getInstanceId()),
-            checkpointManagerFactory.create(topic, pipelineSpec.getCheckpointPrefix()), brokerService, config);
-        }
-      }, retryStrategy));
+    for (int worker = 0; worker < workers; worker++) {
+      Provider<AppenderContext> provider = maxWorkers == 1
+        ? contextProvider : createWorkerContextProvider(worker, maxWorkers);
+      Map<String, LogPipelineSpecification<AppenderContext>> specs = new LogPipelineLoader(cConf).load(provider);
+      int pipelineCount = specs.size() * workers;
+
+      // Create one KafkaLogProcessorPipeline per spec
+      for (LogPipelineSpecification<AppenderContext> pipelineSpec : specs.values()) {
+        pipelines.add(createPipeline(pipelineSpec, workerPartitions.get(worker), pipelineCount, partitions.size()));
+      }
     }
 
     // Returns a Service that start/stop all pipelines.
@@ -125,6 +119,76 @@ public class DistributedLogFramework extends ResourceBalancerService {
     };
   }
 
+  /**
+   * Splits the given partitions into groups, one for each worker. The number of workers is the given number
+   * of workers from the {@link Constants.Logging#PIPELINE_WORKERS} setting, bounded by the number of partitions.
+   */
+  @VisibleForTesting
+  static List<Set<Integer>> getWorkerPartitions(Set<Integer> partitions, int maxWorkers) {
+    int workers = Math.max(1, Math.min(maxWorkers, partitions.size()));
+    if (workers == 1) {
+      return Collections.singletonList(partitions);
+    }
+
+    List<Set<Integer>> result = new ArrayList<>(workers);
+    for (int i = 0; i < workers; i++) {
+      result.add(new TreeSet<Integer>());
+    }
+    int idx = 0;
+    for (int partition : new TreeSet<>(partitions)) {
+      result.get(idx++ % workers).add(partition);
+    }
+    return result;
+  }
+
+  /**
+   * Creates a {@link Provider} of {@link AppenderContext} for the given worker.
+   */
+  private Provider<AppenderContext> createWorkerContextProvider(final int worker, final int maxWorkers) {
+    return new Provider<AppenderContext>() {
+      @Override
+      public AppenderContext get() {
+        return new WorkerAppenderContext(contextProvider.get(), worker, maxWorkers);
+      }
+    };
+  }
+
+  /**
+   * Creates a {@link KafkaLogProcessorPipeline} service for the given pipeline and partitions.
+   *
+   * @param pipelineSpec the specification of the pipeline
+   * @param partitions the partitions processed by the pipeline
+   * @param pipelineCount the total number of pipelines created by this instance
+   * @param totalPartitions the total number of partitions processed by this instance
+   */
+  private Service createPipeline(final LogPipelineSpecification<AppenderContext> pipelineSpec,
+                                 Set<Integer> partitions, int pipelineCount, int totalPartitions) {
+    final CConfiguration cConf = pipelineSpec.getConf();
+    final AppenderContext context = pipelineSpec.getContext();
+
+    long bufferSize = getBufferSize(pipelineCount, cConf, totalPartitions);
+    final String topic = cConf.get(Constants.Logging.KAFKA_TOPIC);
+    final KafkaPipelineConfig config = new KafkaPipelineConfig(
+      topic, partitions, bufferSize,
+      cConf.getLong(Constants.Logging.PIPELINE_EVENT_DELAY_MS),
+      cConf.getInt(Constants.Logging.PIPELINE_KAFKA_FETCH_SIZE),
+      cConf.getLong(Constants.Logging.PIPELINE_CHECKPOINT_INTERVAL_MS),
+      cConf.getLong(Constants.Logging.PIPELINE_SPILL_SIZE),
+      getSpillDir(cConf, context)
+    );
+
+    RetryStrategy retryStrategy = RetryStrategies.fromConfiguration(cConf, "system.log.process.");
+    return new RetryOnStartFailureService(new Supplier<Service>() {
+      @Override
+      public Service get() {
+        return new KafkaLogProcessorPipeline(
+          new LogProcessorPipelineContext(cConf, context.getName(), context,
+                                          context.getMetricsContext(), context.getInstanceId()),
+          checkpointManagerFactory.create(topic, pipelineSpec.getCheckpointPrefix()), brokerService, config);
+      }
+    }, retryStrategy);
+  }
+
   /**
    * Blocks and validates all the given futures completed successfully.
    */
@@ -155,6 +219,14 @@ public class DistributedLogFramework extends ResourceBalancerService {
     }
   }
 
+  /**
+   * Returns the local directory for spilling buffered events of a pipeline.
+   */
+  private File getSpillDir(CConfiguration cConf, AppenderContext context) {
+    File tempDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR), cConf.get(Constants.AppFabric.TEMP_DIR));
+    return new File(tempDir, "log.spill." + context.getName() + "." + context.getInstanceId()).getAbsoluteFile();
+  }
+
   /**
    * Determines the buffer size for one pipeline.
    */
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.framework.distributed;
+
+import co.cask.cdap.api.TxRunnable;
+import co.cask.cdap.api.dataset.DatasetManager;
+import co.cask.cdap.api.logging.AppenderContext;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.Constants;
+import org.apache.tephra.TransactionFailureException;
+import org.apache.twill.filesystem.LocationFactory;
+
+/**
+ * An {@link AppenderContext} for one of the worker pipelines when partitions of a log framework instance are
+ * processed by multiple workers. Each worker is presented to the appenders as a separate instance, so that
+ * appenders that depend on the instance id, for example in file names, don't interfere with each other.
+ * The instance ids are based on the configured maximum number of workers, which is the same for all instances,
+ * even if an instance runs fewer workers because it is assigned fewer partitions.
+ */
+final class WorkerAppenderContext extends AppenderContext {
+
+  private final AppenderContext delegate;
+  private final int worker;
+  private final int maxWorkers;
+  private final MetricsContext metricsContext;
+
+  WorkerAppenderContext(AppenderContext delegate, int worker, int maxWorkers) {
+    this.delegate = delegate;
+    this.worker = worker;
+    this.maxWorkers = maxWorkers;
+    this.metricsContext = delegate.getMetricsContext().childContext(Constants.Metrics.Tag.INSTANCE_ID,
+                                                                     String.valueOf(getInstanceId()));
+  }
+
+  @Override
+  public int getInstanceId() {
+    return delegate.getInstanceId() * maxWorkers + worker;
+  }
+
+  @Override
+  public int getInstanceCount() {
+    return delegate.getInstanceCount() * maxWorkers;
+  }
+
+  @Override
+  public DatasetManager getDatasetManager() {
+    return delegate.getDatasetManager();
+  }
+
+  @Override
+  public LocationFactory getLocationFactory() {
+    return delegate.getLocationFactory();
+  }
+
+  @Override
+  public MetricsContext getMetricsContext() {
+    return metricsContext;
+  }
+
+  @Override
+  public void execute(TxRunnable runnable) throws TransactionFailureException {
+    delegate.execute(runnable);
+  }
+
+  @Override
+  public void execute(int timeoutInSeconds, TxRunnable runnable) throws TransactionFailureException {
+    delegate.execute(timeoutInSeconds, runnable);
+  }
+}
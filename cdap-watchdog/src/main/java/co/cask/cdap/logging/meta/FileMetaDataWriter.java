@@ -18,6 +18,7 @@ package co.cask.cdap.logging.meta;
 
 import co.cask.cdap.api.Transactional;
 import co.cask.cdap.api.Transactionals;
+import co.cask.cdap.api.TxCallable;
 import co.cask.cdap.api.TxRunnable;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.DatasetContext;
@@ -29,6 +30,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Class for writing log file meta data.
@@ -69,6 +73,56 @@ public class FileMetaDataWriter {
     }, Exception.class);
   }
 
+  /**
+   * Atomically replaces the meta data of log files of a logging context with the meta data of a new log file that
+   * contains all events of the replaced files.
+   *
+   * The replaced files are not deleted, since readers may still be reading them with the old meta data. Instead,
+   * they are recorded with the replacement time under {@link LoggingStoreTableUtil#COMPACTED_FILE_META_ROW_KEY_PREFIX}
+   * and deleted by the log cleaner after a grace period.
+   *
+   * @param replacedRowKeys row keys of the meta data of the replaced files, all from the same logging context.
+   * @param eventTimeMs start log time associated with the new file.
+   * @param currentTimeMs creation time associated with the new file.
+   * @param location location of the new file.
+   * @return {@code true} if the meta data was replaced, or {@code false} if the meta data of any of the replaced
+   *         files no longer exists, in which case nothing is changed.
+   */
+  public boolean replaceMetaData(final List<byte[]> replacedRowKeys,
+                                 final long eventTimeMs,
+                                 final long currentTimeMs,
+                                 final Location location) throws Exception {
+    // The row key ends with the event time and the creation time
+    byte[] firstRowKey = replacedRowKeys.get(0);
+    final byte[] contextRowKey = Arrays.copyOf(firstRowKey, firstRowKey.length - 2 * Bytes.SIZEOF_LONG);
+    LOG.debug("Replacing meta data of {} files with startTimeMs {} sequence Id {} and location {}",
+              replacedRowKeys.size(), eventTimeMs, currentTimeMs, location);
+    return Transactionals.execute(transactional, new TxCallable<Boolean>() {
+      @Override
+      public Boolean call(DatasetContext context) throws Exception {
+        Table table = LoggingStoreTableUtil.getMetadataTable(context, datasetManager);
+        List<byte[]> paths = new ArrayList<>();
+        for (byte[] rowKey : replacedRowKeys) {
+          byte[] path = table.get(rowKey, LoggingStoreTableUtil.META_TABLE_COLUMN_KEY);
+          if (path == null) {
+            return false;
+          }
+          paths.add(path);
+        }
+        byte[] replaceTime = Bytes.toBytes(System.currentTimeMillis());
+        for (int i = 0; i < replacedRowKeys.size(); i++) {
+          byte[] rowKey = replacedRowKeys.get(i);
+          table.delete(rowKey);
+          table.put(Bytes.concat(LoggingStoreTableUtil.COMPACTED_FILE_META_ROW_KEY_PREFIX, replaceTime, rowKey),
+                    LoggingStoreTableUtil.META_TABLE_COLUMN_KEY, paths.get(i));
+        }
+        table.put(Bytes.concat(contextRowKey, Bytes.toBytes(eventTimeMs), Bytes.toBytes(currentTimeMs)),
+                  LoggingStoreTableUtil.META_TABLE_COLUMN_KEY, Bytes.toBytes(location.toURI().getPath()));
+        return true;
+      }
+    }, Exception.class);
+  }
+
   private byte[] getRowKey(LogPathIdentifier identifier, long eventTime, long currentTime) {
     return Bytes.concat(LoggingStoreTableUtil.NEW_FILE_META_ROW_KEY_PREFIX,
                         identifier.getRowkey().getBytes(StandardCharsets.UTF_8),
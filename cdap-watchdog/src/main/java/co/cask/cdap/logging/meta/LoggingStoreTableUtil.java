@@ -40,6 +40,8 @@ public final class LoggingStoreTableUtil {
   // The row key prefix for rows that stores CDAP log files metadata.
   public static final byte[] OLD_FILE_META_ROW_KEY_PREFIX = Bytes.toBytes(200);
   public static final byte[] NEW_FILE_META_ROW_KEY_PREFIX = Bytes.toBytes(300);
+  // The row key prefix for rows that stores log files replaced by compaction, which are deleted by the log cleaner
+  public static final byte[] COMPACTED_FILE_META_ROW_KEY_PREFIX = Bytes.toBytes(400);
   public static final byte[] META_TABLE_COLUMN_KEY = Bytes.toBytes("file");
   private static final DatasetId META_TABLE_DATASET_ID = NamespaceId.SYSTEM.dataset(Constants.Logging.META_TABLE);
 
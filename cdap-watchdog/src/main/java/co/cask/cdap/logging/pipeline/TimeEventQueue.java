@@ -16,62 +16,187 @@
 
 package co.cask.cdap.logging.pipeline;
 
+import co.cask.cdap.common.utils.DirUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
 import it.unimi.dsi.fastutil.ints.Int2ObjectArrayMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A queue for storing time based events with offsets association.
  *
+ * If created with a spill directory and a {@link SpillCodec}, events held in memory can be written to local disk
+ * as a sorted run by calling {@link #spill()}. The iterator merges the in-memory events with all spilled runs, hence
+ * events are always returned in time order. Offsets of spilled events are kept in memory, so that the smallest
+ * offset of each partition is always known. Spilled runs are read in batches, and only a bounded number of them
+ * keep their file open between reads.
+ *
  * @param <Event> Type of event stored in the queue.
  * @param <Offset> Type of event offset associated with the event.
  */
 @NotThreadSafe
-public final class TimeEventQueue<Event, Offset extends Comparable<Offset>> implements Iterable<Event> {
+public final class TimeEventQueue<Event, Offset extends Comparable<Offset>> implements Iterable<Event>, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TimeEventQueue.class);
+  private static final int MAX_OPEN_RUNS = 16;
+  private static final int RUN_READ_BATCH_SIZE = 64;
 
   private final SortedSet<TimeEvent<Event, Offset>> events;
-  private final Int2ObjectMap<SortedSet<Offset>> partitionOffsets;
-  private long totalSize;
+  // The offsets of all events in the queue for each partition, mapped to the event timestamp
+  private final Int2ObjectMap<SortedMap<Offset, Long>> partitionOffsets;
+  private final File spillDir;
+  private final SpillCodec<Event, Offset> spillCodec;
+  private final List<SpillRun> runs;
+  // Spilled runs that have the file open, ordered from the least recently read
+  private final Set<SpillRun> openRuns;
+  private long inMemorySize;
+  private long spilledSize;
+  private int spilledCount;
 
   public TimeEventQueue(Iterable<Integer> partitions) {
+    this(partitions, null, null);
+  }
+
+  /**
+   * Creates a queue that can spill events to local disk.
+   *
+   * @param partitions the partitions allowed in the queue
+   * @param spillDir the local directory for writing spilled events or {@code null} to disallow spilling
+   * @param spillCodec the {@link SpillCodec} for encoding spilled events or {@code null} to disallow spilling
+   */
+  public TimeEventQueue(Iterable<Integer> partitions,
+                        @Nullable File spillDir, @Nullable SpillCodec<Event, Offset> spillCodec) {
     this.events = new TreeSet<>();
     this.partitionOffsets = new Int2ObjectArrayMap<>();
+    this.spillDir = spillDir;
+    this.spillCodec = spillCodec;
+    this.runs = new ArrayList<>();
+    this.openRuns = new LinkedHashSet<>();
 
     for (int partition : partitions) {
-      partitionOffsets.put(partition, new TreeSet<Offset>());
+      partitionOffsets.put(partition, new TreeMap<Offset, Long>());
     }
   }
 
+  /**
+   * Adds an event to the queue. Adding the same event again is ignored, no matter if the event is held in memory
+   * or has been spilled.
+   *
+   * @throws IllegalArgumentException if the partition is not allowed in the queue,
+   *                                  or if a different event with the same offset is already in the queue
+   */
   public void add(Event event, long eventTimestamp, int eventSize, int partition, Offset offset) {
-    SortedSet<Offset> offsets = getOffsets(partition);
-    TimeEvent<Event, Offset> timeEvent = new TimeEvent<>(eventTimestamp, partition, offset, event, eventSize);
-    if (events.add(timeEvent)) {
-      if (!offsets.add(offset)) {
-        events.remove(timeEvent);
-        throw new IllegalArgumentException("Adding different event with the same offset "
-                                             + offset + ", " + event);
+    SortedMap<Offset, Long> offsets = getOffsets(partition);
+    Long timestamp = offsets.get(offset);
+    if (timestamp != null) {
+      if (timestamp == eventTimestamp) {
+        return;
       }
+      throw new IllegalArgumentException("Adding different event with the same offset " + offset + ", " + event);
+    }
+
+    offsets.put(offset, eventTimestamp);
+    events.add(new TimeEvent<>(eventTimestamp, partition, offset, event, eventSize));
+    inMemorySize += eventSize;
+  }
 
-      totalSize += eventSize;
+  /**
+   * Returns {@code true} if events can be spilled to disk by this queue.
+   */
+  public boolean isSpillEnabled() {
+    return spillDir != null && spillCodec != null;
+  }
+
+  /**
+   * Writes all events that are currently in memory to a sorted run on local disk and removes them from memory.
+   *
+   * @throws IOException if failed to write the events. In case of failure, all events remain in memory.
+   */
+  public void spill() throws IOException {
+    Preconditions.checkState(isSpillEnabled(), "Spilling is not enabled for the queue");
+    if (events.isEmpty()) {
+      return;
+    }
+
+    if (!DirUtils.mkdirs(spillDir)) {
+      throw new IOException("Failed to create spill directory " + spillDir);
+    }
+    File file = File.createTempFile("events", ".run", spillDir);
+    try {
+      try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+        for (TimeEvent<Event, Offset> event : events) {
+          output.writeLong(event.getEventTime());
+          output.writeInt(event.getPartition());
+          output.writeInt(event.getEventSize());
+          spillCodec.encodeOffset(event.getOffset(), output);
+          spillCodec.encodeEvent(event.getEvent(), output);
+        }
+      }
+      runs.add(new SpillRun(file, events.size()));
+    } catch (IOException e) {
+      deleteFile(file);
+      throw e;
     }
+
+    LOG.trace("Spilled {} events of {} bytes to {}", events.size(), inMemorySize, file);
+    spilledCount += events.size();
+    spilledSize += inMemorySize;
+    events.clear();
+    inMemorySize = 0;
   }
 
   /**
    * Returns the event in the queue with the smallest timestamp.
    */
   public Event first() {
-    return events.first().getEvent();
+    TimeEvent<Event, Offset> first = events.isEmpty() ? null : events.first();
+    for (SpillRun run : runs) {
+      TimeEvent<Event, Offset> event = run.get(0);
+      if (event != null && (first == null || event.compareTo(first) < 0)) {
+        first = event;
+      }
+    }
+    if (first == null) {
+      throw new NoSuchElementException("Queue is empty");
+    }
+    return first.getEvent();
   }
 
   /**
    * Returns {@code true} if there is no event in the queue.
    */
   public boolean isEmpty() {
-    return events.isEmpty();
+    return events.isEmpty() && runs.isEmpty();
   }
 
   /**
@@ -85,42 +210,94 @@ public final class TimeEventQueue<Event, Offset extends Comparable<Offset>> impl
    * Returns the number of events in the queue.
    */
   public int size() {
-    return events.size();
+    return events.size() + spilledCount;
   }
 
   /**
-   * Returns the size of all events in the queue.
+   * Returns the size of all events in the queue, including events spilled to disk.
    */
   public long getEventSize() {
-    return totalSize;
+    return inMemorySize + spilledSize;
+  }
+
+  /**
+   * Returns the size of events in the queue that are held in memory.
+   */
+  public long getInMemorySize() {
+    return inMemorySize;
+  }
+
+  /**
+   * Returns the size of events in the queue that are spilled to disk.
+   */
+  public long getSpilledSize() {
+    return spilledSize;
   }
 
   /**
    * Returns the smallest offset stored for the given partition.
    */
   public Offset getSmallestOffset(int partition) {
-    SortedSet<Offset> offsets = getOffsets(partition);
+    SortedMap<Offset, Long> offsets = getOffsets(partition);
     if (offsets.isEmpty()) {
       throw new IllegalStateException("Queue is empty");
     }
-    return offsets.first();
+    return offsets.firstKey();
   }
 
+  /**
+   * Returns an {@link EventIterator} over all events in the queue in time order. Events that were spilled are
+   * read back from disk while iterating. The queue must not be modified through other means than the
+   * {@link EventIterator#remove()} method while iterating.
+   */
   @Override
   public EventIterator<Event, Offset> iterator() {
-    final Iterator<TimeEvent<Event, Offset>> iterator = events.iterator();
+    final PeekingIterator<TimeEvent<Event, Offset>> memoryIterator = Iterators.peekingIterator(events.iterator());
+    final List<SpillRun> iteratorRuns = new ArrayList<>(runs);
+    // The index in each run of the next event to return
+    final int[] cursors = new int[iteratorRuns.size()];
+
     return new EventIterator<Event, Offset>() {
 
       private TimeEvent<Event, Offset> currentEvent;
+      // The index of the run of the current event or -1 if the current event is from memory
+      private int currentRun;
 
       @Override
       public boolean hasNext() {
-        return iterator.hasNext();
+        if (memoryIterator.hasNext()) {
+          return true;
+        }
+        for (int i = 0; i < cursors.length; i++) {
+          if (iteratorRuns.get(i).get(cursors[i]) != null) {
+            return true;
+          }
+        }
+        return false;
       }
 
       @Override
       public Event next() {
-        currentEvent = iterator.next();
+        TimeEvent<Event, Offset> nextEvent = memoryIterator.hasNext() ? memoryIterator.peek() : null;
+        int nextRun = -1;
+        for (int i = 0; i < cursors.length; i++) {
+          TimeEvent<Event, Offset> event = iteratorRuns.get(i).get(cursors[i]);
+          if (event != null && (nextEvent == null || event.compareTo(nextEvent) < 0)) {
+            nextEvent = event;
+            nextRun = i;
+          }
+        }
+        if (nextEvent == null) {
+          throw new NoSuchElementException();
+        }
+
+        if (nextRun < 0) {
+          memoryIterator.next();
+        } else {
+          cursors[nextRun]++;
+        }
+        currentEvent = nextEvent;
+        currentRun = nextRun;
         return currentEvent.getEvent();
       }
 
@@ -129,9 +306,20 @@ public final class TimeEventQueue<Event, Offset extends Comparable<Offset>> impl
         if (currentEvent == null) {
           throw new IllegalStateException("The next() method must be called first.");
         }
-        iterator.remove();
+        if (currentRun < 0) {
+          memoryIterator.remove();
+          inMemorySize -= currentEvent.getEventSize();
+        } else {
+          SpillRun run = iteratorRuns.get(currentRun);
+          run.remove(--cursors[currentRun]);
+          spilledSize -= currentEvent.getEventSize();
+          spilledCount--;
+          if (run.isEmpty()) {
+            runs.remove(run);
+            run.close();
+          }
+        }
         partitionOffsets.get(currentEvent.getPartition()).remove(currentEvent.getOffset());
-        totalSize -= currentEvent.getEventSize();
         currentEvent = null;
       }
 
@@ -153,8 +341,19 @@ public final class TimeEventQueue<Event, Offset extends Comparable<Offset>> impl
     };
   }
 
-  private SortedSet<Offset> getOffsets(int partition) {
-    SortedSet<Offset> offsets = partitionOffsets.get(partition);
+  /**
+   * Deletes all spilled events from the local disk. The queue should not be used after it is closed.
+   */
+  @Override
+  public void close() {
+    for (SpillRun run : runs) {
+      run.close();
+    }
+    runs.clear();
+  }
+
+  private SortedMap<Offset, Long> getOffsets(int partition) {
+    SortedMap<Offset, Long> offsets = partitionOffsets.get(partition);
     if (offsets == null) {
       throw new IllegalArgumentException("Partition " + partition +
                                            " is not in allowed partitions " + partitionOffsets.keySet());
@@ -162,6 +361,12 @@ public final class TimeEventQueue<Event, Offset extends Comparable<Offset>> impl
     return offsets;
   }
 
+  private static void deleteFile(File file) {
+    if (!file.delete() && file.exists()) {
+      LOG.warn("Failed to delete spill file {}", file);
+    }
+  }
+
   /**
    * An {@link Iterator} for iterating over events inserted to the {@link TimeEventQueue}.
    *
@@ -181,6 +386,129 @@ public final class TimeEventQueue<Event, Offset extends Comparable<Offset>> impl
     int getPartition();
   }
 
+  /**
+   * Encodes and decodes events and offsets spilled to disk by the {@link TimeEventQueue}.
+   *
+   * @param <Event> Type of event stored in the queue.
+   * @param <Offset> Type of event offset associated with the event.
+   */
+  public interface SpillCodec<Event, Offset> {
+
+    void encodeEvent(Event event, DataOutput output) throws IOException;
+
+    Event decodeEvent(DataInput input) throws IOException;
+
+    void encodeOffset(Offset offset, DataOutput output) throws IOException;
+
+    Offset decodeOffset(DataInput input) throws IOException;
+  }
+
+  /**
+   * A sorted run of events spilled to a local file. Events are read from the file sequentially in batches and are
+   * kept in memory until they are removed. The file is only opened when events need to be read. At most
+   * {@link #MAX_OPEN_RUNS} runs keep the file open between reads, the least recently read one is closed and is
+   * reopened at the same position when needed again.
+   */
+  private final class SpillRun implements Closeable {
+    private final File file;
+    // Events read from the file but not yet removed
+    private final List<TimeEvent<Event, Offset>> buffer;
+    private int unread;
+    private long position;
+    private CountingInputStream countingInput;
+    private DataInputStream input;
+
+    SpillRun(File file, int count) {
+      this.file = file;
+      this.buffer = new ArrayList<>();
+      this.unread = count;
+    }
+
+    /**
+     * Returns the event at the given index among the events in this run that are not yet removed, or {@code null}
+     * if there is no such event.
+     */
+    @Nullable
+    TimeEvent<Event, Offset> get(int idx) {
+      if (buffer.size() <= idx && unread > 0) {
+        try {
+          read(Math.max(idx + 1 - buffer.size(), RUN_READ_BATCH_SIZE));
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+      }
+      return idx < buffer.size() ? buffer.get(idx) : null;
+    }
+
+    /**
+     * Reads up to the given number of events from the file into the buffer.
+     */
+    private void read(int count) throws IOException {
+      if (input == null) {
+        FileInputStream fileInput = new FileInputStream(file);
+        try {
+          fileInput.getChannel().position(position);
+        } catch (IOException e) {
+          Closeables.closeQuietly(fileInput);
+          throw e;
+        }
+        countingInput = new CountingInputStream(new BufferedInputStream(fileInput));
+        input = new DataInputStream(countingInput);
+      }
+
+      for (int i = 0; i < count && unread > 0; i++) {
+        long eventTime = input.readLong();
+        int partition = input.readInt();
+        int eventSize = input.readInt();
+        Offset offset = spillCodec.decodeOffset(input);
+        Event event = spillCodec.decodeEvent(input);
+        buffer.add(new TimeEvent<>(eventTime, partition, offset, event, eventSize));
+        unread--;
+      }
+
+      // Mark this run as the most recently read one and close the least recently read runs beyond the limit
+      openRuns.remove(this);
+      if (unread == 0) {
+        closeInput();
+        return;
+      }
+      openRuns.add(this);
+      Iterator<SpillRun> iterator = openRuns.iterator();
+      while (openRuns.size() > MAX_OPEN_RUNS) {
+        SpillRun run = iterator.next();
+        iterator.remove();
+        run.closeInput();
+      }
+    }
+
+    /**
+     * Closes the file, remembering the position to continue reading from.
+     */
+    private void closeInput() {
+      if (input != null) {
+        position += countingInput.getCount();
+        Closeables.closeQuietly(input);
+        input = null;
+        countingInput = null;
+      }
+    }
+
+    void remove(int idx) {
+      buffer.remove(idx);
+    }
+
+    boolean isEmpty() {
+      return buffer.isEmpty() && unread == 0;
+    }
+
+    @Override
+    public void close() {
+      openRuns.remove(this);
+      closeInput();
+      deleteFile(file);
+    }
+  }
+
   /**
    * This class represent an event stored in the event set.
    */
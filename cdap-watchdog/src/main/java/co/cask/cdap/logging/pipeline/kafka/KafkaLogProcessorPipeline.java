@@ -21,6 +21,7 @@ import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.logging.LogSamplers;
 import co.cask.cdap.common.logging.Loggers;
+import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.logging.meta.Checkpoint;
 import co.cask.cdap.logging.meta.CheckpointManager;
 import co.cask.cdap.logging.pipeline.LogProcessorPipelineContext;
@@ -47,7 +48,11 @@ import org.apache.twill.kafka.client.BrokerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -102,7 +107,9 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
     this.config = config;
     this.offsets = new Int2LongOpenHashMap();
     this.checkpoints = new Int2ObjectOpenHashMap<>();
-    this.eventQueue = new TimeEventQueue<>(config.getPartitions());
+    this.eventQueue = config.getMaxSpillSize() > 0
+      ? new TimeEventQueue<>(config.getPartitions(), config.getSpillDir(), new LoggingEventSpillCodec())
+      : new TimeEventQueue<>(config.getPartitions());
     this.serializer = new LoggingEventSerializer();
     this.kafkaConsumers = new HashMap<>();
     this.metricsContext = context;
@@ -123,6 +130,12 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
       }
     }
 
+    // Remove events spilled by previous runs. They are not covered by any checkpoint, hence will be fetched again.
+    File spillDir = config.getSpillDir();
+    if (config.getMaxSpillSize() > 0 && spillDir != null && spillDir.isDirectory()) {
+      DirUtils.deleteDirectoryContents(spillDir, true);
+    }
+
     context.start();
 
     fetchExecutor = Executors.newFixedThreadPool(
@@ -196,6 +209,7 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
   protected void shutDown() throws Exception {
     LOG.debug("Shutting down log processor pipeline for {}", name);
     fetchExecutor.shutdownNow();
+    eventQueue.close();
 
     try {
       context.stop();
@@ -290,7 +304,7 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
 
     boolean processed = false;
     for (MessageAndOffset message : messages) {
-      if (eventQueue.getEventSize() >= config.getMaxBufferSize()) {
+      if (eventQueue.getInMemorySize() >= config.getMaxBufferSize() && !spillEvents()) {
         // Log a message. If this happen too often, it indicates that more memory is needed for the log processing
         OUTAGE_LOG.info("Maximum queue size {} reached for pipeline {}.", config.getMaxBufferSize(), name);
         // If nothing has been appended (due to error), we break the loop so that no need event will be appended
@@ -322,6 +336,26 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
     return processed;
   }
 
+  /**
+   * Spills the in-memory events of the event queue to local disk if spilling is enabled and the maximum spill size
+   * is not yet reached.
+   *
+   * @return {@code true} if the events were spilled
+   */
+  private boolean spillEvents() {
+    if (!eventQueue.isSpillEnabled() || eventQueue.getEventSize() > config.getMaxSpillSize()) {
+      return false;
+    }
+    try {
+      eventQueue.spill();
+      metricsContext.increment("event.queue.spill.count", 1);
+      return true;
+    } catch (IOException e) {
+      OUTAGE_LOG.warn("Failed to spill events to {} for pipeline {}.", config.getSpillDir(), name, e);
+      return false;
+    }
+  }
+
   /**
    * Fetches messages from Kafka across all partitions simultaneously.
    */
@@ -423,6 +457,7 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
     // Failure to flush is ok and it will be retried by the wrapped appender
     try {
       metricsContext.gauge("event.queue.size.bytes", eventQueue.getEventSize());
+      metricsContext.gauge("event.queue.spilled.size.bytes", eventQueue.getSpilledSize());
       context.flush();
     } catch (IOException e) {
       OUTAGE_LOG.warn("Failed to flush in pipeline {}. Will be retried.", name, e);
@@ -580,6 +615,7 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
     metricsContext.gauge("event.delay.millis", config.getEventDelayMillis());
     metricsContext.gauge("kafka.fetch.buffer.size", config.getKafkaFetchBufferSize());
     metricsContext.gauge("checkpoint.interval.millis", config.getCheckpointIntervalMillis());
+    metricsContext.gauge("max.spill.size", config.getMaxSpillSize());
   }
 
   /**
@@ -666,4 +702,37 @@ public final class KafkaLogProcessorPipeline extends AbstractExecutionThreadServ
         '}';
     }
   }
+
+  /**
+   * A {@link TimeEventQueue.SpillCodec} for spilling logging events with the {@link LoggingEventSerializer}.
+   */
+  private static final class LoggingEventSpillCodec implements TimeEventQueue.SpillCodec<ILoggingEvent, OffsetTime> {
+
+    private final LoggingEventSerializer serializer = new LoggingEventSerializer();
+
+    @Override
+    public void encodeEvent(ILoggingEvent event, DataOutput output) throws IOException {
+      byte[] bytes = serializer.toBytes(event);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+
+    @Override
+    public ILoggingEvent decodeEvent(DataInput input) throws IOException {
+      byte[] bytes = new byte[input.readInt()];
+      input.readFully(bytes);
+      return serializer.fromBytes(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void encodeOffset(OffsetTime offset, DataOutput output) throws IOException {
+      output.writeLong(offset.getOffset());
+      output.writeLong(offset.getEventTime());
+    }
+
+    @Override
+    public OffsetTime decodeOffset(DataInput input) throws IOException {
+      return new OffsetTime(input.readLong(), input.readLong());
+    }
+  }
 }
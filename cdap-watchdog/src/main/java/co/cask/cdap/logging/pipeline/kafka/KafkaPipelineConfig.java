@@ -18,7 +18,9 @@ package co.cask.cdap.logging.pipeline.kafka;
 
 import com.google.common.collect.ImmutableSet;
 
+import java.io.File;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * A class to hold configurations for a {@link KafkaLogProcessorPipeline}.
@@ -31,15 +33,25 @@ public final class KafkaPipelineConfig {
   private final long eventDelayMillis;
   private final int kafkaFetchBufferSize;
   private final long checkpointIntervalMillis;
+  private final long maxSpillSize;
+  private final File spillDir;
 
   public KafkaPipelineConfig(String topic, Set<Integer> partitions, long maxBufferSize,
                              long eventDelayMillis, int kafkaFetchBufferSize, long checkpointIntervalMillis) {
+    this(topic, partitions, maxBufferSize, eventDelayMillis, kafkaFetchBufferSize, checkpointIntervalMillis, 0L, null);
+  }
+
+  public KafkaPipelineConfig(String topic, Set<Integer> partitions, long maxBufferSize,
+                             long eventDelayMillis, int kafkaFetchBufferSize, long checkpointIntervalMillis,
+                             long maxSpillSize, @Nullable File spillDir) {
     this.topic = topic;
     this.partitions = ImmutableSet.copyOf(partitions);
     this.maxBufferSize = maxBufferSize;
     this.eventDelayMillis = eventDelayMillis;
     this.kafkaFetchBufferSize = kafkaFetchBufferSize;
     this.checkpointIntervalMillis = checkpointIntervalMillis;
+    this.maxSpillSize = spillDir == null ? 0L : maxSpillSize;
+    this.spillDir = spillDir;
   }
 
   String getTopic() {
@@ -66,6 +78,18 @@ public final class KafkaPipelineConfig {
     return checkpointIntervalMillis;
   }
 
+  /**
+   * Returns the maximum size of events that can be spilled to local disk. Spilling is disabled if it is zero.
+   */
+  long getMaxSpillSize() {
+    return maxSpillSize;
+  }
+
+  @Nullable
+  File getSpillDir() {
+    return spillDir;
+  }
+
   @Override
   public String toString() {
     return "KafkaPipelineConfig{" +
@@ -75,6 +99,8 @@ public final class KafkaPipelineConfig {
       ", eventDelayMillis=" + eventDelayMillis +
       ", kafkaFetchBufferSize=" + kafkaFetchBufferSize +
       ", checkpointIntervalMillis=" + checkpointIntervalMillis +
+      ", maxSpillSize=" + maxSpillSize +
+      ", spillDir=" + spillDir +
       '}';
   }
 }
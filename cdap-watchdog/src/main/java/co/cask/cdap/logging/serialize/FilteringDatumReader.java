@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.serialize;
+
+import ch.qos.logback.classic.Level;
+import co.cask.cdap.logging.filter.AndFilter;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.MdcExpression;
+import co.cask.cdap.logging.filter.OrFilter;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link DatumReader} for logging event records that skips records before a given timestamp and records that
+ * don't match a given {@link Filter} without decoding them.
+ *
+ * The timestamp, level and MDC fields, which are the first fields of the {@link LogSchema.LoggingEvent#SCHEMA}, are
+ * decoded directly from the binary datum. If the filter can be evaluated with those fields only, which is the
+ * case for filters composed of {@link LogLevelExpression}, {@link MdcExpression}, {@link AndFilter} and
+ * {@link OrFilter}, non-matching records are skipped. Otherwise only the timestamp is used for skipping and the
+ * caller is responsible for applying the filter.
+ *
+ * The {@link #read(GenericRecord, Decoder)} method returns {@code null} for skipped records. The timestamp of the
+ * last record read, whether skipped or not, is available through the {@link #getLastTimestamp()} method.
+ */
+public final class FilteringDatumReader implements DatumReader<GenericRecord> {
+
+  private static final Schema SCHEMA = LogSchema.LoggingEvent.SCHEMA;
+  // Number of leading fields that are decoded directly: timestamp, level and mdc
+  private static final int DECODED_FIELDS = 3;
+
+  private final GenericDatumReader<GenericRecord> fullReader;
+  private final Filter filter;
+  private final long minTimestamp;
+  private final boolean pushdown;
+  private final List<Schema.Field> fields;
+  private final DatumReader<?>[] fieldReaders;
+
+  private boolean binaryCompatible;
+  private long lastTimestamp;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param filter the filter to apply on the records
+   * @param minTimestamp records with timestamp smaller than this value are skipped
+   */
+  public FilteringDatumReader(Filter filter, long minTimestamp) {
+    this.fullReader = new GenericDatumReader<>(SCHEMA);
+    this.filter = filter;
+    this.minTimestamp = minTimestamp;
+    this.pushdown = canPushdown(filter);
+    this.fields = SCHEMA.getFields();
+    this.fieldReaders = new DatumReader<?>[fields.size()];
+    for (int i = DECODED_FIELDS; i < fields.size(); i++) {
+      fieldReaders[i] = new GenericDatumReader<>(fields.get(i).schema());
+    }
+    this.binaryCompatible = true;
+    this.lastTimestamp = -1L;
+  }
+
+  /**
+   * Returns {@code true} if non-matching records are skipped by this reader, hence the caller doesn't need to
+   * apply the filter again.
+   */
+  public boolean isFilterPushedDown() {
+    return pushdown && binaryCompatible;
+  }
+
+  /**
+   * Returns the timestamp of the last record read.
+   */
+  public long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  @Override
+  public void setSchema(Schema schema) {
+    fullReader.setSchema(schema);
+    // Files written with a different schema are decoded fully
+    binaryCompatible = SCHEMA.equals(schema);
+  }
+
+  @Nullable
+  @Override
+  public GenericRecord read(@Nullable GenericRecord reuse, Decoder in) throws IOException {
+    if (!binaryCompatible) {
+      GenericRecord record = fullReader.read(reuse, in);
+      lastTimestamp = (Long) record.get("timestamp");
+      return lastTimestamp < minTimestamp ? null : record;
+    }
+
+    long timestamp = in.readLong();
+    int level = in.readInt();
+    lastTimestamp = timestamp;
+
+    if (timestamp < minTimestamp) {
+      skipFields(in, DECODED_FIELDS - 1);
+      return null;
+    }
+
+    Map<Utf8, Utf8> mdc = readMdc(in);
+    if (pushdown && !match(filter, Level.toLevel(level), mdc)) {
+      skipFields(in, DECODED_FIELDS);
+      return null;
+    }
+
+    GenericRecord record = new GenericData.Record(SCHEMA);
+    record.put(0, timestamp);
+    record.put(1, level);
+    record.put(2, mdc);
+    for (int i = DECODED_FIELDS; i < fields.size(); i++) {
+      record.put(i, fieldReaders[i].read(null, in));
+    }
+    return record;
+  }
+
+  /**
+   * Reads the nullable mdc map.
+   */
+  @Nullable
+  private Map<Utf8, Utf8> readMdc(Decoder in) throws IOException {
+    if (in.readIndex() == 0) {
+      return null;
+    }
+    Map<Utf8, Utf8> mdc = new HashMap<>();
+    for (long size = in.readMapStart(); size != 0; size = in.mapNext()) {
+      for (long i = 0; i < size; i++) {
+        Utf8 key = in.readString(null);
+        mdc.put(key, in.readIndex() == 0 ? null : in.readString(null));
+      }
+    }
+    return mdc;
+  }
+
+  /**
+   * Skips all fields starting from the given field index.
+   */
+  private void skipFields(Decoder in, int fromField) throws IOException {
+    for (int i = fromField; i < fields.size(); i++) {
+      LoggingEventSerializer.skip(fields.get(i).schema(), in);
+    }
+  }
+
+  /**
+   * Returns whether the given filter can be evaluated with the level and mdc fields only.
+   */
+  private static boolean canPushdown(Filter filter) {
+    if (filter == Filter.EMPTY_FILTER || filter instanceof LogLevelExpression) {
+      return true;
+    }
+    if (filter instanceof MdcExpression) {
+      // MDC with null key is encoded with a special key
+      return ((MdcExpression) filter).getKey() != null;
+    }
+    if (filter instanceof AndFilter) {
+      return canPushdown(((AndFilter) filter).getExpressions());
+    }
+    if (filter instanceof OrFilter) {
+      return canPushdown(((OrFilter) filter).getExpressions());
+    }
+    return false;
+  }
+
+  private static boolean canPushdown(List<? extends Filter> filters) {
+    for (Filter filter : filters) {
+      if (!canPushdown(filter)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Evaluates the given filter with the level and mdc, in the same way as {@link Filter#match} does.
+   */
+  private static boolean match(Filter filter, Level level, @Nullable Map<Utf8, Utf8> mdc) {
+    if (filter == Filter.EMPTY_FILTER) {
+      return true;
+    }
+    if (filter instanceof LogLevelExpression) {
+      return level.isGreaterOrEqual(((LogLevelExpression) filter).getLevel());
+    }
+    if (filter instanceof MdcExpression) {
+      MdcExpression expression = (MdcExpression) filter;
+      Utf8 value = mdc == null ? null : mdc.get(new Utf8(expression.getKey()));
+      return value != null && value.toString().equals(expression.getValue());
+    }
+    if (filter instanceof AndFilter) {
+      for (Filter expression : ((AndFilter) filter).getExpressions()) {
+        if (!match(expression, level, mdc)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (Filter expression : ((OrFilter) filter).getExpressions()) {
+      if (match(expression, level, mdc)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.serialize;
+
+import com.google.common.base.Throwables;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link GenericData.Record} of the {@link LogSchema.LoggingEvent#SCHEMA} that decodes each field from the
+ * binary encoded record only when the field is accessed for the first time.
+ *
+ * The position of each field in the encoded bytes is located by the {@link #decode(byte[], int, int)} method, which
+ * also validates the encoded record. Fields that are commonly accessed, such as timestamp, level, mdc and nullable
+ * strings, are decoded directly. Other fields are decoded with a {@link GenericDatumReader}.
+ */
+final class LazyLoggingEventRecord extends GenericData.Record {
+
+  private static final Schema SCHEMA = LogSchema.LoggingEvent.SCHEMA;
+  private static final List<Schema.Field> FIELDS = SCHEMA.getFields();
+  private static final DatumReader<?>[] FIELD_READERS = createFieldReaders();
+
+  private final byte[] bytes;
+  private final int[] offsets;
+  private final int end;
+  private int decodedFields;
+
+  /**
+   * Creates a {@link LazyLoggingEventRecord} from the encoded record in the given byte array.
+   *
+   * @throws IOException if the bytes do not contain a valid encoded record
+   */
+  static LazyLoggingEventRecord decode(byte[] bytes, int offset, int length) throws IOException {
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, offset, length, null);
+    int[] offsets = new int[FIELDS.size()];
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = offset + length - decoder.inputStream().available();
+      LoggingEventSerializer.skip(FIELDS.get(i).schema(), decoder);
+    }
+    return new LazyLoggingEventRecord(bytes, offsets, offset + length);
+  }
+
+  private LazyLoggingEventRecord(byte[] bytes, int[] offsets, int end) {
+    super(SCHEMA);
+    this.bytes = bytes;
+    this.offsets = offsets;
+    this.end = end;
+  }
+
+  @Override
+  public Object get(int i) {
+    decodeField(i);
+    return super.get(i);
+  }
+
+  @Override
+  public Object get(String key) {
+    Schema.Field field = SCHEMA.getField(key);
+    return field == null ? null : get(field.pos());
+  }
+
+  @Override
+  public void put(int i, Object v) {
+    // Mark the field as decoded so that the new value won't get overwritten
+    decodeField(i);
+    super.put(i, v);
+  }
+
+  @Override
+  public void put(String key, Object value) {
+    Schema.Field field = SCHEMA.getField(key);
+    if (field != null) {
+      decodeField(field.pos());
+    }
+    super.put(key, value);
+  }
+
+  /**
+   * Decodes the given field if it hasn't been decoded.
+   */
+  private synchronized void decodeField(int i) {
+    if ((decodedFields & (1 << i)) != 0) {
+      return;
+    }
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, offsets[i], end - offsets[i], null);
+    try {
+      Object value = FIELD_READERS[i] == null ? readField(FIELDS.get(i).schema(), decoder)
+                                              : FIELD_READERS[i].read(null, decoder);
+      super.put(i, value);
+      decodedFields |= 1 << i;
+    } catch (IOException e) {
+      // This shouldn't happen since the record was validated when it was created
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Reads a field that can be decoded directly.
+   */
+  @Nullable
+  private static Object readField(Schema schema, Decoder decoder) throws IOException {
+    switch (schema.getType()) {
+      case LONG:
+        return decoder.readLong();
+      case INT:
+        return decoder.readInt();
+      case BOOLEAN:
+        return decoder.readBoolean();
+      case UNION:
+        Schema type = schema.getTypes().get(decoder.readIndex());
+        switch (type.getType()) {
+          case NULL:
+            return null;
+          case STRING:
+            return decoder.readString(null);
+          case MAP:
+            return readStringMap(decoder);
+          default:
+            throw new IOException("Unsupported union type " + type);
+        }
+      default:
+        throw new IOException("Unsupported type " + schema);
+    }
+  }
+
+  /**
+   * Reads a map of nullable string values.
+   */
+  private static Map<Utf8, Utf8> readStringMap(Decoder decoder) throws IOException {
+    Map<Utf8, Utf8> map = new HashMap<>();
+    for (long size = decoder.readMapStart(); size != 0; size = decoder.mapNext()) {
+      for (long i = 0; i < size; i++) {
+        Utf8 key = decoder.readString(null);
+        map.put(key, decoder.readIndex() == 0 ? null : decoder.readString(null));
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Creates a {@link DatumReader} for each field that cannot be decoded directly by {@link #readField}.
+   */
+  private static DatumReader<?>[] createFieldReaders() {
+    DatumReader<?>[] readers = new DatumReader<?>[FIELDS.size()];
+    for (int i = 0; i < readers.length; i++) {
+      if (!isDirectlyDecodable(FIELDS.get(i).schema())) {
+        readers[i] = new GenericDatumReader<>(FIELDS.get(i).schema());
+      }
+    }
+    return readers;
+  }
+
+  private static boolean isDirectlyDecodable(Schema schema) {
+    switch (schema.getType()) {
+      case LONG:
+      case INT:
+      case BOOLEAN:
+        return true;
+      case UNION:
+        for (Schema type : schema.getTypes()) {
+          switch (type.getType()) {
+            case NULL:
+            case STRING:
+              break;
+            case MAP:
+              if (!isNullableString(type.getValueType())) {
+                return false;
+              }
+              break;
+            default:
+              return false;
+          }
+        }
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isNullableString(Schema schema) {
+    if (schema.getType() != Schema.Type.UNION) {
+      return false;
+    }
+    List<Schema> types = schema.getTypes();
+    return types.size() == 2 && types.get(0).getType() == Schema.Type.NULL
+      && types.get(1).getType() == Schema.Type.STRING;
+  }
+}
@@ -18,34 +18,46 @@ package co.cask.cdap.logging.serialize;
 
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggerContextVO;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.logging.LoggingUtil;
 import com.google.common.base.Throwables;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericArray;
 import org.apache.avro.generic.GenericData;
-import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
 import org.apache.avro.io.EncoderFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Map;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * Avro serializer for ILoggingEvent.
  * Method of this class is not thread safe, hence cannot be called from multiple threads concurrently.
+ *
+ * Events are encoded directly with the {@link LogSchema.LoggingEvent#SCHEMA} into a reusable buffer, without
+ * creating an intermediate {@link GenericRecord}, except for the throwable and the caller data. Decoded events
+ * are backed by the encoded bytes, with each field only decoded when it is accessed.
  */
 @NotThreadSafe
 public final class LoggingEventSerializer {
 
-  private final GenericDatumReader<GenericRecord> datumReader = new GenericDatumReader<>(getAvroSchema());
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private final GenericDatumWriter<Object> throwableProxyWriter =
+    new GenericDatumWriter<>(getAvroSchema().getField("throwableProxy").schema());
+  private final GenericDatumWriter<Object> callerDataWriter =
+    new GenericDatumWriter<>(getAvroSchema().getField("callerData").schema());
+  private BinaryEncoder encoder;
   private BinaryDecoder decoder;
 
   /**
@@ -59,11 +71,10 @@ public final class LoggingEventSerializer {
    * Encodes a {@link ILoggingEvent} to byte array.
    */
   public byte[] toBytes(ILoggingEvent event) {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
-    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, null);
-    GenericDatumWriter<GenericRecord> writer = new GenericDatumWriter<>(getAvroSchema());
+    out.reset();
+    encoder = EncoderFactory.get().directBinaryEncoder(out, encoder);
     try {
-      writer.write(toGenericRecord(event), encoder);
+      encode(event, encoder);
     } catch (IOException e) {
       // This shouldn't happen since we are writing to byte array output stream.
       throw Throwables.propagate(e);
@@ -71,6 +82,95 @@ public final class LoggingEventSerializer {
     return out.toByteArray();
   }
 
+  /**
+   * Encodes the given event with the {@link LogSchema.LoggingEvent#SCHEMA}. The fields are written in the
+   * schema order, producing the same result as writing the {@link #toGenericRecord(ILoggingEvent)} result with a
+   * {@link GenericDatumWriter}.
+   */
+  private void encode(ILoggingEvent event, Encoder encoder) throws IOException {
+    Schema schema = getAvroSchema();
+
+    encoder.writeLong(event.getTimeStamp());
+    encoder.writeInt(event.getLevel() == null ? Level.ERROR_INT : event.getLevel().toInt());
+    // mdc
+    encoder.writeIndex(1);
+    writeStringMap(event.getMDCPropertyMap(), encoder);
+    // marker is not supported
+    encoder.writeIndex(0);
+    writeNullableString(event.getThreadName(), encoder);
+    writeNullableString(event.getMessage(), encoder);
+
+    Object[] arguments = event.getArgumentArray();
+    if (arguments == null) {
+      encoder.writeIndex(0);
+    } else {
+      encoder.writeIndex(1);
+      encoder.writeArrayStart();
+      encoder.setItemCount(arguments.length);
+      for (Object argument : arguments) {
+        encoder.startItem();
+        writeNullableString(argument == null ? null : argument.toString(), encoder);
+      }
+      encoder.writeArrayEnd();
+    }
+
+    writeNullableString(event.getFormattedMessage(), encoder);
+    writeNullableString(event.getLoggerName(), encoder);
+
+    LoggerContextVO loggerContextVO = event.getLoggerContextVO();
+    if (loggerContextVO == null) {
+      encoder.writeIndex(0);
+    } else {
+      encoder.writeIndex(1);
+      writeNullableString(loggerContextVO.getName(), encoder);
+      if (loggerContextVO.getPropertyMap() == null) {
+        encoder.writeIndex(0);
+      } else {
+        encoder.writeIndex(1);
+        writeStringMap(loggerContextVO.getPropertyMap(), encoder);
+      }
+      encoder.writeLong(loggerContextVO.getBirthTime());
+    }
+
+    // Throwable and caller data are rare, hence they are encoded through the generic record
+    if (event.getThrowableProxy() == null) {
+      encoder.writeIndex(0);
+    } else {
+      throwableProxyWriter.write(ThrowableProxySerializer.encode(schema.getField("throwableProxy").schema(),
+                                                                 event.getThrowableProxy()), encoder);
+    }
+    encoder.writeBoolean(event.hasCallerData());
+    if (!event.hasCallerData()) {
+      encoder.writeIndex(0);
+    } else {
+      callerDataWriter.write(CallerDataSerializer.encode(schema.getField("callerData").schema(),
+                                                         event.getCallerData()), encoder);
+    }
+  }
+
+  private void writeNullableString(@Nullable String str, Encoder encoder) throws IOException {
+    if (str == null) {
+      encoder.writeIndex(0);
+    } else {
+      encoder.writeIndex(1);
+      encoder.writeString(str);
+    }
+  }
+
+  /**
+   * Writes a map with nullable string values, with the keys encoded by {@link LoggingUtil#encodeMDCKey(String)}.
+   */
+  private void writeStringMap(Map<String, String> map, Encoder encoder) throws IOException {
+    encoder.writeMapStart();
+    encoder.setItemCount(map.size());
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      encoder.startItem();
+      encoder.writeString(LoggingUtil.encodeMDCKey(entry.getKey()));
+      writeNullableString(entry.getValue(), encoder);
+    }
+    encoder.writeMapEnd();
+  }
+
   /**
    * Decodes the content of the given {@link ByteBuffer} into {@link ILoggingEvent}, based on the
    * schema returned by the {@link #getAvroSchema()} method.
@@ -80,7 +180,9 @@ public final class LoggingEventSerializer {
    * @throws IOException if fail to decode
    */
   public ILoggingEvent fromBytes(ByteBuffer buffer) throws IOException {
-    return new LoggingEvent(toGenericRecord(buffer), buffer);
+    byte[] bytes = buffer.hasArray() ? buffer.array() : Bytes.toBytes(buffer);
+    int offset = buffer.hasArray() ? buffer.arrayOffset() + buffer.position() : 0;
+    return new LoggingEvent(LazyLoggingEventRecord.decode(bytes, offset, buffer.remaining()), buffer);
   }
 
   /**
@@ -118,18 +220,6 @@ public final class LoggingEventSerializer {
     return decoder;
   }
 
-  /**
-   * Decodes the content of the given {@link ByteBuffer} into {@link GenericRecord}, based on the schema
-   * returned by the {@link #getAvroSchema()} method.
-   *
-   * @param buffer the buffer to decode
-   * @return a {@link GenericRecord} representing the decoded content.
-   * @throws IOException if fail to decode
-   */
-  private GenericRecord toGenericRecord(ByteBuffer buffer) throws IOException {
-    return datumReader.read(null, getDecoder(buffer));
-  }
-
   /**
    * Creates a new {@link GenericRecord} that represents the given {@link ILoggingEvent}.
    */
@@ -171,7 +261,7 @@ public final class LoggingEventSerializer {
   /**
    * Skips data from the decoder based on the schema.
    */
-  private void skip(Schema schema, Decoder decoder) throws IOException {
+  static void skip(Schema schema, Decoder decoder) throws IOException {
     switch (schema.getType()) {
       case RECORD:
         for (Schema.Field f : schema.getFields()) {
@@ -197,7 +287,11 @@ public final class LoggingEventSerializer {
         }
         break;
       case UNION:
-        decoder.readIndex();
+        int index = decoder.readIndex();
+        if (index < 0 || index >= schema.getTypes().size()) {
+          throw new IOException("Invalid union index " + index + " for schema " + schema);
+        }
+        skip(schema.getTypes().get(index), decoder);
         break;
       case FIXED:
         decoder.skipFixed(schema.getFixedSize());
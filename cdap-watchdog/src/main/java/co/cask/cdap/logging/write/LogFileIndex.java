@@ -0,0 +1,246 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.write;
+
+import co.cask.cdap.common.io.Locations;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * A sparse time index of an Avro log file, stored as a sidecar file next to the log file. Each entry maps the
+ * timestamp of the first event of a data block to the position of that block, which can be passed to
+ * {@link org.apache.avro.file.DataFileReader#seek(long)}.
+ *
+ * The timestamps of the entries are kept non-decreasing, so that the index can be binary searched even if events
+ * are slightly out of order in the file.
+ *
+ * Each entry also carries statistics of its block, which are the minimum and maximum event timestamp and the
+ * highest event level in the block, so that readers can skip blocks that cannot contain matching events.
+ * Entries read from an index of the first version have no statistics and are never skipped.
+ */
+public final class LogFileIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LogFileIndex.class);
+
+  public static final String INDEX_SUFFIX = ".idx";
+  private static final int VERSION_1 = 1;
+  // Version 2 adds the block statistics
+  private static final int VERSION_2 = 2;
+
+  private long[] timestamps;
+  private long[] positions;
+  private long[] minTimestamps;
+  private long[] maxTimestamps;
+  private int[] maxLevels;
+  private int size;
+
+  public LogFileIndex() {
+    this(16);
+  }
+
+  private LogFileIndex(int capacity) {
+    this.timestamps = new long[capacity];
+    this.positions = new long[capacity];
+    this.minTimestamps = new long[capacity];
+    this.maxTimestamps = new long[capacity];
+    this.maxLevels = new int[capacity];
+  }
+
+  /**
+   * Returns the {@link Location} of the index file for the given log file.
+   */
+  public static Location getIndexLocation(Location logLocation) throws IOException {
+    return Locations.getParent(logLocation).append(logLocation.getName() + INDEX_SUFFIX);
+  }
+
+  /**
+   * Reads the index of the given log file.
+   *
+   * @param logLocation location of the log file
+   * @return the {@link LogFileIndex} or {@code null} if there is no valid index for the log file
+   */
+  @Nullable
+  public static LogFileIndex read(Location logLocation) {
+    try {
+      Location indexLocation = getIndexLocation(logLocation);
+      if (!indexLocation.exists()) {
+        return null;
+      }
+      try (DataInputStream is = new DataInputStream(new BufferedInputStream(indexLocation.getInputStream()))) {
+        int version = is.readInt();
+        if (version != VERSION_1 && version != VERSION_2) {
+          LOG.debug("Ignoring log file index {} with unsupported version {}", indexLocation, version);
+          return null;
+        }
+        int size = is.readInt();
+        LogFileIndex index = new LogFileIndex(Math.max(1, size));
+        for (int i = 0; i < size; i++) {
+          long timestamp = is.readLong();
+          long position = is.readLong();
+          if (version == VERSION_1) {
+            index.add(timestamp, position);
+          } else {
+            index.add(timestamp, position, is.readLong(), is.readLong(), is.readInt());
+          }
+        }
+        return index;
+      }
+    } catch (IOException e) {
+      // The index is only an optimization, the log file can always be read without it
+      LOG.debug("Failed to read index for log file {}", logLocation, e);
+      return null;
+    }
+  }
+
+  /**
+   * Adds an entry without block statistics to the index.
+   *
+   * @param timestamp timestamp of the first event in the block
+   * @param position position of the block
+   */
+  public void add(long timestamp, long position) {
+    add(timestamp, position, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Adds an entry to the index.
+   *
+   * @param timestamp timestamp of the first event in the block
+   * @param position position of the block
+   * @param minTimestamp the smallest event timestamp in the block
+   * @param maxTimestamp the largest event timestamp in the block
+   * @param maxLevel the highest level, as given by {@link ch.qos.logback.classic.Level#toInt()}, of events in the block
+   */
+  public void add(long timestamp, long position, long minTimestamp, long maxTimestamp, int maxLevel) {
+    if (size == timestamps.length) {
+      timestamps = Arrays.copyOf(timestamps, size * 2);
+      positions = Arrays.copyOf(positions, size * 2);
+      minTimestamps = Arrays.copyOf(minTimestamps, size * 2);
+      maxTimestamps = Arrays.copyOf(maxTimestamps, size * 2);
+      maxLevels = Arrays.copyOf(maxLevels, size * 2);
+    }
+    timestamps[size] = size == 0 ? timestamp : Math.max(timestamp, timestamps[size - 1]);
+    positions[size] = position;
+    minTimestamps[size] = minTimestamp;
+    maxTimestamps[size] = maxTimestamp;
+    maxLevels[size] = maxLevel;
+    size++;
+  }
+
+  /**
+   * Writes this index as the index file of the given log file.
+   *
+   * @param logLocation location of the log file
+   * @param filePermissions permissions of the index file or an empty string to use the default permissions
+   */
+  public void write(Location logLocation, String filePermissions) throws IOException {
+    Location indexLocation = getIndexLocation(logLocation);
+    OutputStream os = filePermissions.isEmpty()
+      ? indexLocation.getOutputStream() : indexLocation.getOutputStream(filePermissions);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+      out.writeInt(VERSION_2);
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        out.writeLong(timestamps[i]);
+        out.writeLong(positions[i]);
+        out.writeLong(minTimestamps[i]);
+        out.writeLong(maxTimestamps[i]);
+        out.writeInt(maxLevels[i]);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of entries in the index.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the block position of the entry at the given index.
+   */
+  public long getPosition(int idx) {
+    return positions[idx];
+  }
+
+  /**
+   * Returns the index of the entry for the block at the given position, or {@code -1} if there is none.
+   */
+  public int getEntry(long position) {
+    int idx = Arrays.binarySearch(positions, 0, size, position);
+    return idx < 0 ? -1 : idx;
+  }
+
+  /**
+   * Returns {@code true} if the block of the entry at the given index has no event within the given time range and
+   * at or above the given level, based on the block statistics.
+   *
+   * @param idx index of the entry
+   * @param startTimeMs the smallest event timestamp of interest
+   * @param endTimeMs the largest event timestamp of interest
+   * @param minLevel the lowest event level of interest, as given by {@link ch.qos.logback.classic.Level#toInt()}
+   */
+  public boolean canSkip(int idx, long startTimeMs, long endTimeMs, int minLevel) {
+    return maxTimestamps[idx] < startTimeMs || minTimestamps[idx] > endTimeMs || maxLevels[idx] < minLevel;
+  }
+
+  /**
+   * Returns the index of the last entry with timestamp smaller than the given time, or {@code -1} if there is none.
+   */
+  public int lowerEntry(long timeMs) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] < timeMs) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * Returns the index of the first entry with timestamp larger than the given time, or the size of the index if
+   * there is none.
+   */
+  public int higherEntry(long timeMs) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] <= timeMs) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+}
@@ -16,17 +16,21 @@
 
 package co.cask.cdap.logging.write;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.common.logging.LogSamplers;
 import co.cask.cdap.common.logging.Loggers;
+import co.cask.cdap.logging.filter.AndFilter;
 import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.OrFilter;
 import co.cask.cdap.logging.read.Callback;
 import co.cask.cdap.logging.read.LogEvent;
 import co.cask.cdap.logging.read.LogOffset;
-import co.cask.cdap.logging.serialize.LogSchema;
+import co.cask.cdap.logging.serialize.FilteringDatumReader;
 import co.cask.cdap.logging.serialize.LoggingEvent;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.impersonation.Impersonator;
@@ -36,8 +40,8 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.apache.avro.file.DataFileReader;
 import org.apache.avro.file.SeekableInput;
-import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DatumReader;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +54,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
  * LogLocation representing a log file and methods to read the file's contents.
@@ -150,10 +155,16 @@ public class LogLocation {
    */
   @SuppressWarnings("WeakerAccess")
   public Collection<LogEvent> readLogPrev(Filter logFilter, long fromTimeMs, final int maxEvents) throws IOException {
+    LogFileIndex index = readIndex();
+    if (index != null) {
+      return readLogPrev(index, logFilter, fromTimeMs, maxEvents);
+    }
+
     Deque<Collection<LogEvent>> logSegments = new LinkedList<>();
     int count = 0;
     try {
-      try (DataFileReader<GenericRecord> dataFileReader = createReader()) {
+      FilteringDatumReader datumReader = new FilteringDatumReader(logFilter, Long.MIN_VALUE);
+      try (DataFileReader<GenericRecord> dataFileReader = createReader(datumReader)) {
 
         if (!dataFileReader.hasNext()) {
           return ImmutableList.of();
@@ -170,7 +181,7 @@ public class LogLocation {
         // For open file, endPosition sync marker is unknown so start from file length and read up to the actual EOF
         dataFileReader.sync(length);
         long finalSync = dataFileReader.previousSync();
-        List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, -1);
+        List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, datumReader, logFilter, fromTimeMs, -1);
 
         if (!logSegment.isEmpty()) {
           logSegments.addFirst(logSegment);
@@ -187,7 +198,7 @@ public class LogLocation {
           // Skip to sync position less than current sync position
           startPosition = skipToPosition(dataFileReader, startPosition, endPosition, skipLen);
           currentSync = dataFileReader.previousSync();
-          logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, endPosition);
+          logSegment = readToEndSyncPosition(dataFileReader, datumReader, logFilter, fromTimeMs, endPosition);
 
           if (!logSegment.isEmpty()) {
             logSegments.addFirst(logSegment);
@@ -206,10 +217,47 @@ public class LogLocation {
     return Lists.newArrayList(Iterables.skip(Iterables.concat(logSegments), skip));
   }
 
+  /**
+   * Reads log events before the given time by walking backward through the blocks of the given {@link LogFileIndex}.
+   */
+  private Collection<LogEvent> readLogPrev(LogFileIndex index, Filter logFilter, long fromTimeMs, int maxEvents) {
+    Deque<Collection<LogEvent>> logSegments = new LinkedList<>();
+    int count = 0;
+    FilteringDatumReader datumReader = new FilteringDatumReader(logFilter, Long.MIN_VALUE);
+    int minLevel = getMinLevel(logFilter);
+    try (DataFileReader<GenericRecord> dataFileReader = createReader(datumReader)) {
+      // Blocks starting from this entry only contain events after fromTimeMs
+      int endIdx = index.higherEntry(fromTimeMs);
+      for (int i = endIdx - 1; i >= 0 && count < maxEvents; i--) {
+        if (index.canSkip(i, Long.MIN_VALUE, fromTimeMs, minLevel)) {
+          continue;
+        }
+        // The last block is read up to the end of the file
+        long endPosition = i + 1 < index.size() ? index.getPosition(i + 1) : -1;
+        dataFileReader.seek(index.getPosition(i));
+        List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, datumReader, logFilter,
+                                                          fromTimeMs, endPosition);
+
+        if (!logSegment.isEmpty()) {
+          logSegments.addFirst(logSegment);
+          count = count + logSegment.size();
+        }
+        LOG.trace("Read log events {} from position {} to endPosition {}",
+                  count, index.getPosition(i), endPosition);
+      }
+    } catch (IOException e) {
+      READ_FAILURE_LOG.warn("Got exception while reading log file {}", location, e);
+    }
+
+    int skip = count >= maxEvents ? count - maxEvents : 0;
+    return Lists.newArrayList(Iterables.skip(Iterables.concat(logSegments), skip));
+  }
+
   /**
    *  Read current block in Avro file from current block sync marker to next block sync marker
    */
-  private List<LogEvent> readToEndSyncPosition(DataFileReader<GenericRecord> dataFileReader, Filter logFilter,
+  private List<LogEvent> readToEndSyncPosition(DataFileReader<GenericRecord> dataFileReader,
+                                               FilteringDatumReader datumReader, Filter logFilter,
                                                long fromTimeMs, long endSyncPosition) throws IOException {
 
     List<LogEvent> logSegment = new ArrayList<>();
@@ -217,17 +265,21 @@ public class LogLocation {
     // Read up to the end if endSyncPosition is not known (in case of an open file)
     // or read until endSyncPosition has been reached
     while (dataFileReader.hasNext() && (endSyncPosition == -1 || (currentSyncPosition < endSyncPosition))) {
-      ILoggingEvent loggingEvent = new LoggingEvent(dataFileReader.next());
-      loggingEvent.prepareForDeferredProcessing();
+      // The record is null if it was skipped by the filter
+      GenericRecord record = dataFileReader.next();
 
       // Stop when reached fromTimeMs
-      if (loggingEvent.getTimeStamp() > fromTimeMs) {
+      if (datumReader.getLastTimestamp() > fromTimeMs) {
         break;
       }
 
-      if (logFilter.match(loggingEvent)) {
-        logSegment.add(new LogEvent(loggingEvent,
-                                    new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, loggingEvent.getTimeStamp())));
+      if (record != null) {
+        ILoggingEvent loggingEvent = new LoggingEvent(record);
+        loggingEvent.prepareForDeferredProcessing();
+        if (datumReader.isFilterPushedDown() || logFilter.match(loggingEvent)) {
+          logSegment.add(new LogEvent(loggingEvent,
+                                      new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, loggingEvent.getTimeStamp())));
+        }
       }
       currentSyncPosition = dataFileReader.previousSync();
     }
@@ -258,10 +310,11 @@ public class LogLocation {
     private final long toTimeMs;
     private final long maxEvents;
 
+    private FilteringDatumReader datumReader;
     private DataFileReader<GenericRecord> dataFileReader;
-
-    private ILoggingEvent loggingEvent;
-    private GenericRecord datum;
+    private LogFileIndex index;
+    private int minLevel;
+    private long blockPosition = -1L;
 
     private int count = 0;
     private long prevTimestamp = -1;
@@ -275,16 +328,24 @@ public class LogLocation {
       this.maxEvents = maxEvents;
 
       try {
-        dataFileReader = createReader();
-        if (dataFileReader.hasNext()) {
-          datum = dataFileReader.next();
-          loggingEvent = new LoggingEvent(datum);
-          loggingEvent.prepareForDeferredProcessing();
+        // Records before fromTimeMs or not matching the filter are skipped by the datum reader without decoding
+        datumReader = new FilteringDatumReader(logFilter, fromTimeMs);
+        dataFileReader = createReader(datumReader);
+        index = readIndex();
+        minLevel = getMinLevel(logFilter);
+        if (index != null) {
+          // Seek to the block before the last block that starts before fromTimeMs, to tolerate events that are
+          // slightly out of order
+          int idx = Math.max(0, index.lowerEntry(fromTimeMs) - 1);
+          LOG.trace("Seeking to indexed pos {}", index.getPosition(idx));
+          dataFileReader.seek(index.getPosition(idx));
+        } else if (dataFileReader.hasNext()) {
+          dataFileReader.next();
 
           long prevPrevSyncPos = 0;
           long prevSyncPos = 0;
           // Seek to time fromTimeMs
-          while (loggingEvent.getTimeStamp() < fromTimeMs && dataFileReader.hasNext()) {
+          while (datumReader.getLastTimestamp() < fromTimeMs && dataFileReader.hasNext()) {
             // Seek to the next sync point
             long curPos = dataFileReader.tell();
             prevPrevSyncPos = prevSyncPos;
@@ -292,8 +353,7 @@ public class LogLocation {
             LOG.trace("Syncing to pos {}", curPos);
             dataFileReader.sync(curPos);
             if (dataFileReader.hasNext()) {
-              loggingEvent = new LoggingEvent(dataFileReader.next(datum));
-              loggingEvent.prepareForDeferredProcessing();
+              dataFileReader.next();
             }
           }
 
@@ -315,20 +375,24 @@ public class LogLocation {
     private void computeNext() {
       try {
         // read events from file
-        while (next == null && dataFileReader.hasNext()) {
-          loggingEvent = new LoggingEvent(dataFileReader.next(datum));
-          loggingEvent.prepareForDeferredProcessing();
-
-          if (loggingEvent.getTimeStamp() >= fromTimeMs && logFilter.match(loggingEvent)) {
-            ++count;
-            if ((count > maxEvents || loggingEvent.getTimeStamp() >= toTimeMs)
-              && loggingEvent.getTimeStamp() != prevTimestamp) {
-              break;
+        while (next == null && skipBlocks() && dataFileReader.hasNext()) {
+          // The record is null if it is before fromTimeMs or skipped by the filter
+          GenericRecord record = dataFileReader.next();
+          long timestamp = datumReader.getLastTimestamp();
+
+          if (record != null) {
+            ILoggingEvent loggingEvent = new LoggingEvent(record);
+            loggingEvent.prepareForDeferredProcessing();
+
+            if (datumReader.isFilterPushedDown() || logFilter.match(loggingEvent)) {
+              ++count;
+              if ((count > maxEvents || timestamp >= toTimeMs) && timestamp != prevTimestamp) {
+                break;
+              }
+              next = new LogEvent(loggingEvent, new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, timestamp));
             }
-            next = new LogEvent(loggingEvent,
-                                new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, loggingEvent.getTimeStamp()));
           }
-          prevTimestamp = loggingEvent.getTimeStamp();
+          prevTimestamp = timestamp;
         }
       } catch (Exception e) {
         // We want to ignore invalid or missing log files.
@@ -338,6 +402,37 @@ public class LogLocation {
       }
     }
 
+    /**
+     * Skips the blocks that cannot contain events to return, based on the block statistics in the index. This is
+     * done when the reader is at the start of a block.
+     *
+     * @return {@code false} if all remaining blocks in the file can be skipped
+     */
+    private boolean skipBlocks() throws IOException {
+      if (index == null || dataFileReader.previousSync() == blockPosition) {
+        return true;
+      }
+      blockPosition = dataFileReader.previousSync();
+      int idx = index.getEntry(blockPosition);
+      if (idx < 0) {
+        return true;
+      }
+
+      int nextIdx = idx;
+      while (nextIdx < index.size() && index.canSkip(nextIdx, fromTimeMs, Long.MAX_VALUE, minLevel)) {
+        nextIdx++;
+      }
+      if (nextIdx == index.size()) {
+        return false;
+      }
+      if (nextIdx != idx) {
+        LOG.trace("Skipping {} blocks to indexed pos {}", nextIdx - idx, index.getPosition(nextIdx));
+        blockPosition = index.getPosition(nextIdx);
+        dataFileReader.seek(blockPosition);
+      }
+      return true;
+    }
+
     @Override
     public void close() {
       try {
@@ -371,10 +466,47 @@ public class LogLocation {
     }
   }
 
-  private DataFileReader<GenericRecord> createReader() throws IOException {
+  /**
+   * Returns the {@link LogFileIndex} of this log file or {@code null} if the file is not indexed.
+   * Only files written with {@link #VERSION_1} can have an index.
+   */
+  @Nullable
+  private LogFileIndex readIndex() {
+    if (!VERSION_1.equals(frameworkVersion)) {
+      return null;
+    }
+    LogFileIndex index = LogFileIndex.read(location);
+    return index == null || index.size() == 0 ? null : index;
+  }
+
+  /**
+   * Returns the lowest level, as given by {@link Level#toInt()}, of events that can be matched by the given filter.
+   */
+  private static int getMinLevel(Filter filter) {
+    if (filter instanceof LogLevelExpression) {
+      return ((LogLevelExpression) filter).getLevel().toInt();
+    }
+    if (filter instanceof AndFilter) {
+      int level = Level.ALL_INT;
+      for (Filter expression : ((AndFilter) filter).getExpressions()) {
+        level = Math.max(level, getMinLevel(expression));
+      }
+      return level;
+    }
+    if (filter instanceof OrFilter && !((OrFilter) filter).getExpressions().isEmpty()) {
+      int level = Level.OFF_INT;
+      for (Filter expression : ((OrFilter) filter).getExpressions()) {
+        level = Math.min(level, getMinLevel(expression));
+      }
+      return level;
+    }
+    return Level.ALL_INT;
+  }
+
+  private DataFileReader<GenericRecord> createReader(DatumReader<GenericRecord> datumReader) throws IOException {
     boolean shouldImpersonate = this.getFrameworkVersion().equals(VERSION_0);
     return new DataFileReader<>(new LocationSeekableInput(location, namespaceId, impersonator, shouldImpersonate),
-                                new GenericDatumReader<GenericRecord>(LogSchema.LoggingEvent.SCHEMA));
+                                datumReader);
   }
 
   /**
@@ -21,6 +21,7 @@ import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.Constants;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -29,18 +30,32 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class for {@link MetricsCollectionService} which collect metrics through a set of cached
  * {@link AggregatedMetricsEmitter}.
+ *
+ * Each distinct tag set is interned into a single {@link MetricsContext} instance, identified by an int id.
+ * The context owns the emitters of all metrics emitted through it, as well as the child contexts created from it,
+ * so that {@link MetricsContext#increment(String, long)}, {@link MetricsContext#gauge(String, long)} and repeated
+ * {@link MetricsContext#childContext(String, String)} calls don't allocate. Emitters that are not accessed for
+ * a while are expired from the context. Contexts that have values to publish are kept in an active registry,
+ * which is the only structure scanned when metrics are published.
  */
 public abstract class AggregatedMetricsCollectionService extends AbstractExecutionThreadService
                                                          implements MetricsCollectionService {
@@ -48,33 +63,19 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsCollectionService.class);
   private static final long CACHE_EXPIRE_MINUTES = 1;
 
-  private final LoadingCache<Map<String, String>, MetricsContext> collectors;
-  private final LoadingCache<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> emitters;
+  // Interned contexts by tags. Weak values so that contexts not used by anyone can be garbage collected.
+  private final LoadingCache<Map<String, String>, MetricsContextImpl> collectors;
+  // Contexts that may have metrics to publish, keyed by the context id.
+  private final ConcurrentMap<Integer, MetricsContextImpl> activeContexts;
+  private final AtomicInteger nextContextId;
   private Thread runThread;
 
   public AggregatedMetricsCollectionService() {
     this.collectors = CacheBuilder.newBuilder()
-      .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
+      .weakValues()
       .build(createCollectorLoader());
-
-    this.emitters = CacheBuilder.newBuilder()
-      // NOTE : we don't need to have removalListener to  emit metrics, as we have expireAfterAccess set for a minute,
-      // emitters.get() is used to increment/gauge and that would reset the access time,
-      // and since runOneIteration() emits all the metrics for the scheduled duration (every 1 second)
-      // there wont be any loss of emitter entries.
-      .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
-      .build(new CacheLoader<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>() {
-        @Override
-        public LoadingCache<String, AggregatedMetricsEmitter> load(Map<String, String> tags) throws Exception {
-          return CacheBuilder.newBuilder().expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES).
-            build(new CacheLoader<String, AggregatedMetricsEmitter>() {
-              @Override
-              public AggregatedMetricsEmitter load(String metricName) throws Exception {
-                return new AggregatedMetricsEmitter(metricName);
-              }
-            });
-        }
-      });
+    this.activeContexts = new ConcurrentHashMap<>();
+    this.nextContextId = new AtomicInteger();
   }
 
   /**
@@ -128,7 +129,7 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
 
     LOG.trace("Start log collection for timestamp {}", timestamp);
 
-    Iterator<MetricValues> metrics = getMetrics(timestamp);
+    Iterator<MetricValues> metrics = getMetrics(currentTimeMillis, timestamp);
     try {
       publish(metrics);
     } catch (InterruptedException e) {
@@ -175,21 +176,20 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
     }
   }
 
-  private Iterator<MetricValues> getMetrics(final long timestamp) {
-    // NOTE : emitters.asMap does not reset the access time in cache,
-    // so it's the preferred way to access the cache entries. as we access and emit metrics every second.
-    final Iterator<Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>> iterator =
-      emitters.asMap().entrySet().iterator();
+  private Iterator<MetricValues> getMetrics(final long currentTimeMillis, final long timestamp) {
+    final long expireMillis = TimeUnit.MINUTES.toMillis(CACHE_EXPIRE_MINUTES);
+    final Iterator<MetricsContextImpl> iterator = activeContexts.values().iterator();
     return new AbstractIterator<MetricValues>() {
       @Override
       protected MetricValues computeNext() {
         while (iterator.hasNext()) {
-          Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> entry = iterator.next();
-          Map<String, AggregatedMetricsEmitter> metricEmitters = entry.getValue().asMap();
+          MetricsContextImpl context = iterator.next();
+          // NOTE: asMap() does not reset the access time of the emitters, so that only updates keep them alive
+          Map<String, AggregatedMetricsEmitter> metricEmitters = context.emitters.asMap();
           // +1 because we add extra metric about how many metric values did we emit in this context (see below)
           List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
-          for (Map.Entry<String, AggregatedMetricsEmitter> emitterEntry : metricEmitters.entrySet()) {
-            MetricValue metricValue = emitterEntry.getValue().emit();
+          for (AggregatedMetricsEmitter emitter : metricEmitters.values()) {
+            MetricValue metricValue = emitter.emit();
             // skip increment by 0
             if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
               continue;
@@ -198,53 +198,101 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
           }
 
           if (metricValues.isEmpty()) {
-            // skip if there are no metric values to send
+            // skip if there are no metric values to send. Remove the context from the active registry
+            // if it has been idle for a while, so that it can be garbage collected if no one is using it.
+            if (currentTimeMillis - context.lastEmitMillis >= expireMillis) {
+              context.deactivate();
+            }
             continue;
           }
+          context.lastEmitMillis = currentTimeMillis;
 
           // number of emitted metrics
           metricValues.add(new MetricValue("metrics.emitted.count", MetricType.COUNTER, metricValues.size() + 1));
 
           LOG.trace("Emit metric {}", metricValues);
-          return new MetricValues(entry.getKey(), timestamp, metricValues);
+          return new MetricValues(context.tags, timestamp, metricValues);
         }
         return endOfData();
       }
     };
   }
 
-  private CacheLoader<Map<String, String>, MetricsContext> createCollectorLoader() {
-    return new CacheLoader<Map<String, String>, MetricsContext>() {
+  private CacheLoader<Map<String, String>, MetricsContextImpl> createCollectorLoader() {
+    return new CacheLoader<Map<String, String>, MetricsContextImpl>() {
       @Override
-      public MetricsContext load(final Map<String, String> collectorKey) throws Exception {
-        return new MetricsContextImpl(collectorKey);
+      public MetricsContextImpl load(final Map<String, String> collectorKey) throws Exception {
+        return new MetricsContextImpl(nextContextId.getAndIncrement(), collectorKey);
       }
     };
   }
 
   private final class MetricsContextImpl implements MetricsContext {
 
+    private final int id;
     private final Map<String, String> tags;
-
-    private MetricsContextImpl(final Map<String, String> tags) {
+    // A removal listener is not needed for emitting metrics. An emitter only expires if it was not updated for
+    // CACHE_EXPIRE_MINUTES, which is longer than the publish period, hence its values have been emitted already.
+    private final LoadingCache<String, AggregatedMetricsEmitter> emitters;
+    // Child contexts created through childContext(String, String), keyed by tag name then tag value.
+    private final ConcurrentMap<String, Cache<String, MetricsContextImpl>> children;
+    private final AtomicBoolean active;
+    // Only accessed by the publishing thread
+    private long lastEmitMillis;
+
+    private MetricsContextImpl(int id, final Map<String, String> tags) {
+      this.id = id;
       this.tags = ImmutableMap.copyOf(tags);
+      this.emitters = CacheBuilder.newBuilder()
+        .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
+        .build(new CacheLoader<String, AggregatedMetricsEmitter>() {
+          @Override
+          public AggregatedMetricsEmitter load(String metricName) {
+            return new AggregatedMetricsEmitter(metricName);
+          }
+        });
+      this.children = new ConcurrentHashMap<>();
+      this.active = new AtomicBoolean();
+      this.lastEmitMillis = System.currentTimeMillis();
     }
 
     @Override
     public void increment(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).increment(value);
+      getEmitter(metricName).increment(value);
+      activate();
     }
 
     @Override
     public void gauge(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).gauge(value);
+      getEmitter(metricName).gauge(value);
+      activate();
     }
 
     @Override
-    public MetricsContext childContext(String tagName, String tagValue) {
-      ImmutableMap<String, String> allTags = ImmutableMap.<String, String>builder()
-        .putAll(tags).put(tagName, tagValue).build();
-      return collectors.getUnchecked(allTags);
+    public MetricsContext childContext(final String tagName, final String tagValue) {
+      Cache<String, MetricsContextImpl> contexts = children.get(tagName);
+      if (contexts == null) {
+        contexts = CacheBuilder.newBuilder().weakValues().build();
+        Cache<String, MetricsContextImpl> existing = children.putIfAbsent(tagName, contexts);
+        contexts = existing == null ? contexts : existing;
+      }
+
+      MetricsContextImpl context = contexts.getIfPresent(tagValue);
+      if (context != null) {
+        return context;
+      }
+      try {
+        return contexts.get(tagValue, new Callable<MetricsContextImpl>() {
+          @Override
+          public MetricsContextImpl call() throws Exception {
+            return collectors.getUnchecked(ImmutableMap.<String, String>builder()
+                                             .putAll(tags).put(tagName, tagValue).build());
+          }
+        });
+      } catch (ExecutionException | UncheckedExecutionException e) {
+        // Shouldn't happen since the loader never throws
+        throw new IllegalStateException("Failed to create child context for " + tagName + "=" + tagValue, e);
+      }
     }
 
     @Override
@@ -263,5 +311,35 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
       allTags.putAll(tags);
       return collectors.getUnchecked(allTags);
     }
+
+    private AggregatedMetricsEmitter getEmitter(String metricName) {
+      return emitters.getUnchecked(metricName);
+    }
+
+    /**
+     * Adds this context to the active registry if it is not there already.
+     */
+    private void activate() {
+      if (!active.get() && active.compareAndSet(false, true)) {
+        activeContexts.put(id, this);
+      }
+    }
+
+    /**
+     * Removes this context from the active registry and the expired emitters from this context.
+     * Must only be called from the publishing thread.
+     */
+    private void deactivate() {
+      activeContexts.remove(id);
+      active.set(false);
+      emitters.cleanUp();
+      // Re-check for values updated concurrently, which may not have seen the deactivation.
+      for (AggregatedMetricsEmitter emitter : emitters.asMap().values()) {
+        if (emitter.hasPendingValue()) {
+          activate();
+          return;
+        }
+      }
+    }
   }
 }
@@ -22,17 +22,22 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * {@link MetricsEmitter} that aggregates  values for a metric
  * during collection and emit the aggregated value when emit.
+ * Increments are accumulated in a striped {@link LongAdder} so that concurrent updates don't contend
+ * on a single memory location.
  */
 final class AggregatedMetricsEmitter implements MetricsEmitter {
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsEmitter.class);
 
   private final String name;
-  // metric value
-  private final AtomicLong value;
+  // increments since the last emit or gauge
+  private final LongAdder increments;
+  // last gauge value
+  private final AtomicLong gaugeValue;
   // specifies if the metric type is gauge or counter
   private final AtomicBoolean gaugeUsed;
 
@@ -42,25 +47,36 @@ final class AggregatedMetricsEmitter implements MetricsEmitter {
     }
 
     this.name = name;
-    this.value = new AtomicLong();
+    this.increments = new LongAdder();
+    this.gaugeValue = new AtomicLong();
     this.gaugeUsed = new AtomicBoolean(false);
   }
 
   void increment(long value) {
-    this.value.addAndGet(value);
+    increments.add(value);
   }
 
-
   @Override
   public MetricValue emit() {
     // todo CDAP-2195 - potential race condition , reseting value and type has to be done together
-    long value = this.value.getAndSet(0);
-    MetricType type = gaugeUsed.getAndSet(false) ? MetricType.GAUGE : MetricType.COUNTER;
-    return new MetricValue(name, type, value);
+    long value = increments.sumThenReset();
+    if (gaugeUsed.getAndSet(false)) {
+      // Increments after the gauge are added on top of the gauge value
+      return new MetricValue(name, MetricType.GAUGE, gaugeValue.get() + value);
+    }
+    return new MetricValue(name, MetricType.COUNTER, value);
   }
 
   public void gauge(long value) {
-    this.value.set(value);
-    this.gaugeUsed.set(true);
+    increments.reset();
+    gaugeValue.set(value);
+    gaugeUsed.set(true);
+  }
+
+  /**
+   * Returns {@code true} if there is value that is not yet emitted.
+   */
+  boolean hasPendingValue() {
+    return gaugeUsed.get() || increments.sum() != 0;
   }
 }
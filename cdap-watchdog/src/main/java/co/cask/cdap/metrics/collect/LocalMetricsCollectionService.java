@@ -27,6 +27,8 @@ import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
 import java.util.concurrent.Executors;
@@ -42,6 +44,8 @@ import java.util.stream.IntStream;
 @Singleton
 public final class LocalMetricsCollectionService extends AggregatedMetricsCollectionService {
 
+  private static final Logger LOG = LoggerFactory.getLogger(LocalMetricsCollectionService.class);
+
   private static final ImmutableMap<String, String> METRICS_PROCESSOR_CONTEXT =
     ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, Id.Namespace.SYSTEM.getId(),
                     Constants.Metrics.Tag.COMPONENT, Constants.Service.METRICS_PROCESSOR);
@@ -92,6 +96,21 @@ public final class LocalMetricsCollectionService extends AggregatedMetricsCollec
                                             Constants.Metrics.RETENTION_SECONDS_SUFFIX);
     // Try right away if there's anything to cleanup, we will then schedule based on the min retention interval
     scheduler.schedule(createCleanupTask(secRetentionSecs), 1, TimeUnit.SECONDS);
+
+    // The TMS metrics processor performs the rollup if it is present
+    if (messagingMetricsProcessor == null && cConf.getBoolean(Constants.Metrics.ROLLUP_ENABLED, false)) {
+      long rollupIntervalSecs = cConf.getLong(Constants.Metrics.ROLLUP_INTERVAL_SECONDS, 60L);
+      scheduler.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            metricStore.rollup();
+          } catch (Exception e) {
+            LOG.warn("Failed to rollup metrics. Will be retried in next iteration.", e);
+          }
+        }
+      }, rollupIntervalSecs, rollupIntervalSecs, TimeUnit.SECONDS);
+    }
   }
 
   @Override
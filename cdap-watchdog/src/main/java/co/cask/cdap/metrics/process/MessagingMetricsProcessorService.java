@@ -19,7 +19,6 @@ package co.cask.cdap.metrics.process;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.data.schema.UnsupportedTypeException;
-import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.metrics.MetricStore;
 import co.cask.cdap.api.metrics.MetricType;
 import co.cask.cdap.api.metrics.MetricValue;
@@ -35,8 +34,8 @@ import co.cask.cdap.common.logging.Loggers;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.internal.io.DatumReaderFactory;
 import co.cask.cdap.internal.io.SchemaGenerator;
-import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MultiTopicMessageFetcher;
 import co.cask.cdap.messaging.data.RawMessage;
 import co.cask.cdap.metrics.store.MetricDatasetFactory;
 import co.cask.cdap.proto.id.DatasetId;
@@ -58,6 +57,7 @@ import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -69,7 +69,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
@@ -93,10 +92,8 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   private final int queueSize;
   private final BlockingDeque<MetricValues> metricsFromAllTopics;
   private final ConcurrentMap<TopicIdMetaKey, TopicProcessMeta> topicProcessMetaMap;
-  private final AtomicBoolean persistingFlag;
   // maximum number of milliseconds to sleep between each run of fetching & processing new metrics
   private final int metricsProcessIntervalMillis;
-  private final List<ProcessMetricsThread> processMetricsThreads;
   private final String processMetricName;
   private final int instanceId;
   private final CConfiguration cConfiguration;
@@ -107,8 +104,10 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
   private MetricsConsumerMetaTable metaTable;
   private ScheduledExecutorService metricsTableDeleterExecutor;
+  private ScheduledExecutorService rollupExecutor;
   private DataMigrator metricsDataMigrator;
 
+  private volatile ProcessMetricsThread processMetricsThread;
   private volatile boolean stopping;
 
   @Inject
@@ -161,10 +160,8 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     this.queueSize = cConf.getInt(Constants.Metrics.QUEUE_SIZE);
     this.fetcherLimit = Math.max(1, queueSize / topicNumbers.size()); // fetcherLimit is at least one
     this.metricsContextMap = metricsContext.getTags();
-    this.processMetricsThreads = new ArrayList<>();
     this.metricsFromAllTopics = new LinkedBlockingDeque<>(queueSize);
     this.topicProcessMetaMap = new ConcurrentHashMap<>();
-    this.persistingFlag = new AtomicBoolean();
     this.metricsProcessIntervalMillis = metricsProcessIntervalMillis;
     this.instanceId = instanceId;
     this.cConfiguration = cConf;
@@ -207,26 +204,45 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       return;
     }
 
+    Map<TopicIdMetaKey, TopicProcessMeta> persistedMetas = new HashMap<>();
     for (TopicId topic : metricsTopics) {
-      TopicProcessMeta topicProcessMeta = null;
       TopicIdMetaKey topicRowKey = new TopicIdMetaKey(topic);
       try {
-        topicProcessMeta = metaTable.getTopicProcessMeta(topicRowKey);
+        TopicProcessMeta topicProcessMeta = metaTable.getTopicProcessMeta(topicRowKey);
+        if (topicProcessMeta != null) {
+          persistedMetas.put(topicRowKey, topicProcessMeta);
+        }
       } catch (Exception e) {
         LOG.warn("Cannot retrieve last processed MessageId for topic: {}", topic, e);
       }
-      processMetricsThreads.add(new ProcessMetricsThread(topicRowKey, topicProcessMeta));
     }
+    ProcessMetricsThread thread = new ProcessMetricsThread(persistedMetas);
+    processMetricsThread = thread;
 
     if (!isRunning()) {
       return;
     }
 
-    for (ProcessMetricsThread thread : processMetricsThreads) {
-      thread.start();
-    }
+    thread.start();
 
     if (instanceId == 0) {
+      if (cConfiguration.getBoolean(Constants.Metrics.ROLLUP_ENABLED, false)) {
+        // Rollup is idempotent, but only need to have one instance doing it
+        rollupExecutor =
+          Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("metrics-rollup"));
+        long intervalSecs = cConfiguration.getLong(Constants.Metrics.ROLLUP_INTERVAL_SECONDS, 60L);
+        rollupExecutor.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              metricStore.rollup();
+            } catch (Exception e) {
+              LOG.warn("Failed to rollup metrics. Will be retried in next iteration.", e);
+            }
+          }
+        }, intervalSecs, intervalSecs, TimeUnit.SECONDS);
+      }
+
       if (!skipMigration) {
         List<Integer> resolutions = new ArrayList<>();
         resolutions.add(Integer.MAX_VALUE);
@@ -256,13 +272,11 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       }
     }
 
-    for (ProcessMetricsThread thread : processMetricsThreads) {
-      try {
-        thread.join();
-      } catch (InterruptedException e) {
-        LOG.info("Thread {} is being terminated while waiting for it to finish.", thread.getName());
-        Thread.currentThread().interrupt();
-      }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      LOG.info("Thread {} is being terminated while waiting for it to finish.", thread.getName());
+      Thread.currentThread().interrupt();
     }
 
     try {
@@ -275,7 +289,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       Thread.currentThread().interrupt();
     }
 
-    // Persist metricsFromAllTopics and messageId's after all ProcessMetricsThread's complete.
+    // Persist metricsFromAllTopics and messageId's after the ProcessMetricsThread completes.
     // No need to make a copy of metricsFromAllTopics and topicProcessMetaMap because no thread is writing to them
     persistMetricsAndTopicProcessMeta(metricsFromAllTopics, topicProcessMetaMap);
   }
@@ -284,7 +298,8 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
   protected void triggerShutdown() {
     LOG.info("Stopping Metrics Processing Service.");
     stopping = true;
-    for (ProcessMetricsThread thread : processMetricsThreads) {
+    ProcessMetricsThread thread = processMetricsThread;
+    if (thread != null) {
       thread.interrupt();
     }
     // set stopping to true for helper class that retries the get/hasInstance/delete dataset
@@ -294,6 +309,10 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       metricsTableDeleterExecutor.shutdownNow();
       metricsTableDeleterExecutor = null;
     }
+    if (rollupExecutor != null) {
+      rollupExecutor.shutdownNow();
+      rollupExecutor = null;
+    }
     if (metricsDataMigrator != null) {
       metricsDataMigrator.requestStop();
       metricsDataMigrator.interrupt();
@@ -323,8 +342,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
   private void persistTopicProcessMeta(Map<TopicIdMetaKey, TopicProcessMeta> messageIds) {
     try {
-      // messageIds can be empty if the current thread fetches nothing while other threads keep fetching new metrics
-      // and haven't updated messageId's of the corresponding topics
+      // messageIds can be empty if nothing has been fetched from any topic yet
       if (!messageIds.isEmpty()) {
         metaTable.saveMetricsProcessorStats(messageIds);
       }
@@ -364,33 +382,36 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
                        metricsProcessedCount, lastMetricTime);
   }
 
+  /**
+   * Thread for fetching metrics from all topics with a single multi-topic fetch per run, and persisting them.
+   */
   private class ProcessMetricsThread extends Thread {
-    private final TopicIdMetaKey topicIdMetaKey;
+    private final Map<TopicId, TopicMetricNames> topicMetricNames;
     private final PayloadInputStream payloadInput;
     private final BinaryDecoder decoder;
-    private final String oldestTsMetricName;
-    private final String latestTsMetricName;
-    private long lastMetricTimeSecs;
 
-    ProcessMetricsThread(TopicIdMetaKey topicIdMetaKey, @Nullable TopicProcessMeta topicProcessMeta) {
-      super(String.format("ProcessMetricsThread-%s", topicIdMetaKey.getTopicId()));
+    ProcessMetricsThread(Map<TopicIdMetaKey, TopicProcessMeta> persistedMetas) {
+      super(String.format("ProcessMetricsThread-%d", instanceId));
       setDaemon(true);
-      oldestTsMetricName = String.format("%s.topic.%s.oldest.delay.ms",
-                                                metricsPrefixForDelayMetrics, topicIdMetaKey.getTopicId().getTopic());
-      latestTsMetricName = String.format("%s.topic.%s.latest.delay.ms",
-                                                metricsPrefixForDelayMetrics, topicIdMetaKey.getTopicId().getTopic());
-      if (topicProcessMeta != null && topicProcessMeta.getMessageId() != null) {
-        // message-id already for this topic in metaTable, we create a new TopicProcessMeta with existing values,
-        // add metric names and put it in map
-        byte[] persistedMessageId = topicProcessMeta.getMessageId();
-        topicProcessMetaMap.put(topicIdMetaKey,
-                                new TopicProcessMeta(persistedMessageId, topicProcessMeta.getOldestMetricsTimestamp(),
-                                                     topicProcessMeta.getLatestMetricsTimestamp(),
-                                                     topicProcessMeta.getMessagesProcessed(),
-                                                     topicProcessMeta.getLastProcessedTimestamp(),
-                                                     oldestTsMetricName, latestTsMetricName));
+      this.topicMetricNames = new LinkedHashMap<>();
+      for (TopicId topicId : metricsTopics) {
+        TopicMetricNames names = new TopicMetricNames(topicId);
+        topicMetricNames.put(topicId, names);
+
+        TopicProcessMeta topicProcessMeta = persistedMetas.get(names.topicIdMetaKey);
+        if (topicProcessMeta != null && topicProcessMeta.getMessageId() != null) {
+          // message-id already for this topic in metaTable, we create a new TopicProcessMeta with existing values,
+          // add metric names and put it in map
+          byte[] persistedMessageId = topicProcessMeta.getMessageId();
+          topicProcessMetaMap.put(names.topicIdMetaKey,
+                                  new TopicProcessMeta(persistedMessageId,
+                                                       topicProcessMeta.getOldestMetricsTimestamp(),
+                                                       topicProcessMeta.getLatestMetricsTimestamp(),
+                                                       topicProcessMeta.getMessagesProcessed(),
+                                                       topicProcessMeta.getLastProcessedTimestamp(),
+                                                       names.oldestTsMetricName, names.latestTsMetricName));
+        }
       }
-      this.topicIdMetaKey = topicIdMetaKey;
       this.payloadInput = new PayloadInputStream();
       this.decoder = new BinaryDecoder(payloadInput);
     }
@@ -412,7 +433,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     }
 
     /**
-     * Fetch at most {@code fetcherLimit} metrics to process, and calculate the estimated sleep time
+     * Fetch at most {@code fetcherLimit} metrics from each topic to process, and calculate the estimated sleep time
      * before the next run with the best effort to avoid accumulating unprocessed metrics
      *
      * @return the estimated sleep time before the next run with the best effort to avoid accumulating
@@ -421,60 +442,31 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     private long processMetrics() {
       long startTime = System.currentTimeMillis();
       try {
-        MessageFetcher fetcher = messagingService.prepareFetch(topicIdMetaKey.getTopicId());
-        fetcher.setLimit(fetcherLimit);
-        TopicProcessMeta persistMetaInfo = topicProcessMetaMap.get(topicIdMetaKey);
-        byte[] lastMessageId = null;
-
-        if (persistMetaInfo != null) {
-          lastMessageId = persistMetaInfo.getMessageId();
-        }
-
-        if (lastMessageId != null) {
-          fetcher.setStartMessage(lastMessageId, false);
-        } else {
-          fetcher.setStartTime(0L);
-        }
-
-        byte[] currentMessageId = null;
-        TopicProcessMeta localTopicProcessMeta =
-          new TopicProcessMeta(lastMessageId, Long.MAX_VALUE, Long.MIN_VALUE, 0,
-                               TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
-                               oldestTsMetricName, latestTsMetricName);
-        try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
-          while (iterator.hasNext() && isRunning()) {
-            RawMessage input = iterator.next();
-            try {
-              payloadInput.reset(input.getPayload());
-              MetricValues metricValues = metricReader.read(decoder, metricSchema);
-              if (!metricsFromAllTopics.offer(metricValues)) {
-                break;
-              }
-              lastMetricTimeSecs = metricValues.getTimestamp();
-              currentMessageId = input.getId();
-              if (LOG.isTraceEnabled()) {
-                LOG.trace("Received message {} with metrics: {}", Bytes.toStringBinary(currentMessageId), metricValues);
-              }
-              localTopicProcessMeta.updateTopicProcessingStats(currentMessageId, lastMetricTimeSecs);
-            } catch (IOException e) {
-              LOG.warn("Failed to decode message to MetricValue. Skipped. {}", e.getMessage());
-            }
+        MultiTopicMessageFetcher fetcher = messagingService.prepareMultiFetch(NamespaceId.SYSTEM);
+        for (TopicMetricNames names : topicMetricNames.values()) {
+          byte[] lastMessageId = getLastMessageId(names.topicIdMetaKey);
+          if (lastMessageId != null) {
+            fetcher.addTopic(names.topicIdMetaKey.getTopicId(), lastMessageId, false, fetcherLimit);
+          } else {
+            fetcher.addTopic(names.topicIdMetaKey.getTopicId(), 0L, fetcherLimit);
           }
         }
 
-        if (currentMessageId != null) {
-          // update the last processed timestamp in local topic meta and update the topicProcessMetaMap with this
-          // local topic meta for the topic
-          localTopicProcessMeta.updateLastProcessedTimestamp();
-          topicProcessMetaMap.put(topicIdMetaKey, localTopicProcessMeta);
+        // The smallest timestamp of the last metrics processed from each topic that has new metrics
+        long lastMetricTimeSecs = Long.MAX_VALUE;
+        for (Map.Entry<TopicId, List<RawMessage>> entry : fetcher.fetch().entrySet()) {
+          TopicMetricNames names = topicMetricNames.get(entry.getKey());
+          if (names != null && isRunning()) {
+            lastMetricTimeSecs = Math.min(lastMetricTimeSecs, processMessages(names, entry.getValue()));
+          }
         }
-        // Try to persist metrics and messageId's of the last metrics to be persisted if no other thread is persisting
-        tryPersist();
+        // Persist metrics and messageId's of the last metrics to be persisted
+        persist();
 
         long endTime = System.currentTimeMillis();
-        // use currentMessageId != null to ensure that the current fetching is not empty and
-        // lastMetricTimeSecs is updated
-        if (currentMessageId != null && endTime - TimeUnit.SECONDS.toMillis(lastMetricTimeSecs) > maxDelayMillis) {
+        // use lastMetricTimeSecs != Long.MAX_VALUE to ensure that the current fetching is not empty
+        if (lastMetricTimeSecs != Long.MAX_VALUE
+          && endTime - TimeUnit.SECONDS.toMillis(lastMetricTimeSecs) > maxDelayMillis) {
           // Don't sleep if falling behind
           return 0L;
         } else {
@@ -489,17 +481,55 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       return metricsProcessIntervalMillis;
     }
 
+    @Nullable
+    private byte[] getLastMessageId(TopicIdMetaKey topicIdMetaKey) {
+      TopicProcessMeta persistMetaInfo = topicProcessMetaMap.get(topicIdMetaKey);
+      return persistMetaInfo == null ? null : persistMetaInfo.getMessageId();
+    }
+
     /**
-     * Persist metrics and messageId's of the last metrics to be persisted if no other thread is persisting
+     * Decodes the messages fetched from a topic and adds them to the metrics queue, until the queue is full.
+     *
+     * @return the timestamp of the last metric added to the queue, or {@link Long#MAX_VALUE} if none was added
      */
-    private void tryPersist() {
-      // Ensure there's only one thread can persist metricsFromAllTopics and messageId's.
-      // This is because the underlying metrics table is not thread safe.
-      // If persistingFlag is false, set it to true and start persisting. Otherwise, log and return.
-      if (!persistingFlag.compareAndSet(false, true)) {
-        LOG.trace("There is another thread performing persisting. No need to persist in this thread.");
-        return;
+    private long processMessages(TopicMetricNames names, List<RawMessage> messages) {
+      byte[] currentMessageId = null;
+      long lastMetricTimeSecs = Long.MAX_VALUE;
+      TopicProcessMeta localTopicProcessMeta =
+        new TopicProcessMeta(getLastMessageId(names.topicIdMetaKey), Long.MAX_VALUE, Long.MIN_VALUE, 0,
+                             TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                             names.oldestTsMetricName, names.latestTsMetricName);
+      for (RawMessage input : messages) {
+        try {
+          payloadInput.reset(input.getPayload());
+          MetricValues metricValues = metricReader.read(decoder, metricSchema);
+          if (!metricsFromAllTopics.offer(metricValues)) {
+            break;
+          }
+          lastMetricTimeSecs = metricValues.getTimestamp();
+          currentMessageId = input.getId();
+          if (LOG.isTraceEnabled()) {
+            LOG.trace("Received message {} with metrics: {}", Bytes.toStringBinary(currentMessageId), metricValues);
+          }
+          localTopicProcessMeta.updateTopicProcessingStats(currentMessageId, lastMetricTimeSecs);
+        } catch (IOException e) {
+          LOG.warn("Failed to decode message to MetricValue. Skipped. {}", e.getMessage());
+        }
       }
+
+      if (currentMessageId != null) {
+        // update the last processed timestamp in local topic meta and update the topicProcessMetaMap with this
+        // local topic meta for the topic
+        localTopicProcessMeta.updateLastProcessedTimestamp();
+        topicProcessMetaMap.put(names.topicIdMetaKey, localTopicProcessMeta);
+      }
+      return lastMetricTimeSecs;
+    }
+
+    /**
+     * Persist metrics and messageId's of the last metrics to be persisted
+     */
+    private void persist() {
       try {
         // Make a copy of topicProcessMetaMap before copying metrics from metricsFromAllTopics to ensure that
         // topicMessageIdsCopy will not contain new MessageId's in metricsFromAllTopics but not in metricsCopy.
@@ -509,11 +539,6 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
         // the number of metrics being persisted each time
         Deque<MetricValues> metricsCopy = new LinkedList<>();
         Iterator<MetricValues> iterator = metricsFromAllTopics.iterator();
-        // Though the blocking queue(metricsFromAllTopics) has upper bound on its size (which is the "queueSize")
-        // there can be a scenario, as the current thread is removing entries from blocking queue
-        // and adding it to a copy list, other threads are simultaneously adding entries to the queue and
-        // the current list might become very big causing out of memory issues, we avoid this
-        // by making the copy list size also to be limited by the max queue size.
         while (iterator.hasNext() && metricsCopy.size() < queueSize) {
           metricsCopy.add(iterator.next());
           iterator.remove();
@@ -522,13 +547,27 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
         persistMetricsAndTopicProcessMeta(metricsCopy, topicProcessMetaMapCopy);
       } catch (Exception e) {
         LOG.warn("Failed to persist metrics. Will be retried in next iteration.", e);
-      } finally {
-        // Set persistingFlag back to false after persisting completes.
-        persistingFlag.set(false);
       }
     }
   }
 
+  /**
+   * The topic row key and the names of the delay metrics of a metrics topic.
+   */
+  private final class TopicMetricNames {
+    private final TopicIdMetaKey topicIdMetaKey;
+    private final String oldestTsMetricName;
+    private final String latestTsMetricName;
+
+    TopicMetricNames(TopicId topicId) {
+      this.topicIdMetaKey = new TopicIdMetaKey(topicId);
+      this.oldestTsMetricName = String.format("%s.topic.%s.oldest.delay.ms",
+                                              metricsPrefixForDelayMetrics, topicId.getTopic());
+      this.latestTsMetricName = String.format("%s.topic.%s.latest.delay.ms",
+                                              metricsPrefixForDelayMetrics, topicId.getTopic());
+    }
+  }
+
   private class PayloadInputStream extends ByteArrayInputStream {
 
     PayloadInputStream() {
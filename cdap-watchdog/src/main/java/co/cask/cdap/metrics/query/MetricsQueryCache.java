@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.query;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A cache for {@link MetricStore#query(MetricDataQuery)} results. For each query, the values of time buckets that are
+ * closed, meaning no more metrics are expected to be written to them, are cached. Repeated queries only scan the
+ * {@link MetricStore} for the time range after the last cached bucket.
+ *
+ * Queries with interpolation or with the totals resolution are not cached.
+ *
+ * The cache is not invalidated on metrics deletion, which happens in other services, nor on metrics that are
+ * written after their time bucket is considered closed. Hence it is disabled by default.
+ */
+final class MetricsQueryCache {
+
+  private final MetricStore metricStore;
+  private final Cache<QueryKey, CachedResult> cache;
+  private final long closedDelaySecs;
+  private final long rollupDelaySecs;
+
+  @Nullable
+  private volatile MetricsContext metricsContext;
+
+  MetricsQueryCache(MetricStore metricStore, CConfiguration cConf) {
+    this.metricStore = metricStore;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(cConf.getInt(Constants.Metrics.QUERY_CACHE_SIZE, 0))
+      .expireAfterAccess(cConf.getLong(Constants.Metrics.QUERY_CACHE_EXPIRE_SECONDS, 600L), TimeUnit.SECONDS)
+      .build();
+    this.closedDelaySecs = cConf.getLong(Constants.Metrics.QUERY_CACHE_CLOSED_DELAY_SECONDS, 120L);
+    // Buckets of the rolled up resolutions are only complete after the rollup ran on them
+    this.rollupDelaySecs = cConf.getBoolean(Constants.Metrics.ROLLUP_ENABLED, false)
+      ? cConf.getLong(Constants.Metrics.ROLLUP_DELAY_SECONDS, 120L)
+        + 2 * cConf.getLong(Constants.Metrics.ROLLUP_INTERVAL_SECONDS, 60L)
+      : 0L;
+  }
+
+  /**
+   * Sets the {@link MetricsContext} for emitting cache hit and miss metrics.
+   */
+  void setMetricsContext(MetricsContext metricsContext) {
+    this.metricsContext = metricsContext;
+  }
+
+  /**
+   * Executes the given query, using cached results for closed time buckets if available.
+   */
+  Collection<MetricTimeSeries> query(MetricDataQuery query) {
+    return query(query, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+  }
+
+  @VisibleForTesting
+  Collection<MetricTimeSeries> query(MetricDataQuery query, long currentTime) {
+    if (query.getInterpolator() != null || query.getResolution() == Integer.MAX_VALUE
+      || query.getStartTs() < 0 || query.getEndTs() < query.getStartTs()) {
+      return metricStore.query(query);
+    }
+
+    int resolution = query.getResolution();
+    long startTs = query.getStartTs();
+    long endTs = query.getEndTs();
+
+    // Buckets with timestamp smaller than this are closed
+    long delay = closedDelaySecs + (resolution == Constants.Metrics.SECOND_RESOLUTION ? 0L : rollupDelaySecs);
+    long closedTs = (currentTime - delay) / resolution * resolution;
+
+    QueryKey key = new QueryKey(query);
+    CachedResult cached = cache.getIfPresent(key);
+    if (cached != null && (cached.startTs > startTs || cached.closedTs <= startTs)) {
+      // The cached result doesn't cover the beginning of the query
+      cached = null;
+    }
+    incrementMetric(cached == null ? "query.cache.miss.count" : "query.cache.hit.count");
+
+    // Only scan the time range that is not in the cache
+    long scanStartTs = cached == null ? startTs : cached.closedTs;
+    Map<SeriesKey, NavigableMap<Long, Long>> scanned = Collections.emptyMap();
+    if (scanStartTs <= endTs) {
+      scanned = toSeriesMap(metricStore.query(new MetricDataQuery(scanStartTs, endTs, resolution, Integer.MAX_VALUE,
+                                                                  query.getMetrics(), query.getSliceByTags(),
+                                                                  query.getGroupByTags(), null)));
+    }
+
+    // Cache the closed buckets that are covered by the query
+    long newClosedTs = Math.min(closedTs, endTs / resolution * resolution + resolution);
+    if (newClosedTs > scanStartTs) {
+      Map<SeriesKey, NavigableMap<Long, Long>> closedValues = new HashMap<>();
+      if (cached != null) {
+        // Only keep the values covered by this query, so that the entry of a sliding query doesn't keep growing.
+        // The values are copied to release the earlier values held by the cached maps.
+        for (Map.Entry<SeriesKey, NavigableMap<Long, Long>> entry : cached.values.entrySet()) {
+          NavigableMap<Long, Long> values = entry.getValue().tailMap(startTs, true);
+          if (!values.isEmpty()) {
+            closedValues.put(entry.getKey(), Collections.unmodifiableNavigableMap(new TreeMap<>(values)));
+          }
+        }
+      }
+      for (Map.Entry<SeriesKey, NavigableMap<Long, Long>> entry : scanned.entrySet()) {
+        NavigableMap<Long, Long> values = entry.getValue().headMap(newClosedTs, false);
+        if (values.isEmpty()) {
+          continue;
+        }
+        NavigableMap<Long, Long> existing = closedValues.get(entry.getKey());
+        if (existing != null) {
+          values = new TreeMap<>(values);
+          values.putAll(existing);
+        }
+        closedValues.put(entry.getKey(), Collections.unmodifiableNavigableMap(values));
+      }
+      cache.put(key, new CachedResult(startTs, newClosedTs, closedValues));
+    }
+
+    // Merge the cached and the scanned values
+    Map<SeriesKey, NavigableMap<Long, Long>> merged = new LinkedHashMap<>();
+    if (cached != null) {
+      for (Map.Entry<SeriesKey, NavigableMap<Long, Long>> entry : cached.values.entrySet()) {
+        NavigableMap<Long, Long> values = entry.getValue().subMap(startTs, true, endTs, true);
+        if (!values.isEmpty()) {
+          merged.put(entry.getKey(), new TreeMap<>(values));
+        }
+      }
+    }
+    for (Map.Entry<SeriesKey, NavigableMap<Long, Long>> entry : scanned.entrySet()) {
+      NavigableMap<Long, Long> values = merged.get(entry.getKey());
+      if (values == null) {
+        merged.put(entry.getKey(), entry.getValue());
+      } else {
+        values.putAll(entry.getValue());
+      }
+    }
+
+    return toTimeSeries(merged, query.getLimit());
+  }
+
+  /**
+   * Returns the total number of time values held in the cache.
+   */
+  @VisibleForTesting
+  int getCachedValueCount() {
+    int count = 0;
+    for (CachedResult cachedResult : cache.asMap().values()) {
+      for (NavigableMap<Long, Long> values : cachedResult.values.values()) {
+        count += values.size();
+      }
+    }
+    return count;
+  }
+
+  private Map<SeriesKey, NavigableMap<Long, Long>> toSeriesMap(Collection<MetricTimeSeries> timeSeries) {
+    Map<SeriesKey, NavigableMap<Long, Long>> result = new LinkedHashMap<>();
+    for (MetricTimeSeries series : timeSeries) {
+      NavigableMap<Long, Long> values = new TreeMap<>();
+      for (TimeValue timeValue : series.getTimeValues()) {
+        values.put(timeValue.getTimestamp(), timeValue.getValue());
+      }
+      result.put(new SeriesKey(series.getMetricName(), series.getTagValues()), values);
+    }
+    return result;
+  }
+
+  private Collection<MetricTimeSeries> toTimeSeries(Map<SeriesKey, NavigableMap<Long, Long>> seriesMap, int limit) {
+    List<MetricTimeSeries> result = new ArrayList<>(seriesMap.size());
+    for (Map.Entry<SeriesKey, NavigableMap<Long, Long>> entry : seriesMap.entrySet()) {
+      // Apply the limit the same way as the cube does, which always returns at least one value
+      int count = 0;
+      List<TimeValue> timeValues = new ArrayList<>();
+      for (Map.Entry<Long, Long> value : entry.getValue().entrySet()) {
+        timeValues.add(new TimeValue(value.getKey(), value.getValue()));
+        if (++count >= limit) {
+          break;
+        }
+      }
+      result.add(new MetricTimeSeries(entry.getKey().metricName, entry.getKey().tagValues, timeValues));
+    }
+    return result;
+  }
+
+  private void incrementMetric(String metricName) {
+    MetricsContext context = metricsContext;
+    if (context != null) {
+      context.increment(metricName, 1L);
+    }
+  }
+
+  /**
+   * Key to the cache, which is the query without the time range and limit.
+   */
+  private static final class QueryKey {
+    private final int resolution;
+    private final Map<String, AggregationFunction> metrics;
+    private final Map<String, String> sliceByTags;
+    private final List<String> groupByTags;
+    private final int hashCode;
+
+    QueryKey(MetricDataQuery query) {
+      this.resolution = query.getResolution();
+      // Copy since the query may contain views. HashMap is used since slice by tags can have null value.
+      this.metrics = new HashMap<>(query.getMetrics());
+      this.sliceByTags = new HashMap<>(query.getSliceByTags());
+      this.groupByTags = new ArrayList<>(query.getGroupByTags());
+      this.hashCode = Objects.hash(resolution, metrics, sliceByTags, groupByTags);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      QueryKey other = (QueryKey) o;
+      return resolution == other.resolution && metrics.equals(other.metrics)
+        && sliceByTags.equals(other.sliceByTags) && groupByTags.equals(other.groupByTags);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * Identifies a time series in the query result.
+   */
+  private static final class SeriesKey {
+    private final String metricName;
+    private final Map<String, String> tagValues;
+
+    SeriesKey(String metricName, Map<String, String> tagValues) {
+      this.metricName = metricName;
+      this.tagValues = tagValues;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      SeriesKey other = (SeriesKey) o;
+      return metricName.equals(other.metricName) && tagValues.equals(other.tagValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(metricName, tagValues);
+    }
+  }
+
+  /**
+   * The cached values of the closed time buckets in the range of {@code [startTs, closedTs)}.
+   */
+  private static final class CachedResult {
+    private final long startTs;
+    private final long closedTs;
+    private final Map<SeriesKey, NavigableMap<Long, Long>> values;
+
+    CachedResult(long startTs, long closedTs, Map<SeriesKey, NavigableMap<Long, Long>> values) {
+      this.startTs = startTs;
+      this.closedTs = closedTs;
+      this.values = values;
+    }
+  }
+}
@@ -16,7 +16,6 @@
 
 package co.cask.cdap.metrics.store;
 
-import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
@@ -54,17 +53,21 @@ import co.cask.cdap.proto.id.TopicId;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -75,6 +78,8 @@ import javax.annotation.Nullable;
  * Default implementation of {@link MetricStore}.
  */
 public class DefaultMetricStore implements MetricStore {
+  private static final Logger LOG = LoggerFactory.getLogger(DefaultMetricStore.class);
+
   static final Map<String, Aggregation> AGGREGATIONS;
 
   private static final int TOTALS_RESOLUTION = Integer.MAX_VALUE;
@@ -96,11 +101,22 @@ public class DefaultMetricStore implements MetricStore {
                     new AggregationAlias(ImmutableMap.of(Constants.Metrics.Tag.RUN_ID,
                                                          Constants.Metrics.Tag.WORKFLOW_RUN_ID)));
 
-  private final Supplier<Cube> cube;
+  // resolutions that are rolled up from the previous resolution, in ascending order
+  private static final int[] ROLLUP_RESOLUTIONS = { Constants.Metrics.MINUTE_RESOLUTION,
+                                                    Constants.Metrics.HOUR_RESOLUTION };
+  // maximum number of time partitions to roll up per resolution in one rollup() call
+  private static final int MAX_ROLLUP_PARTITIONS = 60;
+
+  private final Supplier<DefaultCube> cube;
   private final Supplier<MetricsConsumerMetaTable> metaTableSupplier;
   private MetricsContext metricsContext;
   private final List<TopicId> metricsTopics;
   private final Map<Integer, Long> resolutionTTLMap;
+  private final boolean rollupEnabled;
+  private final long rollupDelaySecs;
+  private final long rollupIntervalSecs;
+  // time in seconds when the rollup watermarks of the cube were last loaded from the meta table
+  private volatile long rollupWatermarksLoadTime = -1L;
 
 
   static {
@@ -239,6 +255,15 @@ public class DefaultMetricStore implements MetricStore {
     long hourRetentionSecs = cConf.getLong(Constants.Metrics.RETENTION_SECONDS + Constants.Metrics.HOUR_RESOLUTION +
                                              Constants.Metrics.RETENTION_SECONDS_SUFFIX);
     this.resolutionTTLMap = ImmutableMap.of(1, secRetentionSecs, 60, minRetentionSecs, 3600, hourRetentionSecs);
+    this.rollupEnabled = cConf.getBoolean(Constants.Metrics.ROLLUP_ENABLED, false);
+    this.rollupDelaySecs = cConf.getLong(Constants.Metrics.ROLLUP_DELAY_SECONDS, 120L);
+    this.rollupIntervalSecs = cConf.getLong(Constants.Metrics.ROLLUP_INTERVAL_SECONDS, 60L);
+    final Set<Integer> rollupResolutions = new HashSet<>();
+    if (rollupEnabled) {
+      for (int resolution : ROLLUP_RESOLUTIONS) {
+        rollupResolutions.add(resolution);
+      }
+    }
     FactTableSupplier factTableSupplier = new FactTableSupplier() {
       @Override
       public FactTable get(int resolution, int ignoredRollTime) {
@@ -246,10 +271,11 @@ public class DefaultMetricStore implements MetricStore {
         return dsFactory.getOrCreateFactTable(resolution);
       }
     };
-    this.cube = Suppliers.memoize(new Supplier<Cube>() {
+    this.cube = Suppliers.memoize(new Supplier<DefaultCube>() {
       @Override
-      public Cube get() {
-        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS);
+      public DefaultCube get() {
+        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS,
+                                           AGGREGATIONS_ALIAS_DIMENSIONS, rollupResolutions);
         cube.setMetricsCollector(metricsContext);
         return cube;
       }
@@ -292,9 +318,53 @@ public class DefaultMetricStore implements MetricStore {
         .addMeasurements(metrics);
       facts.add(fact);
     }
+    if (rollupEnabled) {
+      updateRollupWatermarks(facts);
+    }
     cube.get().add(facts);
   }
 
+  /**
+   * Updates the rollup watermarks of the cube from the meta table if any of the given facts is old enough to be in
+   * a time range that was rolled up already, possibly by another process, or if they were not loaded for a rollup
+   * interval. Counters of facts before the watermarks are then written to the rollup resolutions directly, since the
+   * rollup won't visit their time range again.
+   */
+  private void updateRollupWatermarks(List<CubeFact> facts) {
+    long currentTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    boolean load = currentTime - rollupWatermarksLoadTime >= rollupIntervalSecs;
+    long completeTs = currentTime - rollupDelaySecs;
+    for (int i = 0; !load && i < facts.size(); i++) {
+      load = facts.get(i).getTimestamp() < completeTs;
+    }
+    if (!load) {
+      return;
+    }
+
+    MetricsConsumerMetaTable metaTable = metaTableSupplier.get();
+    for (int resolution : ROLLUP_RESOLUTIONS) {
+      try {
+        setRollupWatermark(resolution, metaTable.get(new RollupMetaKey(resolution)), currentTime);
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+    }
+    rollupWatermarksLoadTime = currentTime;
+  }
+
+  /**
+   * Sets the rollup watermark of the given resolution in the cube. If the watermark is too far behind for the rollup
+   * to be running normally, the resolution is marked as lagging, so that all counters are written to it directly
+   * until the rollup has caught up.
+   */
+  private void setRollupWatermark(int resolution, long watermark, long currentTime) {
+    // The rollup of a resolution normally runs behind by the rollup delay and interval, plus up to one time partition
+    // of the resolution and one of the finer resolution it is rolled up from
+    long lagThreshold = currentTime - rollupDelaySecs - rollupIntervalSecs - 2L * resolution;
+    cube.get().setRollupWatermark(resolution, watermark);
+    cube.get().setRollupLagging(resolution, watermark < lagThreshold);
+  }
+
   @Override
   public Collection<MetricTimeSeries> query(MetricDataQuery query) {
     Collection<TimeSeries> cubeResult = cube.get().query(buildCubeQuery(query));
@@ -347,6 +417,63 @@ public class DefaultMetricStore implements MetricStore {
     }
   }
 
+  @Override
+  public void rollup() {
+    if (!rollupEnabled) {
+      return;
+    }
+
+    MetricsConsumerMetaTable metaTable = metaTableSupplier.get();
+    long currentTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    // Source data is complete up to this time
+    long completeTs = currentTime - rollupDelaySecs;
+    int sourceResolution = Constants.Metrics.SECOND_RESOLUTION;
+    for (int resolution : ROLLUP_RESOLUTIONS) {
+      RollupMetaKey metaKey = new RollupMetaKey(resolution);
+      long startTs;
+      try {
+        startTs = metaTable.get(metaKey);
+      } catch (Exception e) {
+        throw Throwables.propagate(e);
+      }
+      // Start from the last rolled up time, but not before the oldest complete partition in the source resolution,
+      // since rolling up a partially expired partition would replace values written while the rollup was lagging
+      long oldestTs = currentTime - resolutionTTLMap.get(sourceResolution);
+      oldestTs = (oldestTs + resolution - 1) / resolution * resolution;
+      if (startTs < oldestTs) {
+        if (startTs > 0) {
+          LOG.warn("Counters of resolution {} from timestamp {} to {} may be incomplete, because they are no " +
+                     "longer retained in resolution {} for rollup", resolution, startTs, oldestTs, sourceResolution);
+        }
+        startTs = oldestTs;
+      }
+      long endTs = completeTs / resolution * resolution;
+
+      int partitions = 0;
+      int cells = 0;
+      while (startTs < endTs && partitions < MAX_ROLLUP_PARTITIONS) {
+        // The rollup moves the watermark of the cube past the partition before it allows new facts to be added
+        cells += cube.get().rollup(sourceResolution, resolution, startTs, startTs + resolution);
+        startTs += resolution;
+        partitions++;
+        try {
+          metaTable.save(Collections.singletonMap(metaKey, startTs));
+        } catch (Exception e) {
+          throw Throwables.propagate(e);
+        }
+      }
+      if (partitions > 0) {
+        LOG.debug("Rolled up {} cells in {} partitions of resolution {} up to timestamp {}",
+                  cells, partitions, resolution, startTs);
+      }
+      setRollupWatermark(resolution, startTs, currentTime);
+
+      // Coarser resolution is only complete up to where this resolution is rolled up
+      completeTs = Math.min(completeTs, startTs);
+      sourceResolution = resolution;
+    }
+  }
+
   @Override
   public void delete(MetricDeleteQuery query) {
     cube.get().delete(buildCubeDeleteQuery(query));
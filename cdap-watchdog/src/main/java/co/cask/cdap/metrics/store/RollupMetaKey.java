@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.store;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.metrics.process.MetricsConsumerMetaTable;
+import co.cask.cdap.metrics.process.MetricsMetaKey;
+
+/**
+ * {@link MetricsMetaKey} for storing the timestamp up to which a resolution has been rolled up
+ * in the {@link MetricsConsumerMetaTable}.
+ */
+final class RollupMetaKey implements MetricsMetaKey {
+
+  private final byte[] key;
+
+  RollupMetaKey(int resolution) {
+    this.key = Bytes.toBytes("rollup." + resolution);
+  }
+
+  @Override
+  public byte[] getKey() {
+    return key;
+  }
+}
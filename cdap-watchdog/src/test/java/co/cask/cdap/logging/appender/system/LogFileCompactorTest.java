@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender.system;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.Transactional;
+import co.cask.cdap.api.dataset.DatasetManager;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.guice.ConfigModule;
+import co.cask.cdap.common.guice.NonCustomLocationUnitTestModule;
+import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
+import co.cask.cdap.common.namespace.SimpleNamespaceQueryAdmin;
+import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
+import co.cask.cdap.data.runtime.DataSetsModules;
+import co.cask.cdap.data.runtime.SystemDatasetRuntimeModule;
+import co.cask.cdap.data2.datafabric.dataset.DefaultDatasetManager;
+import co.cask.cdap.data2.dataset2.DatasetFramework;
+import co.cask.cdap.data2.dataset2.MultiThreadDatasetCache;
+import co.cask.cdap.data2.transaction.Transactions;
+import co.cask.cdap.logging.LoggingConfiguration;
+import co.cask.cdap.logging.clean.FileMetadataCleaner;
+import co.cask.cdap.logging.clean.LogCleaner;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.guice.LoggingModules;
+import co.cask.cdap.logging.meta.FileMetaDataReader;
+import co.cask.cdap.logging.meta.FileMetaDataWriter;
+import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.write.LogLocation;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.security.auth.context.AuthenticationContextModules;
+import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
+import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import co.cask.cdap.security.impersonation.DefaultOwnerAdmin;
+import co.cask.cdap.security.impersonation.OwnerAdmin;
+import co.cask.cdap.security.impersonation.UGIProvider;
+import co.cask.cdap.security.impersonation.UnsupportedUGIProvider;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.tephra.RetryStrategies;
+import org.apache.tephra.TransactionManager;
+import org.apache.tephra.TransactionSystemClient;
+import org.apache.tephra.runtime.TransactionModules;
+import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link LogFileCompactor}.
+ */
+public class LogFileCompactorTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  private static Injector injector;
+  private static TransactionManager txManager;
+
+  @BeforeClass
+  public static void setUpContext() throws Exception {
+    Configuration hConf = HBaseConfiguration.create();
+    final CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, TMP_FOLDER.newFolder().getAbsolutePath());
+    String logBaseDir = cConf.get(LoggingConfiguration.LOG_BASE_DIR) + "/" + CDAPLogAppender.class.getSimpleName();
+    cConf.set(LoggingConfiguration.LOG_BASE_DIR, logBaseDir);
+
+    injector = Guice.createInjector(
+      new ConfigModule(cConf, hConf),
+      new NonCustomLocationUnitTestModule().getModule(),
+      new TransactionModules().getInMemoryModules(),
+      new LoggingModules().getInMemoryModules(),
+      new DataSetsModules().getInMemoryModules(),
+      new SystemDatasetRuntimeModule().getInMemoryModules(),
+      new AuthorizationTestModule(),
+      new AuthorizationEnforcementModule().getInMemoryModules(),
+      new AuthenticationContextModules().getNoOpModule(),
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          bind(MetricsCollectionService.class).to(NoOpMetricsCollectionService.class);
+          bind(UGIProvider.class).to(UnsupportedUGIProvider.class);
+          bind(OwnerAdmin.class).to(DefaultOwnerAdmin.class);
+          bind(NamespaceQueryAdmin.class).to(SimpleNamespaceQueryAdmin.class);
+        }
+      }
+    );
+
+    txManager = injector.getInstance(TransactionManager.class);
+    txManager.startAndWait();
+  }
+
+  @AfterClass
+  public static void cleanUp() throws Exception {
+    txManager.stopAndWait();
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    DatasetFramework datasetFramework = injector.getInstance(DatasetFramework.class);
+    DatasetManager datasetManager = new DefaultDatasetManager(datasetFramework, NamespaceId.SYSTEM,
+                                                              co.cask.cdap.common.service.RetryStrategies.noRetry(),
+                                                              null);
+    Transactional transactional = Transactions.createTransactionalWithRetry(
+      Transactions.createTransactional(new MultiThreadDatasetCache(
+        new SystemDatasetInstantiator(datasetFramework), injector.getInstance(TransactionSystemClient.class),
+        NamespaceId.SYSTEM, ImmutableMap.<String, String>of(), null, null)),
+      RetryStrategies.retryOnConflict(20, 100)
+    );
+    LocationFactory locationFactory = injector.getInstance(LocationFactory.class);
+    FileMetaDataWriter fileMetaDataWriter = new FileMetaDataWriter(datasetManager, transactional);
+    LogPathIdentifier logPathIdentifier = new LogPathIdentifier("testNs", "testApp", "testCompaction");
+    Location dirLocation = locationFactory.create("compaction");
+    dirLocation.mkdirs();
+
+    // Write three files with overlapping time ranges. The events of the first and the last file have the same
+    // timestamps, the events of the second file are in between.
+    long baseTime = System.currentTimeMillis() - 10000;
+    Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    List<Location> files = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Location location = dirLocation.append("test" + i + ".avro");
+      try (LogFileOutputStream outputStream = new LogFileOutputStream(location, "", 1024, baseTime, new Closeable() {
+        @Override
+        public void close() {
+          // no-op
+        }
+      })) {
+        for (int j = 0; j < 100; j++) {
+          LoggingEvent event = new LoggingEvent(getClass().getName(), logger, Level.INFO,
+                                                "file " + i + " message " + j, null, null);
+          event.setTimeStamp(baseTime + 3 * j + (i == 1 ? 1 : 0));
+          outputStream.append(event);
+        }
+      }
+      fileMetaDataWriter.writeMetaData(logPathIdentifier, baseTime + i, baseTime + i, location);
+      files.add(location);
+    }
+
+    new LogFileCompactor(datasetManager, transactional, locationFactory, "", 1024,
+                         1024 * 1024, 0L, 60).run();
+
+    // The meta data of the three files is replaced by the meta data of the merged file
+    FileMetaDataReader fileMetaDataReader = injector.getInstance(FileMetaDataReader.class);
+    List<LogLocation> logLocations = fileMetaDataReader.listFiles(logPathIdentifier, 0, System.currentTimeMillis());
+    Assert.assertEquals(1, logLocations.size());
+    LogLocation logLocation = logLocations.get(0);
+    Assert.assertEquals(baseTime, logLocation.getEventTimeMs());
+    Assert.assertEquals(baseTime + 2, logLocation.getFileCreationTimeMs());
+    Assert.assertFalse(files.contains(logLocation.getLocation()));
+
+    // The merged file contains all events in time order, with events of the same timestamp in file order
+    List<ILoggingEvent> events = new ArrayList<>();
+    try (CloseableIterator<LogEvent> iterator = logLocation.readLog(Filter.EMPTY_FILTER, 0, Long.MAX_VALUE,
+                                                                    Integer.MAX_VALUE)) {
+      while (iterator.hasNext()) {
+        events.add(iterator.next().getLoggingEvent());
+      }
+    }
+    Assert.assertEquals(300, events.size());
+    for (int j = 0; j < 100; j++) {
+      Assert.assertEquals("file 0 message " + j, events.get(3 * j).getFormattedMessage());
+      Assert.assertEquals("file 2 message " + j, events.get(3 * j + 1).getFormattedMessage());
+      Assert.assertEquals("file 1 message " + j, events.get(3 * j + 2).getFormattedMessage());
+      Assert.assertEquals(baseTime + 3 * j, events.get(3 * j).getTimeStamp());
+      Assert.assertEquals(baseTime + 3 * j, events.get(3 * j + 1).getTimeStamp());
+      Assert.assertEquals(baseTime + 3 * j + 1, events.get(3 * j + 2).getTimeStamp());
+    }
+
+    // The merged files are kept for readers that still use the old meta data
+    for (Location location : files) {
+      Assert.assertTrue(location.exists());
+    }
+
+    // The log cleaner deletes the merged files after the grace period, but keeps the compacted file
+    FileMetadataCleaner fileMetadataCleaner = new FileMetadataCleaner(datasetManager, transactional);
+    new LogCleaner(fileMetadataCleaner, locationFactory, TimeUnit.DAYS.toMillis(1), 60, 0L).run();
+    for (Location location : files) {
+      Assert.assertFalse(location.exists());
+    }
+    Assert.assertTrue(logLocation.getLocation().exists());
+    Assert.assertEquals(1, fileMetaDataReader.listFiles(logPathIdentifier, 0, System.currentTimeMillis()).size());
+  }
+}
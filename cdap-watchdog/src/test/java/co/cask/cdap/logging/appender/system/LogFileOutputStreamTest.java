@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.appender.system;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.read.LogEvent;
+import co.cask.cdap.logging.write.LogFileIndex;
+import co.cask.cdap.logging.write.LogLocation;
+import com.google.common.collect.Iterables;
+import org.apache.avro.file.CodecFactory;
+import org.apache.twill.filesystem.LocalLocationFactory;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Unit test for {@link LogFileOutputStream} and reading of the indexed log file.
+ */
+public class LogFileOutputStreamTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testTimeIndex() throws Exception {
+    Location location = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+    long baseTime = System.currentTimeMillis();
+
+    // Use a small sync interval to have many index entries
+    try (LogFileOutputStream outputStream = new LogFileOutputStream(location, "", 1024, baseTime, new Closeable() {
+      @Override
+      public void close() {
+        // no-op
+      }
+    })) {
+      Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+      for (int i = 0; i < 1000; i++) {
+        LoggingEvent event = new LoggingEvent(getClass().getName(), logger, Level.INFO, "message " + i, null, null);
+        event.setTimeStamp(baseTime + i);
+        outputStream.append(event);
+      }
+    }
+
+    LogFileIndex index = LogFileIndex.read(location);
+    Assert.assertNotNull(index);
+    Assert.assertTrue(index.size() > 10);
+
+    LogLocation logLocation = new LogLocation(LogLocation.VERSION_1, baseTime, baseTime, location,
+                                              "default", null);
+
+    // Read forward from the middle of the file
+    List<Long> timestamps = new ArrayList<>();
+    try (CloseableIterator<LogEvent> iterator = logLocation.readLog(Filter.EMPTY_FILTER, baseTime + 500,
+                                                                    baseTime + 600, 1000)) {
+      while (iterator.hasNext()) {
+        timestamps.add(iterator.next().getLoggingEvent().getTimeStamp() - baseTime);
+      }
+    }
+    Assert.assertEquals(100, timestamps.size());
+    Assert.assertEquals(500L, (long) timestamps.get(0));
+    Assert.assertEquals(599L, (long) Iterables.getLast(timestamps));
+
+    // Read backward from the middle of the file
+    Collection<LogEvent> events = logLocation.readLogPrev(Filter.EMPTY_FILTER, baseTime + 700, 50);
+    Assert.assertEquals(50, events.size());
+    Assert.assertEquals(651L, Iterables.getFirst(events, null).getLoggingEvent().getTimeStamp() - baseTime);
+    Assert.assertEquals(700L, Iterables.getLast(events).getLoggingEvent().getTimeStamp() - baseTime);
+
+    // Read backward from the end of the file
+    events = logLocation.readLogPrev(Filter.EMPTY_FILTER, baseTime + 2000, 2000);
+    Assert.assertEquals(1000, events.size());
+  }
+
+  @Test
+  public void testBlockStatistics() throws Exception {
+    Location location = new LocalLocationFactory(TMP_FOLDER.newFolder()).create("test.avro");
+    long baseTime = System.currentTimeMillis();
+
+    try (LogFileOutputStream outputStream = new LogFileOutputStream(location, "", 1024, baseTime,
+                                                                    CodecFactory.deflateCodec(6), new Closeable() {
+      @Override
+      public void close() {
+        // no-op
+      }
+    })) {
+      Logger logger = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+      for (int i = 0; i < 1000; i++) {
+        // Only events in [300, 310) and [800, 810) are errors
+        Level level = i % 500 >= 300 && i % 500 < 310 ? Level.ERROR : Level.INFO;
+        LoggingEvent event = new LoggingEvent(getClass().getName(), logger, level, "message " + i, null, null);
+        event.setTimeStamp(baseTime + i);
+        outputStream.append(event);
+      }
+    }
+
+    LogFileIndex index = LogFileIndex.read(location);
+    Assert.assertNotNull(index);
+    int skippable = 0;
+    for (int i = 0; i < index.size(); i++) {
+      if (index.canSkip(i, Long.MIN_VALUE, Long.MAX_VALUE, Level.ERROR_INT)) {
+        skippable++;
+      }
+    }
+    Assert.assertTrue(skippable > 0 && skippable < index.size());
+
+    LogLocation logLocation = new LogLocation(LogLocation.VERSION_1, baseTime, baseTime, location,
+                                              "default", null);
+    Filter filter = new LogLevelExpression("ERROR");
+
+    // Read forward, which skips the blocks without errors
+    List<Long> timestamps = new ArrayList<>();
+    try (CloseableIterator<LogEvent> iterator = logLocation.readLog(filter, baseTime + 305, baseTime + 2000, 1000)) {
+      while (iterator.hasNext()) {
+        timestamps.add(iterator.next().getLoggingEvent().getTimeStamp() - baseTime);
+      }
+    }
+    Assert.assertEquals(15, timestamps.size());
+    Assert.assertEquals(305L, (long) timestamps.get(0));
+    Assert.assertEquals(809L, (long) Iterables.getLast(timestamps));
+
+    // Read backward
+    Collection<LogEvent> events = logLocation.readLogPrev(filter, baseTime + 700, 100);
+    Assert.assertEquals(10, events.size());
+    Assert.assertEquals(300L, Iterables.getFirst(events, null).getLoggingEvent().getTimeStamp() - baseTime);
+    Assert.assertEquals(309L, Iterables.getLast(events).getLoggingEvent().getTimeStamp() - baseTime);
+  }
+}
@@ -19,9 +19,13 @@ package co.cask.cdap.logging.framework.distributed;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.LoggingEvent;
+import co.cask.cdap.api.TxRunnable;
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.DatasetManager;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.logging.AppenderContext;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
@@ -58,12 +62,14 @@ import co.cask.cdap.security.impersonation.DefaultOwnerAdmin;
 import co.cask.cdap.security.impersonation.OwnerAdmin;
 import co.cask.cdap.security.impersonation.UGIProvider;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
 import org.apache.tephra.TransactionManager;
 import org.apache.tephra.runtime.TransactionModules;
+import org.apache.twill.filesystem.LocationFactory;
 import org.apache.twill.kafka.client.BrokerService;
 import org.apache.twill.kafka.client.Compression;
 import org.apache.twill.kafka.client.KafkaClientService;
@@ -80,7 +86,9 @@ import org.junit.rules.TemporaryFolder;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -193,6 +201,51 @@ public class DistributedLogFrameworkTest {
     Assert.assertEquals(msgCount, checkpoint.getNextOffset());
   }
 
+  @Test
+  public void testWorkerPartitions() {
+    Set<Integer> partitions = ImmutableSet.of(4, 0, 3, 1, 2);
+
+    // With a single worker, all partitions are processed by that worker
+    Assert.assertEquals(ImmutableList.of(partitions), DistributedLogFramework.getWorkerPartitions(partitions, 1));
+
+    // Partitions are assigned to workers in round robin order, each partition to exactly one worker
+    Assert.assertEquals(ImmutableList.of(ImmutableSet.of(0, 2, 4), ImmutableSet.of(1, 3)),
+                        DistributedLogFramework.getWorkerPartitions(partitions, 2));
+
+    // The number of workers is bounded by the number of partitions
+    List<Set<Integer>> workerPartitions = DistributedLogFramework.getWorkerPartitions(partitions, 8);
+    Assert.assertEquals(partitions.size(), workerPartitions.size());
+    Set<Integer> assigned = new HashSet<>();
+    for (Set<Integer> worker : workerPartitions) {
+      Assert.assertEquals(1, worker.size());
+      assigned.addAll(worker);
+    }
+    Assert.assertEquals(partitions, assigned);
+  }
+
+  @Test
+  public void testWorkerInstanceIds() {
+    // Each worker of each instance should be presented to the appenders as a distinct instance, even if instances
+    // run different number of workers. With 10 partitions, 3 instances and 4 workers, the instances are assigned
+    // 4, 3 and 3 partitions.
+    int instances = 3;
+    int maxWorkers = 4;
+    int[] partitions = { 4, 3, 3 };
+    Set<Integer> instanceIds = new HashSet<>();
+    for (int instance = 0; instance < instances; instance++) {
+      AppenderContext delegate = new InstanceAppenderContext(instance, instances);
+      int workers = Math.min(maxWorkers, partitions[instance]);
+      for (int worker = 0; worker < workers; worker++) {
+        AppenderContext context = new WorkerAppenderContext(delegate, worker, maxWorkers);
+        Assert.assertEquals(instance * maxWorkers + worker, context.getInstanceId());
+        Assert.assertEquals(instances * maxWorkers, context.getInstanceCount());
+        Assert.assertTrue(context.getInstanceId() < context.getInstanceCount());
+        Assert.assertTrue(instanceIds.add(context.getInstanceId()));
+      }
+    }
+    Assert.assertEquals(10, instanceIds.size());
+  }
+
   private Injector createInjector() throws IOException {
     CConfiguration cConf = CConfiguration.copy(KAFKA_TESTER.getCConf());
     cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
@@ -254,4 +307,52 @@ public class DistributedLogFrameworkTest {
     preparer.send();
   }
 
+  /**
+   * An {@link AppenderContext} that only provides the instance id and count.
+   */
+  private static final class InstanceAppenderContext extends AppenderContext {
+
+    private final int instanceId;
+    private final int instanceCount;
+
+    InstanceAppenderContext(int instanceId, int instanceCount) {
+      this.instanceId = instanceId;
+      this.instanceCount = instanceCount;
+    }
+
+    @Override
+    public int getInstanceId() {
+      return instanceId;
+    }
+
+    @Override
+    public int getInstanceCount() {
+      return instanceCount;
+    }
+
+    @Override
+    public DatasetManager getDatasetManager() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public LocationFactory getLocationFactory() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MetricsContext getMetricsContext() {
+      return new NoOpMetricsCollectionService().getContext(Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public void execute(TxRunnable runnable) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void execute(int timeoutInSeconds, TxRunnable runnable) {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
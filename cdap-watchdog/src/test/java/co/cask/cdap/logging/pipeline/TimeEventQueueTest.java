@@ -18,8 +18,14 @@ package co.cask.cdap.logging.pipeline;
 
 import com.google.common.collect.ImmutableSet;
 import org.junit.Assert;
+import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -32,6 +38,9 @@ import java.util.Objects;
  */
 public class TimeEventQueueTest {
 
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
   @Test
   public void testOrdering() {
     TimeEventQueue<TimestampedEvent, Integer> eventQueue = new TimeEventQueue<>(ImmutableSet.of(1, 3));
@@ -143,6 +152,145 @@ public class TimeEventQueueTest {
     Assert.assertTrue(eventQueue.isEmpty());
   }
 
+  @Test
+  public void testSpill() throws IOException {
+    File spillDir = new File(TMP_FOLDER.newFolder(), "spill");
+    TimeEventQueue<String, Integer> eventQueue = new TimeEventQueue<>(ImmutableSet.of(1, 2), spillDir,
+                                                                      new StringSpillCodec());
+    Assert.assertTrue(eventQueue.isSpillEnabled());
+
+    // Insert events with interleaving timestamps across three spilled runs and the memory
+    int offset = 0;
+    for (int run = 0; run < 4; run++) {
+      for (int i = 0; i < 5; i++) {
+        long timestamp = i * 4 + run;
+        eventQueue.add("m" + timestamp, timestamp, 10, offset % 2 + 1, offset);
+        offset++;
+      }
+      if (run < 3) {
+        eventQueue.spill();
+        Assert.assertEquals(0, eventQueue.getInMemorySize());
+      }
+    }
+
+    Assert.assertEquals(20, eventQueue.size());
+    Assert.assertEquals(200, eventQueue.getEventSize());
+    Assert.assertEquals(150, eventQueue.getSpilledSize());
+    Assert.assertEquals(50, eventQueue.getInMemorySize());
+    Assert.assertEquals(3, spillDir.list().length);
+    Assert.assertEquals("m0", eventQueue.first());
+    Assert.assertEquals(0, eventQueue.getSmallestOffset(1).intValue());
+
+    // Iterate without removing, then iterate with removal of the first half
+    int count = 0;
+    for (String event : eventQueue) {
+      Assert.assertEquals("m" + count++, event);
+    }
+    Assert.assertEquals(20, count);
+
+    TimeEventQueue.EventIterator<String, Integer> iterator = eventQueue.iterator();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals("m" + i, iterator.next());
+      iterator.remove();
+    }
+    Assert.assertEquals(10, eventQueue.size());
+    Assert.assertEquals(100, eventQueue.getEventSize());
+
+    // Add new events to memory. They should be merged with the remaining spilled events
+    eventQueue.add("m10.5", 10L, 10, 2, 100);
+    Assert.assertEquals("m10", eventQueue.first());
+
+    iterator = eventQueue.iterator();
+    Assert.assertEquals("m10", iterator.next());
+    iterator.remove();
+    Assert.assertEquals("m10.5", iterator.next());
+    Assert.assertEquals(100, iterator.getOffset().intValue());
+    iterator.remove();
+    for (int i = 11; i < 20; i++) {
+      Assert.assertEquals("m" + i, iterator.next());
+      iterator.remove();
+    }
+    Assert.assertFalse(iterator.hasNext());
+    Assert.assertTrue(eventQueue.isEmpty());
+    Assert.assertTrue(eventQueue.isEmpty(1));
+    Assert.assertTrue(eventQueue.isEmpty(2));
+    Assert.assertEquals(0, eventQueue.getEventSize());
+
+    // Spill files should be removed once all events in them are consumed
+    Assert.assertEquals(0, spillDir.list().length);
+
+    // Closing the queue removes all spilled events
+    eventQueue.add("m0", 0L, 10, 1, 200);
+    eventQueue.spill();
+    Assert.assertEquals(1, spillDir.list().length);
+    eventQueue.close();
+    Assert.assertEquals(0, spillDir.list().length);
+  }
+
+  @Test
+  public void testManySpillRuns() throws IOException {
+    File spillDir = new File(TMP_FOLDER.newFolder(), "spill");
+    TimeEventQueue<String, Integer> eventQueue = new TimeEventQueue<>(ImmutableSet.of(1), spillDir,
+                                                                      new StringSpillCodec());
+
+    // Spill more runs than the ones that can be kept open, with enough events to be read in multiple batches
+    int runs = 40;
+    int eventsPerRun = 200;
+    int offset = 0;
+    for (int run = 0; run < runs; run++) {
+      for (int i = 0; i < eventsPerRun; i++) {
+        long timestamp = i * runs + run;
+        eventQueue.add("m" + timestamp, timestamp, 10, 1, offset++);
+      }
+      eventQueue.spill();
+    }
+    Assert.assertEquals(runs, spillDir.list().length);
+
+    int count = 0;
+    TimeEventQueue.EventIterator<String, Integer> iterator = eventQueue.iterator();
+    while (iterator.hasNext()) {
+      Assert.assertEquals("m" + count++, iterator.next());
+      iterator.remove();
+    }
+    Assert.assertEquals(runs * eventsPerRun, count);
+    Assert.assertTrue(eventQueue.isEmpty());
+    Assert.assertEquals(0, spillDir.list().length);
+  }
+
+  @Test
+  public void testDuplicateOffset() throws IOException {
+    File spillDir = new File(TMP_FOLDER.newFolder(), "spill");
+    TimeEventQueue<String, Integer> eventQueue = new TimeEventQueue<>(ImmutableSet.of(1), spillDir,
+                                                                      new StringSpillCodec());
+    eventQueue.add("m1", 1L, 10, 1, 0);
+    eventQueue.add("m2", 2L, 10, 1, 1);
+
+    // Adding the same event again is ignored
+    eventQueue.add("m1", 1L, 10, 1, 0);
+    Assert.assertEquals(2, eventQueue.size());
+
+    // A different event with the same offset is rejected, no matter if the existing event is in memory or spilled
+    try {
+      eventQueue.add("m3", 3L, 10, 1, 0);
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    eventQueue.spill();
+    eventQueue.add("m2", 2L, 10, 1, 1);
+    Assert.assertEquals(2, eventQueue.size());
+    Assert.assertEquals(0, eventQueue.getInMemorySize());
+    try {
+      eventQueue.add("m3", 3L, 10, 1, 1);
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    Assert.assertEquals(2, eventQueue.size());
+    eventQueue.close();
+  }
+
   @Test (expected = IllegalArgumentException.class)
   public void testInvalidPartition() {
     TimeEventQueue<String, Integer> eventQueue = new TimeEventQueue<>(Collections.singleton(1));
@@ -159,6 +307,29 @@ public class TimeEventQueueTest {
     iterator.remove();
   }
 
+  private static final class StringSpillCodec implements TimeEventQueue.SpillCodec<String, Integer> {
+
+    @Override
+    public void encodeEvent(String event, DataOutput output) throws IOException {
+      output.writeUTF(event);
+    }
+
+    @Override
+    public String decodeEvent(DataInput input) throws IOException {
+      return input.readUTF();
+    }
+
+    @Override
+    public void encodeOffset(Integer offset, DataOutput output) throws IOException {
+      output.writeInt(offset);
+    }
+
+    @Override
+    public Integer decodeOffset(DataInput input) throws IOException {
+      return input.readInt();
+    }
+  }
+
   private static final class TimestampedEvent {
     private final long timestamp;
     private final String message;
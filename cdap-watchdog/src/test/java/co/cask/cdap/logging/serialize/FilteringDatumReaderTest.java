@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.serialize;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import co.cask.cdap.logging.filter.AndFilter;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.MdcExpression;
+import co.cask.cdap.logging.filter.OrFilter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for {@link FilteringDatumReader}.
+ */
+public class FilteringDatumReaderTest {
+
+  private static final Level[] LEVELS = { Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR };
+
+  @Test
+  public void testFilter() throws Exception {
+    byte[] encoded = encodeEvents(100);
+
+    // Level filter
+    assertEvents(encoded, new LogLevelExpression("ERROR"), 0L, 25, true);
+    assertEvents(encoded, new LogLevelExpression("WARN"), 0L, 50, true);
+
+    // MDC filter, with the mdc value alternating between "even" and "odd"
+    assertEvents(encoded, new MdcExpression("parity", "even"), 0L, 50, true);
+    assertEvents(encoded, new AndFilter(ImmutableList.of(new LogLevelExpression("ERROR"),
+                                                         new MdcExpression("parity", "odd"))), 0L, 25, true);
+    assertEvents(encoded, new OrFilter(ImmutableList.of(new LogLevelExpression("ERROR"),
+                                                        new MdcExpression("parity", "even"))), 0L, 75, true);
+
+    // Timestamp filter
+    assertEvents(encoded, Filter.EMPTY_FILTER, 1090L, 10, true);
+
+    // Filters that cannot be pushed down only filter by timestamp
+    Filter custom = new Filter() {
+      @Override
+      public boolean match(ILoggingEvent event) {
+        return event.getLevel() == Level.ERROR;
+      }
+    };
+    assertEvents(encoded, custom, 1050L, 50, false);
+  }
+
+  private void assertEvents(byte[] encoded, Filter filter, long minTimestamp,
+                            int expectedCount, boolean pushedDown) throws Exception {
+    FilteringDatumReader datumReader = new FilteringDatumReader(filter, minTimestamp);
+    datumReader.setSchema(LogSchema.LoggingEvent.SCHEMA);
+    Assert.assertEquals(pushedDown, datumReader.isFilterPushedDown());
+
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(encoded, null);
+    List<ILoggingEvent> events = new ArrayList<>();
+    long expectedTimestamp = 1000L;
+    while (!decoder.isEnd()) {
+      GenericRecord record = datumReader.read(null, decoder);
+      // The timestamp is always decoded, even for skipped records
+      Assert.assertEquals(expectedTimestamp++, datumReader.getLastTimestamp());
+      if (record != null) {
+        ILoggingEvent event = new LoggingEvent(record);
+        Assert.assertTrue(event.getTimeStamp() >= minTimestamp);
+        Assert.assertEquals("message " + (event.getTimeStamp() - 1000L), event.getFormattedMessage());
+        if (pushedDown) {
+          Assert.assertTrue(filter.match(event));
+        }
+        events.add(event);
+      }
+    }
+    Assert.assertEquals(expectedCount, events.size());
+  }
+
+  private byte[] encodeEvents(int count) throws Exception {
+    LoggingEventSerializer serializer = new LoggingEventSerializer();
+    ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(FilteringDatumReaderTest.class);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    for (int i = 0; i < count; i++) {
+      ch.qos.logback.classic.spi.LoggingEvent event = new ch.qos.logback.classic.spi.LoggingEvent(
+        getClass().getName(), logger, LEVELS[i % LEVELS.length], "message " + i, null, null);
+      event.setTimeStamp(1000L + i);
+      event.setMDCPropertyMap(ImmutableMap.of("parity", i % 2 == 0 ? "even" : "odd"));
+      os.write(serializer.toBytes(event));
+    }
+    return os.toByteArray();
+  }
+}
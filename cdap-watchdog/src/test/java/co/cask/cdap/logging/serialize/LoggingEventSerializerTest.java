@@ -29,12 +29,19 @@ import co.cask.cdap.logging.appender.LogMessage;
 import co.cask.cdap.logging.context.LoggingContextHelper;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
@@ -164,6 +171,57 @@ public class LoggingEventSerializerTest {
     assertLoggingEventEquals(iLoggingEvent, actualEvent);
   }
 
+  @Test
+  public void testGenericRecordCompatibility() throws Exception {
+    ch.qos.logback.classic.spi.LoggingEvent iLoggingEvent = new ch.qos.logback.classic.spi.LoggingEvent();
+    iLoggingEvent.setThreadName("thread");
+    iLoggingEvent.setLevel(Level.WARN);
+    iLoggingEvent.setMessage("Message {} {}");
+    iLoggingEvent.setArgumentArray(new Object[]{"arg1", null});
+    iLoggingEvent.setLoggerName("logger");
+    iLoggingEvent.setLoggerContextRemoteView(new LoggerContextVO("context", ImmutableMap.of("p1", "v1"), 1234L));
+    iLoggingEvent.setThrowableProxy(new ThrowableProxy(new Exception("Test Exception", new Exception())));
+    iLoggingEvent.prepareForDeferredProcessing();
+    iLoggingEvent.setCallerData(new StackTraceElement[]{
+      new StackTraceElement("com.Class1", "methodName1", "fileName1", 10), null
+    });
+    iLoggingEvent.getMDCPropertyMap().put("mdc1", "value1");
+    iLoggingEvent.setTimeStamp(1234567890L);
+    ILoggingEvent event = new LogMessage(iLoggingEvent, LoggingContextAccessor.getLoggingContext());
+
+    LoggingEventSerializer serializer = new LoggingEventSerializer();
+
+    // Bytes encoded by the serializer can be decoded with the generic datum reader
+    byte[] bytes = serializer.toBytes(event);
+    GenericRecord record = new GenericDatumReader<GenericRecord>(serializer.getAvroSchema())
+      .read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+    assertLoggingEventEquals(iLoggingEvent, new LoggingEvent(record));
+
+    // Bytes encoded with the generic datum writer can be decoded by the serializer
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
+    new GenericDatumWriter<GenericRecord>(serializer.getAvroSchema()).write(serializer.toGenericRecord(event),
+                                                                             encoder);
+    Assert.assertEquals(bytes.length, os.size());
+    assertLoggingEventEquals(iLoggingEvent, serializer.fromBytes(ByteBuffer.wrap(os.toByteArray())));
+
+    // Decoding from a buffer with non-zero position
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 10);
+    buffer.position(10);
+    buffer.put(bytes).position(10);
+    ILoggingEvent decoded = serializer.fromBytes(buffer);
+    Assert.assertEquals(event.getTimeStamp(), decoded.getTimeStamp());
+    Assert.assertEquals(event.getFormattedMessage(), decoded.getFormattedMessage());
+
+    // Garbage should fail to decode
+    try {
+      serializer.fromBytes(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
   @Test
   public void testDecodeTimestamp() throws IOException {
     long timestamp = System.currentTimeMillis();
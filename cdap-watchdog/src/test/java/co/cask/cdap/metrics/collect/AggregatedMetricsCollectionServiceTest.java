@@ -26,13 +26,19 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -152,6 +158,66 @@ public class AggregatedMetricsCollectionServiceTest {
     }
   }
 
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    final BlockingQueue<MetricValues> published = new LinkedBlockingQueue<>();
+    AggregatedMetricsCollectionService service = new AggregatedMetricsCollectionService() {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        Iterators.addAll(published, metrics);
+      }
+
+      @Override
+      protected long getInitialDelayMillis() {
+        // Only publish on shutdown
+        return TimeUnit.HOURS.toMillis(1);
+      }
+    };
+
+    service.startAndWait();
+    final MetricsContext baseContext = service.getContext(ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NAMESPACE));
+
+    // Child contexts with the same tags should be the same instance
+    MetricsContext childContext = baseContext.childContext(Constants.Metrics.Tag.APP, APP);
+    Assert.assertSame(childContext, baseContext.childContext(Constants.Metrics.Tag.APP, APP));
+    Assert.assertSame(childContext, service.getContext(childContext.getTags()));
+    Assert.assertSame(childContext, baseContext.childContext(ImmutableMap.of(Constants.Metrics.Tag.APP, APP)));
+
+    int threads = 8;
+    final int increments = 10000;
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            startLatch.await();
+            for (int j = 0; j < increments; j++) {
+              baseContext.childContext(Constants.Metrics.Tag.APP, APP).increment(METRIC, 1);
+            }
+            return null;
+          }
+        }));
+      }
+      startLatch.countDown();
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+      service.stopAndWait();
+    }
+
+    // Metrics are flushed on shutdown
+    MetricValues metricValues = published.poll();
+    Assert.assertNotNull(metricValues);
+    Assert.assertEquals(childContext.getTags(), metricValues.getTags());
+    Assert.assertEquals(Long.valueOf(threads * increments), getMetricValue(metricValues.getMetrics(), METRIC));
+    Assert.assertNull(published.poll());
+  }
+
   @Test
   public void testServiceShutdown() throws InterruptedException, TimeoutException, ExecutionException {
     final CountDownLatch latch = new CountDownLatch(1);
@@ -209,6 +209,11 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       // no-op
     }
 
+    @Override
+    public void rollup() {
+      // no-op
+    }
+
     @Override
     public void delete(MetricDeleteQuery query) {
       // no-op
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2018 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.query;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.Interpolators;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricDeleteQuery;
+import co.cask.cdap.api.metrics.MetricSearchQuery;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.MetricsProcessorStatus;
+import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Unit test for {@link MetricsQueryCache}.
+ */
+public class MetricsQueryCacheTest {
+
+  private static final Map<String, AggregationFunction> METRICS = ImmutableMap.of("m", AggregationFunction.SUM);
+  private static final Map<String, String> TAGS = ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, "ns");
+
+  @Test
+  public void testClosedBucketsCached() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Metrics.QUERY_CACHE_SIZE, 1000);
+    cConf.setLong(Constants.Metrics.QUERY_CACHE_CLOSED_DELAY_SECONDS, 120L);
+    cConf.setBoolean(Constants.Metrics.ROLLUP_ENABLED, false);
+
+    RecordingMetricStore metricStore = new RecordingMetricStore();
+    for (long ts = 0; ts < 6000; ts += 60) {
+      metricStore.values.put(ts, ts / 60);
+    }
+    MetricsQueryCache cache = new MetricsQueryCache(metricStore, cConf);
+
+    // First query scans everything. Buckets before (3000 - 120) are closed.
+    MetricDataQuery query = new MetricDataQuery(600, 3000, 60, 1000, METRICS, TAGS,
+                                                Collections.<String>emptyList(), null);
+    assertValues(metricStore, cache.query(query, 3000), 600, 3000);
+    Assert.assertEquals(600L, metricStore.lastQuery.getStartTs());
+
+    // Same query later on only scans from the first bucket that wasn't closed
+    query = new MetricDataQuery(600, 4200, 60, 1000, METRICS, TAGS, Collections.<String>emptyList(), null);
+    assertValues(metricStore, cache.query(query, 4200), 600, 4200);
+    Assert.assertEquals(2880L, metricStore.lastQuery.getStartTs());
+    Assert.assertEquals(4200L, metricStore.lastQuery.getEndTs());
+
+    // A query with a narrower range is answered from the cache and the tail scan
+    query = new MetricDataQuery(1200, 4500, 60, 1000, METRICS, TAGS, Collections.<String>emptyList(), null);
+    assertValues(metricStore, cache.query(query, 4500), 1200, 4500);
+    Assert.assertEquals(4080L, metricStore.lastQuery.getStartTs());
+
+    // A query that starts before the cached range is a miss
+    query = new MetricDataQuery(0, 4500, 60, 1000, METRICS, TAGS, Collections.<String>emptyList(), null);
+    assertValues(metricStore, cache.query(query, 4500), 0, 4500);
+    Assert.assertEquals(0L, metricStore.lastQuery.getStartTs());
+
+    // The limit is applied to the merged result
+    query = new MetricDataQuery(600, 4500, 60, 5, METRICS, TAGS, Collections.<String>emptyList(), null);
+    MetricTimeSeries series = Iterables.getOnlyElement(cache.query(query, 4500));
+    Assert.assertEquals(5, series.getTimeValues().size());
+    Assert.assertEquals(600L, series.getTimeValues().get(0).getTimestamp());
+
+    // Interpolated queries are not cached
+    query = new MetricDataQuery(600, 4500, 60, 1000, METRICS, TAGS, Collections.<String>emptyList(),
+                                new Interpolators.Step());
+    cache.query(query, 4500);
+    Assert.assertEquals(600L, metricStore.lastQuery.getStartTs());
+    Assert.assertNotNull(metricStore.lastQuery.getInterpolator());
+  }
+
+  @Test
+  public void testSlidingQueryBounded() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Metrics.QUERY_CACHE_SIZE, 1000);
+    cConf.setLong(Constants.Metrics.QUERY_CACHE_CLOSED_DELAY_SECONDS, 120L);
+    cConf.setBoolean(Constants.Metrics.ROLLUP_ENABLED, false);
+
+    RecordingMetricStore metricStore = new RecordingMetricStore();
+    for (long ts = 0; ts < 60000; ts += 60) {
+      metricStore.values.put(ts, ts / 60);
+    }
+    MetricsQueryCache cache = new MetricsQueryCache(metricStore, cConf);
+
+    // Poll a one hour window that slides by one bucket on every query
+    for (long now = 3600; now < 60000; now += 60) {
+      MetricDataQuery query = new MetricDataQuery(now - 3600, now, 60, 1000, METRICS, TAGS,
+                                                  Collections.<String>emptyList(), null);
+      assertValues(metricStore, cache.query(query, now), now - 3600, now);
+      // Only the closed buckets in the window are cached
+      Assert.assertTrue(cache.getCachedValueCount() <= 60);
+    }
+    // The sliding queries are cache hits that only scan from the buckets closed by the previous query
+    Assert.assertEquals(59760L, metricStore.lastQuery.getStartTs());
+  }
+
+  private void assertValues(RecordingMetricStore metricStore, Collection<MetricTimeSeries> result,
+                            long startTs, long endTs) {
+    MetricTimeSeries series = Iterables.getOnlyElement(result);
+    Assert.assertEquals("m", series.getMetricName());
+    List<TimeValue> expected = new ArrayList<>();
+    for (Map.Entry<Long, Long> entry : metricStore.values.subMap(startTs, true, endTs, true).entrySet()) {
+      expected.add(new TimeValue(entry.getKey(), entry.getValue()));
+    }
+    Assert.assertEquals(expected, series.getTimeValues());
+  }
+
+  /**
+   * A {@link MetricStore} that serves a single time series and records the last query.
+   */
+  private static final class RecordingMetricStore implements MetricStore {
+
+    private final NavigableMap<Long, Long> values = new TreeMap<>();
+    private MetricDataQuery lastQuery;
+
+    @Override
+    public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+      lastQuery = query;
+      List<TimeValue> timeValues = new ArrayList<>();
+      for (Map.Entry<Long, Long> entry : values.subMap(query.getStartTs(), true,
+                                                       query.getEndTs(), true).entrySet()) {
+        timeValues.add(new TimeValue(entry.getKey(), entry.getValue()));
+      }
+      return ImmutableList.of(new MetricTimeSeries("m", Collections.<String, String>emptyMap(), timeValues));
+    }
+
+    @Override
+    public void setMetricsContext(MetricsContext metricsContext) {
+      // no-op
+    }
+
+    @Override
+    public void add(MetricValues metricValues) {
+      // no-op
+    }
+
+    @Override
+    public void add(Collection<? extends MetricValues> metricValues) {
+      // no-op
+    }
+
+    @Override
+    public void deleteBefore(long timestamp) {
+      // no-op
+    }
+
+    @Override
+    public void deleteTTLExpired() {
+      // no-op
+    }
+
+    @Override
+    public void rollup() {
+      // no-op
+    }
+
+    @Override
+    public void delete(MetricDeleteQuery query) {
+      // no-op
+    }
+
+    @Override
+    public void deleteAll() {
+      // no-op
+    }
+
+    @Override
+    public Collection<TagValue> findNextAvailableTags(MetricSearchQuery query) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public Collection<String> findMetricNames(MetricSearchQuery query) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, MetricsProcessorStatus> getMetricsProcessorStats() {
+      return Collections.emptyMap();
+    }
+  }
+}